@@ -0,0 +1,227 @@
+/**
+ * *****************************************************************************
+ *
+ * @file BenchmarkFixtures.java
+ * @description Generates the local key store and PDF documents the benchmarks run
+ *              against.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import org.alfresco.extension.pdfsign.constants.PDFSignConstants;
+import org.alfresco.extension.pdfsign.service.KeyStoreLoader;
+import org.alfresco.extension.pdfsign.service.SigningCredential;
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.PageSize;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.PdfWriter;
+
+/**
+ * Generates the fixtures the benchmarks run against: a PKCS#12 key store holding a self-signed
+ * RSA 2048 certificate and text PDF documents with a given number of pages. Fixtures are
+ * written once to {@code java.io.tmpdir/pdf-sign-benchmarks} and reused by later runs.
+ */
+public final class BenchmarkFixtures {
+
+    /** Password of the key store and of its private key. */
+    public static final String PASSWORD = "benchmark";
+
+    private static final String ALIAS = "benchmark";
+    private static final String SUBJECT = "CN=PDF Sign Benchmark, O=Alfresco PDF Sign";
+
+    private static final String TEXT = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor "
+            + "incididunt ut labore et dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco "
+            + "laboris nisi ut aliquip ex ea commodo consequat.";
+
+    static {
+        installBouncyCastle();
+    }
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Registers the BouncyCastle provider, as the repository does, after the JDK providers.
+     */
+    public static synchronized void installBouncyCastle() {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
+    /**
+     * Returns the key store fixture, generating it on first use.
+     *
+     * @return the PKCS#12 key store file
+     * @throws IOException if the key store cannot be written
+     */
+    public static synchronized File keyStore() throws IOException {
+        File file = new File(fixtureDir(), "keystore.p12");
+        if (!file.exists()) {
+            try {
+                writeKeyStore(file);
+            } catch (GeneralSecurityException | OperatorCreationException e) {
+                throw new IOException("Could not generate the key store fixture", e);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Returns a PDF document fixture with the given number of pages, generating it on first use.
+     *
+     * @param pages the number of pages
+     * @return the PDF file
+     * @throws IOException if the document cannot be written
+     */
+    public static synchronized File document(int pages) throws IOException {
+        File file = new File(fixtureDir(), "document-" + pages + ".pdf");
+        if (!file.exists()) {
+            try {
+                writeDocument(file, pages);
+            } catch (DocumentException e) {
+                throw new IOException("Could not generate the document fixture", e);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Loads the signing credential of the key store fixture.
+     *
+     * @return the signing credential
+     * @throws IOException if the key store cannot be read
+     */
+    public static SigningCredential credential() throws IOException {
+        return KeyStoreLoader.loadCredential(new FileInputStream(keyStore()), PASSWORD, PASSWORD);
+    }
+
+    /**
+     * Reads the key store fixture into memory.
+     *
+     * @return the key store bytes
+     * @throws IOException if the key store cannot be read
+     */
+    public static byte[] keyStoreBytes() throws IOException {
+        try (InputStream in = new FileInputStream(keyStore())) {
+            return readFully(in);
+        }
+    }
+
+    /**
+     * Returns a new content reader over the given file, as the repository hands it to the
+     * service. Content readers can only be read once, so callers need a new one every time.
+     *
+     * @param file the content file
+     * @return the ContentReader
+     */
+    public static ContentReader reader(File file) {
+        FileContentReader reader = new FileContentReader(file);
+        reader.setMimetype(PDFSignConstants.FILE_MIMETYPE);
+        return reader;
+    }
+
+    private static File fixtureDir() {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "pdf-sign-benchmarks");
+        dir.mkdirs();
+        return dir;
+    }
+
+    private static void writeKeyStore(File file) throws IOException, GeneralSecurityException, OperatorCreationException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        long now = System.currentTimeMillis();
+        X500Name subject = new X500Name(SUBJECT);
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(subject, BigInteger.valueOf(now),
+                new Date(now - 24L * 3600 * 1000), new Date(now + 3650L * 24 * 3600 * 1000), subject, keyPair.getPublic());
+        X509Certificate certificate = new JcaX509CertificateConverter()
+                .getCertificate(builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate())));
+
+        KeyStore ks = KeyStore.getInstance("pkcs12");
+        ks.load(null, null);
+        ks.setKeyEntry(ALIAS, keyPair.getPrivate(), PASSWORD.toCharArray(), new Certificate[] { certificate });
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tempFile)) {
+            ks.store(out, PASSWORD.toCharArray());
+        }
+        tempFile.renameTo(file);
+    }
+
+    private static void writeDocument(File file, int pages) throws IOException, DocumentException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tempFile)) {
+            Document document = new Document(PageSize.A4);
+            PdfWriter.getInstance(document, out);
+            document.open();
+            for (int page = 1; page <= pages; page++) {
+                if (page > 1) {
+                    document.newPage();
+                }
+                document.add(new Paragraph("Page " + page + " of " + pages));
+                for (int i = 0; i < 10; i++) {
+                    document.add(new Paragraph(TEXT));
+                }
+            }
+            document.close();
+        }
+        tempFile.renameTo(file);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * *****************************************************************************
+ *
+ * @file KeyStoreBenchmark.java
+ * @description Measures loading signing credentials from a PKCS#12 key store.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.extension.pdfsign.service.KeyStoreLoader;
+import org.alfresco.extension.pdfsign.service.SigningCredential;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost the credential cache saves: parsing the key store and decrypting the
+ * private key, separately and as the full credential load done on a cache miss.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyStoreBenchmark {
+
+    private byte[] keyStore;
+    private KeyStore loadedKeyStore;
+    private String alias;
+
+    @Setup
+    public void setUp() throws Exception {
+        keyStore = BenchmarkFixtures.keyStoreBytes();
+        loadedKeyStore = KeyStoreLoader.loadKeyStore(new ByteArrayInputStream(keyStore), BenchmarkFixtures.PASSWORD);
+        alias = KeyStoreLoader.getAlias(loadedKeyStore);
+    }
+
+    @Benchmark
+    public KeyStore loadKeyStore() {
+        return KeyStoreLoader.loadKeyStore(new ByteArrayInputStream(keyStore), BenchmarkFixtures.PASSWORD);
+    }
+
+    @Benchmark
+    public PrivateKey getPrivateKey() {
+        return KeyStoreLoader.getPrivateKey(loadedKeyStore, alias, BenchmarkFixtures.PASSWORD);
+    }
+
+    @Benchmark
+    public SigningCredential loadCredential() {
+        return KeyStoreLoader.loadCredential(new ByteArrayInputStream(keyStore), BenchmarkFixtures.PASSWORD, BenchmarkFixtures.PASSWORD);
+    }
+}
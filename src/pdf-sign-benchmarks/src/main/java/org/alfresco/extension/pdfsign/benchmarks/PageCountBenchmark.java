@@ -0,0 +1,82 @@
+/**
+ * *****************************************************************************
+ *
+ * @file PageCountBenchmark.java
+ * @description Measures reading the page count of PDF documents, from the document
+ *              and from the page count cache.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.extension.pdfsign.service.PDFPageCounter;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the page count path of the page count web script: a cold read of the page tree
+ * in partial mode and a lookup answered by the content URL cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PageCountBenchmark {
+
+    @Param({ "1", "100", "1000" })
+    public int pages;
+
+    private File document;
+    private PDFPageCounter pageCounter;
+
+    @Setup
+    public void setUp() throws Exception {
+        document = BenchmarkFixtures.document(pages);
+
+        pageCounter = new PDFPageCounter();
+        pageCounter.setPageCountCache(new DefaultSimpleCache<String, Integer>(100, "pdfSignBenchmarkPageCountCache"));
+        pageCounter.getPageCount(null, BenchmarkFixtures.reader(document));
+    }
+
+    @Benchmark
+    public int readPageCount() throws Exception {
+        return pageCounter.readPageCount(BenchmarkFixtures.reader(document));
+    }
+
+    @Benchmark
+    public int cachedPageCount() throws Exception {
+        return pageCounter.getPageCount(null, BenchmarkFixtures.reader(document));
+    }
+}
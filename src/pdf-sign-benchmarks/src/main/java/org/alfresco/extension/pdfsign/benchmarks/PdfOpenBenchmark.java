@@ -0,0 +1,90 @@
+/**
+ * *****************************************************************************
+ *
+ * @file PdfOpenBenchmark.java
+ * @description Measures opening PDF documents with iText, fully parsed in memory and
+ *              in partial mode.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.extension.pdfsign.service.PDFDocumentHandle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.itextpdf.text.pdf.PdfReader;
+
+/**
+ * Measures opening a document with {@link PdfReader}: read from a stream into memory, as
+ * documents below the partial read threshold are, and in partial mode through
+ * {@link PDFDocumentHandle}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PdfOpenBenchmark {
+
+    @Param({ "1", "10", "100", "1000" })
+    public int pages;
+
+    private File document;
+
+    @Setup
+    public void setUp() throws Exception {
+        document = BenchmarkFixtures.document(pages);
+    }
+
+    @Benchmark
+    public int openInMemory() throws Exception {
+        try (InputStream in = new FileInputStream(document)) {
+            PdfReader reader = new PdfReader(in);
+            try {
+                return reader.getNumberOfPages();
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    @Benchmark
+    public int openPartial() throws Exception {
+        try (PDFDocumentHandle handle = PDFDocumentHandle.open(BenchmarkFixtures.reader(document))) {
+            return handle.getReader().getNumberOfPages();
+        }
+    }
+}
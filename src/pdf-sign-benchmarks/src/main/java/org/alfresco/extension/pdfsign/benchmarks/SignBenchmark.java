@@ -0,0 +1,131 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SignBenchmark.java
+ * @description Measures signing PDF documents end to end with every signature
+ *              engine.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.benchmarks;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.extension.pdfsign.constants.PDFSignConstants;
+import org.alfresco.extension.pdfsign.service.ITextSignatureEngine;
+import org.alfresco.extension.pdfsign.service.PDFBoxSignatureEngine;
+import org.alfresco.extension.pdfsign.service.SignableDocument;
+import org.alfresco.extension.pdfsign.service.SignatureEngine;
+import org.alfresco.extension.pdfsign.service.SignatureRequest;
+import org.alfresco.extension.pdfsign.service.SigningCredential;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures opening and signing a document with a {@link SignatureEngine}, the work
+ * {@code signPDF} does once the credential is loaded. For the iText engine this is
+ * {@code PdfStamper.createSignature} followed by {@code MakeSignature.signDetached}.
+ * <p>
+ * The signed document is discarded, so the content store write is not measured. The
+ * {@code appearance} parameter places no visible signature, one on the first page, or one
+ * on every page.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignBenchmark {
+
+    @Param({ "1", "10", "100", "1000" })
+    public int pages;
+
+    @Param({ ITextSignatureEngine.NAME, PDFBoxSignatureEngine.NAME })
+    public String engine;
+
+    @Param({ "none", "first", "all" })
+    public String appearance;
+
+    private File document;
+    private SigningCredential credential;
+    private SignatureEngine signatureEngine;
+
+    @Setup
+    public void setUp() throws Exception {
+        document = BenchmarkFixtures.document(pages);
+        credential = BenchmarkFixtures.credential();
+        signatureEngine = ITextSignatureEngine.NAME.equals(engine) ? new ITextSignatureEngine() : new PDFBoxSignatureEngine();
+    }
+
+    @Benchmark
+    public long sign() throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        try (SignableDocument signable = signatureEngine.open(BenchmarkFixtures.reader(document))) {
+            signable.sign(request(signable.getNumberOfPages()), out);
+        }
+        return out.count;
+    }
+
+    private SignatureRequest request(int numPages) {
+        SignatureRequest request = new SignatureRequest();
+        request.setCredential(credential);
+        request.setVisible(!"none".equals(appearance));
+        request.setPosition(PDFSignConstants.POSITION_BOTTOMRIGHT);
+        request.setWidth(200);
+        request.setHeight(100);
+
+        int[] selected = new int["all".equals(appearance) ? numPages : 1];
+        for (int i = 0; i < selected.length; i++) {
+            selected[i] = i + 1;
+        }
+        request.setPages(selected);
+        return request;
+    }
+
+    /**
+     * Discards the signed document, counting its size so the write cannot be optimized away.
+     */
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SignatureGeometryBenchmark.java
+ * @description Measures the calculation of the visible signature box.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.extension.pdfsign.constants.PDFSignConstants;
+import org.alfresco.extension.pdfsign.service.SignatureGeometry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link SignatureGeometry#signatureBox}, computed once per signed page when the
+ * signature appearance is placed on every page.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignatureGeometryBenchmark {
+
+    @Param({ PDFSignConstants.POSITION_BOTTOMLEFT, PDFSignConstants.POSITION_TOPRIGHT, PDFSignConstants.POSITION_CENTER,
+            PDFSignConstants.POSITION_MANUAL })
+    public String position;
+
+    // fields rather than constants, so the calculation is not folded away
+    private float pageWidth = 595f;
+    private float pageHeight = 842f;
+
+    @Benchmark
+    public float[] positionSignature() {
+        return SignatureGeometry.signatureBox(position, pageWidth, pageHeight, 50, 700, 200, 100);
+    }
+}
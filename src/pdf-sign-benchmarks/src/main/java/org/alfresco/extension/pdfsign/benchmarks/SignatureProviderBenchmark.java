@@ -0,0 +1,131 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SignatureProviderBenchmark.java
+ * @description Compares the signing throughput of the JCA providers for RSA and
+ *              ECDSA keys, with fresh and pooled Signature objects.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.benchmarks;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.extension.pdfsign.service.CryptoProviders;
+import org.alfresco.extension.pdfsign.service.SigningCredential;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the signing throughput of RSA 2048, RSA 4096 and ECDSA P-256 keys across JCA
+ * providers: the preferred provider chosen by the JCA, the JDK provider for the key type and
+ * BouncyCastle.
+ * <p>
+ * {@code fresh} creates and initializes a Signature for every signature, as iText's
+ * {@code PrivateKeySignature} does. {@code pooled} reuses the Signature objects pooled by the
+ * {@link SigningCredential}, as the signature engines do.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignatureProviderBenchmark {
+
+    @Param({ "RSA-2048", "RSA-4096", "EC-P256" })
+    public String keyType;
+
+    @Param({ "default", "jdk", "BC" })
+    public String provider;
+
+    private String providerName;
+    private String algorithm;
+    private PrivateKey key;
+    private SigningCredential credential;
+    private byte[] message;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkFixtures.installBouncyCastle();
+
+        KeyPair keyPair = generateKeyPair();
+        key = keyPair.getPrivate();
+        credential = new SigningCredential("benchmark", "PDF Sign Benchmark", key, new Certificate[0]);
+        algorithm = CryptoProviders.signatureAlgorithm(CryptoProviders.DEFAULT_DIGEST_ALGORITHM, key, false);
+
+        if ("default".equals(provider)) {
+            providerName = null;
+        } else if ("jdk".equals(provider)) {
+            providerName = keyType.startsWith("EC") ? "SunEC" : "SunRsaSign";
+        } else {
+            providerName = provider;
+        }
+
+        // about the size of the signed attributes of a CMS signature
+        message = new byte[128];
+        new Random(42).nextBytes(message);
+    }
+
+    @Benchmark
+    public byte[] fresh() throws GeneralSecurityException {
+        Signature signature = providerName == null ? Signature.getInstance(algorithm) : Signature.getInstance(algorithm, providerName);
+        signature.initSign(key);
+        signature.update(message);
+        return signature.sign();
+    }
+
+    @Benchmark
+    public byte[] pooled() throws GeneralSecurityException {
+        Signature signature = credential.borrowSignature(algorithm, providerName);
+        signature.update(message);
+        byte[] signed = signature.sign();
+        credential.returnSignature(algorithm, providerName, signature);
+        return signed;
+    }
+
+    private KeyPair generateKeyPair() throws GeneralSecurityException {
+        if ("EC-P256".equals(keyType)) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            return generator.generateKeyPair();
+        }
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(Integer.parseInt(keyType.substring("RSA-".length())));
+        return generator.generateKeyPair();
+    }
+}
@@ -52,7 +52,7 @@ public abstract class PDFSignConstants
     /** Specifies the Y-coordinate for the signature position. */
     public static final String PARAM_LOCATION_Y     				= "location-y";
 
-    /** Specifies the page number where the signature should be placed. */
+    /** Specifies the pages where the signature should be placed: all, first, last, odd, even or ranges such as 1-5,9,12-. */
     public static final String PARAM_PAGE			 				= "page";
 
     /** Specifies the private key used for signing. */
@@ -76,6 +76,54 @@ public abstract class PDFSignConstants
     /** Specifies if a new revision should be created. */
     public static final String PARAM_NEW_REVISION    				= "new-revision";
 
+    /** Specifies the signature engine used to sign the document. */
+    public static final String PARAM_ENGINE             			= "engine";
+
+    /** Specifies the digest algorithm of the signature. */
+    public static final String PARAM_DIGEST_ALGORITHM   			= "digest-algorithm";
+
+    /** Specifies the signature scheme used with RSA keys. */
+    public static final String PARAM_SIGNATURE_SCHEME   			= "signature-scheme";
+
+    /** Specifies the signer name shown on signatures prepared for external signing. */
+    public static final String PARAM_SIGNER_NAME        			= "signer-name";
+
+    /** Specifies the appearance template of visible signatures. */
+    public static final String PARAM_APPEARANCE         			= "appearance";
+
+    /** Specifies whether a document already signed with the same credential and parameters is signed again. */
+    public static final String PARAM_IDEMPOTENCY        			= "idempotency";
+
+    /** Specifies the PAdES baseline level of the signature. */
+    public static final String PARAM_SIGNATURE_LEVEL    			= "signature-level";
+
+    /** Constant for the PKCS#1 v1.5 signature scheme. */
+    public static final String SIGNATURE_SCHEME_PKCS1   			= "pkcs1";
+
+    /** Constant for the RSASSA-PSS signature scheme. */
+    public static final String SIGNATURE_SCHEME_PSS     			= "pss";
+
+    /** Idempotency mode signing every request. */
+    public static final String IDEMPOTENCY_NONE         			= "none";
+
+    /** Idempotency mode returning the document an identical earlier signature produced. */
+    public static final String IDEMPOTENCY_SKIP_SIGNED  			= "skip-signed";
+
+    /** Idempotency mode that also shares the signed content of an identical signature of another copy. */
+    public static final String IDEMPOTENCY_SHARE_CONTENT			= "share-content";
+
+    /** PAdES B-B level, a signature without timestamp. */
+    public static final String SIGNATURE_LEVEL_B_B      			= "b-b";
+
+    /** PAdES B-T level, a signature timestamped by the time-stamping authority. */
+    public static final String SIGNATURE_LEVEL_B_T      			= "b-t";
+
+    /** PAdES B-LT level, a timestamped signature with the validation material of its chains. */
+    public static final String SIGNATURE_LEVEL_B_LT     			= "b-lt";
+
+    /** PAdES B-LTA level, a B-LT signature covered by a document timestamp. */
+    public static final String SIGNATURE_LEVEL_B_LTA    			= "b-lta";
+
     /** Constant for visible signature visibility. */
     public static final String VISIBILITY_VISIBLE       			= "visible";
 
@@ -0,0 +1,295 @@
+/**
+ * *****************************************************************************
+ *
+ * @file PDFSignMetrics.java
+ * @description Collects latency, outcome, document size and page count metrics of
+ *              the PDF signing operations.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.alfresco.extension.pdfsign.metrics.SigningTimer.Phase;
+
+/**
+ * Collects the metrics of the PDF signing operations: the time of every operation and of each
+ * of its {@link Phase phases}, tagged by engine, page mode and outcome, and the size and page
+ * count of the signed documents, tagged by engine.
+ * <p>
+ * Values are kept in adders, so recording is lock free. They are exposed through JMX and in
+ * the Prometheus text format by the metrics web script.
+ */
+public class PDFSignMetrics implements PDFSignMetricsMBean {
+
+    /** Outcome of a successful operation. */
+    public static final String OUTCOME_SUCCESS = "success";
+    /** Outcome of a failed operation. */
+    public static final String OUTCOME_FAILURE = "failure";
+    /** Outcome of an operation that found the document already signed. */
+    public static final String OUTCOME_SKIPPED = "skipped";
+
+    private static final String PREFIX = "pdfsign_";
+
+    private static final double[] SECONDS_BUCKETS = { 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120 };
+    private static final double[] SIZE_BUCKETS = { 64 * 1024, 256 * 1024, 1024 * 1024, 4 * 1024 * 1024, 16 * 1024 * 1024,
+            64 * 1024 * 1024, 256 * 1024 * 1024, 1024 * 1024 * 1024 };
+    private static final double[] PAGE_BUCKETS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 5000, 10000 };
+
+    private boolean enabled = true;
+
+    private final ConcurrentMap<String, Histogram> operationTimes = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Histogram> phaseTimes = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Histogram> documentSizes = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Histogram> documentPages = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Histogram> timestampTimes = new ConcurrentHashMap<String, Histogram>();
+
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder timestampNanos = new LongAdder();
+    private final LongAdder timestampCount = new LongAdder();
+    private final LongAdder[] phaseNanos = adders(Phase.values().length);
+    private final LongAdder[] phaseCounts = adders(Phase.values().length);
+
+    /**
+     * Records a finished signing operation.
+     *
+     * @param timer the timer of the operation, which is stopped
+     * @param engine the name of the signature engine
+     * @param pageMode the page selection mode (all, last or single)
+     * @param outcome the outcome of the operation
+     * @param documentSize the size in bytes of the document, or a negative value if unknown
+     * @param pages the number of pages of the document, or a negative value if unknown
+     */
+    public void record(SigningTimer timer, String engine, String pageMode, String outcome, long documentSize, int pages) {
+        if (!enabled) {
+            return;
+        }
+        timer.stop();
+
+        String labels = labels("engine", engine, "page_mode", pageMode, "outcome", outcome);
+        histogram(operationTimes, labels, SECONDS_BUCKETS).observe(seconds(timer.getTotalNanos()));
+        totalNanos.add(timer.getTotalNanos());
+        (OUTCOME_SUCCESS.equals(outcome) ? succeeded : OUTCOME_SKIPPED.equals(outcome) ? skipped : failed).increment();
+
+        for (Phase phase : Phase.values()) {
+            if (timer.isEntered(phase)) {
+                long nanos = timer.getNanos(phase);
+                histogram(phaseTimes, labels("phase", phase.getLabel()) + "," + labels, SECONDS_BUCKETS).observe(seconds(nanos));
+                phaseNanos[phase.ordinal()].add(nanos);
+                phaseCounts[phase.ordinal()].increment();
+            }
+        }
+
+        String engineLabels = labels("engine", engine);
+        if (documentSize >= 0) {
+            histogram(documentSizes, engineLabels, SIZE_BUCKETS).observe(documentSize);
+        }
+        if (pages >= 0) {
+            histogram(documentPages, engineLabels, PAGE_BUCKETS).observe(pages);
+        }
+    }
+
+    /**
+     * Records a request to the time-stamping authority. Requests are recorded on their own, so
+     * the latency of the authority is not mixed up with the cost of signing.
+     *
+     * @param nanos the time of the request, from sending it to validating the response
+     * @param outcome the outcome of the request
+     */
+    public void recordTimestamp(long nanos, String outcome) {
+        if (!enabled) {
+            return;
+        }
+        histogram(timestampTimes, labels("outcome", outcome), SECONDS_BUCKETS).observe(seconds(nanos));
+        timestampNanos.add(nanos);
+        timestampCount.increment();
+    }
+
+    @Override
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        write(out, "signing_seconds", "histogram", "Time of the PDF signing operations", operationTimes);
+        write(out, "signing_phase_seconds", "histogram", "Time of each phase of the PDF signing operations", phaseTimes);
+        write(out, "document_size_bytes", "histogram", "Size of the documents signed", documentSizes);
+        write(out, "document_pages", "histogram", "Page count of the documents signed", documentPages);
+        write(out, "tsa_request_seconds", "histogram", "Time of the requests to the time-stamping authority", timestampTimes);
+        return out.toString();
+    }
+
+    @Override
+    public void reset() {
+        operationTimes.clear();
+        phaseTimes.clear();
+        documentSizes.clear();
+        documentPages.clear();
+        timestampTimes.clear();
+        succeeded.reset();
+        failed.reset();
+        skipped.reset();
+        totalNanos.reset();
+        timestampNanos.reset();
+        timestampCount.reset();
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i].reset();
+            phaseCounts[i].reset();
+        }
+    }
+
+    private void write(StringBuilder out, String name, String type, String help, Map<String, Histogram> series) {
+        String metric = PREFIX + name;
+        out.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+        // sorted, so consecutive scrapes list the series in the same order
+        for (Map.Entry<String, Histogram> entry : new TreeMap<String, Histogram>(series).entrySet()) {
+            entry.getValue().write(out, metric, entry.getKey());
+        }
+    }
+
+    private static Histogram histogram(ConcurrentMap<String, Histogram> series, String labels, double[] bounds) {
+        Histogram histogram = series.get(labels);
+        if (histogram == null) {
+            Histogram created = new Histogram(bounds);
+            histogram = series.putIfAbsent(labels, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Renders label pairs, escaping the values as required by the Prometheus text format.
+     */
+    private static String labels(String... pairs) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            String value = pairs[i + 1] == null ? "" : pairs[i + 1];
+            sb.append(pairs[i]).append("=\"")
+                    .append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return sb.toString();
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static LongAdder[] adders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private double averagePhaseMillis(Phase phase) {
+        long count = phaseCounts[phase.ordinal()].sum();
+        return count == 0 ? 0 : phaseNanos[phase.ordinal()].sum() / 1e6 / count;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getSignedDocuments() {
+        return succeeded.sum();
+    }
+
+    @Override
+    public long getFailedDocuments() {
+        return failed.sum();
+    }
+
+    @Override
+    public long getSkippedDocuments() {
+        return skipped.sum();
+    }
+
+    @Override
+    public double getAverageSigningTimeMillis() {
+        long count = succeeded.sum() + failed.sum() + skipped.sum();
+        return count == 0 ? 0 : totalNanos.sum() / 1e6 / count;
+    }
+
+    @Override
+    public double getAverageKeyStoreLoadTimeMillis() {
+        return averagePhaseMillis(Phase.KEYSTORE_LOAD);
+    }
+
+    @Override
+    public double getAverageRevocationTimeMillis() {
+        return averagePhaseMillis(Phase.REVOCATION);
+    }
+
+    @Override
+    public double getAveragePdfOpenTimeMillis() {
+        return averagePhaseMillis(Phase.PDF_OPEN);
+    }
+
+    @Override
+    public double getAverageAppearanceTimeMillis() {
+        return averagePhaseMillis(Phase.APPEARANCE);
+    }
+
+    @Override
+    public double getAverageSignTimeMillis() {
+        return averagePhaseMillis(Phase.SIGN);
+    }
+
+    @Override
+    public double getAverageTimestampTimeMillis() {
+        long count = timestampCount.sum();
+        return count == 0 ? 0 : timestampNanos.sum() / 1e6 / count;
+    }
+
+    @Override
+    public double getAverageWriteTimeMillis() {
+        return averagePhaseMillis(Phase.WRITE);
+    }
+
+    @Override
+    public double getAveragePutContentTimeMillis() {
+        return averagePhaseMillis(Phase.PUT_CONTENT);
+    }
+
+    @Override
+    public double getAverageNodeUpdateTimeMillis() {
+        return averagePhaseMillis(Phase.NODE_UPDATE);
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * *****************************************************************************
+ *
+ * @file PDFSignMetricsMBean.java
+ * @description JMX management interface of the PDF signing metrics.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.metrics;
+
+/**
+ * JMX view of the PDF signing metrics. Averages are computed over every operation since the
+ * repository started or the metrics were last reset.
+ */
+public interface PDFSignMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getSignedDocuments();
+
+    long getFailedDocuments();
+
+    long getSkippedDocuments();
+
+    double getAverageSigningTimeMillis();
+
+    double getAverageKeyStoreLoadTimeMillis();
+
+    double getAverageRevocationTimeMillis();
+
+    double getAveragePdfOpenTimeMillis();
+
+    double getAverageAppearanceTimeMillis();
+
+    double getAverageSignTimeMillis();
+
+    double getAverageTimestampTimeMillis();
+
+    double getAverageWriteTimeMillis();
+
+    double getAveragePutContentTimeMillis();
+
+    double getAverageNodeUpdateTimeMillis();
+
+    /**
+     * Returns every metric in the Prometheus text exposition format.
+     *
+     * @return the metrics
+     */
+    String scrape();
+
+    /**
+     * Discards every recorded value.
+     */
+    void reset();
+}
@@ -0,0 +1,150 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SigningTimer.java
+ * @description Measures the time spent in each phase of a single signing
+ *              operation.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.metrics;
+
+/**
+ * Measures the time a single signing operation spends in each {@link Phase}. Phases nest:
+ * the time spent in a phase entered while another one is open is charged only to the inner
+ * phase, so the phase times add up to the time of the whole operation.
+ * <p>
+ * A timer belongs to the thread signing the document and is not safe for concurrent use.
+ */
+public class SigningTimer {
+
+    /** Phases of a signing operation. */
+    public enum Phase {
+        /** Acquiring the signing credential, loading the key store on a cache miss. */
+        KEYSTORE_LOAD("keystore_load"),
+        /** Collecting the OCSP responses and CRLs of the signing chain for long-term validation. */
+        REVOCATION("revocation"),
+        /** Opening the document and reading its page tree. */
+        PDF_OPEN("pdf_open"),
+        /** Building and placing the visible signature appearance. */
+        APPEARANCE("appearance"),
+        /** Computing the signature with the private key. */
+        SIGN("sign"),
+        /** Waiting for the time-stamping authority to timestamp the signature. */
+        TIMESTAMP("timestamp"),
+        /** Writing the signed document, including the document digest and the temporary spill file. */
+        WRITE("write"),
+        /** Opening the content writer and committing the signed content to the content store. */
+        PUT_CONTENT("put_content"),
+        /** Creating the destination node and updating its aspects and properties. */
+        NODE_UPDATE("node_update");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final long startedAt = System.nanoTime();
+    private final long[] nanos = new long[PHASES.length];
+    private final boolean[] entered = new boolean[PHASES.length];
+
+    private final Phase[] stack = new Phase[PHASES.length * 2];
+    private int depth = 0;
+    private long mark;
+    private long stoppedAt = 0;
+
+    /**
+     * Enters a phase, pausing the phase currently open.
+     *
+     * @param phase the phase entered
+     */
+    public void enter(Phase phase) {
+        long now = System.nanoTime();
+        if (depth > 0) {
+            nanos[stack[depth - 1].ordinal()] += now - mark;
+        }
+        if (depth < stack.length) {
+            stack[depth++] = phase;
+            entered[phase.ordinal()] = true;
+        }
+        mark = now;
+    }
+
+    /**
+     * Leaves the phase currently open, resuming the enclosing one.
+     */
+    public void exit() {
+        if (depth == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        nanos[stack[--depth].ordinal()] += now - mark;
+        mark = now;
+    }
+
+    /**
+     * Stops the timer, closing every phase left open by a failure.
+     */
+    public void stop() {
+        while (depth > 0) {
+            exit();
+        }
+        if (stoppedAt == 0) {
+            stoppedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Returns whether the given phase was entered.
+     *
+     * @param phase the phase
+     * @return true if the operation went through the phase
+     */
+    public boolean isEntered(Phase phase) {
+        return entered[phase.ordinal()];
+    }
+
+    /**
+     * Returns the time spent in the given phase.
+     *
+     * @param phase the phase
+     * @return the time in nanoseconds
+     */
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    /**
+     * Returns the time of the whole operation, up to now if the timer was not stopped.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getTotalNanos() {
+        return (stoppedAt == 0 ? System.nanoTime() : stoppedAt) - startedAt;
+    }
+}
@@ -42,4 +42,73 @@ public interface PDFSignModel {
 
     /** QName for the signed by property. */
     static final QName PROP_SIGNEDBY = QName.createQName(PDFSIGN_MODEL_1_0_URI, "signedby");
+
+    /** QName for the hash of the content the signature was computed over. */
+    static final QName PROP_SOURCEHASH = QName.createQName(PDFSIGN_MODEL_1_0_URI, "sourcehash");
+
+    /** QName for the hash of the signed content. */
+    static final QName PROP_CONTENTHASH = QName.createQName(PDFSIGN_MODEL_1_0_URI, "contenthash");
+
+    /** QName for the fingerprint of the signing certificate. */
+    static final QName PROP_CERTFINGERPRINT = QName.createQName(PDFSIGN_MODEL_1_0_URI, "certfingerprint");
+
+    /** QName for the hash of the parameters of the signature. */
+    static final QName PROP_PARAMETERSHASH = QName.createQName(PDFSIGN_MODEL_1_0_URI, "parametershash");
+
+    /** QName for the page info aspect. */
+    static final QName ASPECT_PAGEINFO = QName.createQName(PDFSIGN_MODEL_1_0_URI, "pageinfo");
+
+    /** QName for the page count property. */
+    static final QName PROP_PAGECOUNT = QName.createQName(PDFSIGN_MODEL_1_0_URI, "pagecount");
+
+    /** QName for the content URL the page count was read from. */
+    static final QName PROP_PAGECOUNT_CONTENTURL = QName.createQName(PDFSIGN_MODEL_1_0_URI, "pagecounturl");
+
+    /** QName for the aspect of documents prepared for a signature computed outside the repository. */
+    static final QName ASPECT_PENDINGSIGNATURE = QName.createQName(PDFSIGN_MODEL_1_0_URI, "pendingsignature");
+
+    /** QName for the Base64 digest of the byte range the pending signature has to cover. */
+    static final QName PROP_PENDING_DIGEST = QName.createQName(PDFSIGN_MODEL_1_0_URI, "pendingdigest");
+
+    /** QName for the algorithm of the pending digest. */
+    static final QName PROP_PENDING_DIGESTALGORITHM = QName.createQName(PDFSIGN_MODEL_1_0_URI, "pendingdigestalgorithm");
+
+    /** QName for the aspect recording how far a folder signing job got through a folder. */
+    static final QName ASPECT_SIGNINGCHECKPOINT = QName.createQName(PDFSIGN_MODEL_1_0_URI, "signingcheckpoint");
+
+    /** QName for the last document signed by the folder signing job. */
+    static final QName PROP_CHECKPOINT_NODE = QName.createQName(PDFSIGN_MODEL_1_0_URI, "checkpointnode");
+
+    /** QName for the aspect of key store nodes signing credentials have been read from. */
+    static final QName ASPECT_KEYSTORE = QName.createQName(PDFSIGN_MODEL_1_0_URI, "keystore");
+
+    /** QName for the aspect recording the signature status of a PDF document. */
+    static final QName ASPECT_SIGNATUREINFO = QName.createQName(PDFSIGN_MODEL_1_0_URI, "signatureinfo");
+
+    /** QName for the subject of the signing certificate of the latest signature. */
+    static final QName PROP_SIGNER_SUBJECT = QName.createQName(PDFSIGN_MODEL_1_0_URI, "signersubject");
+
+    /** QName for the issuer of the signing certificate of the latest signature. */
+    static final QName PROP_SIGNER_ISSUER = QName.createQName(PDFSIGN_MODEL_1_0_URI, "signerissuer");
+
+    /** QName for the serial number of the signing certificate of the latest signature. */
+    static final QName PROP_CERT_SERIAL = QName.createQName(PDFSIGN_MODEL_1_0_URI, "certserial");
+
+    /** QName for the earliest expiry of the signing certificates of the document. */
+    static final QName PROP_CERT_EXPIRY = QName.createQName(PDFSIGN_MODEL_1_0_URI, "certexpiry");
+
+    /** QName for the algorithm of the latest signature. */
+    static final QName PROP_SIGNATURE_ALGORITHM = QName.createQName(PDFSIGN_MODEL_1_0_URI, "signaturealgorithm");
+
+    /** QName for the number of signatures of the document. */
+    static final QName PROP_SIGNATURE_COUNT = QName.createQName(PDFSIGN_MODEL_1_0_URI, "signaturecount");
+
+    /** QName for the validity status of the signatures: valid, invalid, unsigned or error. */
+    static final QName PROP_VALIDITY_STATUS = QName.createQName(PDFSIGN_MODEL_1_0_URI, "validitystatus");
+
+    /** QName for when the signatures were validated. */
+    static final QName PROP_VALIDATED_AT = QName.createQName(PDFSIGN_MODEL_1_0_URI, "validatedat");
+
+    /** QName for the content URL the signatures were validated from. */
+    static final QName PROP_VALIDATED_CONTENTURL = QName.createQName(PDFSIGN_MODEL_1_0_URI, "validatedurl");
 }
@@ -0,0 +1,62 @@
+/**
+ * *****************************************************************************
+ *
+ * @file PDFFolderSignatureActionExecuter.java
+ * @description Action signing the PDF documents of a folder tree in the
+ *              background.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.repo.action.executer;
+
+import org.alfresco.extension.pdfsign.service.FolderSignJob;
+import org.alfresco.service.cmr.action.Action;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Executes the PDF signature action on every unsigned PDF document of a folder tree.
+ * The action takes the parameters of the {@code pdf-signature} action and submits a
+ * folder signing job; its result is the identifier of the job.
+ */
+public class PDFFolderSignatureActionExecuter extends PDFSignatureActionExecuter {
+
+    /** The logger */
+    private static Log logger = LogFactory.getLog(PDFFolderSignatureActionExecuter.class);
+
+    /** Action constants */
+    public static final String NAME = "pdf-folder-signature";
+
+    /**
+     * Submits the folder signing job.
+     *
+     * @param action the action containing parameters for signing
+     * @param actionedUponNodeRef the node reference to the folder holding the PDF documents
+     */
+    @Override
+    protected void executeImpl(Action action, NodeRef actionedUponNodeRef) {
+        FolderSignJob job = pdfSignService.signFolder(actionedUponNodeRef, action.getParameterValues());
+        if (logger.isDebugEnabled()) {
+            logger.debug("Folder signing job " + job.getId() + " submitted for " + actionedUponNodeRef);
+        }
+        action.setParameterValue(PARAM_RESULT, job.getId());
+    }
+}
@@ -79,6 +79,12 @@ public class PDFSignatureActionExecuter extends BasePDFStampActionExecuter {
         paramList.add(new ParameterDefinitionImpl(PDFSignConstants.PARAM_STORE_PASSWORD, DataTypeDefinition.TEXT, true, getParamDisplayLabel(PDFSignConstants.PARAM_STORE_PASSWORD)));
         paramList.add(new ParameterDefinitionImpl(PDFSignConstants.PARAM_DESTINATION_NAME, DataTypeDefinition.TEXT, false, getParamDisplayLabel(PDFSignConstants.PARAM_DESTINATION_NAME)));
         paramList.add(new ParameterDefinitionImpl(PDFSignConstants.PARAM_NEW_REVISION, DataTypeDefinition.BOOLEAN, false, getParamDisplayLabel(PDFSignConstants.PARAM_NEW_REVISION), false));
+        paramList.add(new ParameterDefinitionImpl(PDFSignConstants.PARAM_ENGINE, DataTypeDefinition.TEXT, false, getParamDisplayLabel(PDFSignConstants.PARAM_ENGINE)));
+        paramList.add(new ParameterDefinitionImpl(PDFSignConstants.PARAM_APPEARANCE, DataTypeDefinition.TEXT, false, getParamDisplayLabel(PDFSignConstants.PARAM_APPEARANCE)));
+        paramList.add(new ParameterDefinitionImpl(PDFSignConstants.PARAM_DIGEST_ALGORITHM, DataTypeDefinition.TEXT, false, getParamDisplayLabel(PDFSignConstants.PARAM_DIGEST_ALGORITHM), false, "pdfc-digest-algorithm"));
+        paramList.add(new ParameterDefinitionImpl(PDFSignConstants.PARAM_SIGNATURE_SCHEME, DataTypeDefinition.TEXT, false, getParamDisplayLabel(PDFSignConstants.PARAM_SIGNATURE_SCHEME), false, "pdfc-signature-scheme"));
+        paramList.add(new ParameterDefinitionImpl(PDFSignConstants.PARAM_IDEMPOTENCY, DataTypeDefinition.TEXT, false, getParamDisplayLabel(PDFSignConstants.PARAM_IDEMPOTENCY), false, "pdfc-idempotency"));
+        paramList.add(new ParameterDefinitionImpl(PDFSignConstants.PARAM_SIGNATURE_LEVEL, DataTypeDefinition.TEXT, false, getParamDisplayLabel(PDFSignConstants.PARAM_SIGNATURE_LEVEL), false, "pdfc-signature-level"));
 
         super.addParameterDefinitions(paramList);
     }
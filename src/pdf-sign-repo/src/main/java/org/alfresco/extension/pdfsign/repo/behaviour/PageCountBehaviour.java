@@ -0,0 +1,121 @@
+/**
+ * *****************************************************************************
+ *
+ * @file PageCountBehaviour.java
+ * @description Records the page count of PDF documents as a node property when
+ *              their content is written.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.repo.behaviour;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.alfresco.extension.pdfsign.constants.PDFSignConstants;
+import org.alfresco.extension.pdfsign.model.PDFSignModel;
+import org.alfresco.extension.pdfsign.service.PDFPageCounter;
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.ContentServicePolicies;
+import org.alfresco.repo.policy.Behaviour.NotificationFrequency;
+import org.alfresco.repo.policy.JavaBehaviour;
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.namespace.QName;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Records the page count of a PDF document in the {@code pdft:pageinfo} aspect whenever its
+ * content is written, so the page count web script does not have to open the document.
+ */
+public class PageCountBehaviour implements ContentServicePolicies.OnContentUpdatePolicy {
+
+    private static final Log logger = LogFactory.getLog(PageCountBehaviour.class);
+
+    private PolicyComponent policyComponent;
+    private NodeService nodeService;
+    private ContentService contentService;
+    private PDFPageCounter pageCounter;
+
+    private boolean enabled = false;
+
+    /**
+     * Registers the behaviour when recording the page count is enabled.
+     */
+    public void init() {
+        if (enabled) {
+            policyComponent.bindClassBehaviour(ContentServicePolicies.OnContentUpdatePolicy.QNAME, ContentModel.TYPE_CONTENT,
+                    new JavaBehaviour(this, "onContentUpdate", NotificationFrequency.TRANSACTION_COMMIT));
+        }
+    }
+
+    /**
+     * Records the page count of a PDF document whose content was written.
+     *
+     * @param nodeRef the updated node
+     * @param newContent whether the content is new
+     */
+    @Override
+    public void onContentUpdate(NodeRef nodeRef, boolean newContent) {
+        if (!nodeService.exists(nodeRef)) {
+            return;
+        }
+
+        ContentReader reader = contentService.getReader(nodeRef, ContentModel.PROP_CONTENT);
+        if (reader == null || !reader.exists() || !PDFSignConstants.FILE_MIMETYPE.equals(reader.getMimetype())) {
+            return;
+        }
+
+        try {
+            Map<QName, Serializable> props = new HashMap<QName, Serializable>();
+            props.put(PDFSignModel.PROP_PAGECOUNT, pageCounter.readPageCount(reader));
+            props.put(PDFSignModel.PROP_PAGECOUNT_CONTENTURL, reader.getContentUrl());
+            nodeService.addAspect(nodeRef, PDFSignModel.ASPECT_PAGEINFO, props);
+        } catch (Exception e) {
+            // never fail the upload because the page count could not be read
+            logger.warn("Could not record the page count of " + nodeRef + ": " + e.getMessage());
+        }
+    }
+
+    public void setPolicyComponent(PolicyComponent policyComponent) {
+        this.policyComponent = policyComponent;
+    }
+
+    public void setNodeService(NodeService nodeService) {
+        this.nodeService = nodeService;
+    }
+
+    public void setContentService(ContentService contentService) {
+        this.contentService = contentService;
+    }
+
+    public void setPageCounter(PDFPageCounter pageCounter) {
+        this.pageCounter = pageCounter;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+}
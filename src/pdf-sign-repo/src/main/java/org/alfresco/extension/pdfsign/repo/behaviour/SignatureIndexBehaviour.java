@@ -0,0 +1,83 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SignatureIndexBehaviour.java
+ * @description Queues PDF documents for the signature indexer when their
+ *              content changes.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.repo.behaviour;
+
+import org.alfresco.extension.pdfsign.service.SignatureIndexer;
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.ContentServicePolicies;
+import org.alfresco.repo.policy.Behaviour.NotificationFrequency;
+import org.alfresco.repo.policy.JavaBehaviour;
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.service.cmr.repository.NodeRef;
+
+/**
+ * Queues documents whose content is written for the {@link SignatureIndexer}. Documents are
+ * queued once the transaction commits, so the indexer never reads uncommitted content and
+ * rolled back changes are not indexed. The content is not read here, the upload is not slowed
+ * down by the verification.
+ */
+public class SignatureIndexBehaviour implements ContentServicePolicies.OnContentUpdatePolicy {
+
+    private PolicyComponent policyComponent;
+    private SignatureIndexer signatureIndexer;
+
+    /**
+     * Registers the behaviour when the signature indexer is enabled.
+     */
+    public void init() {
+        if (signatureIndexer.isEnabled()) {
+            policyComponent.bindClassBehaviour(ContentServicePolicies.OnContentUpdatePolicy.QNAME, ContentModel.TYPE_CONTENT,
+                    new JavaBehaviour(this, "onContentUpdate", NotificationFrequency.TRANSACTION_COMMIT));
+        }
+    }
+
+    /**
+     * Queues a document whose content was written, after the transaction commits.
+     *
+     * @param nodeRef the updated node
+     * @param newContent whether the content is new
+     */
+    @Override
+    public void onContentUpdate(final NodeRef nodeRef, boolean newContent) {
+        AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter() {
+            @Override
+            public void afterCommit() {
+                signatureIndexer.enqueue(nodeRef);
+            }
+        });
+    }
+
+    public void setPolicyComponent(PolicyComponent policyComponent) {
+        this.policyComponent = policyComponent;
+    }
+
+    public void setSignatureIndexer(SignatureIndexer signatureIndexer) {
+        this.signatureIndexer = signatureIndexer;
+    }
+}
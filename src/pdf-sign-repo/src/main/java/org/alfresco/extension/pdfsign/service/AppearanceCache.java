@@ -0,0 +1,238 @@
+/**
+ * *****************************************************************************
+ *
+ * @file AppearanceCache.java
+ * @description Computes and caches the layout of visible signature appearances
+ *              per template, signer and signature size.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.cache.SimpleCache;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.BaseFont;
+import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfWriter;
+
+/**
+ * Provides the {@link SignatureAppearance} of visible signatures. Appearances are laid out and
+ * their static layer, the logo and the lines without a date, is rendered once per template,
+ * signing certificate, signer name and signature size and then cached. Signing all day with the
+ * same certificate only imports the rendered layer and draws the date.
+ * <p>
+ * Text is measured and rendered with the Helvetica metrics both engines draw with.
+ */
+public class AppearanceCache {
+
+    /** Padding between the border of the signature box and its content. */
+    private static final float PADDING = 2;
+
+    /** Font of the appearance text. */
+    static final BaseFont FONT;
+
+    static {
+        try {
+            FONT = BaseFont.createFont(BaseFont.HELVETICA, BaseFont.WINANSI, BaseFont.NOT_EMBEDDED);
+        } catch (DocumentException | IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Map<String, AppearanceTemplate> templates = new HashMap<String, AppearanceTemplate>();
+    private String defaultTemplate = "default";
+    private SimpleCache<String, SignatureAppearance> cache;
+
+    /**
+     * Returns the appearance of a visible signature.
+     *
+     * @param templateName the name of the template, or null for the default template
+     * @param certificateFingerprint the fingerprint of the signing certificate, or null when the
+     *            signature is computed outside the repository
+     * @param signerName the name of the signer
+     * @param width the width of the signature box
+     * @param height the height of the signature box
+     * @return the signature appearance
+     * @throws AlfrescoRuntimeException if the template is unknown or cannot be rendered
+     */
+    public SignatureAppearance getAppearance(String templateName, String certificateFingerprint, String signerName, float width, float height) {
+        AppearanceTemplate template = getTemplate(templateName);
+
+        // the signer name may be given instead of the name of the certificate
+        String key = template.getName() + '|' + certificateFingerprint + '|' + signerName + '|' + width + 'x' + height;
+        SignatureAppearance appearance = cache.get(key);
+        if (appearance == null) {
+            appearance = layout(template, signerName, width, height);
+            cache.put(key, appearance);
+        }
+        return appearance;
+    }
+
+    /**
+     * Retrieves the template with the given name, or the default template.
+     *
+     * @param name the template name, or null
+     * @return the template
+     */
+    private AppearanceTemplate getTemplate(String name) {
+        String templateName = name == null || name.trim().isEmpty() ? defaultTemplate : name.trim();
+        AppearanceTemplate template = templates.get(templateName);
+        if (template == null) {
+            throw new AlfrescoRuntimeException("Unknown signature appearance: " + templateName);
+        }
+        return template;
+    }
+
+    /**
+     * Lays out the logo and the text of a template inside a signature box and renders its
+     * static layer.
+     */
+    private static SignatureAppearance layout(AppearanceTemplate template, String signerName, float width, float height) {
+        float innerWidth = Math.max(width - 2 * PADDING, 1);
+        float innerHeight = Math.max(height - 2 * PADDING, 1);
+
+        float[] textBox = { PADDING, PADDING, innerWidth, innerHeight };
+        float[] logoBox = null;
+
+        switch (template.getEffectiveLayout()) {
+            case LOGO_LEFT:
+                logoBox = fit(template, PADDING, PADDING, innerWidth * 0.4f, innerHeight);
+                float textX = logoBox[0] + logoBox[2] + PADDING;
+                textBox = new float[] { textX, PADDING, Math.max(width - PADDING - textX, 1), innerHeight };
+                break;
+            case LOGO_TOP:
+                float logoHeight = innerHeight * 0.4f;
+                logoBox = fit(template, PADDING, height - PADDING - logoHeight, innerWidth, logoHeight);
+                textBox = new float[] { PADDING, PADDING, innerWidth, Math.max(logoBox[1] - 2 * PADDING, 1) };
+                break;
+            case LOGO_BACKGROUND:
+                logoBox = fit(template, PADDING, PADDING, innerWidth, innerHeight);
+                break;
+            default:
+                break;
+        }
+
+        String[] lines = template.getText().replace(AppearanceTemplate.SIGNER, signerName == null ? "" : signerName).split("\n");
+
+        float fontSize = template.getFontSize();
+        if (fontSize <= 0) {
+            // the date is measured with a sample, its width barely changes between signatures
+            String sampleDate = new SimpleDateFormat(template.getDateFormat()).format(new Date());
+            float longest = 0;
+            for (String line : lines) {
+                longest = Math.max(longest, FONT.getWidthPoint(line.replace(AppearanceTemplate.DATE, sampleDate), 1));
+            }
+            fontSize = Math.min(longest > 0 ? textBox[2] / longest : 12, textBox[3] / (lines.length * SignatureAppearance.LEADING));
+        }
+
+        return new SignatureAppearance(template, lines, fontSize, textBox, logoBox,
+                renderStaticLayer(template, lines, fontSize, textBox, logoBox, width, height));
+    }
+
+    /**
+     * Renders the logo and the lines without a date as a single page document of the size of
+     * the signature box, which the engines import as a form XObject.
+     *
+     * @return the encoded document
+     */
+    private static byte[] renderStaticLayer(AppearanceTemplate template, String[] lines, float fontSize, float[] textBox, float[] logoBox,
+            float width, float height) {
+        Document document = new Document(new Rectangle(width, height), 0, 0, 0, 0);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            PdfWriter writer = PdfWriter.getInstance(document, buffer);
+            document.open();
+            writer.setPageEmpty(false);
+
+            PdfContentByte canvas = writer.getDirectContent();
+            if (logoBox != null) {
+                canvas.addImage(template.getLogoImage(), logoBox[2], 0, 0, logoBox[3], logoBox[0], logoBox[1]);
+            }
+            canvas.beginText();
+            canvas.setFontAndSize(FONT, fontSize);
+            canvas.setLeading(fontSize * SignatureAppearance.LEADING);
+            canvas.setTextMatrix(textBox[0], textBox[1] + textBox[3] - fontSize);
+            for (int i = 0; i < lines.length; i++) {
+                if (i > 0) {
+                    canvas.newlineText();
+                }
+                if (!lines[i].contains(AppearanceTemplate.DATE)) {
+                    canvas.showText(lines[i]);
+                }
+            }
+            canvas.endText();
+            document.close();
+        } catch (DocumentException e) {
+            throw new AlfrescoRuntimeException("Could not render the signature appearance " + template.getName() + ": " + e.getMessage(), e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Fits the logo of a template in the given box, keeping its aspect ratio and centering it.
+     *
+     * @return x, y, width and height of the logo
+     */
+    private static float[] fit(AppearanceTemplate template, float x, float y, float width, float height) {
+        float imageWidth = template.getLogoImage().getWidth();
+        float imageHeight = template.getLogoImage().getHeight();
+        float scale = Math.min(width / imageWidth, height / imageHeight);
+        float logoWidth = imageWidth * scale;
+        float logoHeight = imageHeight * scale;
+        return new float[] { x + (width - logoWidth) / 2, y + (height - logoHeight) / 2, logoWidth, logoHeight };
+    }
+
+    /**
+     * Sets the available templates.
+     *
+     * @param templates the appearance templates
+     */
+    public void setTemplates(List<AppearanceTemplate> templates) {
+        this.templates.clear();
+        for (AppearanceTemplate template : templates) {
+            this.templates.put(template.getName(), template);
+        }
+    }
+
+    /**
+     * Sets the template used when the action does not name one.
+     *
+     * @param defaultTemplate the name of the default template
+     */
+    public void setDefaultTemplate(String defaultTemplate) {
+        this.defaultTemplate = defaultTemplate;
+    }
+
+    public void setCache(SimpleCache<String, SignatureAppearance> cache) {
+        this.cache = cache;
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * *****************************************************************************
+ *
+ * @file AppearanceTemplate.java
+ * @description Configurable text, logo and layout of visible signature
+ *              appearances.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.springframework.core.io.Resource;
+import org.springframework.util.FileCopyUtils;
+
+import com.itextpdf.text.BadElementException;
+import com.itextpdf.text.Image;
+
+/**
+ * A configurable appearance for visible signatures: the text, an optional logo and how both
+ * are laid out inside the signature box.
+ * <p>
+ * The text may span several lines separated by {@code \n} and use the placeholders
+ * {@code {signer}}, replaced by the signer name, and {@code {date}}, replaced by the signing
+ * date formatted with the date format of the template. The logo is read once, when the
+ * template is initialized.
+ */
+public class AppearanceTemplate {
+
+    /** Placeholder replaced by the signer name. */
+    public static final String SIGNER = "{signer}";
+
+    /** Placeholder replaced by the signing date. */
+    public static final String DATE = "{date}";
+
+    /** How the logo and the text share the signature box. */
+    public enum Layout {
+        /** Text only, the logo is ignored. */
+        TEXT,
+        /** Logo on the left side of the box, text on the right. */
+        LOGO_LEFT,
+        /** Logo on the upper part of the box, text below. */
+        LOGO_TOP,
+        /** Logo filling the box, text drawn over it. */
+        LOGO_BACKGROUND
+    }
+
+    private String name = "default";
+    private String text = "Digitally signed by " + SIGNER + "\nDate: " + DATE;
+    private String dateFormat = "yyyy.MM.dd HH:mm:ss z";
+    private Layout layout = Layout.TEXT;
+    private float fontSize = 0;
+    private Resource logo;
+
+    private byte[] logoBytes;
+    private Image logoImage;
+
+    /**
+     * Reads the logo of the template, if any.
+     */
+    public void init() {
+        if (logo == null || layout == Layout.TEXT) {
+            return;
+        }
+        try (InputStream in = logo.getInputStream()) {
+            logoBytes = FileCopyUtils.copyToByteArray(in);
+            logoImage = Image.getInstance(logoBytes);
+        } catch (IOException | BadElementException e) {
+            throw new AlfrescoRuntimeException("Could not read the logo of the signature appearance " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Sets the text of the appearance. The two characters {@code \n} are accepted as a line
+     * separator, so the text can be set from a properties file.
+     *
+     * @param text the text, with the {@code {signer}} and {@code {date}} placeholders
+     */
+    public void setText(String text) {
+        this.text = text.replace("\\n", "\n");
+    }
+
+    public String getDateFormat() {
+        return dateFormat;
+    }
+
+    public void setDateFormat(String dateFormat) {
+        this.dateFormat = dateFormat;
+    }
+
+    /**
+     * Returns the layout the template is drawn with, which is text only when there is no logo.
+     *
+     * @return the effective layout
+     */
+    public Layout getEffectiveLayout() {
+        return logoBytes == null ? Layout.TEXT : layout;
+    }
+
+    /**
+     * Sets the layout of the appearance.
+     *
+     * @param layout text, logo-left, logo-top or logo-background
+     */
+    public void setLayout(String layout) {
+        this.layout = Layout.valueOf(layout.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+
+    public float getFontSize() {
+        return fontSize;
+    }
+
+    /**
+     * Sets the font size of the text.
+     *
+     * @param fontSize the font size in points, or 0 to fit the text to the signature box
+     */
+    public void setFontSize(float fontSize) {
+        this.fontSize = fontSize;
+    }
+
+    public void setLogo(Resource logo) {
+        this.logo = logo;
+    }
+
+    /**
+     * Returns the encoded logo image.
+     *
+     * @return the logo bytes, or null if the template has no logo
+     */
+    public byte[] getLogoBytes() {
+        return logoBytes;
+    }
+
+    /**
+     * Returns the logo parsed by iText. iText images hold no reference to a document, so the
+     * same instance is added to every signed document.
+     *
+     * @return the logo image, or null if the template has no logo
+     */
+    public Image getLogoImage() {
+        return logoImage;
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * *****************************************************************************
+ *
+ * @file CMSSignatureBuilder.java
+ * @description Builds detached CMS signatures with BouncyCastle for the signature
+ *              engines.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+import org.alfresco.extension.pdfsign.metrics.SigningTimer;
+import org.alfresco.extension.pdfsign.metrics.SigningTimer.Phase;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.bouncycastle.cms.CMSTypedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.SignerInformationStore;
+import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
+import org.bouncycastle.jcajce.io.OutputStreamFactory;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DefaultSignatureAlgorithmIdentifierFinder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.RuntimeOperatorException;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+/**
+ * Builds the detached CMS signature ({@code adbe.pkcs7.detached}) of a signature request over
+ * the signed byte range of a document. The byte range is digested while it is streamed and the
+ * signature is computed with a Signature pooled by the credential, so any key type and scheme
+ * the JCA providers support can be used, RSASSA-PSS included. When the request has a timestamp
+ * client, the signature value is timestamped and the token added as an unsigned attribute.
+ */
+final class CMSSignatureBuilder {
+
+    private final SigningCredential credential;
+    private final String digestAlgorithm;
+    private final boolean pss;
+    private final CryptoProviders cryptoProviders;
+    private final SigningTimer timer;
+    private final TimestampClient timestampClient;
+
+    CMSSignatureBuilder(SignatureRequest request, CryptoProviders cryptoProviders) {
+        this.credential = request.getCredential();
+        this.digestAlgorithm = request.getDigestAlgorithm();
+        this.pss = request.isPss();
+        this.cryptoProviders = cryptoProviders;
+        this.timer = request.getTimer();
+        this.timestampClient = request.getTimestampClient();
+    }
+
+    /**
+     * Signs the given content.
+     *
+     * @param content the signed byte range of the document
+     * @return the encoded CMS signature
+     * @throws IOException if the content cannot be read or the signature cannot be computed
+     */
+    byte[] sign(InputStream content) throws IOException {
+        Certificate[] chain = credential.getChain();
+        try {
+            ContentSigner signer = new CredentialContentSigner();
+
+            JcaDigestCalculatorProviderBuilder digestCalculators = new JcaDigestCalculatorProviderBuilder();
+            if (cryptoProviders.getDigestProvider() != null) {
+                digestCalculators.setProvider(cryptoProviders.getDigestProvider());
+            }
+
+            CMSSignedDataGenerator generator = new CMSSignedDataGenerator();
+            generator.addSignerInfoGenerator(new JcaSignerInfoGeneratorBuilder(digestCalculators.build())
+                    .build(signer, (X509Certificate) chain[0]));
+            generator.addCertificates(new JcaCertStore(Arrays.asList(chain)));
+
+            CMSSignedData signedData = generator.generate(new StreamTypedData(content), false);
+            if (timestampClient != null) {
+                signedData = addTimestamp(signedData);
+            }
+            return signedData.getEncoded();
+        } catch (GeneralSecurityException | OperatorCreationException | CMSException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Adds the timestamp token of the signature value as an unsigned attribute of the signer.
+     *
+     * @param signedData the signed data
+     * @return the signed data with the timestamped signer
+     * @throws IOException if the timestamp cannot be obtained
+     * @throws GeneralSecurityException if the imprint digest is not available
+     */
+    private CMSSignedData addTimestamp(CMSSignedData signedData) throws IOException, GeneralSecurityException {
+        SignerInformation signer = signedData.getSignerInfos().getSigners().iterator().next();
+        byte[] token = timestampClient.timestamp(signer.getSignature(), timer);
+
+        AttributeTable unsignedAttributes = signer.getUnsignedAttributes();
+        ASN1EncodableVector attributes = unsignedAttributes == null ? new ASN1EncodableVector() : unsignedAttributes.toASN1EncodableVector();
+        attributes.add(new Attribute(PKCSObjectIdentifiers.id_aa_signatureTimeStampToken, new DERSet(ASN1Primitive.fromByteArray(token))));
+
+        SignerInformation timestamped = SignerInformation.replaceUnsignedAttributes(signer, new AttributeTable(attributes));
+        return CMSSignedData.replaceSigners(signedData, new SignerInformationStore(timestamped));
+    }
+
+    /**
+     * Estimates the size of the encoded signature, to reserve its space in the document.
+     *
+     * @return the estimated size in bytes
+     * @throws GeneralSecurityException if a certificate cannot be encoded
+     */
+    int estimateSize() throws GeneralSecurityException {
+        int size = 8192;
+        for (Certificate certificate : credential.getChain()) {
+            size += certificate.getEncoded().length;
+        }
+        if (timestampClient != null) {
+            size += timestampClient.getTokenSizeEstimate();
+        }
+        return size;
+    }
+
+    /**
+     * Signs with a Signature pooled by the credential, charging the private key operation to
+     * the sign phase of the signing timer. The digest of the document is computed while the
+     * content is streamed and stays in the write phase.
+     */
+    private class CredentialContentSigner implements ContentSigner {
+
+        private final Signature signature;
+        private final AlgorithmIdentifier algorithmIdentifier;
+
+        private CredentialContentSigner() throws GeneralSecurityException {
+            this.signature = cryptoProviders.borrowSignature(credential, digestAlgorithm, pss);
+            this.algorithmIdentifier = new DefaultSignatureAlgorithmIdentifierFinder()
+                    .find(CryptoProviders.signatureAlgorithm(digestAlgorithm, credential.getPrivateKey(), pss));
+        }
+
+        @Override
+        public AlgorithmIdentifier getAlgorithmIdentifier() {
+            return algorithmIdentifier;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStreamFactory.createStream(signature);
+        }
+
+        @Override
+        public byte[] getSignature() {
+            timer.enter(Phase.SIGN);
+            try {
+                byte[] signed = signature.sign();
+                // only a Signature that completed is reset and can go back to the pool
+                cryptoProviders.returnSignature(credential, digestAlgorithm, pss, signature);
+                return signed;
+            } catch (SignatureException e) {
+                throw new RuntimeOperatorException("Could not compute the signature: " + e.getMessage(), e);
+            } finally {
+                timer.exit();
+            }
+        }
+    }
+
+    /**
+     * CMS content backed by the stream of the signed byte range, so it is digested without
+     * being buffered.
+     */
+    private static class StreamTypedData implements CMSTypedData {
+
+        private final InputStream in;
+
+        private StreamTypedData(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public ASN1ObjectIdentifier getContentType() {
+            return CMSObjectIdentifiers.data;
+        }
+
+        @Override
+        public Object getContent() {
+            return in;
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * *****************************************************************************
+ *
+ * @file ContentFile.java
+ * @description Local file holding the content of a ContentReader, used to open
+ *              documents with random access.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.Closeable;
+import java.io.File;
+
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.util.TempFileProvider;
+
+/**
+ * A local file holding the content of a ContentReader. Content held by a file content
+ * store is used in place; any other content is copied to a temporary file, which is
+ * deleted when this object is closed.
+ */
+public final class ContentFile implements Closeable {
+
+    private final File file;
+    private final boolean temporary;
+
+    private ContentFile(File file, boolean temporary) {
+        this.file = file;
+        this.temporary = temporary;
+    }
+
+    /**
+     * Resolves the local file holding the content of the given reader.
+     *
+     * @param contentReader the ContentReader of the content
+     * @return the content file
+     */
+    public static ContentFile of(ContentReader contentReader) {
+        if (contentReader instanceof FileContentReader) {
+            File file = ((FileContentReader) contentReader).getFile();
+            if (file != null && file.canRead()) {
+                return new ContentFile(file, false);
+            }
+        }
+
+        File tempFile = TempFileProvider.createTempFile("pdfsign-", ".pdf");
+        try {
+            contentReader.getContent(tempFile);
+        } catch (RuntimeException e) {
+            tempFile.delete();
+            throw e;
+        }
+        return new ContentFile(tempFile, true);
+    }
+
+    /**
+     * Returns the file holding the content.
+     *
+     * @return the content file or its temporary copy
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Deletes the temporary copy of the content, if any.
+     */
+    @Override
+    public void close() {
+        if (temporary) {
+            file.delete();
+        }
+    }
+}
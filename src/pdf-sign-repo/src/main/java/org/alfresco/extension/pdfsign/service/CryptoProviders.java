@@ -0,0 +1,253 @@
+/**
+ * *****************************************************************************
+ *
+ * @file CryptoProviders.java
+ * @description Selects the JCA providers used to digest documents and to compute
+ *              signatures.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Selects the JCA providers the signature engines digest documents and compute signatures
+ * with. When no provider is configured the JCA picks the preferred provider for the algorithm
+ * and key, which on a standard JDK are the SUN, SunRsaSign and SunEC providers, ahead of
+ * BouncyCastle.
+ * <p>
+ * Signatures are computed with the {@link Signature} objects pooled by each
+ * {@link SigningCredential}, and a newly loaded credential is pre-warmed with the default
+ * digest algorithm.
+ * <p>
+ * RSA keys sign with PKCS#1 v1.5 unless RSASSA-PSS is requested, keys generated for
+ * RSASSA-PSS always sign with it, and EC keys sign with ECDSA.
+ */
+public class CryptoProviders {
+
+    private static final Log logger = LogFactory.getLog(CryptoProviders.class);
+
+    /** Digest algorithm used when none is requested. */
+    public static final String DEFAULT_DIGEST_ALGORITHM = "SHA-256";
+
+    /** Digest algorithms documents can be signed with. */
+    public static final List<String> DIGEST_ALGORITHMS = Collections.unmodifiableList(Arrays.asList("SHA-256", "SHA-384", "SHA-512"));
+
+    /** Suffix of the JCA names of the RSASSA-PSS signature algorithms. */
+    private static final String PSS_SUFFIX = "withRSAandMGF1";
+
+    private String digestProvider;
+    private String signatureProvider;
+
+    /**
+     * Creates a MessageDigest for the given algorithm with the configured digest provider.
+     *
+     * @param algorithm the digest algorithm, such as SHA-256
+     * @return the MessageDigest
+     * @throws GeneralSecurityException if the algorithm or provider is not available
+     */
+    public MessageDigest getMessageDigest(String algorithm) throws GeneralSecurityException {
+        return digestProvider == null ? MessageDigest.getInstance(algorithm) : MessageDigest.getInstance(algorithm, digestProvider);
+    }
+
+    /**
+     * Takes a Signature initialized with the key of the credential for the given digest algorithm.
+     *
+     * @param credential the signing credential
+     * @param digestAlgorithm the digest algorithm, such as SHA-256
+     * @param pss whether an RSA key signs with RSASSA-PSS instead of PKCS#1 v1.5
+     * @return a Signature ready to be updated
+     * @throws GeneralSecurityException if the algorithm or provider is not available
+     */
+    public Signature borrowSignature(SigningCredential credential, String digestAlgorithm, boolean pss) throws GeneralSecurityException {
+        return credential.borrowSignature(signatureAlgorithm(digestAlgorithm, credential.getPrivateKey(), pss), signatureProvider);
+    }
+
+    /**
+     * Hands a Signature that produced a signature back to the pool of the credential.
+     *
+     * @param credential the signing credential
+     * @param digestAlgorithm the digest algorithm the Signature was borrowed for
+     * @param pss whether the Signature was borrowed for RSASSA-PSS
+     * @param signature the Signature
+     */
+    public void returnSignature(SigningCredential credential, String digestAlgorithm, boolean pss, Signature signature) {
+        PrivateKey key = credential.getPrivateKey();
+        if (key != null) {
+            credential.returnSignature(signatureAlgorithm(digestAlgorithm, key, pss), signatureProvider, signature);
+        }
+    }
+
+    /**
+     * Initializes a Signature for the default digest algorithm, so the first document signed
+     * with a newly loaded credential does not pay for it.
+     *
+     * @param credential the signing credential
+     */
+    public void prewarm(SigningCredential credential) {
+        try {
+            returnSignature(credential, DEFAULT_DIGEST_ALGORITHM, false, borrowSignature(credential, DEFAULT_DIGEST_ALGORITHM, false));
+        } catch (GeneralSecurityException e) {
+            // not fatal, signing reports the problem if the algorithm is really used
+            if (logger.isDebugEnabled()) {
+                logger.debug("Could not pre-warm the signing credential " + credential.getAlias() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the JCA signature algorithm for the given digest algorithm and key.
+     *
+     * @param digestAlgorithm the digest algorithm, such as SHA-256
+     * @param key the private key
+     * @param pss whether an RSA key signs with RSASSA-PSS instead of PKCS#1 v1.5
+     * @return the signature algorithm, such as SHA256withRSA, SHA256withRSAandMGF1 or SHA384withECDSA
+     */
+    public static String signatureAlgorithm(String digestAlgorithm, PrivateKey key, boolean pss) {
+        String digest = digestAlgorithm.replace("-", "");
+        if (isPssKey(key) || (pss && "RSA".equalsIgnoreCase(key.getAlgorithm()))) {
+            return digest + PSS_SUFFIX;
+        }
+        return digest + "with" + encryptionAlgorithm(key);
+    }
+
+    /**
+     * Tells whether the given JCA signature algorithm is an RSASSA-PSS algorithm.
+     *
+     * @param signatureAlgorithm the signature algorithm
+     * @return true for RSASSA-PSS
+     */
+    public static boolean isPss(String signatureAlgorithm) {
+        return signatureAlgorithm.endsWith(PSS_SUFFIX);
+    }
+
+    /**
+     * Tells whether the given key may only be used with RSASSA-PSS.
+     *
+     * @param key the private key
+     * @return true for keys generated for RSASSA-PSS
+     */
+    public static boolean isPssKey(PrivateKey key) {
+        return "RSASSA-PSS".equalsIgnoreCase(key.getAlgorithm());
+    }
+
+    /**
+     * Creates an uninitialized Signature for the given JCA signature algorithm. RSASSA-PSS
+     * signatures use MGF1 with the digest of the signature and a salt as long as the digest,
+     * as required by PAdES and RFC 4056.
+     *
+     * @param signatureAlgorithm the signature algorithm, such as SHA256withRSA
+     * @param provider the JCA provider, or null for the preferred provider of the key
+     * @return the Signature
+     * @throws GeneralSecurityException if the algorithm or provider is not available
+     */
+    public static Signature newSignature(String signatureAlgorithm, String provider) throws GeneralSecurityException {
+        if (!isPss(signatureAlgorithm)) {
+            return provider == null ? Signature.getInstance(signatureAlgorithm) : Signature.getInstance(signatureAlgorithm, provider);
+        }
+
+        String digest = toDigestAlgorithm(signatureAlgorithm.substring(0, signatureAlgorithm.length() - PSS_SUFFIX.length()));
+        Signature signature = provider == null ? Signature.getInstance("RSASSA-PSS") : Signature.getInstance("RSASSA-PSS", provider);
+        int saltLength = MessageDigest.getInstance(digest).getDigestLength();
+        signature.setParameter(new PSSParameterSpec(digest, "MGF1", new MGF1ParameterSpec(digest), saltLength, 1));
+        return signature;
+    }
+
+    /**
+     * Validates a requested digest algorithm.
+     *
+     * @param digestAlgorithm the digest algorithm, such as SHA-384 or sha384, or null for the default
+     * @return the JCA name of the digest algorithm
+     * @throws AlfrescoRuntimeException if the digest algorithm is not supported
+     */
+    public static String digestAlgorithm(String digestAlgorithm) {
+        if (digestAlgorithm == null || digestAlgorithm.trim().isEmpty()) {
+            return DEFAULT_DIGEST_ALGORITHM;
+        }
+        String normalized = toDigestAlgorithm(digestAlgorithm.trim().toUpperCase(Locale.ROOT).replace("-", ""));
+        if (!DIGEST_ALGORITHMS.contains(normalized)) {
+            throw new AlfrescoRuntimeException("Unsupported digest algorithm: " + digestAlgorithm);
+        }
+        return normalized;
+    }
+
+    private static String toDigestAlgorithm(String digest) {
+        return digest.startsWith("SHA") && !digest.contains("-") ? "SHA-" + digest.substring(3) : digest;
+    }
+
+    /**
+     * Returns the encryption algorithm of the given key, as named by iText.
+     *
+     * @param key the private key
+     * @return RSA, DSA or ECDSA
+     */
+    public static String encryptionAlgorithm(PrivateKey key) {
+        if (isPssKey(key)) {
+            return "RSA";
+        }
+        String algorithm = key.getAlgorithm();
+        return "EC".equalsIgnoreCase(algorithm) || "ECDSA".equalsIgnoreCase(algorithm) ? "ECDSA" : algorithm;
+    }
+
+    public String getDigestProvider() {
+        return digestProvider;
+    }
+
+    /**
+     * Sets the JCA provider used to digest documents.
+     *
+     * @param digestProvider the provider name, or empty for the preferred provider
+     */
+    public void setDigestProvider(String digestProvider) {
+        this.digestProvider = providerName(digestProvider);
+    }
+
+    public String getSignatureProvider() {
+        return signatureProvider;
+    }
+
+    /**
+     * Sets the JCA provider used to compute signatures.
+     *
+     * @param signatureProvider the provider name, or empty for the preferred provider of the key
+     */
+    public void setSignatureProvider(String signatureProvider) {
+        this.signatureProvider = providerName(signatureProvider);
+    }
+
+    private static String providerName(String provider) {
+        return provider == null || provider.trim().isEmpty() ? null : provider.trim();
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * *****************************************************************************
+ *
+ * @file FolderSignJob.java
+ * @description Progress of an asynchronous job signing the PDF documents of a
+ *              folder tree.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+
+/**
+ * Tracks an asynchronous folder signing job: the PDF documents found so far under the folder,
+ * the ones skipped because they were already signed or precede the checkpoint of a previous
+ * run, and the outcome of the bulk signing jobs the documents are submitted in.
+ */
+public class FolderSignJob {
+
+    /** Status of a folder signing job. */
+    public enum Status {
+        RUNNING, COMPLETED, CANCELLED, FAILED
+    }
+
+    private final String id;
+    private final NodeRef folder;
+
+    private final AtomicInteger found = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger batches = new AtomicInteger();
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile SignBatchJob currentBatch;
+    private volatile boolean cancelled = false;
+    private volatile String error;
+    private volatile long finishedAt = 0;
+
+    /**
+     * Creates a new job for the given folder.
+     *
+     * @param id the job identifier
+     * @param folder the root folder of the documents to sign
+     */
+    FolderSignJob(String id, NodeRef folder) {
+        this.id = id;
+        this.folder = folder;
+    }
+
+    /**
+     * Requests the cancellation of the job. The batch being signed is cancelled as well, and
+     * the checkpoint of the folder is kept so a new run resumes after the last signed batch.
+     */
+    public void cancel() {
+        cancelled = true;
+        SignBatchJob batch = currentBatch;
+        if (batch != null) {
+            batch.cancel();
+        }
+    }
+
+    /**
+     * Waits until the job has finished.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if the job finished, false if the timeout elapsed first
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    void skipped(int count) {
+        skipped.addAndGet(count);
+    }
+
+    void batchStarted(SignBatchJob batch) {
+        currentBatch = batch;
+        found.addAndGet(batch.getTotal());
+        batches.incrementAndGet();
+        if (cancelled) {
+            batch.cancel();
+        }
+    }
+
+    void batchFinished(SignBatchJob batch) {
+        succeeded.addAndGet(batch.getSucceeded());
+        failed.addAndGet(batch.getFailed());
+        currentBatch = null;
+    }
+
+    void finish(Throwable cause) {
+        if (cause != null) {
+            error = String.valueOf(cause.getMessage());
+        }
+        finishedAt = System.currentTimeMillis();
+        done.countDown();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public NodeRef getFolder() {
+        return folder;
+    }
+
+    public Status getStatus() {
+        if (!isDone()) {
+            return Status.RUNNING;
+        }
+        if (error != null) {
+            return Status.FAILED;
+        }
+        return cancelled ? Status.CANCELLED : Status.COMPLETED;
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns the number of unsigned PDF documents found so far and submitted for signing.
+     *
+     * @return the number of documents found
+     */
+    public int getFound() {
+        return found.get();
+    }
+
+    /**
+     * Returns the number of PDF documents skipped because they were already signed or were
+     * processed by a previous run.
+     *
+     * @return the number of skipped documents
+     */
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    public int getSucceeded() {
+        return succeeded.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public int getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * Returns the bulk signing job of the batch being signed, if any.
+     *
+     * @return the current batch, or null between batches
+     */
+    public SignBatchJob getCurrentBatch() {
+        return currentBatch;
+    }
+
+    /**
+     * Returns the reason the job failed.
+     *
+     * @return the error message, or null if the job did not fail
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Returns the time the job finished, or 0 while it is still running.
+     *
+     * @return the finish time in milliseconds
+     */
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * *****************************************************************************
+ *
+ * @file FolderWalker.java
+ * @description Paged depth-first walk of a folder tree returning the unsigned
+ *              PDF documents it holds.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import org.alfresco.extension.pdfsign.model.PDFSignModel;
+import org.alfresco.model.ContentModel;
+import org.alfresco.query.PagingRequest;
+import org.alfresco.query.PagingResults;
+import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.service.cmr.model.FileFolderService;
+import org.alfresco.service.cmr.model.FileInfo;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+
+/**
+ * Walks a folder tree depth-first in name order, one page of children at a time, and returns
+ * the unsigned PDF documents found on each page. Only a cursor per level of the tree is kept in
+ * memory, so folders of any size are walked with a bounded heap.
+ * <p>
+ * A walk started from a checkpoint skips every PDF document up to and including the checkpoint
+ * node, which is the last document signed by a previous walk of the same folder.
+ */
+final class FolderWalker {
+
+    private static final List<Pair<QName, Boolean>> SORT_BY_NAME =
+            Collections.singletonList(new Pair<QName, Boolean>(ContentModel.PROP_NAME, true));
+
+    private final FileFolderService fileFolderService;
+    private final NodeService nodeService;
+    private final int pageSize;
+
+    private final Deque<Cursor> cursors = new ArrayDeque<Cursor>();
+    private NodeRef checkpoint;
+    private int skipped;
+
+    /**
+     * Creates a walker of the given folder.
+     *
+     * @param fileFolderService the FileFolderService used to list children
+     * @param nodeService the NodeService used to check the signed aspect
+     * @param folder the root folder of the walk
+     * @param checkpoint the last document processed by a previous walk, or null to walk the whole tree
+     * @param pageSize the number of children listed at a time
+     */
+    FolderWalker(FileFolderService fileFolderService, NodeService nodeService, NodeRef folder, NodeRef checkpoint, int pageSize) {
+        this.fileFolderService = fileFolderService;
+        this.nodeService = nodeService;
+        this.checkpoint = checkpoint;
+        this.pageSize = pageSize;
+        cursors.push(new Cursor(folder));
+    }
+
+    /**
+     * Tells whether part of the tree is still to be walked.
+     *
+     * @return true until every folder of the tree has been listed
+     */
+    boolean hasNext() {
+        return !cursors.isEmpty();
+    }
+
+    /**
+     * Lists the next page of children of the folder being walked, up to its first subfolder,
+     * which is walked next. Must be called in a transaction; the walker only moves forward when
+     * the page has been read, so a retried transaction reads the same page again.
+     *
+     * @return the unsigned PDF documents of the page, in name order, possibly none
+     */
+    List<NodeRef> next() {
+        Cursor cursor = cursors.peek();
+        PagingResults<FileInfo> page = fileFolderService.list(cursor.folder, true, true, null, SORT_BY_NAME,
+                new PagingRequest(cursor.skipCount, pageSize));
+
+        List<NodeRef> documents = new ArrayList<NodeRef>();
+        NodeRef resumeAfter = checkpoint;
+        int pageSkipped = 0;
+        int read = 0;
+        NodeRef subfolder = null;
+
+        for (FileInfo child : page.getPage()) {
+            read++;
+            if (child.isFolder()) {
+                subfolder = child.getNodeRef();
+                break;
+            }
+            if (!isPdf(child)) {
+                continue;
+            }
+            NodeRef document = child.getNodeRef();
+            if (resumeAfter != null) {
+                if (resumeAfter.equals(document)) {
+                    resumeAfter = null;
+                }
+                pageSkipped++;
+            } else if (nodeService.hasAspect(document, PDFSignModel.ASPECT_SIGNED)) {
+                pageSkipped++;
+            } else {
+                documents.add(document);
+            }
+        }
+
+        cursor.skipCount += read;
+        checkpoint = resumeAfter;
+        skipped += pageSkipped;
+        if (subfolder != null) {
+            cursors.push(new Cursor(subfolder));
+        } else if (!page.hasMoreItems()) {
+            cursors.pop();
+        }
+        return documents;
+    }
+
+    /**
+     * Returns the number of PDF documents skipped so far, because they were already signed or
+     * precede the checkpoint.
+     *
+     * @return the number of skipped documents
+     */
+    int getSkipped() {
+        return skipped;
+    }
+
+    private static boolean isPdf(FileInfo child) {
+        ContentData content = child.getContentData();
+        return content != null && MimetypeMap.MIMETYPE_PDF.equals(content.getMimetype());
+    }
+
+    /** Position of the walk within a folder. */
+    private static final class Cursor {
+
+        private final NodeRef folder;
+        private int skipCount;
+
+        private Cursor(NodeRef folder) {
+            this.folder = folder;
+        }
+    }
+}
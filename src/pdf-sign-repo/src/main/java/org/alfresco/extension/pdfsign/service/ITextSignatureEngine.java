@@ -0,0 +1,389 @@
+/**
+ * *****************************************************************************
+ *
+ * @file ITextSignatureEngine.java
+ * @description SignatureEngine implementation based on the iText 5 library.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.text.SimpleDateFormat;
+
+import org.alfresco.extension.pdfsign.metrics.SigningTimer;
+import org.alfresco.extension.pdfsign.metrics.SigningTimer.Phase;
+import org.alfresco.service.cmr.repository.ContentReader;
+
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfImportedPage;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfSignatureAppearance;
+import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.PdfTemplate;
+import com.itextpdf.text.pdf.security.DigestAlgorithms;
+import com.itextpdf.text.pdf.security.ExternalDigest;
+import com.itextpdf.text.pdf.security.ExternalSignature;
+import com.itextpdf.text.pdf.security.ExternalSignatureContainer;
+import com.itextpdf.text.pdf.security.MakeSignature;
+import com.itextpdf.text.pdf.security.ProviderDigest;
+import com.itextpdf.text.pdf.security.TSAClient;
+
+/**
+ * Signs PDF documents with iText 5. Documents up to the partial read threshold are loaded
+ * into memory, larger ones are opened in partial mode from a random-access source.
+ * <p>
+ * PKCS#1 v1.5 and ECDSA signatures are built by iText. iText 5 cannot express the parameters of
+ * RSASSA-PSS in the CMS signer info, so those signatures are built by the
+ * {@link CMSSignatureBuilder} and embedded as an external signature container.
+ */
+public class ITextSignatureEngine implements SignatureEngine {
+
+    /** Name of this engine. */
+    public static final String NAME = "itext";
+
+    private long partialReadThreshold = 16L * 1024 * 1024;
+    private CryptoProviders cryptoProviders = new CryptoProviders();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Opens a PDF document for signing.
+     *
+     * @param contentReader the ContentReader of the document
+     * @return the opened document
+     * @throws IOException if the content cannot be read or is not a valid PDF
+     */
+    @Override
+    public SignableDocument open(ContentReader contentReader) throws IOException {
+        // large documents are opened in partial mode from a random-access source, so only the
+        // objects touched by the signature are loaded and the incremental update streams the rest
+        if (contentReader.getSize() > partialReadThreshold) {
+            PDFDocumentHandle handle = PDFDocumentHandle.open(contentReader);
+            return new ITextDocument(handle.getReader(), handle, cryptoProviders);
+        }
+        return new ITextDocument(new PdfReader(contentReader.getContentInputStream()), null, cryptoProviders);
+    }
+
+    /**
+     * Sets the size in bytes above which documents are opened in partial mode from a
+     * random-access source instead of being loaded into memory.
+     *
+     * @param partialReadThreshold the threshold in bytes
+     */
+    public void setPartialReadThreshold(long partialReadThreshold) {
+        this.partialReadThreshold = partialReadThreshold;
+    }
+
+    /**
+     * Sets the JCA providers used to digest the document and compute the signature.
+     *
+     * @param cryptoProviders the CryptoProviders to set
+     */
+    public void setCryptoProviders(CryptoProviders cryptoProviders) {
+        this.cryptoProviders = cryptoProviders;
+    }
+
+    /**
+     * A document opened with iText.
+     */
+    private static class ITextDocument implements SignableDocument {
+
+        private final PdfReader reader;
+        private final PDFDocumentHandle handle;
+        private final CryptoProviders cryptoProviders;
+
+        private ITextDocument(PdfReader reader, PDFDocumentHandle handle, CryptoProviders cryptoProviders) {
+            this.reader = reader;
+            this.handle = handle;
+            this.cryptoProviders = cryptoProviders;
+        }
+
+        @Override
+        public int getNumberOfPages() {
+            return reader.getNumberOfPages();
+        }
+
+        @Override
+        public void sign(SignatureRequest request, OutputStream out) throws IOException, GeneralSecurityException {
+            try {
+                SigningCredential credential = request.getCredential();
+                PdfSignatureAppearance sap = createAppearance(request, out);
+
+                String digestAlgorithm = request.getDigestAlgorithm();
+
+                // both close the signature appearance, which writes the signed document and closes the output stream
+                if (CryptoProviders.isPss(CryptoProviders.signatureAlgorithm(digestAlgorithm, credential.getPrivateKey(), request.isPss()))) {
+                    CMSSignatureBuilder builder = new CMSSignatureBuilder(request, cryptoProviders);
+                    MakeSignature.signExternalContainer(sap, new CMSSignatureContainer(builder), builder.estimateSize());
+                } else {
+                    ExternalDigest digest = new ProviderDigest(cryptoProviders.getDigestProvider());
+                    ExternalSignature signature = new CredentialSignature(credential, digestAlgorithm, cryptoProviders, request.getTimer());
+                    TSAClient tsaClient = request.getTimestampClient() == null ? null
+                            : new ITextTSAClient(request.getTimestampClient(), request.getTimer());
+                    // the space reserved is computed from the certificate chain and the timestamp tokens seen so far
+                    int estimatedSize = new CMSSignatureBuilder(request, cryptoProviders).estimateSize();
+                    MakeSignature.signDetached(sap, digest, signature, credential.getChain(), null, null, tsaClient, estimatedSize,
+                            MakeSignature.CryptoStandard.CMS);
+                }
+            } catch (DocumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public byte[] prepare(SignatureRequest request, int reservedSize, OutputStream out) throws IOException, GeneralSecurityException {
+            try {
+                PdfSignatureAppearance sap = createAppearance(request, out);
+
+                DigestingContainer container = new DigestingContainer(cryptoProviders.getMessageDigest(request.getDigestAlgorithm()));
+                // closes the signature appearance, which writes the prepared document and closes the output stream
+                MakeSignature.signExternalContainer(sap, container, reservedSize);
+                return container.getDigest();
+            } catch (DocumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Creates the signature appearance and, for visible signatures, places it on the
+         * selected pages.
+         *
+         * @param request the signature request
+         * @param out the stream receiving the document
+         * @return the signature appearance
+         * @throws IOException if the document cannot be read
+         * @throws DocumentException if the document cannot be stamped
+         */
+        private PdfSignatureAppearance createAppearance(SignatureRequest request, OutputStream out) throws IOException, DocumentException {
+            PdfStamper stamper = PdfStamper.createSignature(reader, out, '\0', request.getSpillDir(), request.isAppendToExisting());
+
+            PdfSignatureAppearance sap = stamper.getSignatureAppearance();
+
+            int[] pages = request.getPages();
+            if (request.isVisible()) {
+                request.getTimer().enter(Phase.APPEARANCE);
+                try {
+                    // the default text is built from the signer when the appearance is first
+                    // generated, which happens below for the copies stamped on the other pages
+                    SigningCredential credential = request.getCredential();
+                    if (credential != null) {
+                        sap.setCertificate(credential.getChain()[0]);
+                    } else {
+                        // without a certificate iText cannot build the default text, so it is set explicitly
+                        SimpleDateFormat format = new SimpleDateFormat("yyyy.MM.dd HH:mm:ss z");
+                        sap.setLayer2Text("Digitally signed by " + request.getSignerName() + "\nDate: " + format.format(sap.getSignDate().getTime()));
+                    }
+
+                    // the signature widget goes on the first selected page, the remaining pages
+                    // get the same appearance stamped so that a single signature covers them all
+                    sap.setVisibleSignature(signatureRectangle(request, pages[0]), pages[0], null);
+                    if (request.getAppearance() != null) {
+                        drawAppearance(stamper, sap, request.getAppearance());
+                    }
+
+                    if (pages.length > 1) {
+                        PdfTemplate appearance = sap.getAppearance();
+                        for (int i = 1; i < pages.length; i++) {
+                            Rectangle rect = signatureRectangle(request, pages[i]);
+                            stamper.getOverContent(pages[i]).addTemplate(appearance, rect.getLeft(), rect.getBottom());
+                        }
+                    }
+                } finally {
+                    request.getTimer().exit();
+                }
+            }
+            return sap;
+        }
+
+        /**
+         * Draws a pre-computed appearance on layer 2 of the signature, which keeps iText from
+         * generating its default text: the cached static layer, imported as a form XObject, and
+         * the lines holding the signing date over it.
+         *
+         * @param stamper the stamper of the document
+         * @param sap the signature appearance
+         * @param appearance the layout of the appearance
+         * @throws IOException if the static layer cannot be read
+         */
+        private void drawAppearance(PdfStamper stamper, PdfSignatureAppearance sap, SignatureAppearance appearance) throws IOException {
+            PdfTemplate layer = sap.getLayer(2);
+
+            PdfImportedPage staticLayer = stamper.getImportedPage(new PdfReader(appearance.getStaticLayer()), 1);
+            layer.addTemplate(staticLayer, 0, 0);
+
+            float[] textBox = appearance.getTextBox();
+            float fontSize = appearance.getFontSize();
+            String[] lines = appearance.getDateLines(sap.getSignDate());
+
+            layer.beginText();
+            layer.setFontAndSize(AppearanceCache.FONT, fontSize);
+            layer.setLeading(fontSize * SignatureAppearance.LEADING);
+            layer.setTextMatrix(textBox[0], textBox[1] + textBox[3] - fontSize);
+            for (int i = 0; i < lines.length; i++) {
+                if (i > 0) {
+                    layer.newlineText();
+                }
+                if (lines[i] != null) {
+                    layer.showText(lines[i]);
+                }
+            }
+            layer.endText();
+        }
+
+        /**
+         * Calculates the rectangle of the visible signature on the given page.
+         *
+         * @param request the signature request
+         * @param page the page the signature is placed on
+         * @return the normalized Rectangle of the signature
+         */
+        private Rectangle signatureRectangle(SignatureRequest request, int page) {
+            Rectangle pageRect = reader.getPageSizeWithRotation(page);
+            float[] box = request.getSignatureBox(pageRect.getWidth(), pageRect.getHeight());
+            return new Rectangle(box[0], box[1], box[2], box[3]);
+        }
+
+        @Override
+        public void close() {
+            if (handle != null) {
+                handle.close();
+            } else {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Signs with a Signature pooled by the credential, charging the private key operation to
+     * the sign phase of the signing timer.
+     */
+    private static class CredentialSignature implements ExternalSignature {
+
+        private final SigningCredential credential;
+        private final String digestAlgorithm;
+        private final CryptoProviders cryptoProviders;
+        private final SigningTimer timer;
+
+        private CredentialSignature(SigningCredential credential, String digestAlgorithm, CryptoProviders cryptoProviders, SigningTimer timer) {
+            this.credential = credential;
+            this.digestAlgorithm = digestAlgorithm;
+            this.cryptoProviders = cryptoProviders;
+            this.timer = timer;
+        }
+
+        @Override
+        public String getHashAlgorithm() {
+            return digestAlgorithm;
+        }
+
+        @Override
+        public String getEncryptionAlgorithm() {
+            return CryptoProviders.encryptionAlgorithm(credential.getPrivateKey());
+        }
+
+        @Override
+        public byte[] sign(byte[] message) throws GeneralSecurityException {
+            timer.enter(Phase.SIGN);
+            try {
+                Signature signature = cryptoProviders.borrowSignature(credential, digestAlgorithm, false);
+                signature.update(message);
+                byte[] signed = signature.sign();
+                // only a Signature that completed is reset and can go back to the pool
+                cryptoProviders.returnSignature(credential, digestAlgorithm, false, signature);
+                return signed;
+            } finally {
+                timer.exit();
+            }
+        }
+    }
+
+    /**
+     * Digests the byte range of a prepared document and leaves the reserved space of the
+     * signature zero-filled.
+     */
+    private static class DigestingContainer implements ExternalSignatureContainer {
+
+        private final MessageDigest messageDigest;
+        private byte[] digest;
+
+        private DigestingContainer(MessageDigest messageDigest) {
+            this.messageDigest = messageDigest;
+        }
+
+        @Override
+        public byte[] sign(InputStream data) throws GeneralSecurityException {
+            try {
+                digest = DigestAlgorithms.digest(data, messageDigest);
+            } catch (IOException e) {
+                throw new GeneralSecurityException(e.getMessage(), e);
+            }
+            return new byte[0];
+        }
+
+        @Override
+        public void modifySigningDictionary(PdfDictionary signDic) {
+            signDic.put(PdfName.FILTER, PdfName.ADOBE_PPKLITE);
+            signDic.put(PdfName.SUBFILTER, PdfName.ADBE_PKCS7_DETACHED);
+        }
+
+        private byte[] getDigest() {
+            return digest;
+        }
+    }
+
+    /**
+     * Embeds the detached CMS signature built by a {@link CMSSignatureBuilder}.
+     */
+    private static class CMSSignatureContainer implements ExternalSignatureContainer {
+
+        private final CMSSignatureBuilder builder;
+
+        private CMSSignatureContainer(CMSSignatureBuilder builder) {
+            this.builder = builder;
+        }
+
+        @Override
+        public byte[] sign(InputStream data) throws GeneralSecurityException {
+            try {
+                return builder.sign(data);
+            } catch (IOException e) {
+                throw new GeneralSecurityException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void modifySigningDictionary(PdfDictionary signDic) {
+            signDic.put(PdfName.FILTER, PdfName.ADOBE_PPKLITE);
+            signDic.put(PdfName.SUBFILTER, PdfName.ADBE_PKCS7_DETACHED);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * *****************************************************************************
+ *
+ * @file ITextTSAClient.java
+ * @description iText TSAClient backed by the pooled client of the configured
+ *              time-stamping authority.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+import org.alfresco.extension.pdfsign.metrics.SigningTimer;
+
+import com.itextpdf.text.pdf.security.TSAClient;
+
+/**
+ * Lets iText timestamp signatures and documents with a {@link TimestampClient}, charging the
+ * requests to the timestamp phase of the signing timer.
+ */
+final class ITextTSAClient implements TSAClient {
+
+    private final TimestampClient timestampClient;
+    private final SigningTimer timer;
+
+    ITextTSAClient(TimestampClient timestampClient, SigningTimer timer) {
+        this.timestampClient = timestampClient;
+        this.timer = timer;
+    }
+
+    @Override
+    public int getTokenSizeEstimate() {
+        return timestampClient.getTokenSizeEstimate();
+    }
+
+    @Override
+    public MessageDigest getMessageDigest() throws GeneralSecurityException {
+        return timestampClient.getMessageDigest();
+    }
+
+    @Override
+    public byte[] getTimeStampToken(byte[] imprint) throws IOException {
+        return timestampClient.getTimeStampToken(imprint, timer);
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * *****************************************************************************
+ *
+ * @file KeyStoreLoader.java
+ * @description Loads signing credentials (private key and certificate chain) from
+ *              PKCS#12 key stores.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Enumeration;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+
+/**
+ * Loads signing credentials from PKCS#12, JKS and JCEKS key stores holding RSA, RSASSA-PSS or
+ * EC keys. The type of the key store is detected from its content. Passwords are converted to character
+ * arrays that are wiped as soon as the key store or the key has been read.
+ */
+public final class KeyStoreLoader {
+
+    private KeyStoreLoader() {
+    }
+
+    /**
+     * Loads the signing credential of the first entry of the given key store.
+     *
+     * @param keyStream the input stream containing the KeyStore data
+     * @param storePassword the password for the KeyStore
+     * @param keyPassword the password for the private key
+     * @return the signing credential
+     */
+    public static SigningCredential loadCredential(InputStream keyStream, String storePassword, String keyPassword) {
+        KeyStore ks = loadKeyStore(keyStream, storePassword);
+
+        String friendlyName = getFriendlyName(ks);
+
+        if (friendlyName == null) {
+            throw new AlfrescoRuntimeException("friendlyName was not found in the KeyStore");
+        }
+
+        try {
+            String alias = getAlias(ks);
+
+            PrivateKey key = getPrivateKey(ks, alias, keyPassword);
+            Certificate[] chain = getCertificateChain(ks, alias);
+
+            return new SigningCredential(alias, friendlyName, key, chain);
+        } catch (AlfrescoRuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AlfrescoRuntimeException("Error loading signing credential", e);
+        }
+    }
+
+    /**
+     * Retrieves the alias of the first private key entry in the provided KeyStore, or of its
+     * first entry if it holds no private key.
+     *
+     * @param ks the KeyStore object from which to retrieve the alias
+     * @return the alias of the signing entry, or {@code null} if the KeyStore is empty
+     * @throws Exception if an error occurs while accessing the KeyStore
+     */
+    public static String getAlias(KeyStore ks) throws Exception {
+        String first = null;
+        Enumeration<String> aliases = ks.aliases();
+        while (aliases.hasMoreElements()) {
+            String alias = aliases.nextElement();
+            if (ks.isKeyEntry(alias)) {
+                return alias;
+            }
+            if (first == null) {
+                first = alias;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Loads a KeyStore from the given input stream.
+     *
+     * @param keyStream the input stream containing the KeyStore data
+     * @param storePassword the password for the KeyStore
+     * @return the loaded KeyStore
+     */
+    public static KeyStore loadKeyStore(InputStream keyStream, String storePassword) {
+        char[] password = storePassword.toCharArray();
+        try (InputStream in = new BufferedInputStream(keyStream)) {
+            KeyStore ks = KeyStore.getInstance(detectType(in));
+            ks.load(in, password);
+            return ks;
+        } catch (Exception e) {
+            throw new AlfrescoRuntimeException("Error loading KeyStore", e);
+        } finally {
+            Arrays.fill(password, '\0');
+        }
+    }
+
+    /**
+     * Detects the type of a key store from its magic number, leaving the stream at its start.
+     *
+     * @param in the key store content, supporting mark and reset
+     * @return jks, jceks or pkcs12
+     * @throws IOException if the content cannot be read
+     */
+    private static String detectType(InputStream in) throws IOException {
+        in.mark(4);
+        int magic = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = in.read();
+            if (b < 0) {
+                break;
+            }
+            magic = (magic << 8) | b;
+        }
+        in.reset();
+
+        if (magic == 0xFEEDFEED) {
+            return "jks";
+        }
+        if (magic == 0xCECECECE) {
+            return "jceks";
+        }
+        return "pkcs12";
+    }
+
+    /**
+     * Retrieves a PrivateKey from the given KeyStore.
+     *
+     * @param ks the KeyStore
+     * @param alias the alias for the key
+     * @param keyPassword the password for the key
+     * @return the PrivateKey
+     */
+    public static PrivateKey getPrivateKey(KeyStore ks, String alias, String keyPassword) {
+        char[] password = keyPassword.toCharArray();
+        try {
+            Key key = ks.getKey(alias, password);
+            if (key instanceof PrivateKey) {
+                return (PrivateKey) key;
+            } else {
+                throw new AlfrescoRuntimeException("Key for alias " + alias + " is not a private key");
+            }
+        } catch (AlfrescoRuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AlfrescoRuntimeException("Error retrieving private key", e);
+        } finally {
+            Arrays.fill(password, '\0');
+        }
+    }
+
+    /**
+     * Retrieves the certificate chain for the given alias from the KeyStore.
+     *
+     * @param ks the KeyStore
+     * @param alias the alias for the certificate chain
+     * @return the certificate chain
+     */
+    public static Certificate[] getCertificateChain(KeyStore ks, String alias) {
+        try {
+            Certificate[] certChain = ks.getCertificateChain(alias);
+            if (certChain == null) {
+                throw new AlfrescoRuntimeException("Certificate chain for alias " + alias + " is null");
+            }
+            return certChain;
+        } catch (Exception e) {
+            throw new AlfrescoRuntimeException("Error retrieving certificate chain", e);
+        }
+    }
+
+    /**
+     * Retrieves the CN (Common Name) from the KeyStore's certificate subject.
+     *
+     * @param ks the KeyStore
+     * @return the CN (Common Name) or null if not found
+     */
+    public static String getFriendlyName(KeyStore ks) {
+        try {
+            Enumeration<String> aliases = ks.aliases();
+            while (aliases.hasMoreElements()) {
+                String alias = aliases.nextElement();
+                Certificate[] certChain = ks.getCertificateChain(alias);
+                if (certChain != null && certChain.length > 0) {
+                    X509Certificate cert = (X509Certificate) certChain[0];
+                    X500Principal principal = cert.getSubjectX500Principal();
+                    String dn = principal.getName();
+
+                    // Extract CN value from DN
+                    return extractCNFromDN(dn);
+                }
+            }
+        } catch (Exception e) {
+            throw new AlfrescoRuntimeException("Error retrieving friendly name", e);
+        }
+        return null;
+    }
+
+    /**
+     * Extracts the CN (Common Name) from a DN (Distinguished Name).
+     *
+     * @param dn the Distinguished Name
+     * @return the CN (Common Name) or null if not found
+     */
+    private static String extractCNFromDN(String dn) {
+        // Split the DN by commas to get individual components
+        String[] dnComponents = dn.split(",");
+
+        // Loop through the components to find the CN
+        for (String component : dnComponents) {
+            String[] keyValue = component.split("=", 2); // Split only once to handle cases with '=' in the value
+            if (keyValue.length == 2 && "CN".equalsIgnoreCase(keyValue[0].trim())) {
+                // Return the value of CN, removing any leading/trailing spaces
+                String cnValue = keyValue[1].trim();
+                // Return only the part before the first comma if it exists
+                int commaIndex = cnValue.indexOf(',');
+                if (commaIndex != -1) {
+                    return cnValue.substring(0, commaIndex).trim();
+                }
+                return cnValue;
+            }
+        }
+        return null;
+    }
+}
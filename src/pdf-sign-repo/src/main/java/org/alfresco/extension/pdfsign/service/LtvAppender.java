@@ -0,0 +1,215 @@
+/**
+ * *****************************************************************************
+ *
+ * @file LtvAppender.java
+ * @description Appends the validation material and the archive timestamp of
+ *              long-term validation to signed documents.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.alfresco.extension.pdfsign.metrics.SigningTimer;
+import org.alfresco.extension.pdfsign.metrics.SigningTimer.Phase;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.tsp.TSPException;
+import org.bouncycastle.tsp.TimeStampToken;
+
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.io.RandomAccessSourceFactory;
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.PdfString;
+import com.itextpdf.text.pdf.RandomAccessFileOrArray;
+import com.itextpdf.text.pdf.security.LtvTimestamp;
+import com.itextpdf.text.pdf.security.LtvVerification;
+
+/**
+ * Turns a signed document into a PAdES B-LT or B-LTA one. The certificates, OCSP responses and
+ * CRLs of the signing chain and of the chain of the signature timestamp are written to the
+ * document security store (DSS) in an incremental update, so they need no room in the
+ * signature itself. For B-LTA a document timestamp is appended in the same update, covering
+ * the signature and its validation material.
+ * <p>
+ * The signed document is read in partial mode from the spill file of the signing engine,
+ * whichever engine produced it.
+ */
+final class LtvAppender {
+
+    private static final Log logger = LogFactory.getLog(LtvAppender.class);
+
+    private final RevocationCache revocationCache;
+    private final TimestampClient timestampClient;
+
+    LtvAppender(RevocationCache revocationCache, TimestampClient timestampClient) {
+        this.revocationCache = revocationCache;
+        this.timestampClient = timestampClient;
+    }
+
+    /**
+     * Writes the signed document with its validation material.
+     *
+     * @param signedFile the signed document
+     * @param material the validation material of the signing chain
+     * @param archiveTimestamp whether a document timestamp is appended (B-LTA)
+     * @param workDir the directory for the temporary files of the document timestamp
+     * @param timer the timer of the signing operation
+     * @param out the stream the document is written to
+     * @throws IOException if the document cannot be read or written, or the validation material
+     *             of the timestamp authority cannot be collected
+     * @throws GeneralSecurityException if the validation material cannot be embedded
+     * @throws DocumentException if the document timestamp cannot be added
+     */
+    void append(File signedFile, ValidationMaterial material, boolean archiveTimestamp, File workDir, SigningTimer timer,
+            OutputStream out) throws IOException, GeneralSecurityException, DocumentException {
+        PdfReader reader = new PdfReader(new RandomAccessFileOrArray(
+                new RandomAccessSourceFactory().createBestSource(signedFile.getPath())), null);
+        try {
+            AcroFields fields = reader.getAcroFields();
+            List<String> names = fields.getSignatureNames();
+            if (names.isEmpty()) {
+                throw new IOException("The signed document holds no signature");
+            }
+            String name = names.get(names.size() - 1);
+
+            ValidationMaterial all = new ValidationMaterial();
+            all.addAll(material);
+            X509Certificate[] tsaChain = getTimestampChain(fields.getSignatureDictionary(name));
+            if (tsaChain.length > 0) {
+                timer.enter(Phase.REVOCATION);
+                try {
+                    all.addAll(collect(tsaChain));
+                } finally {
+                    timer.exit();
+                }
+            }
+
+            PdfStamper stamper = archiveTimestamp
+                    ? PdfStamper.createSignature(reader, out, '\0', workDir, true)
+                    : new PdfStamper(reader, out, '\0', true);
+            LtvVerification verification = stamper.getLtvVerification();
+            verification.addVerification(name, all.getOcsps(), all.getCrls(), all.getCertificates());
+            if (archiveTimestamp) {
+                // closes the stamper once the document timestamp is in place
+                LtvTimestamp.timestamp(stamper.getSignatureAppearance(), new ITextTSAClient(timestampClient, timer), null);
+            } else {
+                stamper.close();
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Collects the material of the chain of the timestamp authority. A chain the token does not
+     * carry up to its root contributes its certificates only.
+     */
+    private ValidationMaterial collect(X509Certificate[] chain) throws IOException, GeneralSecurityException {
+        X509Certificate last = chain[chain.length - 1];
+        if (last.getSubjectX500Principal().equals(last.getIssuerX500Principal())) {
+            return revocationCache.collect(chain);
+        }
+        logger.debug("The timestamp token does not carry the root of " + last.getSubjectX500Principal() + ", its revocation is not collected");
+        ValidationMaterial material = new ValidationMaterial();
+        for (X509Certificate certificate : chain) {
+            material.addCertificate(certificate.getEncoded());
+        }
+        return material;
+    }
+
+    /**
+     * Returns the certificate chain carried by the timestamp token of a signature, from the
+     * timestamp authority to its root, or an empty array if the signature is not timestamped.
+     */
+    private static X509Certificate[] getTimestampChain(PdfDictionary signature) throws IOException, GeneralSecurityException {
+        PdfString contents = signature.getAsString(PdfName.CONTENTS);
+        if (contents == null) {
+            return new X509Certificate[0];
+        }
+        try {
+            CMSSignedData signedData = new CMSSignedData(contents.getOriginalBytes());
+            SignerInformation signer = signedData.getSignerInfos().getSigners().iterator().next();
+            AttributeTable unsigned = signer.getUnsignedAttributes();
+            Attribute attribute = unsigned == null ? null : unsigned.get(PKCSObjectIdentifiers.id_aa_signatureTimeStampToken);
+            if (attribute == null) {
+                return new X509Certificate[0];
+            }
+            TimeStampToken token = new TimeStampToken(new CMSSignedData(
+                    attribute.getAttrValues().getObjectAt(0).toASN1Primitive().getEncoded()));
+
+            @SuppressWarnings("unchecked")
+            Collection<X509CertificateHolder> holders = token.getCertificates().getMatches(null);
+            JcaX509CertificateConverter converter = new JcaX509CertificateConverter();
+            List<X509Certificate> certificates = new ArrayList<X509Certificate>();
+            X509Certificate current = null;
+            for (X509CertificateHolder holder : holders) {
+                X509Certificate certificate = converter.getCertificate(holder);
+                certificates.add(certificate);
+                if (token.getSID().match(holder)) {
+                    current = certificate;
+                }
+            }
+            return order(current, certificates);
+        } catch (CMSException | TSPException e) {
+            throw new IOException("Could not read the timestamp of the signature: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Orders certificates into a chain starting at the given one, following the issuers.
+     */
+    static X509Certificate[] order(X509Certificate first, List<X509Certificate> certificates) {
+        List<X509Certificate> chain = new ArrayList<X509Certificate>();
+        X509Certificate current = first;
+        while (current != null && !chain.contains(current)) {
+            chain.add(current);
+            X509Certificate issuer = null;
+            for (X509Certificate candidate : certificates) {
+                if (candidate.getSubjectX500Principal().equals(current.getIssuerX500Principal()) && !candidate.equals(current)) {
+                    issuer = candidate;
+                    break;
+                }
+            }
+            current = issuer;
+        }
+        return chain.toArray(new X509Certificate[chain.size()]);
+    }
+}
@@ -0,0 +1,401 @@
+/**
+ * *****************************************************************************
+ *
+ * @file PDFBoxSignatureEngine.java
+ * @description SignatureEngine implementation based on Apache PDFBox 3, signing
+ *              with an incremental save and an external CMS signature.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import org.alfresco.extension.pdfsign.metrics.SigningTimer.Phase;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import org.apache.pdfbox.multipdf.LayerUtility;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceDictionary;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.ExternalSigningSupport;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.SignatureOptions;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDSignatureField;
+import org.apache.pdfbox.util.Matrix;
+
+/**
+ * Signs PDF documents with PDFBox 3. The document is parsed lazily from a random-access
+ * source and written with an incremental save, so only the signature dictionary and the
+ * objects it touches are appended to the original bytes. Documents above the file threshold
+ * are read from the content file (or a temporary copy of it) instead of from memory.
+ * <p>
+ * Signatures are detached CMS signatures ({@code adbe.pkcs7.detached}) computed over the
+ * byte range streamed by PDFBox. Visible signatures use the same text as the iText
+ * appearance and are positioned on the media box of the page.
+ */
+public class PDFBoxSignatureEngine implements SignatureEngine {
+
+    /** Name of this engine. */
+    public static final String NAME = "pdfbox";
+
+    private long fileThreshold = 16L * 1024 * 1024;
+    private CryptoProviders cryptoProviders = new CryptoProviders();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Opens a PDF document for signing.
+     *
+     * @param contentReader the ContentReader of the document
+     * @return the opened document
+     * @throws IOException if the content cannot be read or is not a valid PDF
+     */
+    @Override
+    public SignableDocument open(ContentReader contentReader) throws IOException {
+        if (contentReader.getSize() > fileThreshold) {
+            ContentFile contentFile = ContentFile.of(contentReader);
+            try {
+                return new PDFBoxDocument(Loader.loadPDF(new RandomAccessReadBufferedFile(contentFile.getFile())), contentFile, cryptoProviders);
+            } catch (IOException | RuntimeException e) {
+                contentFile.close();
+                throw e;
+            }
+        }
+        try (InputStream in = contentReader.getContentInputStream()) {
+            return new PDFBoxDocument(Loader.loadPDF(new RandomAccessReadBuffer(in)), null, cryptoProviders);
+        }
+    }
+
+    /**
+     * Sets the size in bytes above which documents are read from a file instead of being
+     * loaded into memory.
+     *
+     * @param fileThreshold the threshold in bytes
+     */
+    public void setFileThreshold(long fileThreshold) {
+        this.fileThreshold = fileThreshold;
+    }
+
+    /**
+     * Sets the JCA providers used to digest the document and compute the signature.
+     *
+     * @param cryptoProviders the CryptoProviders to set
+     */
+    public void setCryptoProviders(CryptoProviders cryptoProviders) {
+        this.cryptoProviders = cryptoProviders;
+    }
+
+    /**
+     * A document opened with PDFBox.
+     */
+    private static class PDFBoxDocument implements SignableDocument {
+
+        private final PDDocument document;
+        private final ContentFile contentFile;
+        private final CryptoProviders cryptoProviders;
+        /** The font of the appearance text, of this document only: PDFBox fonts are not shared between documents. */
+        private final PDFont font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+        /** Static appearance layers imported into this document, open until it is saved. */
+        private final List<PDDocument> staticLayers = new ArrayList<PDDocument>();
+
+        private PDFBoxDocument(PDDocument document, ContentFile contentFile, CryptoProviders cryptoProviders) {
+            this.document = document;
+            this.contentFile = contentFile;
+            this.cryptoProviders = cryptoProviders;
+        }
+
+        @Override
+        public int getNumberOfPages() {
+            return document.getNumberOfPages();
+        }
+
+        @Override
+        public void sign(SignatureRequest request, OutputStream out) throws IOException, GeneralSecurityException {
+            try (SignatureOptions options = new SignatureOptions()) {
+                CMSSignatureBuilder builder = new CMSSignatureBuilder(request, cryptoProviders);
+                options.setPreferredSignatureSize(Math.max(SignatureOptions.DEFAULT_SIGNATURE_SIZE * 2, builder.estimateSize()));
+
+                PDSignature signature = createSignature(request, options);
+                document.addSignature(signature, builder::sign, options);
+                document.saveIncremental(out);
+            }
+        }
+
+        @Override
+        public byte[] prepare(SignatureRequest request, int reservedSize, OutputStream out) throws IOException, GeneralSecurityException {
+            try (SignatureOptions options = new SignatureOptions()) {
+                options.setPreferredSignatureSize(reservedSize);
+
+                PDSignature signature = createSignature(request, options);
+                document.addSignature(signature, options);
+
+                ExternalSigningSupport external = document.saveIncrementalForExternalSigning(out);
+                MessageDigest digest = cryptoProviders.getMessageDigest(request.getDigestAlgorithm());
+                try (InputStream content = external.getContent()) {
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = content.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                    }
+                }
+
+                // writes the document with the reserved space left zero-filled
+                external.setSignature(new byte[0]);
+                return digest.digest();
+            }
+        }
+
+        /**
+         * Creates the signature dictionary and, for visible signatures, its appearance.
+         *
+         * @param request the signature request
+         * @param options the options receiving the appearance template
+         * @return the signature dictionary
+         * @throws IOException if the appearance cannot be written
+         */
+        private PDSignature createSignature(SignatureRequest request, SignatureOptions options) throws IOException {
+            Calendar signDate = Calendar.getInstance();
+
+            PDSignature signature = new PDSignature();
+            signature.setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
+            signature.setSubFilter(PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED);
+            signature.setName(request.getSignerName());
+            signature.setSignDate(signDate);
+
+            if (request.isVisible()) {
+                SignatureAppearance appearance = request.getAppearance();
+                String[] lines = appearance != null ? appearance.getDateLines(signDate) : appearanceText(request.getSignerName(), signDate);
+                int[] pages = request.getPages();
+
+                request.getTimer().enter(Phase.APPEARANCE);
+                try {
+                    PDRectangle box = signatureBox(request, pages[0]);
+                    options.setVisualSignature(appearanceTemplate(document.getPage(pages[0] - 1), box, lines, appearance));
+                    options.setPage(pages[0] - 1);
+
+                    // the signature widget goes on the first selected page, the remaining pages
+                    // get the same appearance drawn on their content, sharing a single static layer
+                    PDFormXObject staticLayer = null;
+                    for (int i = 1; i < pages.length; i++) {
+                        if (staticLayer == null && appearance != null) {
+                            staticLayer = importStaticLayer(document, appearance);
+                        }
+                        stampAppearance(pages[i], signatureBox(request, pages[i]), lines, appearance, staticLayer);
+                    }
+                } finally {
+                    request.getTimer().exit();
+                }
+            }
+            return signature;
+        }
+
+        /**
+         * Calculates the box of the visible signature on the given page.
+         *
+         * @param request the signature request
+         * @param page the 1-based page the signature is placed on
+         * @return the signature box in default user space
+         */
+        private PDRectangle signatureBox(SignatureRequest request, int page) {
+            PDRectangle mediaBox = document.getPage(page - 1).getMediaBox();
+            float[] box = request.getSignatureBox(mediaBox.getWidth(), mediaBox.getHeight());
+            return new PDRectangle(mediaBox.getLowerLeftX() + box[0], mediaBox.getLowerLeftY() + box[1], box[2] - box[0], box[3] - box[1]);
+        }
+
+        /**
+         * Builds the single page document PDFBox takes the signature widget and its
+         * appearance from.
+         *
+         * @param page the page the signature is placed on
+         * @param box the signature box
+         * @param lines the text of the appearance, without the lines of the static layer
+         * @param appearance the layout of the appearance, or null for the default text layout
+         * @return the serialized template document
+         * @throws IOException if the template cannot be written
+         */
+        private InputStream appearanceTemplate(PDPage page, PDRectangle box, String[] lines, SignatureAppearance appearance) throws IOException {
+            try (PDDocument template = new PDDocument()) {
+                template.addPage(new PDPage(page.getMediaBox()));
+
+                PDAcroForm acroForm = new PDAcroForm(template);
+                template.getDocumentCatalog().setAcroForm(acroForm);
+                acroForm.setSignaturesExist(true);
+                acroForm.setAppendOnly(true);
+                acroForm.getCOSObject().setDirect(true);
+
+                PDSignatureField signatureField = new PDSignatureField(acroForm);
+                acroForm.getFields().add(signatureField);
+
+                PDAnnotationWidget widget = signatureField.getWidgets().get(0);
+                widget.setRectangle(box);
+
+                PDFormXObject form = new PDFormXObject(new PDStream(template));
+                form.setResources(new PDResources());
+                form.setFormType(1);
+                form.setBBox(new PDRectangle(box.getWidth(), box.getHeight()));
+
+                PDAppearanceStream appearanceStream = new PDAppearanceStream(form.getCOSObject());
+                PDAppearanceDictionary apDict = new PDAppearanceDictionary();
+                apDict.getCOSObject().setDirect(true);
+                apDict.setNormalAppearance(appearanceStream);
+                widget.setAppearance(apDict);
+
+                try (PDPageContentStream cs = new PDPageContentStream(template, appearanceStream)) {
+                    PDFormXObject staticLayer = appearance != null ? importStaticLayer(template, appearance) : null;
+                    drawAppearance(cs, 0, 0, box.getWidth(), box.getHeight(), lines, appearance, staticLayer);
+                }
+
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                template.save(buffer);
+                return new ByteArrayInputStream(buffer.toByteArray());
+            }
+        }
+
+        /**
+         * Draws the signature appearance on the content of a page other than the one holding
+         * the signature widget, flagging the modified objects for the incremental save.
+         *
+         * @param pageNumber the 1-based page number
+         * @param box the signature box
+         * @param lines the text of the appearance, without the lines of the static layer
+         * @param appearance the layout of the appearance, or null for the default text layout
+         * @param staticLayer the static layer imported into the document, or null
+         * @throws IOException if the page content cannot be written
+         */
+        private void stampAppearance(int pageNumber, PDRectangle box, String[] lines, SignatureAppearance appearance, PDFormXObject staticLayer)
+                throws IOException {
+            PDPage page = document.getPage(pageNumber - 1);
+            try (PDPageContentStream cs = new PDPageContentStream(document, page, PDPageContentStream.AppendMode.APPEND, true, true)) {
+                drawAppearance(cs, box.getLowerLeftX(), box.getLowerLeftY(), box.getWidth(), box.getHeight(), lines, appearance, staticLayer);
+            }
+            page.getCOSObject().setNeedToBeUpdated(true);
+            page.getResources().getCOSObject().setNeedToBeUpdated(true);
+            COSBase contents = page.getCOSObject().getDictionaryObject(COSName.CONTENTS);
+            if (contents instanceof COSArray) {
+                ((COSArray) contents).setNeedToBeUpdated(true);
+            }
+        }
+
+        /**
+         * Imports the cached static layer of an appearance into the given document as a form
+         * XObject. The parsed layer stays open until this document is closed.
+         */
+        private PDFormXObject importStaticLayer(PDDocument target, SignatureAppearance appearance) throws IOException {
+            PDDocument staticLayer = Loader.loadPDF(appearance.getStaticLayer());
+            staticLayers.add(staticLayer);
+            return new LayerUtility(target).importPageAsForm(staticLayer, 0);
+        }
+
+        /**
+         * Draws the appearance inside the given box. Without a pre-computed layout the text fills
+         * the box, with the font sized so the longest line fits its width.
+         */
+        private void drawAppearance(PDPageContentStream cs, float x, float y, float width, float height, String[] lines,
+                SignatureAppearance appearance, PDFormXObject staticLayer) throws IOException {
+            if (appearance == null) {
+                float longest = 0;
+                for (String line : lines) {
+                    longest = Math.max(longest, font.getStringWidth(line) / 1000);
+                }
+                float fontSize = Math.min(longest > 0 ? width / longest : 12, height / (lines.length * SignatureAppearance.LEADING));
+                drawText(cs, x, y + height, fontSize, lines);
+                return;
+            }
+
+            cs.saveGraphicsState();
+            cs.transform(Matrix.getTranslateInstance(x, y));
+            cs.drawForm(staticLayer);
+            cs.restoreGraphicsState();
+            float[] textBox = appearance.getTextBox();
+            drawText(cs, x + textBox[0], y + textBox[1] + textBox[3], appearance.getFontSize(), lines);
+        }
+
+        /**
+         * Draws the appearance text, starting from the given top-left corner.
+         */
+        private void drawText(PDPageContentStream cs, float x, float top, float fontSize, String[] lines) throws IOException {
+            cs.beginText();
+            cs.setFont(font, fontSize);
+            cs.setLeading(fontSize * SignatureAppearance.LEADING);
+            cs.newLineAtOffset(x, top - fontSize);
+            for (int i = 0; i < lines.length; i++) {
+                if (i > 0) {
+                    cs.newLine();
+                }
+                if (lines[i] != null) {
+                    cs.showText(lines[i]);
+                }
+            }
+            cs.endText();
+        }
+
+        /**
+         * Returns the text of the signature appearance, matching the iText default.
+         */
+        private static String[] appearanceText(String signerName, Calendar signDate) {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy.MM.dd HH:mm:ss z");
+            return new String[] { "Digitally signed by " + signerName, "Date: " + format.format(signDate.getTime()) };
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                document.close();
+            } finally {
+                for (PDDocument staticLayer : staticLayers) {
+                    staticLayer.close();
+                }
+                if (contentFile != null) {
+                    contentFile.close();
+                }
+            }
+        }
+    }
+}
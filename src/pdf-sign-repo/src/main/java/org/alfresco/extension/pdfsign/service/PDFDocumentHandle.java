@@ -0,0 +1,105 @@
+/**
+ * *****************************************************************************
+ *
+ * @file PDFDocumentHandle.java
+ * @description Opens PDF documents stored in Alfresco with iText partial reading,
+ *              so only the cross-reference table is loaded into memory.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import org.alfresco.service.cmr.repository.ContentReader;
+
+import com.itextpdf.text.io.RandomAccessSource;
+import com.itextpdf.text.io.RandomAccessSourceFactory;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.RandomAccessFileOrArray;
+
+/**
+ * A PDF document opened in iText partial mode: only the trailer and cross-reference table
+ * are parsed up front, objects are read from a random-access source on demand.
+ * <p>
+ * Content held by a file content store is read in place. Any other content is first copied
+ * to a temporary file, which is deleted when the handle is closed.
+ */
+public final class PDFDocumentHandle implements Closeable {
+
+    private final PdfReader reader;
+    private final ContentFile contentFile;
+
+    private PDFDocumentHandle(PdfReader reader, ContentFile contentFile) {
+        this.reader = reader;
+        this.contentFile = contentFile;
+    }
+
+    /**
+     * Opens the content of the given reader in partial mode.
+     *
+     * @param contentReader the ContentReader of the PDF document
+     * @return the opened document
+     * @throws IOException if the content cannot be read or is not a valid PDF
+     */
+    public static PDFDocumentHandle open(ContentReader contentReader) throws IOException {
+        ContentFile contentFile = ContentFile.of(contentReader);
+        try {
+            RandomAccessSource source = new RandomAccessSourceFactory().createBestSource(contentFile.getFile().getPath());
+            PdfReader reader = new PdfReader(new RandomAccessFileOrArray(source), null);
+            return new PDFDocumentHandle(reader, contentFile);
+        } catch (IOException | RuntimeException e) {
+            contentFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the iText reader of the document.
+     *
+     * @return the PdfReader, working in partial mode
+     */
+    public PdfReader getReader() {
+        return reader;
+    }
+
+    /**
+     * Returns the file the document is read from.
+     *
+     * @return the content file or its temporary copy
+     */
+    public File getFile() {
+        return contentFile.getFile();
+    }
+
+    /**
+     * Closes the reader and deletes the temporary copy of the content, if any.
+     */
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } finally {
+            contentFile.close();
+        }
+    }
+}
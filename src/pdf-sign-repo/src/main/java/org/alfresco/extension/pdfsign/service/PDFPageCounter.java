@@ -0,0 +1,162 @@
+/**
+ * *****************************************************************************
+ *
+ * @file PDFPageCounter.java
+ * @description Retrieves the page count of PDF documents stored in Alfresco without
+ *              parsing the whole document, caching the result by content URL.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.alfresco.extension.pdfsign.model.PDFSignModel;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.namespace.QName;
+
+/**
+ * Retrieves the page count of PDF documents.
+ * <p>
+ * The count is looked up, in order, in a cache keyed by content URL, in the
+ * {@code pdft:pageinfo} aspect recorded when the content was written, and finally read
+ * from the page tree of the document opened in partial mode. Content URLs are immutable,
+ * so cached counts never go stale.
+ * <p>
+ * The counter is safe for concurrent use: concurrent requests for the same content share a
+ * single read of the document instead of each parsing it.
+ */
+public class PDFPageCounter {
+
+    private NodeService nodeService;
+    private SimpleCache<String, Integer> pageCountCache;
+
+    /** Page counts being read, by content URL. */
+    private final ConcurrentHashMap<String, FutureTask<Integer>> inflight = new ConcurrentHashMap<String, FutureTask<Integer>>();
+
+    /**
+     * Returns the page count of the given PDF document.
+     *
+     * @param nodeRef the NodeRef of the document
+     * @param contentReader the ContentReader of the document content
+     * @return the number of pages
+     * @throws IOException if the content cannot be read or is not a valid PDF
+     */
+    public int getPageCount(NodeRef nodeRef, final ContentReader contentReader) throws IOException {
+        String contentUrl = contentReader.getContentUrl();
+
+        Integer count = pageCountCache.get(contentUrl);
+        if (count != null) {
+            return count;
+        }
+
+        count = getRecordedPageCount(nodeRef, contentUrl);
+        if (count == null) {
+            count = readPageCountOnce(contentUrl, contentReader);
+        }
+
+        pageCountCache.put(contentUrl, count);
+        return count;
+    }
+
+    /**
+     * Reads the page count of the given content, joining a read of the same content
+     * already in progress in another thread.
+     *
+     * @param contentUrl the content URL
+     * @param contentReader the ContentReader of the document content
+     * @return the number of pages
+     * @throws IOException if the content cannot be read or is not a valid PDF
+     */
+    private int readPageCountOnce(String contentUrl, final ContentReader contentReader) throws IOException {
+        FutureTask<Integer> task = new FutureTask<Integer>(() -> readPageCount(contentReader));
+        FutureTask<Integer> running = inflight.putIfAbsent(contentUrl, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                inflight.remove(contentUrl, task);
+            }
+        }
+
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the page count of " + contentUrl, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Could not read the page count of " + contentUrl, e.getCause());
+        }
+    }
+
+    /**
+     * Reads the page count from the page tree of the document.
+     *
+     * @param contentReader the ContentReader of the document content
+     * @return the number of pages
+     * @throws IOException if the content cannot be read or is not a valid PDF
+     */
+    public int readPageCount(ContentReader contentReader) throws IOException {
+        try (PDFDocumentHandle document = PDFDocumentHandle.open(contentReader)) {
+            return document.getReader().getNumberOfPages();
+        }
+    }
+
+    /**
+     * Returns the page count recorded on the node, if it was read from the current content.
+     *
+     * @param nodeRef the NodeRef of the document
+     * @param contentUrl the current content URL of the document
+     * @return the recorded page count, or null if there is none for the current content
+     */
+    private Integer getRecordedPageCount(NodeRef nodeRef, String contentUrl) {
+        if (nodeRef == null || !nodeService.hasAspect(nodeRef, PDFSignModel.ASPECT_PAGEINFO)) {
+            return null;
+        }
+        Map<QName, Serializable> props = nodeService.getProperties(nodeRef);
+        if (contentUrl != null && contentUrl.equals(props.get(PDFSignModel.PROP_PAGECOUNT_CONTENTURL))) {
+            return (Integer) props.get(PDFSignModel.PROP_PAGECOUNT);
+        }
+        return null;
+    }
+
+    public void setNodeService(NodeService nodeService) {
+        this.nodeService = nodeService;
+    }
+
+    public void setPageCountCache(SimpleCache<String, Integer> pageCountCache) {
+        this.pageCountCache = pageCountCache;
+    }
+}
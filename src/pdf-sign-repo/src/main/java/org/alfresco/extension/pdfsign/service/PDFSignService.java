@@ -29,6 +29,7 @@ package org.alfresco.extension.pdfsign.service;
 import org.alfresco.service.cmr.repository.NodeRef;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Map;
 
 /**
@@ -45,4 +46,77 @@ public interface PDFSignService {
      * @return a NodeRef pointing to the signed PDF
      */
     NodeRef signPDF(NodeRef targetNodeRef, Map<String, Serializable> params);
+
+    /**
+     * Prepares a PDF document for a signature computed outside the repository. The document
+     * is written with the signature field and its appearance and with zero-filled space
+     * reserved for the CMS signature, and the digest of the byte range to sign is recorded in
+     * the {@code pdft:pendingsignature} aspect. No private key is needed: the appearance shows
+     * the {@code signer-name} parameter, or the current user.
+     *
+     * @param targetNodeRef the NodeRef pointing to the PDF document to be signed
+     * @param params a map of parameters describing the signature, as for {@link #signPDF}
+     *               but without key store
+     * @return the prepared signature, holding the prepared node and the digest to sign
+     */
+    PreparedSignature prepareSignature(NodeRef targetNodeRef, Map<String, Serializable> params);
+
+    /**
+     * Completes a signature prepared with {@link #prepareSignature(NodeRef, Map)} by injecting
+     * a detached CMS signature computed outside the repository over the prepared digest.
+     *
+     * @param preparedNodeRef the NodeRef of the prepared document
+     * @param cms the encoded CMS signature
+     * @return the NodeRef of the signed document, which is the prepared one
+     */
+    NodeRef completeSignature(NodeRef preparedNodeRef, byte[] cms);
+
+    /**
+     * Submits an asynchronous job that signs every given PDF document with the same parameters.
+     * Documents are signed in parallel by a bounded worker pool, each one in its own retrying
+     * transaction, on behalf of the current user.
+     *
+     * @param targetNodeRefs the NodeRefs pointing to the PDF documents to be signed
+     * @param params a map of parameters required for signing the PDFs
+     * @return the job, which reports progress and per-document failures and can be cancelled
+     */
+    SignBatchJob signBatch(Collection<NodeRef> targetNodeRefs, Map<String, Serializable> params);
+
+    /**
+     * Retrieves a bulk signing job previously submitted with {@link #signBatch(Collection, Map)}.
+     *
+     * @param jobId the job identifier
+     * @return the job, or null if it is unknown or has already been discarded
+     */
+    SignBatchJob getBatchJob(String jobId);
+
+    /**
+     * Submits an asynchronous job that signs the unsigned PDF documents of a folder tree with the
+     * same parameters. The tree is walked one page of children at a time and the documents found
+     * are signed in bulk signing batches. The last document of every completed batch is recorded
+     * on the folder as a checkpoint, so signing the folder again after an interruption resumes
+     * after it.
+     *
+     * @param folderNodeRef the NodeRef pointing to the root folder
+     * @param params a map of parameters required for signing the PDFs
+     * @return the job, which reports progress and can be cancelled
+     */
+    FolderSignJob signFolder(NodeRef folderNodeRef, Map<String, Serializable> params);
+
+    /**
+     * Retrieves a folder signing job previously submitted with {@link #signFolder(NodeRef, Map)}.
+     *
+     * @param jobId the job identifier
+     * @return the job, or null if it is unknown or has already been discarded
+     */
+    FolderSignJob getFolderJob(String jobId);
+
+    /**
+     * Verifies every signature of a PDF document: the integrity of the bytes each one covers,
+     * its certificate chain and its timestamp. Results are cached by content URL.
+     *
+     * @param targetNodeRef the NodeRef pointing to the PDF document to be verified
+     * @return the verification of every signature of the document
+     */
+    VerificationResult verifyPDF(NodeRef targetNodeRef);
 }
@@ -3,7 +3,7 @@
  *
  * @file PDFSignServiceImpl.java
  * @description Implementation of the PDFSignService interface. Provides methods
- * for applying digital signatures to PDF documents using iText library.
+ * for applying digital signatures to PDF documents using a pluggable SignatureEngine.
  * @author Rober de Avila Abraira
  * @version 1.0
  * @date 2024/08/04
@@ -23,46 +23,82 @@
 
 package org.alfresco.extension.pdfsign.service;
 
-import com.itextpdf.text.Rectangle;
-import com.itextpdf.text.pdf.PdfReader;
-import com.itextpdf.text.pdf.PdfSignatureAppearance;
-import com.itextpdf.text.pdf.PdfStamper;
-import com.itextpdf.text.pdf.security.*;
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.extension.pdfsign.constants.PDFSignConstants;
+import org.alfresco.extension.pdfsign.metrics.PDFSignMetrics;
+import org.alfresco.extension.pdfsign.metrics.SigningTimer;
+import org.alfresco.extension.pdfsign.metrics.SigningTimer.Phase;
 import org.alfresco.extension.pdfsign.model.PDFSignModel;
 import org.alfresco.model.ContentModel;
+import org.alfresco.model.RenditionModel;
+import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.service.ServiceRegistry;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.dictionary.PropertyDefinition;
 import org.alfresco.service.cmr.model.FileFolderService;
 import org.alfresco.service.cmr.model.FileInfo;
-import org.alfresco.service.cmr.model.FileNotFoundException;
 import org.alfresco.service.cmr.repository.*;
+import org.alfresco.service.cmr.security.AccessStatus;
 import org.alfresco.service.cmr.security.AuthenticationService;
+import org.alfresco.service.cmr.security.PermissionService;
 import org.alfresco.service.cmr.security.PersonService;
+import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
-import org.alfresco.util.TempFileProvider;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.GUID;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.dao.ConcurrencyFailureException;
 
 import java.io.*;
-import java.security.Key;
-import java.security.KeyStore;
-import java.security.PrivateKey;
-import java.security.cert.Certificate;
-import java.security.cert.X509Certificate;
-import javax.security.auth.x500.X500Principal;
+import java.security.DigestOutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 
 /**
  * Implementation of the PDFSignService interface. Provides methods for applying
- * digital signatures to PDF documents using the iText library.
+ * digital signatures to PDF documents. The PDF library is provided by a {@link SignatureEngine},
+ * selected with the {@code engine} parameter or the configured default engine.
  */
 public class PDFSignServiceImpl extends PDFSignConstants implements PDFSignService {
 
+    private static final Log logger = LogFactory.getLog(PDFSignServiceImpl.class);
+
+    /**
+     * Aspects of a target left out of the metadata of its signed copy. The copy records the target
+     * as its own original, and is made versionable once it holds its content.
+     */
+    private static final Set<QName> UNCOPIED_ASPECTS = Collections.unmodifiableSet(new HashSet<QName>(Arrays.asList(
+            ContentModel.ASPECT_AUDITABLE, ContentModel.ASPECT_LOCKABLE, ContentModel.ASPECT_WORKING_COPY,
+            ContentModel.ASPECT_CHECKED_OUT, ContentModel.ASPECT_COPIEDFROM, ContentModel.ASPECT_VERSIONABLE,
+            ContentModel.ASPECT_THUMBNAIL_MODIFICATION,
+            RenditionModel.ASPECT_RENDITIONED, PDFSignModel.ASPECT_SIGNED, PDFSignModel.ASPECT_PAGEINFO,
+            PDFSignModel.ASPECT_SIGNATUREINFO, PDFSignModel.ASPECT_PENDINGSIGNATURE)));
+
+    /** Properties of a target left out of the metadata of its signed copy, the copy starts its own version history. */
+    private static final Set<QName> UNCOPIED_PROPERTIES = Collections.unmodifiableSet(new HashSet<QName>(Arrays.asList(
+            ContentModel.PROP_CONTENT, ContentModel.PROP_NAME, ContentModel.PROP_VERSION_LABEL, ContentModel.PROP_VERSION_TYPE)));
+
     private ServiceRegistry serviceRegistry;
     private NodeService ns;
     private ContentService cs;
@@ -70,6 +106,17 @@ public class PDFSignServiceImpl extends PDFSignConstants implements PDFSignServi
     private DictionaryService ds;
     private PersonService ps;
     private AuthenticationService as;
+    private PermissionService permissionService;
+    private TransactionService ts;
+    private SigningCredentialCache credentialCache;
+    private PDFSignMetrics metrics;
+    private CryptoProviders cryptoProviders = new CryptoProviders();
+    private AppearanceCache appearanceCache;
+    private SigningCoordinator signingCoordinator;
+    private TimestampClient timestampClient;
+    private RevocationCache revocationCache;
+    private SimpleCache<String, SignedOutput> signedOutputCache;
+    private SignatureVerifier signatureVerifier;
 
     private boolean useSignatureAspect = true;
     private boolean createNew = false;
@@ -77,513 +124,1490 @@ public class PDFSignServiceImpl extends PDFSignConstants implements PDFSignServi
     private int defaultWidth = 200;
     private int defaultHeight = 100;
 
-    /**
-     * Retrieves the alias of the first entry in the provided KeyStore.
-     *
-     * @param ks the KeyStore object from which to retrieve the alias
-     * @return the alias of the first entry in the KeyStore, or {@code null} if the KeyStore is empty
-     * @throws Exception if an error occurs while accessing the KeyStore
-     */
-    private static String getAlias(KeyStore ks) throws Exception {
-        Enumeration<String> aliases = ks.aliases();
-        if (aliases.hasMoreElements()) {
-            return aliases.nextElement();
-        }
-        return null;
-    }
-
-    /**
-     * Loads a KeyStore from the given input stream.
-     *
-     * @param keyStream the input stream containing the KeyStore data
-     * @param storePassword the password for the KeyStore
-     * @return the loaded KeyStore
-     */
-    private KeyStore loadKeyStore(InputStream keyStream, String storePassword) {
-        try {
-            KeyStore ks = KeyStore.getInstance("pkcs12");
-            ks.load(keyStream, storePassword.toCharArray());
-            return ks;
-        } catch (Exception e) {
-            throw new AlfrescoRuntimeException("Error loading KeyStore", e);
-        }
-    }
+    private long inMemoryThreshold = 16L * 1024 * 1024;
+    private int deferredReservedSize = 32 * 1024;
+    private String defaultIdempotency = IDEMPOTENCY_NONE;
+    private String defaultSignatureLevel = null;
 
-    /**
-     * Retrieves a PrivateKey from the given KeyStore.
-     *
-     * @param ks the KeyStore
-     * @param alias the alias for the key
-     * @param keyPassword the password for the key
-     * @return the PrivateKey
-     */
-    private PrivateKey getPrivateKey(KeyStore ks, String alias, String keyPassword) {
-        try {
-            Key key = ks.getKey(alias, keyPassword.toCharArray());
-            if (key instanceof PrivateKey) {
-                return (PrivateKey) key;
-            } else {
-                throw new AlfrescoRuntimeException("Key for alias " + alias + " is not a private key");
-            }
-        } catch (Exception e) {
-            throw new AlfrescoRuntimeException("Error retrieving private key", e);
-        }
-    }
+    private final Map<String, SignatureEngine> engines = new HashMap<String, SignatureEngine>();
+    private String defaultEngine = ITextSignatureEngine.NAME;
 
-    /**
-     * Retrieves the certificate chain for the given alias from the KeyStore.
-     *
-     * @param ks the KeyStore
-     * @param alias the alias for the certificate chain
-     * @return the certificate chain
-     */
-    private Certificate[] getCertificateChain(KeyStore ks, String alias) {
-        try {
-            Certificate[] certChain = ks.getCertificateChain(alias);
-            if (certChain == null) {
-                throw new AlfrescoRuntimeException("Certificate chain for alias " + alias + " is null");
-            }
-            return certChain;
-        } catch (Exception e) {
-            throw new AlfrescoRuntimeException("Error retrieving certificate chain", e);
-        }
-    }
+    private ThreadPoolExecutor batchExecutor;
+    private int batchParallelism = 4;
+    private long batchJobRetentionSeconds = 3600;
+    private final Map<String, SignBatchJob> batchJobs = new ConcurrentHashMap<String, SignBatchJob>();
 
-    /**
-     * Retrieves the CN (Common Name) from the KeyStore's certificate subject.
-     *
-     * @param ks the KeyStore
-     * @return the CN (Common Name) or null if not found
-     */
-    private String getFriendlyName(KeyStore ks) {
-        try {
-            Enumeration<String> aliases = ks.aliases();
-            while (aliases.hasMoreElements()) {
-                String alias = aliases.nextElement();
-                Certificate[] certChain = ks.getCertificateChain(alias);
-                if (certChain != null && certChain.length > 0) {
-                    X509Certificate cert = (X509Certificate) certChain[0];
-                    X500Principal principal = cert.getSubjectX500Principal();
-                    String dn = principal.getName();
-
-                    // Extract CN value from DN
-                    return extractCNFromDN(dn);
-                }
-            }
-        } catch (Exception e) {
-            throw new AlfrescoRuntimeException("Error retrieving friendly name", e);
-        }
-        return null;
-    }
+    private ThreadPoolExecutor folderExecutor;
+    private int folderBatchSize = 100;
+    private int folderPageSize = 250;
+    private final Map<String, FolderSignJob> folderJobs = new ConcurrentHashMap<String, FolderSignJob>();
 
     /**
-     * Extracts the CN (Common Name) from a DN (Distinguished Name).
+     * Applies a digital signature to a PDF document.
      *
-     * @param dn the Distinguished Name
-     * @return the CN (Common Name) or null if not found
+     * @param targetNodeRef the NodeRef pointing to the PDF document to be signed
+     * @param params a map of parameters required for signing the PDF
+     * @return a NodeRef pointing to the signed PDF
      */
-    private String extractCNFromDN(String dn) {
-        // Split the DN by commas to get individual components
-        String[] dnComponents = dn.split(",");
-
-        // Loop through the components to find the CN
-        for (String component : dnComponents) {
-            String[] keyValue = component.split("=", 2); // Split only once to handle cases with '=' in the value
-            if (keyValue.length == 2 && "CN".equalsIgnoreCase(keyValue[0].trim())) {
-                // Return the value of CN, removing any leading/trailing spaces
-                String cnValue = keyValue[1].trim();
-                // Return only the part before the first comma if it exists
-                int commaIndex = cnValue.indexOf(',');
-                if (commaIndex != -1) {
-                    return cnValue.substring(0, commaIndex).trim();
-                }
-                return cnValue;
-            }
+    @Override
+    public NodeRef signPDF(NodeRef targetNodeRef, Map<String, Serializable> params) {
+        try (SigningWorkspace workspace = new SigningWorkspace(targetNodeRef)) {
+            return signPDF(targetNodeRef, params, workspace);
         }
-        return null;
     }
 
     /**
-     * Applies a digital signature to a PDF document.
+     * Applies a digital signature to a PDF document, keeping temporary files in the given
+     * workspace. The workspace is closed by the caller after the document and the output
+     * stream have been closed.
      *
      * @param targetNodeRef the NodeRef pointing to the PDF document to be signed
      * @param params a map of parameters required for signing the PDF
+     * @param workspace the workspace of this signing operation
      * @return a NodeRef pointing to the signed PDF
      */
-    @Override
-    public NodeRef signPDF(NodeRef targetNodeRef, Map<String, Serializable> params) {
+    private NodeRef signPDF(NodeRef targetNodeRef, Map<String, Serializable> params, SigningWorkspace workspace) {
         NodeRef privateKey = (NodeRef) params.get(PARAM_PRIVATE_KEY);
-        String position = (String) params.get(PARAM_POSITION);
-        String visibility = (String) params.get(PARAM_VISIBILITY);
         String keyPassword = (String) params.get(PARAM_KEY_PASSWORD);
-        int width = getInteger(params.get(PARAM_WIDTH));
-        int height = getInteger(params.get(PARAM_HEIGHT));
-        int pageNumber = getInteger(params.get(PARAM_PAGE));
-        String pageNumberParam = (String) params.get(PARAM_PAGE);
-        boolean signAllPages = "all".equalsIgnoreCase(pageNumberParam);
-        boolean signLastPage = "last".equalsIgnoreCase(pageNumberParam);
-        int specificPageNumber = signAllPages || signLastPage ? -1 : getInteger(pageNumberParam);
+        String storePassword = (String) params.get(PARAM_STORE_PASSWORD);
+        PageSelection pageSelection = PageSelection.parse((String) params.get(PARAM_PAGE));
 
-        if (height == 0) {
-            height = defaultHeight;
-        }
-        if (width == 0) {
-            width = defaultWidth;
-        }
+        Boolean inplace = Boolean.valueOf(String.valueOf(params.get(PARAM_INPLACE)));
 
-        boolean appendToExisting = true;
-        if (params.get(PARAM_NEW_REVISION) != null) {
-            appendToExisting = Boolean.parseBoolean(String.valueOf(params.get(PARAM_NEW_REVISION)));
+        SignatureEngine engine = getEngine((String) params.get(PARAM_ENGINE));
+        SignatureRequest request = newRequest(params);
+        String signatureLevel = getSignatureLevel((String) params.get(PARAM_SIGNATURE_LEVEL));
+        if (!SIGNATURE_LEVEL_B_B.equals(signatureLevel) && timestampClient != null && timestampClient.isEnabled()) {
+            request.setTimestampClient(timestampClient);
         }
+        boolean ltv = SIGNATURE_LEVEL_B_LT.equals(signatureLevel) || SIGNATURE_LEVEL_B_LTA.equals(signatureLevel);
+        String pageMode = pageSelection.getScheme();
+        String idempotency = getIdempotency((String) params.get(PARAM_IDEMPOTENCY));
 
-        String storePassword = (String) params.get(PARAM_STORE_PASSWORD);
-
-        int locationX = getInteger(params.get(PARAM_LOCATION_X));
-        int locationY = getInteger(params.get(PARAM_LOCATION_Y));
-
-        Boolean inplace = Boolean.valueOf(String.valueOf(params.get(PARAM_INPLACE)));
+        SigningTimer timer = new SigningTimer();
+        String outcome = PDFSignMetrics.OUTCOME_FAILURE;
+        long documentSize = -1;
+        int numPages = -1;
 
-        File tempDir = null;
         ContentWriter writer = null;
 
         NodeRef destinationNode = null;
-        PdfStamper stamper = null;
-        FileOutputStream fout = null;
-
-        try {
-            KeyStore ks = null;
-
-            ContentReader keyReader = getReader(privateKey);
-            ks = loadKeyStore(keyReader.getContentInputStream(), storePassword);
+        SignableDocument document = null;
+        OutputStream out = null;
 
-            String friendlyName = getFriendlyName(ks);
+        SigningCredential credential = null;
 
-            if (friendlyName == null) {
-                throw new AlfrescoRuntimeException("friendlyName was not found in the KeyStore");
+        try {
+            // signatures written over the document are serialized, so each one is appended to the previous one
+            if (inplace) {
+                lockForSigning(targetNodeRef);
             }
 
-            String alias = getAlias(ks);
-
-            PrivateKey key = getPrivateKey(ks, alias, keyPassword);
-            Certificate[] chain = getCertificateChain(ks, alias);
+            timer.enter(Phase.KEYSTORE_LOAD);
+            credential = acquireCredential(privateKey, storePassword, keyPassword);
+            timer.exit();
+
+            Map<QName, Serializable> signatureProps = new HashMap<QName, Serializable>();
+            signatureProps.put(PDFSignModel.PROP_CERTFINGERPRINT,
+                    SignatureFingerprints.certificateFingerprint(credential.getChain()[0], cryptoProviders));
+            // without a level the signature is timestamped when a time-stamping authority is configured
+            String effectiveLevel = signatureLevel != null ? signatureLevel
+                    : request.getTimestampClient() != null ? SIGNATURE_LEVEL_B_T : SIGNATURE_LEVEL_B_B;
+            signatureProps.put(PDFSignModel.PROP_PARAMETERSHASH, SignatureFingerprints.parametersHash(params, effectiveLevel,
+                    request.isAppendToExisting(), cryptoProviders));
+            signatureProps.put(PDFSignModel.PROP_SOURCEHASH, null);
+
+            // a retried rule or a second click returns the document signed the first time
+            if (!IDEMPOTENCY_NONE.equals(idempotency)) {
+                String sourceHash = SignatureFingerprints.contentHash(getReader(targetNodeRef), cryptoProviders);
+                signatureProps.put(PDFSignModel.PROP_SOURCEHASH, sourceHash);
+
+                NodeRef signedNode = findSignedNode(targetNodeRef, params, inplace, signatureProps);
+                if (signedNode != null) {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug(targetNodeRef + " is already signed with the same credential and parameters in " + signedNode);
+                    }
+                    outcome = PDFSignMetrics.OUTCOME_SKIPPED;
+                    return signedNode;
+                }
 
-            ContentReader pdfReaderNumPage = getReader(targetNodeRef);
-            PdfReader readerNumPage = new PdfReader(pdfReaderNumPage.getContentInputStream());
+                // another copy of the same content was signed the same way, its signed content is shared
+                if (IDEMPOTENCY_SHARE_CONTENT.equals(idempotency) && !inplace) {
+                    NodeRef sharedNode = findSharedOutput(signatureProps);
+                    if (sharedNode != null) {
+                        timer.enter(Phase.NODE_UPDATE);
+                        destinationNode = shareSignedOutput(sharedNode, getFilename(params, targetNodeRef),
+                                (NodeRef) params.get(PARAM_DESTINATION_FOLDER), targetNodeRef, signatureProps);
+                        timer.exit();
+                        if (logger.isDebugEnabled()) {
+                            logger.debug(destinationNode + " shares the content of " + sharedNode + ", signed from the same content");
+                        }
+                        outcome = PDFSignMetrics.OUTCOME_SKIPPED;
+                        return destinationNode;
+                    }
+                }
+            }
 
-            int numPages = readerNumPage.getNumberOfPages();
-            if (pageNumber > numPages) {
-                pageNumber = numPages;
+            // revocation is checked before the document is opened, a revoked key fails fast
+            ValidationMaterial material = null;
+            if (ltv) {
+                timer.enter(Phase.REVOCATION);
+                material = revocationCache.collect(credential.getChain());
+                timer.exit();
             }
 
-            if (signAllPages) {
-                for (int page = 1; page <= numPages; page++) {
-                    ContentReader pdfReader = getReader(targetNodeRef);
-                    PdfReader reader = new PdfReader(pdfReader.getContentInputStream());
+            // the document is opened once, page validation and signing use the same document
+            timer.enter(Phase.PDF_OPEN);
+            ContentReader pdfReader = getReader(targetNodeRef);
+            documentSize = pdfReader.getSize();
+            document = engine.open(pdfReader);
 
-                    File alfTempDir = TempFileProvider.getTempDir();
-                    tempDir = new File(alfTempDir.getPath() + File.separatorChar + targetNodeRef.getId());
-                    tempDir.mkdir();
-                    File file = new File(tempDir, ffs.getFileInfo(targetNodeRef).getName());
+            numPages = document.getNumberOfPages();
+            timer.exit();
 
-                    fout = new FileOutputStream(file);
+            request.setPages(pageSelection.toPages(numPages));
 
-                    if (appendToExisting) {
-                        stamper = PdfStamper.createSignature(reader, fout, '\0', tempDir, true);
-                    } else {
-                        stamper = PdfStamper.createSignature(reader, fout, '\0');
-                    }
+            String fileName = getFilename(params, targetNodeRef);
 
-                    PdfSignatureAppearance sap = stamper.getSignatureAppearance();
+            timer.enter(Phase.NODE_UPDATE);
+            destinationNode = createDestinationNode(fileName, (NodeRef) params.get(PARAM_DESTINATION_FOLDER), targetNodeRef, inplace);
+            timer.exit();
 
-                    if (visibility.equalsIgnoreCase(VISIBILITY_VISIBLE)) {
-                        if (position != null && !position.trim().isEmpty() && !position.trim().equalsIgnoreCase(POSITION_MANUAL)) {
-                            Rectangle pageRect = reader.getPageSizeWithRotation(page);
-                            sap.setVisibleSignature(positionSignature(position, pageRect, width, height), page, null);
-                        } else {
-                            sap.setVisibleSignature(new Rectangle(locationX, locationY, locationX + width, locationY - height), page, null);
-                        }
-                    }
+            timer.enter(Phase.PUT_CONTENT);
+            writer = cs.getWriter(destinationNode, ContentModel.PROP_CONTENT, true);
 
-                    ExternalDigest digest = new BouncyCastleDigest();
-                    ExternalSignature signature = new PrivateKeySignature(key, DigestAlgorithms.SHA256, "BC");
+            writer.setEncoding(pdfReader.getEncoding());
+            writer.setMimetype(FILE_MIMETYPE);
+            timer.exit();
 
-                    MakeSignature.signDetached(sap, digest, signature, chain, null, null, null, 0, MakeSignature.CryptoStandard.CMS);
+            request.setCredential(credential);
+            request.setTimer(timer);
+            applyAppearance(request, params, (String) signatureProps.get(PDFSignModel.PROP_CERTFINGERPRINT));
 
-                    String fileName = getFilename(params, targetNodeRef);
+            setSpillDir(request, workspace, pdfReader.getSize());
 
-                    destinationNode = createDestinationNode(fileName, (NodeRef) params.get(PARAM_DESTINATION_FOLDER), targetNodeRef, inplace);
-                    writer = cs.getWriter(destinationNode, ContentModel.PROP_CONTENT, true);
+            timer.enter(Phase.PUT_CONTENT);
+            MessageDigest outputDigest = cryptoProviders.getMessageDigest(SignatureFingerprints.ALGORITHM);
+            out = new DigestOutputStream(writer.getContentOutputStream(), outputDigest);
+            timer.exit();
 
-                    writer.setEncoding(pdfReader.getEncoding());
-                    writer.setMimetype(FILE_MIMETYPE);
-                    writer.putContent(file);
+            // the engine charges the appearance and the private key operation to their own phases
+            timer.enter(Phase.WRITE);
+            if (ltv) {
+                // the validation material goes to the DSS, appended to the signed revision
+                File signedFile = File.createTempFile("signed-", ".pdf", workspace.getDirectory());
+                try (OutputStream signedOut = new BufferedOutputStream(new FileOutputStream(signedFile))) {
+                    document.sign(request, signedOut);
+                }
+                new LtvAppender(revocationCache, timestampClient).append(signedFile, material,
+                        SIGNATURE_LEVEL_B_LTA.equals(signatureLevel), workspace.getDirectory(), timer, out);
+            } else {
+                document.sign(request, out);
+            }
+            timer.exit();
 
-                    file.delete();
+            if (inplace) {
+                checkContent(targetNodeRef, pdfReader.getContentUrl());
+            }
 
-                    if (useSignatureAspect) {
-                        ns.addAspect(destinationNode, PDFSignModel.ASPECT_SIGNED, new HashMap<QName, Serializable>());
-                        ns.setProperty(destinationNode, PDFSignModel.PROP_SIGNATUREDATE, new Date());
-                        ns.setProperty(destinationNode, PDFSignModel.PROP_SIGNEDBY, AuthenticationUtil.getRunAsUser());
-                    }
+            timer.enter(Phase.PUT_CONTENT);
+            out.close();
+            timer.exit();
 
-                    if (fout != null) {
-                        try {
-                            fout.close();
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        }
-                    }
+            timer.enter(Phase.NODE_UPDATE);
+            signatureProps.put(PDFSignModel.PROP_CONTENTHASH, SignatureFingerprints.hex(outputDigest.digest()));
+            markSigned(destinationNode, signatureProps);
+            rememberSignedOutput(destinationNode, writer.getContentUrl(), signatureProps);
+            if (!inplace && !createNew) {
+                addVersionable(targetNodeRef, destinationNode);
+            }
+            timer.exit();
 
-                    if (tempDir != null) {
-                        try {
-                            for (File tempFile : tempDir.listFiles()) {
-                                tempFile.delete();
-                            }
-                            tempDir.delete();
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
+            outcome = PDFSignMetrics.OUTCOME_SUCCESS;
+        } catch (ConcurrencyFailureException e) {
+            // retried by the transaction on top of the new content
+            throw e;
+        } catch (Exception e) {
+            logger.error("Could not sign " + targetNodeRef + ": " + e.getMessage(), e);
+            throw new AlfrescoRuntimeException(e.getMessage(), e);
+        } finally {
+            if (document != null) {
+                try {
+                    document.close();
+                } catch (IOException e) {
+                    logger.warn("Could not close the signed document " + targetNodeRef + ": " + e.getMessage());
+                }
+            }
 
-                    if (stamper != null) {
-                        try {
-                            stamper.close();
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    logger.warn("Could not close the signed content of " + targetNodeRef + ": " + e.getMessage());
                 }
-            } else if (signLastPage || (specificPageNumber > 0 && specificPageNumber <= numPages)) {
-                ContentReader pdfReader = getReader(targetNodeRef);
-                PdfReader reader = new PdfReader(pdfReader.getContentInputStream());
+            }
 
-                File alfTempDir = TempFileProvider.getTempDir();
-                tempDir = new File(alfTempDir.getPath() + File.separatorChar + targetNodeRef.getId());
-                tempDir.mkdir();
-                File file = new File(tempDir, ffs.getFileInfo(targetNodeRef).getName());
+            if (credential != null) {
+                credential.release();
+            }
 
-                fout = new FileOutputStream(file);
+            if (metrics != null) {
+                metrics.record(timer, engine.getName(), pageMode, outcome, documentSize, numPages);
+            }
+        }
 
-                if (appendToExisting) {
-                    stamper = PdfStamper.createSignature(reader, fout, '\0', tempDir, true);
-                } else {
-                    stamper = PdfStamper.createSignature(reader, fout, '\0');
-                }
+        return destinationNode;
+    }
 
-                PdfSignatureAppearance sap = stamper.getSignatureAppearance();
+    /**
+     * Prepares a PDF document for a signature computed outside the repository.
+     *
+     * @param targetNodeRef the NodeRef pointing to the PDF document to be signed
+     * @param params a map of parameters describing the signature, without key store
+     * @return the prepared signature
+     */
+    @Override
+    public PreparedSignature prepareSignature(NodeRef targetNodeRef, Map<String, Serializable> params) {
+        try (SigningWorkspace workspace = new SigningWorkspace(targetNodeRef)) {
+            return prepareSignature(targetNodeRef, params, workspace);
+        }
+    }
 
-                specificPageNumber = (signLastPage) ? numPages : specificPageNumber;
+    /**
+     * Prepares a PDF document for a signature computed outside the repository, keeping
+     * temporary files in the given workspace.
+     *
+     * @param targetNodeRef the NodeRef pointing to the PDF document to be signed
+     * @param params a map of parameters describing the signature, without key store
+     * @param workspace the workspace of this operation
+     * @return the prepared signature
+     */
+    private PreparedSignature prepareSignature(NodeRef targetNodeRef, Map<String, Serializable> params, SigningWorkspace workspace) {
+        Boolean inplace = Boolean.valueOf(String.valueOf(params.get(PARAM_INPLACE)));
 
-                if (visibility.equalsIgnoreCase(VISIBILITY_VISIBLE)) {
-                    if (position != null && !position.trim().isEmpty() && !position.trim().equalsIgnoreCase(POSITION_MANUAL)) {
-                        Rectangle pageRect = reader.getPageSizeWithRotation(specificPageNumber);
-                        sap.setVisibleSignature(positionSignature(position, pageRect, width, height), specificPageNumber, null);
-                    } else {
-                        sap.setVisibleSignature(new Rectangle(locationX, locationY, locationX + width, locationY - height), specificPageNumber, null);
-                    }
-                }
+        SignatureEngine engine = getEngine((String) params.get(PARAM_ENGINE));
+        SignatureRequest request = newRequest(params);
+        String signerName = (String) params.get(PARAM_SIGNER_NAME);
+        request.setSignerName(signerName == null || signerName.trim().isEmpty() ? AuthenticationUtil.getRunAsUser() : signerName.trim());
+        applyAppearance(request, params, null);
 
-                ExternalDigest digest = new BouncyCastleDigest();
-                ExternalSignature signature = new PrivateKeySignature(key, DigestAlgorithms.SHA256, "BC");
+        SignableDocument document = null;
+        OutputStream out = null;
 
-                MakeSignature.signDetached(sap, digest, signature, chain, null, null, null, 0, MakeSignature.CryptoStandard.CMS);
+        try {
+            if (inplace) {
+                lockForSigning(targetNodeRef);
+            }
 
-                String fileName = getFilename(params, targetNodeRef);
+            ContentReader pdfReader = getReader(targetNodeRef);
+            document = engine.open(pdfReader);
+            request.setPages(PageSelection.parse((String) params.get(PARAM_PAGE)).toPages(document.getNumberOfPages()));
 
-                destinationNode = createDestinationNode(fileName, (NodeRef) params.get(PARAM_DESTINATION_FOLDER), targetNodeRef, inplace);
-                writer = cs.getWriter(destinationNode, ContentModel.PROP_CONTENT, true);
+            NodeRef destinationNode = createDestinationNode(getFilename(params, targetNodeRef), (NodeRef) params.get(PARAM_DESTINATION_FOLDER), targetNodeRef, inplace);
 
-                writer.setEncoding(pdfReader.getEncoding());
-                writer.setMimetype(FILE_MIMETYPE);
-                writer.putContent(file);
+            ContentWriter writer = cs.getWriter(destinationNode, ContentModel.PROP_CONTENT, true);
+            writer.setEncoding(pdfReader.getEncoding());
+            writer.setMimetype(FILE_MIMETYPE);
 
-                file.delete();
+            setSpillDir(request, workspace, pdfReader.getSize());
 
-                if (useSignatureAspect) {
-                    ns.addAspect(destinationNode, PDFSignModel.ASPECT_SIGNED, new HashMap<QName, Serializable>());
-                    ns.setProperty(destinationNode, PDFSignModel.PROP_SIGNATUREDATE, new Date());
-                    ns.setProperty(destinationNode, PDFSignModel.PROP_SIGNEDBY, AuthenticationUtil.getRunAsUser());
-                }
+            out = writer.getContentOutputStream();
+            byte[] digest = document.prepare(request, deferredReservedSize, out);
+            if (inplace) {
+                checkContent(targetNodeRef, pdfReader.getContentUrl());
+            }
+            out.close();
 
-                if (fout != null) {
-                    try {
-                        fout.close();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
+            // only the digest is kept, the prepared document is read again when the signature is completed
+            Map<QName, Serializable> props = new HashMap<QName, Serializable>();
+            props.put(PDFSignModel.PROP_PENDING_DIGEST, Base64.getEncoder().encodeToString(digest));
+            props.put(PDFSignModel.PROP_PENDING_DIGESTALGORITHM, request.getDigestAlgorithm());
+            ns.addAspect(destinationNode, PDFSignModel.ASPECT_PENDINGSIGNATURE, props);
 
-                if (tempDir != null) {
-                    try {
-                        for (File tempFile : tempDir.listFiles()) {
-                            tempFile.delete();
-                        }
-                        tempDir.delete();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+            return new PreparedSignature(destinationNode, request.getDigestAlgorithm(), digest);
+        } catch (AlfrescoRuntimeException | ConcurrencyFailureException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AlfrescoRuntimeException(e.getMessage(), e);
+        } finally {
+            if (document != null) {
+                try {
+                    document.close();
+                } catch (IOException e) {
+                    logger.warn("Could not close the prepared document " + targetNodeRef + ": " + e.getMessage());
                 }
+            }
 
-                if (stamper != null) {
-                    try {
-                        stamper.close();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    logger.warn("Could not close the content of the prepared document " + targetNodeRef + ": " + e.getMessage());
                 }
-            } else {
-                throw new AlfrescoRuntimeException("Invalid page number specified.");
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new AlfrescoRuntimeException(e.getMessage(), e);
         }
-
-        return destinationNode;
     }
 
     /**
-     * Retrieves a ContentReader for the specified node.
+     * Completes a prepared signature with a CMS signature computed outside the repository.
      *
-     * @param nodeRef the NodeRef pointing to the content node
-     * @return the ContentReader
+     * @param preparedNodeRef the NodeRef of the prepared document
+     * @param cms the encoded CMS signature
+     * @return the NodeRef of the signed document, which is the prepared one
      */
-    private ContentReader getReader(NodeRef nodeRef) {
-        if (!ns.exists(nodeRef)) {
-            throw new AlfrescoRuntimeException("NodeRef: " + nodeRef + " does not exist");
+    @Override
+    public NodeRef completeSignature(NodeRef preparedNodeRef, byte[] cms) {
+        if (!ns.exists(preparedNodeRef)) {
+            throw new AlfrescoRuntimeException("NodeRef: " + preparedNodeRef + " does not exist");
         }
 
-        QName typeQName = ns.getType(nodeRef);
-        if (!ds.isSubClass(typeQName, ContentModel.TYPE_CONTENT)) {
-            throw new AlfrescoRuntimeException("The selected node is not a content node");
+        lockForSigning(preparedNodeRef);
+
+        if (!ns.hasAspect(preparedNodeRef, PDFSignModel.ASPECT_PENDINGSIGNATURE)) {
+            throw new AlfrescoRuntimeException("NodeRef: " + preparedNodeRef + " has no prepared signature");
         }
 
-        ContentReader contentReader = cs.getReader(nodeRef, ContentModel.PROP_CONTENT);
-        if (contentReader == null) {
-            throw new AlfrescoRuntimeException("The content reader for NodeRef: " + nodeRef + " is null");
+        // rejects signatures computed over another document before rewriting the content
+        byte[] expected = Base64.getDecoder().decode((String) ns.getProperty(preparedNodeRef, PDFSignModel.PROP_PENDING_DIGEST));
+        byte[] signed = SignatureInjector.getMessageDigest(cms);
+        if (signed != null && !MessageDigest.isEqual(expected, signed)) {
+            throw new AlfrescoRuntimeException("The CMS signature does not sign the prepared document " + preparedNodeRef);
         }
 
-        return contentReader;
+        ContentReader pdfReader = getReader(preparedNodeRef);
+        ContentWriter writer = cs.getWriter(preparedNodeRef, ContentModel.PROP_CONTENT, true);
+        writer.setEncoding(pdfReader.getEncoding());
+        writer.setMimetype(FILE_MIMETYPE);
+
+        try (OutputStream out = writer.getContentOutputStream()) {
+            SignatureInjector.inject(pdfReader, cms, out);
+            checkContent(preparedNodeRef, pdfReader.getContentUrl());
+        } catch (AlfrescoRuntimeException | ConcurrencyFailureException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AlfrescoRuntimeException(e.getMessage(), e);
+        }
+
+        ns.removeAspect(preparedNodeRef, PDFSignModel.ASPECT_PENDINGSIGNATURE);
+        markSigned(preparedNodeRef);
+
+        return preparedNodeRef;
     }
 
     /**
-     * Creates or retrieves a destination node for the signed PDF.
+     * Submits an asynchronous job that signs every given PDF document with the same parameters.
      *
-     * @param filename the name of the destination file
-     * @param destinationParent the parent folder for the destination node
-     * @param target the original node
-     * @param inplace whether to overwrite the original node
-     * @return the NodeRef of the destination node
+     * @param targetNodeRefs the NodeRefs pointing to the PDF documents to be signed
+     * @param params a map of parameters required for signing the PDFs
+     * @return the submitted job
      */
-    private NodeRef createDestinationNode(String filename, NodeRef destinationParent, NodeRef target, boolean inplace) {
-        NodeRef destinationNode;
+    @Override
+    public SignBatchJob signBatch(Collection<NodeRef> targetNodeRefs, Map<String, Serializable> params) {
+        purgeBatchJobs();
 
-        if (inplace) {
-            return target;
-        }
+        final SignBatchJob job = new SignBatchJob(GUID.generate(), new LinkedHashSet<NodeRef>(targetNodeRefs));
+        final Map<String, Serializable> jobParams = new HashMap<String, Serializable>(params);
+        final String runAsUser = AuthenticationUtil.getRunAsUser();
 
-        if (createNew) {
-            FileInfo fileInfo = ffs.create(destinationParent, filename, ContentModel.TYPE_CONTENT);
-            destinationNode = fileInfo.getNodeRef();
-        } else {
+        batchJobs.put(job.getId(), job);
+
+        // a few workers drain the job queue, so large jobs never flood the pool's work queue
+        int workers = Math.min(batchParallelism, job.getTotal());
+        for (int i = 0; i < workers; i++) {
+            job.workerStarted();
+        }
+        for (int i = 0; i < workers; i++) {
             try {
-                FileInfo fileInfo = ffs.copy(target, destinationParent, filename);
-                destinationNode = fileInfo.getNodeRef();
-            } catch (FileNotFoundException fnf) {
-                throw new AlfrescoRuntimeException(fnf.getMessage(), fnf);
+                batchExecutor.execute(() -> runBatchWorker(job, jobParams, runAsUser));
+            } catch (RejectedExecutionException e) {
+                if (job.workerRejected(new AlfrescoRuntimeException("The signing pool is saturated: " + e.getMessage(), e))) {
+                    logger.error("Bulk signing job " + job.getId() + " rejected: the signing pool refused all of its workers, "
+                            + job.getFailed() + " document(s) were not signed");
+                } else if (logger.isDebugEnabled()) {
+                    logger.debug("Bulk signing worker rejected for job " + job.getId() + ": " + e.getMessage());
+                }
             }
         }
 
-        return destinationNode;
+        if (logger.isDebugEnabled()) {
+            logger.debug("Submitted bulk signing job " + job.getId() + " for " + job.getTotal() + " document(s)");
+        }
+
+        return job;
     }
 
     /**
-     * Converts a Serializable value to an integer.
+     * Retrieves a bulk signing job.
      *
-     * @param val the Serializable value
-     * @return the integer value, or 0 if the conversion fails
+     * @param jobId the job identifier
+     * @return the job, or null if it is unknown
      */
-    private int getInteger(Serializable val) {
-        if (val == null) {
-            return 0;
-        }
+    @Override
+    public SignBatchJob getBatchJob(String jobId) {
+        return batchJobs.get(jobId);
+    }
+
+    /**
+     * Signs documents from the job queue until it is exhausted or the job is cancelled.
+     *
+     * @param job the bulk signing job
+     * @param params the signing parameters
+     * @param runAsUser the user that submitted the job
+     */
+    private void runBatchWorker(final SignBatchJob job, final Map<String, Serializable> params, String runAsUser) {
         try {
-            return Integer.parseInt(val.toString());
-        } catch (NumberFormatException nfe) {
-            return 0;
+            AuthenticationUtil.runAs(() -> {
+                NodeRef target;
+                while ((target = job.next()) != null) {
+                    signInTransaction(job, target, params);
+                }
+                return null;
+            }, runAsUser);
+        } finally {
+            job.workerFinished();
         }
     }
 
     /**
-     * Generates a filename for the signed PDF based on parameters.
+     * Signs a single document of a bulk signing job in its own retrying transaction.
      *
-     * @param params the parameters map
-     * @param targetNodeRef the NodeRef of the target node
-     * @return the filename
+     * @param job the bulk signing job
+     * @param target the document to sign
+     * @param params the signing parameters
      */
-    private String getFilename(Map<String, Serializable> params, NodeRef targetNodeRef) {
-        Serializable providedName = params.get(PARAM_DESTINATION_NAME);
-        String fileName;
-        if (providedName != null) {
-            fileName = String.valueOf(providedName);
-            if (!fileName.endsWith(FILE_EXTENSION)) {
-                fileName = fileName + FILE_EXTENSION;
+    private void signInTransaction(SignBatchJob job, final NodeRef target, final Map<String, Serializable> params) {
+        try {
+            NodeRef result = ts.getRetryingTransactionHelper().doInTransaction(() -> signPDF(target, params), false, true);
+            job.succeeded(target, result);
+        } catch (Throwable e) {
+            logger.warn("Bulk signing job " + job.getId() + " failed to sign " + target + ": " + e.getMessage());
+            job.failed(target, e);
+        }
+    }
+
+    /**
+     * Discards the finished bulk and folder signing jobs older than the retention period.
+     */
+    private void purgeBatchJobs() {
+        long threshold = System.currentTimeMillis() - batchJobRetentionSeconds * 1000L;
+        Iterator<SignBatchJob> it = batchJobs.values().iterator();
+        while (it.hasNext()) {
+            SignBatchJob job = it.next();
+            if (job.isDone() && job.getFinishedAt() < threshold) {
+                it.remove();
+            }
+        }
+        Iterator<FolderSignJob> folderIt = folderJobs.values().iterator();
+        while (folderIt.hasNext()) {
+            FolderSignJob job = folderIt.next();
+            if (job.isDone() && job.getFinishedAt() < threshold) {
+                folderIt.remove();
             }
-        } else {
-            fileName = String.valueOf(ns.getProperty(targetNodeRef, ContentModel.PROP_NAME));
         }
-        return fileName;
     }
 
     /**
-     * Calculates the position and dimensions for the signature based on the specified position.
+     * Submits an asynchronous job that signs the unsigned PDF documents of a folder tree.
      *
-     * @param position the position of the signature
-     * @param pageRect the rectangle representing the page size
-     * @param width the width of the signature
-     * @param height the height of the signature
-     * @return the Rectangle representing the position of the signature
+     * @param folderNodeRef the NodeRef pointing to the root folder
+     * @param params a map of parameters required for signing the PDFs
+     * @return the submitted job
      */
-    private Rectangle positionSignature(String position, Rectangle pageRect, int width, int height) {
-        float pageHeight = pageRect.getHeight();
-        float pageWidth = pageRect.getWidth();
+    @Override
+    public FolderSignJob signFolder(NodeRef folderNodeRef, Map<String, Serializable> params) {
+        purgeBatchJobs();
+
+        final FolderSignJob job = new FolderSignJob(GUID.generate(), folderNodeRef);
+        final Map<String, Serializable> jobParams = new HashMap<String, Serializable>(params);
+        final String runAsUser = AuthenticationUtil.getRunAsUser();
+
+        // two walks of the same folder would sign the same documents and overwrite each other's checkpoint
+        synchronized (folderJobs) {
+            for (FolderSignJob running : folderJobs.values()) {
+                if (!running.isDone() && running.getFolder().equals(folderNodeRef)) {
+                    throw new AlfrescoRuntimeException("Folder " + folderNodeRef + " is already being signed by job " + running.getId());
+                }
+            }
+            folderJobs.put(job.getId(), job);
+        }
 
-        Rectangle r = null;
+        try {
+            folderExecutor.execute(() -> runFolderJob(job, jobParams, runAsUser));
+        } catch (RejectedExecutionException e) {
+            folderJobs.remove(job.getId());
+            throw new AlfrescoRuntimeException("Folder signing job rejected for " + folderNodeRef + ": " + e.getMessage(), e);
+        }
 
-        switch (position) {
-            case POSITION_BOTTOMLEFT:
-                r = new Rectangle(0, height, width, 0);
-                break;
-            case POSITION_BOTTOMRIGHT:
-                r = new Rectangle(pageWidth - width, height, pageWidth, 0);
-                break;
-            case POSITION_TOPLEFT:
-                r = new Rectangle(0, pageHeight, width, pageHeight - height);
-                break;
-            case POSITION_TOPRIGHT:
-                r = new Rectangle(pageWidth - width, pageHeight, pageWidth, pageHeight - height);
-                break;
-            case POSITION_CENTER:
-                r = new Rectangle((pageWidth / 2) - (width / 2), (pageHeight / 2) - (height / 2), (pageWidth / 2) + (width / 2), (pageHeight / 2) + (height / 2));
-                break;
+        if (logger.isDebugEnabled()) {
+            logger.debug("Submitted folder signing job " + job.getId() + " for " + folderNodeRef);
         }
 
-        return r;
+        return job;
     }
 
     /**
-     * Sets the ServiceRegistry used by this service.
+     * Retrieves a folder signing job.
      *
-     * @param serviceRegistry the ServiceRegistry to set
+     * @param jobId the job identifier
+     * @return the job, or null if it is unknown
      */
-    public void setServiceRegistry(ServiceRegistry serviceRegistry) {
-        this.serviceRegistry = serviceRegistry;
-        ns = serviceRegistry.getNodeService();
-        cs = serviceRegistry.getContentService();
-        ffs = serviceRegistry.getFileFolderService();
-        ds = serviceRegistry.getDictionaryService();
-        ps = serviceRegistry.getPersonService();
-        as = serviceRegistry.getAuthenticationService();
+    @Override
+    public FolderSignJob getFolderJob(String jobId) {
+        return folderJobs.get(jobId);
+    }
+
+    /**
+     * Verifies every signature of a PDF document.
+     *
+     * @param targetNodeRef the NodeRef pointing to the PDF document to be verified
+     * @return the verification of every signature of the document
+     */
+    @Override
+    public VerificationResult verifyPDF(NodeRef targetNodeRef) {
+        ContentReader contentReader = getReader(targetNodeRef);
+        if (!FILE_MIMETYPE.equals(contentReader.getMimetype())) {
+            throw new AlfrescoRuntimeException("NodeRef: " + targetNodeRef + " is not a PDF document");
+        }
+        try {
+            return signatureVerifier.verify(contentReader);
+        } catch (IOException e) {
+            throw new AlfrescoRuntimeException("Could not verify the signatures of " + targetNodeRef + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Walks the folder of a folder signing job on behalf of the user that submitted it.
+     *
+     * @param job the folder signing job
+     * @param params the signing parameters
+     * @param runAsUser the user that submitted the job
+     */
+    private void runFolderJob(final FolderSignJob job, final Map<String, Serializable> params, String runAsUser) {
+        Throwable failure = null;
+        try {
+            AuthenticationUtil.runAs(() -> {
+                walkFolder(job, params);
+                return null;
+            }, runAsUser);
+        } catch (Throwable e) {
+            logger.warn("Folder signing job " + job.getId() + " failed on " + job.getFolder() + ": " + e.getMessage());
+            failure = e;
+        } finally {
+            job.finish(failure);
+        }
+    }
+
+    /**
+     * Walks the folder tree from its checkpoint, if any, and signs the unsigned PDF documents
+     * found in batches. Each page of children is read in its own read-only transaction, so no
+     * transaction stays open while a batch is signed.
+     *
+     * @param job the folder signing job
+     * @param params the signing parameters
+     * @throws InterruptedException if the job thread is interrupted while a batch is signed
+     */
+    private void walkFolder(final FolderSignJob job, Map<String, Serializable> params) throws InterruptedException {
+        final NodeRef folder = job.getFolder();
+        RetryingTransactionHelper txnHelper = ts.getRetryingTransactionHelper();
+
+        NodeRef checkpoint = txnHelper.doInTransaction(() -> getCheckpoint(folder), true, true);
+        if (checkpoint != null && logger.isDebugEnabled()) {
+            logger.debug("Folder signing job " + job.getId() + " resumes " + folder + " after " + checkpoint);
+        }
+
+        final FolderWalker walker = new FolderWalker(ffs, ns, folder, checkpoint, folderPageSize);
+        List<NodeRef> batch = new ArrayList<NodeRef>(folderBatchSize);
+        while (walker.hasNext() && !job.isCancelled()) {
+            int skipped = walker.getSkipped();
+            List<NodeRef> documents = txnHelper.doInTransaction(walker::next, true, true);
+            job.skipped(walker.getSkipped() - skipped);
+
+            for (NodeRef document : documents) {
+                batch.add(document);
+                if (batch.size() >= folderBatchSize) {
+                    signFolderBatch(job, batch, params);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty() && !job.isCancelled()) {
+            signFolderBatch(job, batch, params);
+        }
+
+        if (!job.isCancelled()) {
+            txnHelper.doInTransaction(() -> {
+                ns.removeAspect(folder, PDFSignModel.ASPECT_SIGNINGCHECKPOINT);
+                return null;
+            }, false, true);
+        }
+    }
+
+    /**
+     * Signs a batch of documents of a folder signing job and waits for it, then records its last
+     * document as the checkpoint of the folder. A batch that could not be completed stops the
+     * walk, so the checkpoint never moves past a document that was not processed.
+     *
+     * @param job the folder signing job
+     * @param batch the documents to sign, in walk order
+     * @param params the signing parameters
+     * @throws InterruptedException if the job thread is interrupted while waiting
+     */
+    private void signFolderBatch(FolderSignJob job, List<NodeRef> batch, Map<String, Serializable> params) throws InterruptedException {
+        if (job.isCancelled()) {
+            return;
+        }
+
+        SignBatchJob batchJob = signBatch(batch, params);
+        job.batchStarted(batchJob);
+        batchJob.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        job.batchFinished(batchJob);
+
+        if (batchJob.getStatus() != SignBatchJob.Status.COMPLETED) {
+            if (job.isCancelled()) {
+                return;
+            }
+            if (batchJob.isRejected()) {
+                throw new AlfrescoRuntimeException("Batch " + batchJob.getId() + " was rejected by the saturated signing pool, "
+                        + batchJob.getFailed() + " document(s) were not signed");
+            }
+            throw new AlfrescoRuntimeException("Batch " + batchJob.getId() + " signed " + batchJob.getProcessed() + " of "
+                    + batchJob.getTotal() + " document(s)");
+        }
+
+        final NodeRef folder = job.getFolder();
+        final Map<QName, Serializable> props = new HashMap<QName, Serializable>();
+        props.put(PDFSignModel.PROP_CHECKPOINT_NODE, batch.get(batch.size() - 1));
+        ts.getRetryingTransactionHelper().doInTransaction(() -> {
+            ns.addAspect(folder, PDFSignModel.ASPECT_SIGNINGCHECKPOINT, props);
+            return null;
+        }, false, true);
+    }
+
+    /**
+     * Reads the checkpoint a previous walk recorded on a folder. The walk only finds a checkpoint
+     * that is still a PDF document of the folder tree; any other checkpoint would make it skip
+     * every document, so it is ignored and the whole tree is walked again.
+     *
+     * @param folder the folder
+     * @return the last document processed by the previous walk, or null if there is none or it is no longer usable
+     */
+    private NodeRef getCheckpoint(NodeRef folder) {
+        if (!ns.hasAspect(folder, PDFSignModel.ASPECT_SIGNINGCHECKPOINT)) {
+            return null;
+        }
+        NodeRef checkpoint = (NodeRef) ns.getProperty(folder, PDFSignModel.PROP_CHECKPOINT_NODE);
+        if (checkpoint == null || !ns.exists(checkpoint)) {
+            return null;
+        }
+        ContentData content = (ContentData) ns.getProperty(checkpoint, ContentModel.PROP_CONTENT);
+        if (content == null || !FILE_MIMETYPE.equals(content.getMimetype()) || !isInTree(folder, checkpoint)) {
+            logger.info("Ignoring the checkpoint " + checkpoint + " of " + folder
+                    + ", it is no longer a PDF document of the folder: walking the whole folder");
+            return null;
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Tells whether a node is below a folder, following primary parents as the folder walk does.
+     *
+     * @param folder the folder
+     * @param nodeRef the node
+     * @return true if the folder is an ancestor of the node
+     */
+    private boolean isInTree(NodeRef folder, NodeRef nodeRef) {
+        ChildAssociationRef parent = ns.getPrimaryParent(nodeRef);
+        while (parent != null && parent.getParentRef() != null) {
+            if (folder.equals(parent.getParentRef())) {
+                return true;
+            }
+            parent = ns.getPrimaryParent(parent.getParentRef());
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves the signing credential stored in the given key store node, from the
+     * credential cache when the same version of the key store was already opened with
+     * the same passwords. The returned credential must be released by the caller.
+     *
+     * @param keyStoreNodeRef the NodeRef pointing to the key store
+     * @param storePassword the password for the key store
+     * @param keyPassword the password for the private key
+     * @return the acquired signing credential
+     */
+    private SigningCredential acquireCredential(final NodeRef keyStoreNodeRef, final String storePassword, final String keyPassword) {
+        final ContentReader keyReader = getReader(keyStoreNodeRef);
+
+        SigningCredentialCache.Key cacheKey = new SigningCredentialCache.Key(keyStoreNodeRef, keyReader.getContentUrl(),
+                (Date) ns.getProperty(keyStoreNodeRef, ContentModel.PROP_MODIFIED), storePassword, keyPassword);
+
+        return credentialCache.acquire(cacheKey, () -> {
+            SigningCredential credential = loadCredential(keyReader, storePassword, keyPassword);
+            cryptoProviders.prewarm(credential);
+            return credential;
+        });
+    }
+
+    /**
+     * Loads the signing credential from the key store content.
+     *
+     * @param keyReader the ContentReader of the key store
+     * @param storePassword the password for the key store
+     * @param keyPassword the password for the private key
+     * @return the signing credential
+     */
+    private SigningCredential loadCredential(ContentReader keyReader, String storePassword, String keyPassword) {
+        return KeyStoreLoader.loadCredential(keyReader.getContentInputStream(), storePassword, keyPassword);
+    }
+
+    /**
+     * Retrieves a ContentReader for the specified node.
+     *
+     * @param nodeRef the NodeRef pointing to the content node
+     * @return the ContentReader
+     */
+    private ContentReader getReader(NodeRef nodeRef) {
+        if (!ns.exists(nodeRef)) {
+            throw new AlfrescoRuntimeException("NodeRef: " + nodeRef + " does not exist");
+        }
+
+        QName typeQName = ns.getType(nodeRef);
+        if (!ds.isSubClass(typeQName, ContentModel.TYPE_CONTENT)) {
+            throw new AlfrescoRuntimeException("The selected node is not a content node");
+        }
+
+        ContentReader contentReader = cs.getReader(nodeRef, ContentModel.PROP_CONTENT);
+        if (contentReader == null) {
+            throw new AlfrescoRuntimeException("The content reader for NodeRef: " + nodeRef + " is null");
+        }
+
+        return contentReader;
+    }
+
+    /**
+     * Creates or retrieves a destination node for the signed PDF.
+     *
+     * @param filename the name of the destination file
+     * @param destinationParent the parent folder for the destination node
+     * @param target the original node
+     * @param inplace whether to overwrite the original node
+     * @return the NodeRef of the destination node
+     */
+    private NodeRef createDestinationNode(String filename, NodeRef destinationParent, NodeRef target, boolean inplace) {
+        NodeRef destinationNode;
+
+        if (inplace) {
+            return target;
+        }
+
+        if (createNew) {
+            FileInfo fileInfo = ffs.create(destinationParent, filename, ContentModel.TYPE_CONTENT);
+            destinationNode = fileInfo.getNodeRef();
+        } else {
+            // the metadata of the target without its content, the signed content is written once
+            destinationNode = copyMetadata(target, destinationParent, filename);
+        }
+
+        return destinationNode;
+    }
+
+    /**
+     * Creates a node with the type, aspects and properties of the target but no content, unlike
+     * a copy, which would write the content of the target only for it to be replaced. Aspects
+     * describing the content, the lock or the version history of the target are left out, as
+     * are system properties. Like a copy, the node records the target as its original. It is
+     * not versionable yet, see {@link #addVersionable(NodeRef, NodeRef)}.
+     *
+     * @param target the node whose metadata is copied
+     * @param destinationParent the parent folder of the new node
+     * @param filename the name of the new node
+     * @return the new node
+     */
+    private NodeRef copyMetadata(NodeRef target, NodeRef destinationParent, String filename) {
+        Set<QName> aspects = new HashSet<QName>(ns.getAspects(target));
+        aspects.removeAll(UNCOPIED_ASPECTS);
+
+        Map<QName, Serializable> props = new HashMap<QName, Serializable>();
+        for (Map.Entry<QName, Serializable> entry : ns.getProperties(target).entrySet()) {
+            QName name = entry.getKey();
+            if (NamespaceService.SYSTEM_MODEL_1_0_URI.equals(name.getNamespaceURI()) || UNCOPIED_PROPERTIES.contains(name)) {
+                continue;
+            }
+            PropertyDefinition definition = ds.getProperty(name);
+            if (definition != null && definition.getContainerClass().isAspect()
+                    && !aspects.contains(definition.getContainerClass().getName())) {
+                continue;
+            }
+            props.put(name, entry.getValue());
+        }
+        props.put(ContentModel.PROP_NAME, filename);
+
+        NodeRef destinationNode = ns.createNode(destinationParent, ContentModel.ASSOC_CONTAINS,
+                QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, QName.createValidLocalName(filename)),
+                ns.getType(target), props).getChildRef();
+        for (QName aspect : aspects) {
+            if (!NamespaceService.SYSTEM_MODEL_1_0_URI.equals(aspect.getNamespaceURI()) && !ns.hasAspect(destinationNode, aspect)) {
+                ns.addAspect(destinationNode, aspect, Collections.<QName, Serializable>emptyMap());
+            }
+        }
+        ns.addAspect(destinationNode, ContentModel.ASPECT_COPIEDFROM, Collections.<QName, Serializable>emptyMap());
+        ns.createAssociation(destinationNode, target, ContentModel.ASSOC_ORIGINAL);
+        return destinationNode;
+    }
+
+    /**
+     * Makes a signed copy versionable when its target is, with the versioning settings of the
+     * target. It is called once the copy holds its signed content: made versionable with the
+     * rest of the metadata, the copy would start its history with a version without content.
+     *
+     * @param target the node the copy was made from
+     * @param destinationNode the signed copy
+     */
+    private void addVersionable(NodeRef target, NodeRef destinationNode) {
+        if (!ns.hasAspect(target, ContentModel.ASPECT_VERSIONABLE) || ns.hasAspect(destinationNode, ContentModel.ASPECT_VERSIONABLE)) {
+            return;
+        }
+        Map<QName, Serializable> props = new HashMap<QName, Serializable>();
+        for (Map.Entry<QName, Serializable> entry : ns.getProperties(target).entrySet()) {
+            PropertyDefinition definition = ds.getProperty(entry.getKey());
+            if (definition != null && ContentModel.ASPECT_VERSIONABLE.equals(definition.getContainerClass().getName())
+                    && !UNCOPIED_PROPERTIES.contains(entry.getKey())) {
+                props.put(entry.getKey(), entry.getValue());
+            }
+        }
+        ns.addAspect(destinationNode, ContentModel.ASPECT_VERSIONABLE, props);
+    }
+
+    /**
+     * Looks for the output of an earlier signature of the same content with the same credential
+     * and parameters, anywhere in the repository, that still holds the content it produced. The
+     * output is resolved as the system user, as it may lie where the current user cannot see it,
+     * and is only shared when the current user may read it.
+     *
+     * @param signatureProps the source hash, certificate fingerprint and parameters hash of the requested signature
+     * @return the signed document, or null if there is none or the current user may not read it
+     */
+    private NodeRef findSharedOutput(final Map<QName, Serializable> signatureProps) {
+        if (signedOutputCache == null) {
+            return null;
+        }
+        String key = signedOutputKey(signatureProps);
+        final SignedOutput output = signedOutputCache.get(key);
+        if (output == null) {
+            return null;
+        }
+
+        boolean current = AuthenticationUtil.runAsSystem(() -> isSignedOutput(output, signatureProps));
+        if (!current) {
+            // deleted, or signed or edited again since
+            signedOutputCache.remove(key);
+            return null;
+        }
+        if (permissionService.hasPermission(output.getNodeRef(), PermissionService.READ) != AccessStatus.ALLOWED) {
+            if (logger.isDebugEnabled()) {
+                logger.debug(AuthenticationUtil.getRunAsUser() + " may not read " + output.getNodeRef() + ", its content is not shared");
+            }
+            return null;
+        }
+        return output.getNodeRef();
+    }
+
+    /**
+     * Tells whether a remembered output still is the signed document it was. Content is never
+     * rewritten under the same URL, so an unchanged content URL and content hash prove the node
+     * still holds the signed content, without reading it.
+     *
+     * @param output the remembered output
+     * @param signatureProps the hashes identifying the requested signature
+     * @return true if the output holds the content of the same signature
+     */
+    private boolean isSignedOutput(SignedOutput output, Map<QName, Serializable> signatureProps) {
+        NodeRef candidate = output.getNodeRef();
+        if (!ns.exists(candidate) || !ns.hasAspect(candidate, PDFSignModel.ASPECT_SIGNED)) {
+            return false;
+        }
+        Map<QName, Serializable> props = ns.getProperties(candidate);
+        ContentData content = (ContentData) props.get(ContentModel.PROP_CONTENT);
+        return content != null && output.getContentUrl().equals(content.getContentUrl())
+                && output.getContentHash().equals(props.get(PDFSignModel.PROP_CONTENTHASH))
+                && signatureProps.get(PDFSignModel.PROP_SOURCEHASH).equals(props.get(PDFSignModel.PROP_SOURCEHASH))
+                && signatureProps.get(PDFSignModel.PROP_CERTFINGERPRINT).equals(props.get(PDFSignModel.PROP_CERTFINGERPRINT))
+                && signatureProps.get(PDFSignModel.PROP_PARAMETERSHASH).equals(props.get(PDFSignModel.PROP_PARAMETERSHASH));
+    }
+
+    /**
+     * Creates the destination of a signature whose output already exists, pointing its content
+     * at the content of that output instead of signing again. Content URLs are reference
+     * counted, so the shared content is only deleted once no node refers to it any more.
+     *
+     * @param sharedNode the output of the earlier signature
+     * @param filename the name of the destination node
+     * @param destinationParent the parent folder of the destination node
+     * @param target the document to sign
+     * @param signatureProps the hashes identifying the signature
+     * @return the destination node
+     */
+    private NodeRef shareSignedOutput(NodeRef sharedNode, String filename, NodeRef destinationParent, NodeRef target,
+            Map<QName, Serializable> signatureProps) {
+        NodeRef destinationNode = copyMetadata(target, destinationParent, filename);
+        ns.setProperty(destinationNode, ContentModel.PROP_CONTENT, ns.getProperty(sharedNode, ContentModel.PROP_CONTENT));
+
+        // the shared content holds the earlier signature, its date and signer are kept
+        Map<QName, Serializable> props = new HashMap<QName, Serializable>(signatureProps);
+        props.put(PDFSignModel.PROP_CONTENTHASH, ns.getProperty(sharedNode, PDFSignModel.PROP_CONTENTHASH));
+        props.put(PDFSignModel.PROP_SIGNATUREDATE, ns.getProperty(sharedNode, PDFSignModel.PROP_SIGNATUREDATE));
+        props.put(PDFSignModel.PROP_SIGNEDBY, ns.getProperty(sharedNode, PDFSignModel.PROP_SIGNEDBY));
+        markSigned(destinationNode, props);
+        addVersionable(target, destinationNode);
+        return destinationNode;
+    }
+
+    /**
+     * Remembers the output of a signature whose source content was hashed, so identical
+     * requests in share-content mode can share its content.
+     *
+     * @param signedNode the signed node
+     * @param contentUrl the URL of the signed content
+     * @param signatureProps the hashes identifying the signature, content hash included
+     */
+    private void rememberSignedOutput(NodeRef signedNode, String contentUrl, Map<QName, Serializable> signatureProps) {
+        if (signedOutputCache != null && useSignatureAspect && contentUrl != null
+                && signatureProps.get(PDFSignModel.PROP_SOURCEHASH) != null) {
+            signedOutputCache.put(signedOutputKey(signatureProps),
+                    new SignedOutput(signedNode, contentUrl, (String) signatureProps.get(PDFSignModel.PROP_CONTENTHASH)));
+        }
+    }
+
+    private static String signedOutputKey(Map<QName, Serializable> signatureProps) {
+        return signatureProps.get(PDFSignModel.PROP_SOURCEHASH) + "|" + signatureProps.get(PDFSignModel.PROP_CERTFINGERPRINT)
+                + "|" + signatureProps.get(PDFSignModel.PROP_PARAMETERSHASH);
+    }
+
+    /**
+     * The output of a signature remembered for the share-content mode, with the URL and hash of
+     * the content the signature wrote.
+     */
+    public static final class SignedOutput implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final NodeRef nodeRef;
+        private final String contentUrl;
+        private final String contentHash;
+
+        private SignedOutput(NodeRef nodeRef, String contentUrl, String contentHash) {
+            this.nodeRef = nodeRef;
+            this.contentUrl = contentUrl;
+            this.contentHash = contentHash;
+        }
+
+        public NodeRef getNodeRef() {
+            return nodeRef;
+        }
+
+        public String getContentUrl() {
+            return contentUrl;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+    }
+
+    /**
+     * Converts a Serializable value to an integer.
+     *
+     * @param val the Serializable value
+     * @return the integer value, or 0 if the conversion fails
+     */
+    private int getInteger(Serializable val) {
+        if (val == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(val.toString());
+        } catch (NumberFormatException nfe) {
+            return 0;
+        }
+    }
+
+    /**
+     * Generates a filename for the signed PDF based on parameters.
+     *
+     * @param params the parameters map
+     * @param targetNodeRef the NodeRef of the target node
+     * @return the filename
+     */
+    private String getFilename(Map<String, Serializable> params, NodeRef targetNodeRef) {
+        Serializable providedName = params.get(PARAM_DESTINATION_NAME);
+        String fileName;
+        if (providedName != null) {
+            fileName = String.valueOf(providedName);
+            if (!fileName.endsWith(FILE_EXTENSION)) {
+                fileName = fileName + FILE_EXTENSION;
+            }
+        } else {
+            fileName = String.valueOf(ns.getProperty(targetNodeRef, ContentModel.PROP_NAME));
+        }
+        return fileName;
+    }
+
+    /**
+     * Retrieves the signature engine with the given name, or the default engine.
+     *
+     * @param name the engine name, or null for the default engine
+     * @return the SignatureEngine
+     */
+    private SignatureEngine getEngine(String name) {
+        String engineName = name == null || name.trim().isEmpty() ? defaultEngine : name.trim().toLowerCase();
+        SignatureEngine engine = engines.get(engineName);
+        if (engine == null) {
+            throw new AlfrescoRuntimeException("Unknown signature engine: " + engineName);
+        }
+        return engine;
+    }
+
+    /**
+     * Creates the signature request described by the action parameters. The pages, the
+     * credential and the timer are set by the caller.
+     *
+     * @param params the action parameters
+     * @return the signature request
+     */
+    private SignatureRequest newRequest(Map<String, Serializable> params) {
+        int width = getInteger(params.get(PARAM_WIDTH));
+        int height = getInteger(params.get(PARAM_HEIGHT));
+
+        boolean appendToExisting = true;
+        if (params.get(PARAM_NEW_REVISION) != null) {
+            appendToExisting = Boolean.parseBoolean(String.valueOf(params.get(PARAM_NEW_REVISION)));
+        }
+
+        SignatureRequest request = new SignatureRequest();
+        request.setDigestAlgorithm(CryptoProviders.digestAlgorithm((String) params.get(PARAM_DIGEST_ALGORITHM)));
+        request.setPss(isPss((String) params.get(PARAM_SIGNATURE_SCHEME)));
+        request.setVisible(VISIBILITY_VISIBLE.equalsIgnoreCase((String) params.get(PARAM_VISIBILITY)));
+        request.setPosition((String) params.get(PARAM_POSITION));
+        request.setLocationX(getInteger(params.get(PARAM_LOCATION_X)));
+        request.setLocationY(getInteger(params.get(PARAM_LOCATION_Y)));
+        request.setWidth(width == 0 ? defaultWidth : width);
+        request.setHeight(height == 0 ? defaultHeight : height);
+        request.setAppendToExisting(appendToExisting);
+        return request;
+    }
+
+    /**
+     * Sets the cached appearance of the appearance template on a visible signature request.
+     *
+     * @param request the signature request, with its signer and size
+     * @param params the action parameters
+     * @param certificateFingerprint the fingerprint of the signing certificate, or null when the
+     *            signature is computed outside the repository
+     */
+    private void applyAppearance(SignatureRequest request, Map<String, Serializable> params, String certificateFingerprint) {
+        if (request.isVisible() && appearanceCache != null) {
+            request.setAppearance(appearanceCache.getAppearance((String) params.get(PARAM_APPEARANCE), certificateFingerprint,
+                    request.getSignerName(), request.getWidth(), request.getHeight()));
+        }
+    }
+
+    /**
+     * Spills large signed documents to the workspace while they are written. Small documents
+     * are signed in memory and streamed straight into the content writer.
+     *
+     * @param request the signature request
+     * @param workspace the workspace of the signing operation
+     * @param size the size of the document in bytes
+     */
+    private void setSpillDir(SignatureRequest request, SigningWorkspace workspace, long size) {
+        if (size > inMemoryThreshold) {
+            request.setSpillDir(workspace.getDirectory());
+        }
+    }
+
+    /**
+     * Takes the signing lock of a document whose content is about to be rewritten.
+     *
+     * @param nodeRef the document
+     */
+    private void lockForSigning(NodeRef nodeRef) {
+        if (signingCoordinator != null) {
+            signingCoordinator.lock(nodeRef);
+        }
+    }
+
+    /**
+     * Checks that the content of a document is still the content that was signed.
+     *
+     * @param nodeRef the document
+     * @param contentUrl the URL of the content that was signed
+     */
+    private void checkContent(NodeRef nodeRef, String contentUrl) {
+        if (signingCoordinator != null) {
+            signingCoordinator.checkContent(nodeRef, contentUrl);
+        }
+    }
+
+    /**
+     * Records the signature on the signed node, when the signature aspect is enabled.
+     *
+     * @param signedNode the signed node
+     */
+    private void markSigned(NodeRef signedNode) {
+        markSigned(signedNode, new HashMap<QName, Serializable>());
+    }
+
+    /**
+     * Records the signature on the signed node, when the signature aspect is enabled, with the
+     * hashes identifying it. Hashes of a previous signature that are not given are cleared.
+     *
+     * @param signedNode the signed node
+     * @param signatureProps the hashes identifying the signature
+     */
+    private void markSigned(NodeRef signedNode, Map<QName, Serializable> signatureProps) {
+        if (useSignatureAspect) {
+            Map<QName, Serializable> props = new HashMap<QName, Serializable>();
+            props.put(PDFSignModel.PROP_SOURCEHASH, null);
+            props.put(PDFSignModel.PROP_CONTENTHASH, null);
+            props.put(PDFSignModel.PROP_CERTFINGERPRINT, null);
+            props.put(PDFSignModel.PROP_PARAMETERSHASH, null);
+            props.put(PDFSignModel.PROP_SIGNATUREDATE, new Date());
+            props.put(PDFSignModel.PROP_SIGNEDBY, AuthenticationUtil.getRunAsUser());
+            props.putAll(signatureProps);
+
+            ns.addAspect(signedNode, PDFSignModel.ASPECT_SIGNED, new HashMap<QName, Serializable>());
+            ns.addProperties(signedNode, props);
+        }
+    }
+
+    /**
+     * Looks for the document a previous signature of the same content with the same credential
+     * and parameters produced: the target itself when signing in place, otherwise the node of
+     * the destination name in the destination folder. The document must still hold the content
+     * that signature produced.
+     *
+     * @param targetNodeRef the document to sign
+     * @param params the signing parameters
+     * @param inplace whether the target is signed in place
+     * @param signatureProps the source hash, certificate fingerprint and parameters hash of the requested signature
+     * @return the signed document, or null if the document has to be signed
+     * @throws IOException if the content of a candidate cannot be read
+     * @throws GeneralSecurityException if the digest is not available
+     */
+    private NodeRef findSignedNode(NodeRef targetNodeRef, Map<String, Serializable> params, boolean inplace,
+            Map<QName, Serializable> signatureProps) throws IOException, GeneralSecurityException {
+        NodeRef candidate = targetNodeRef;
+        if (!inplace) {
+            NodeRef destinationParent = (NodeRef) params.get(PARAM_DESTINATION_FOLDER);
+            if (destinationParent == null) {
+                return null;
+            }
+            candidate = ns.getChildByName(destinationParent, ContentModel.ASSOC_CONTAINS, getFilename(params, targetNodeRef));
+        }
+        if (candidate == null || !ns.hasAspect(candidate, PDFSignModel.ASPECT_SIGNED)) {
+            return null;
+        }
+
+        Map<QName, Serializable> props = ns.getProperties(candidate);
+        String sourceHash = (String) signatureProps.get(PDFSignModel.PROP_SOURCEHASH);
+        if (!signatureProps.get(PDFSignModel.PROP_CERTFINGERPRINT).equals(props.get(PDFSignModel.PROP_CERTFINGERPRINT))
+                || !signatureProps.get(PDFSignModel.PROP_PARAMETERSHASH).equals(props.get(PDFSignModel.PROP_PARAMETERSHASH))) {
+            return null;
+        }
+
+        // the target already is the output of that signature
+        if (candidate.equals(targetNodeRef)) {
+            return sourceHash.equals(props.get(PDFSignModel.PROP_CONTENTHASH)) ? candidate : null;
+        }
+
+        // a copy signed from the same content, not changed since
+        if (!sourceHash.equals(props.get(PDFSignModel.PROP_SOURCEHASH))) {
+            return null;
+        }
+        String candidateHash = SignatureFingerprints.contentHash(getReader(candidate), cryptoProviders);
+        return candidateHash.equals(props.get(PDFSignModel.PROP_CONTENTHASH)) ? candidate : null;
+    }
+
+    /**
+     * Resolves the idempotency mode of a signing request.
+     *
+     * @param mode the requested mode, or null for the configured default
+     * @return none, skip-signed or share-content
+     */
+    private String getIdempotency(String mode) {
+        if (mode == null || mode.trim().isEmpty()) {
+            return defaultIdempotency;
+        }
+        String idempotency = mode.trim().toLowerCase();
+        if (!IDEMPOTENCY_NONE.equals(idempotency) && !IDEMPOTENCY_SKIP_SIGNED.equals(idempotency)
+                && !IDEMPOTENCY_SHARE_CONTENT.equals(idempotency)) {
+            throw new AlfrescoRuntimeException("Unknown idempotency mode: " + mode);
+        }
+        return idempotency;
+    }
+
+    /**
+     * Resolves the PAdES level of a request. Without a level, signatures are timestamped when a
+     * time-stamping authority is configured; the timestamped levels require one.
+     *
+     * @param level the requested level, or null for the default level
+     * @return the level, or null when none is requested nor configured
+     */
+    private String getSignatureLevel(String level) {
+        if (level == null || level.trim().isEmpty()) {
+            if (defaultSignatureLevel == null) {
+                return null;
+            }
+            level = defaultSignatureLevel;
+        }
+        String signatureLevel = level.trim().toLowerCase();
+        if (SIGNATURE_LEVEL_B_B.equals(signatureLevel)) {
+            return signatureLevel;
+        }
+        if (!SIGNATURE_LEVEL_B_T.equals(signatureLevel) && !SIGNATURE_LEVEL_B_LT.equals(signatureLevel)
+                && !SIGNATURE_LEVEL_B_LTA.equals(signatureLevel)) {
+            throw new AlfrescoRuntimeException("Unknown signature level: " + level);
+        }
+        if (timestampClient == null || !timestampClient.isEnabled()) {
+            throw new AlfrescoRuntimeException("The signature level " + level + " requires a time-stamping authority");
+        }
+        if (!SIGNATURE_LEVEL_B_T.equals(signatureLevel) && revocationCache == null) {
+            throw new AlfrescoRuntimeException("The signature level " + level + " requires the revocation cache");
+        }
+        return signatureLevel;
+    }
+
+    /**
+     * Tells whether the requested signature scheme is RSASSA-PSS.
+     *
+     * @param scheme the signature scheme, or null for PKCS#1 v1.5
+     * @return true for RSASSA-PSS
+     */
+    private boolean isPss(String scheme) {
+        if (scheme == null || scheme.trim().isEmpty() || SIGNATURE_SCHEME_PKCS1.equalsIgnoreCase(scheme.trim())) {
+            return false;
+        }
+        if (SIGNATURE_SCHEME_PSS.equalsIgnoreCase(scheme.trim())) {
+            return true;
+        }
+        throw new AlfrescoRuntimeException("Unknown signature scheme: " + scheme);
+    }
+
+    /**
+     * Sets the ServiceRegistry used by this service.
+     *
+     * @param serviceRegistry the ServiceRegistry to set
+     */
+    public void setServiceRegistry(ServiceRegistry serviceRegistry) {
+        this.serviceRegistry = serviceRegistry;
+        ns = serviceRegistry.getNodeService();
+        cs = serviceRegistry.getContentService();
+        ffs = serviceRegistry.getFileFolderService();
+        ds = serviceRegistry.getDictionaryService();
+        ps = serviceRegistry.getPersonService();
+        as = serviceRegistry.getAuthenticationService();
+        ts = serviceRegistry.getTransactionService();
+        permissionService = serviceRegistry.getPermissionService();
+    }
+
+    /**
+     * Sets the size in bytes up to which documents are signed in memory and streamed
+     * directly to the content store. Larger documents are spilled to a temporary file.
+     *
+     * @param inMemoryThreshold the threshold in bytes
+     */
+    public void setInMemoryThreshold(long inMemoryThreshold) {
+        this.inMemoryThreshold = inMemoryThreshold;
+    }
+
+    /**
+     * Sets the provider of the visible signature appearances.
+     *
+     * @param appearanceCache the AppearanceCache to set
+     */
+    public void setAppearanceCache(AppearanceCache appearanceCache) {
+        this.appearanceCache = appearanceCache;
+    }
+
+    /**
+     * Sets the coordinator serializing the signatures written over the signed document.
+     *
+     * @param signingCoordinator the SigningCoordinator to set
+     */
+    public void setSigningCoordinator(SigningCoordinator signingCoordinator) {
+        this.signingCoordinator = signingCoordinator;
+    }
+
+    /**
+     * Sets the space reserved in prepared documents for the CMS signature computed outside
+     * the repository.
+     *
+     * @param deferredReservedSize the reserved size in bytes
+     */
+    public void setDeferredReservedSize(int deferredReservedSize) {
+        this.deferredReservedSize = deferredReservedSize;
+    }
+
+    /**
+     * Sets the signature engines available to this service.
+     *
+     * @param engines the SignatureEngines to register by name
+     */
+    public void setEngines(List<SignatureEngine> engines) {
+        this.engines.clear();
+        for (SignatureEngine engine : engines) {
+            this.engines.put(engine.getName(), engine);
+        }
+    }
+
+    /**
+     * Sets the name of the engine used when the {@code engine} parameter is not given.
+     *
+     * @param defaultEngine the default engine name
+     */
+    public void setDefaultEngine(String defaultEngine) {
+        this.defaultEngine = defaultEngine.trim().toLowerCase();
+    }
+
+    /**
+     * Sets the client of the time-stamping authority signatures are timestamped by.
+     *
+     * @param timestampClient the timestamp client, disabled when no authority is configured
+     */
+    public void setTimestampClient(TimestampClient timestampClient) {
+        this.timestampClient = timestampClient;
+    }
+
+    /**
+     * Sets the revocation cache collecting the validation material of B-LT and B-LTA signatures.
+     *
+     * @param revocationCache the revocation cache
+     */
+    public void setRevocationCache(RevocationCache revocationCache) {
+        this.revocationCache = revocationCache;
+    }
+
+    /**
+     * Sets the verifier checking the signatures of documents.
+     *
+     * @param signatureVerifier the signature verifier
+     */
+    public void setSignatureVerifier(SignatureVerifier signatureVerifier) {
+        this.signatureVerifier = signatureVerifier;
+    }
+
+    /**
+     * Sets the cache of signed outputs by source content, credential and parameters, used by
+     * the share-content idempotency mode.
+     *
+     * @param signedOutputCache the cache of signed outputs
+     */
+    public void setSignedOutputCache(SimpleCache<String, SignedOutput> signedOutputCache) {
+        this.signedOutputCache = signedOutputCache;
+    }
+
+    /**
+     * Sets the PAdES level of requests that do not set the signature level parameter. It is
+     * checked against the time-stamping authority when it is used, as both are configured
+     * independently.
+     *
+     * @param defaultSignatureLevel b-b, b-t, b-lt, b-lta or empty
+     */
+    public void setDefaultSignatureLevel(String defaultSignatureLevel) {
+        this.defaultSignatureLevel = defaultSignatureLevel == null || defaultSignatureLevel.trim().isEmpty()
+                ? null : defaultSignatureLevel.trim().toLowerCase();
+    }
+
+    /**
+     * Sets the idempotency mode of requests that do not set the idempotency parameter.
+     *
+     * @param defaultIdempotency none, skip-signed or share-content
+     */
+    public void setDefaultIdempotency(String defaultIdempotency) {
+        this.defaultIdempotency = getIdempotency(defaultIdempotency);
+    }
+
+    /**
+     * Sets the worker pool used by bulk signing jobs.
+     *
+     * @param batchExecutor the ThreadPoolExecutor to set
+     */
+    public void setBatchExecutor(ThreadPoolExecutor batchExecutor) {
+        this.batchExecutor = batchExecutor;
+    }
+
+    /**
+     * Sets the maximum number of documents of a single bulk signing job signed in parallel.
+     *
+     * @param batchParallelism the number of workers per job
+     */
+    public void setBatchParallelism(int batchParallelism) {
+        this.batchParallelism = batchParallelism;
+    }
+
+    /**
+     * Sets how long finished bulk signing jobs are kept so their outcome can be queried.
+     *
+     * @param batchJobRetentionSeconds the retention in seconds
+     */
+    public void setBatchJobRetentionSeconds(long batchJobRetentionSeconds) {
+        this.batchJobRetentionSeconds = batchJobRetentionSeconds;
+    }
+
+    /**
+     * Sets the executor running folder signing jobs. Each job takes one thread while it walks
+     * its folder; the documents are signed by the bulk signing workers.
+     *
+     * @param folderExecutor the ThreadPoolExecutor to set
+     */
+    public void setFolderExecutor(ThreadPoolExecutor folderExecutor) {
+        this.folderExecutor = folderExecutor;
+    }
+
+    /**
+     * Sets the number of documents of a folder signing job submitted and checkpointed together.
+     *
+     * @param folderBatchSize the batch size
+     */
+    public void setFolderBatchSize(int folderBatchSize) {
+        this.folderBatchSize = Math.max(1, folderBatchSize);
+    }
+
+    /**
+     * Sets the number of children listed at a time while a folder is walked.
+     *
+     * @param folderPageSize the page size
+     */
+    public void setFolderPageSize(int folderPageSize) {
+        this.folderPageSize = Math.max(1, folderPageSize);
+    }
+
+    /**
+     * Sets the cache of signing credentials loaded from key store nodes.
+     *
+     * @param credentialCache the SigningCredentialCache to set
+     */
+    public void setCredentialCache(SigningCredentialCache credentialCache) {
+        this.credentialCache = credentialCache;
+    }
+
+    /**
+     * Sets the JCA providers signing credentials are pre-warmed with.
+     *
+     * @param cryptoProviders the CryptoProviders to set
+     */
+    public void setCryptoProviders(CryptoProviders cryptoProviders) {
+        this.cryptoProviders = cryptoProviders;
+    }
+
+    /**
+     * Sets the collector of the signing metrics.
+     *
+     * @param metrics the PDFSignMetrics to set
+     */
+    public void setMetrics(PDFSignMetrics metrics) {
+        this.metrics = metrics;
     }
 
     /**
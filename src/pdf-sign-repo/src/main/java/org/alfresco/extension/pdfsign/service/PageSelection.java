@@ -0,0 +1,198 @@
+/**
+ * *****************************************************************************
+ *
+ * @file PageSelection.java
+ * @description Page selection grammar of visible signatures, resolved into a
+ *              compact page set.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+
+/**
+ * The pages a visible signature is placed on, parsed from the {@code page} parameter.
+ * <p>
+ * A selection is a comma separated list of terms, each one being {@code all}, {@code first},
+ * {@code last}, {@code odd}, {@code even}, a page number such as {@code 9}, a range such as
+ * {@code 1-5} or an open range such as {@code 12-}, which runs to the last page. For example
+ * {@code 1-5,9,12-}. The selection is parsed once and resolved against the page count of each
+ * document into a {@link BitSet}, so selecting every other page of a large document costs one
+ * bit per page.
+ * <p>
+ * Terms that run to the last page ({@code all}, {@code odd}, {@code even} and open ranges) add
+ * no page to a document too short for them, so {@code first,even} selects the first page of a
+ * one page document, while a page number or closed range past the end is an error.
+ */
+public final class PageSelection {
+
+    /** Scheme of a selection made of several terms or of page ranges. */
+    public static final String SCHEME_RANGE = "range";
+
+    /** Scheme of a selection made of a single page number. */
+    public static final String SCHEME_SINGLE = "single";
+
+    private static final int LAST = -1;
+
+    /** Selected ranges as first page, last page and step; LAST stands for the last page. */
+    private final List<int[]> ranges;
+    private final String scheme;
+    private final String selection;
+
+    private PageSelection(List<int[]> ranges, String scheme, String selection) {
+        this.ranges = ranges;
+        this.scheme = scheme;
+        this.selection = selection;
+    }
+
+    /**
+     * Parses a page selection.
+     *
+     * @param selection the selection, such as {@code odd} or {@code 1-5,9,12-}
+     * @return the parsed selection
+     * @throws AlfrescoRuntimeException if the selection is empty or malformed
+     */
+    public static PageSelection parse(String selection) {
+        if (selection == null || selection.trim().isEmpty()) {
+            throw new AlfrescoRuntimeException("Invalid page number specified.");
+        }
+
+        List<int[]> ranges = new ArrayList<int[]>();
+        String[] terms = selection.toLowerCase(Locale.ROOT).replace(" ", "").split(",");
+        String scheme = null;
+        for (String term : terms) {
+            switch (term) {
+                case "all":
+                    ranges.add(new int[] { 1, LAST, 1 });
+                    break;
+                case "first":
+                    ranges.add(new int[] { 1, 1, 1 });
+                    break;
+                case "last":
+                    ranges.add(new int[] { LAST, LAST, 1 });
+                    break;
+                case "odd":
+                    ranges.add(new int[] { 1, LAST, 2 });
+                    break;
+                case "even":
+                    ranges.add(new int[] { 2, LAST, 2 });
+                    break;
+                default:
+                    ranges.add(parseRange(term, selection));
+                    scheme = term.indexOf('-') < 0 ? SCHEME_SINGLE : SCHEME_RANGE;
+                    break;
+            }
+            if (scheme == null) {
+                scheme = term;
+            }
+        }
+
+        return new PageSelection(ranges, terms.length > 1 ? SCHEME_RANGE : scheme, selection);
+    }
+
+    private static int[] parseRange(String term, String selection) {
+        try {
+            int dash = term.indexOf('-');
+            if (dash < 0) {
+                int page = Integer.parseInt(term);
+                return checked(new int[] { page, page, 1 }, selection);
+            }
+            int from = Integer.parseInt(term.substring(0, dash));
+            int to = dash == term.length() - 1 ? LAST : Integer.parseInt(term.substring(dash + 1));
+            return checked(new int[] { from, to, 1 }, selection);
+        } catch (NumberFormatException e) {
+            throw new AlfrescoRuntimeException("Invalid page number specified: " + selection);
+        }
+    }
+
+    private static int[] checked(int[] range, String selection) {
+        if (range[0] < 1 || (range[1] != LAST && range[1] < range[0])) {
+            throw new AlfrescoRuntimeException("Invalid page number specified: " + selection);
+        }
+        return range;
+    }
+
+    /**
+     * Resolves the selection against a document.
+     *
+     * @param numPages the number of pages of the document
+     * @return the selected pages
+     * @throws AlfrescoRuntimeException if a selected page does not exist or no page is selected
+     */
+    public BitSet select(int numPages) {
+        BitSet pages = new BitSet(numPages + 1);
+        for (int[] range : ranges) {
+            int from = range[0] == LAST ? numPages : range[0];
+            int to = range[1] == LAST ? numPages : range[1];
+            if (range[1] == LAST && from > numPages) {
+                // odd, even or an open range starting past the end of a short document
+                continue;
+            }
+            if (from > numPages || to > numPages) {
+                throw new AlfrescoRuntimeException("Invalid page number specified: " + selection
+                        + " (the document has " + numPages + " pages)");
+            }
+            if (range[2] == 1) {
+                pages.set(from, to + 1);
+            } else {
+                for (int page = from; page <= to; page += range[2]) {
+                    pages.set(page);
+                }
+            }
+        }
+        if (pages.isEmpty()) {
+            throw new AlfrescoRuntimeException("Page selection " + selection + " selects no page of a document of "
+                    + numPages + " pages");
+        }
+        return pages;
+    }
+
+    /**
+     * Resolves the selection against a document into page numbers.
+     *
+     * @param numPages the number of pages of the document
+     * @return the 1-based page numbers, in ascending order
+     * @throws AlfrescoRuntimeException if a selected page does not exist or no page is selected
+     */
+    public int[] toPages(int numPages) {
+        BitSet selected = select(numPages);
+        int[] pages = new int[selected.cardinality()];
+        int i = 0;
+        for (int page = selected.nextSetBit(1); page >= 0; page = selected.nextSetBit(page + 1)) {
+            pages[i++] = page;
+        }
+        return pages;
+    }
+
+    /**
+     * Returns the scheme of the selection, used to label signing metrics.
+     *
+     * @return all, first, last, odd, even, single or range
+     */
+    public String getScheme() {
+        return scheme;
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * *****************************************************************************
+ *
+ * @file PreparedSignature.java
+ * @description Prepared document and byte-range digest returned by the first phase
+ *              of a deferred signature.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+
+/**
+ * A signature prepared with {@link PDFSignService#prepareSignature}: the node holding the
+ * prepared document and the digest of the byte range the CMS signature has to cover.
+ */
+public class PreparedSignature {
+
+    private final NodeRef nodeRef;
+    private final String digestAlgorithm;
+    private final byte[] digest;
+
+    /**
+     * Creates a new prepared signature.
+     *
+     * @param nodeRef the node holding the prepared document
+     * @param digestAlgorithm the algorithm the byte range was digested with
+     * @param digest the digest of the byte range
+     */
+    public PreparedSignature(NodeRef nodeRef, String digestAlgorithm, byte[] digest) {
+        this.nodeRef = nodeRef;
+        this.digestAlgorithm = digestAlgorithm;
+        this.digest = digest;
+    }
+
+    public NodeRef getNodeRef() {
+        return nodeRef;
+    }
+
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    public byte[] getDigest() {
+        return digest.clone();
+    }
+}
@@ -0,0 +1,522 @@
+/**
+ * *****************************************************************************
+ *
+ * @file RevocationCache.java
+ * @description Fetches and caches the OCSP responses and CRLs of certificate
+ *              chains until their next update.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.security.GeneralSecurityException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.alfresco.repo.cache.SimpleCache;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.bouncycastle.asn1.ASN1IA5String;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+/**
+ * Collects the revocation information of certificate chains for long-term validation.
+ * <p>
+ * Every certificate of a chain but its root is checked with the OCSP responder published in
+ * its authority information access extension, falling back to the CRLs of its distribution
+ * points. Responses are verified, must report the certificate as good, and are cached by
+ * issuer key hash and serial number until their next update, or for the default maximum age
+ * when they publish none. CRLs are fetched once per distribution point and cached the same
+ * way, so a bulk run over documents signed with the same chain fetches each response once.
+ * Concurrent requests for the same response share a single fetch.
+ * <p>
+ * OCSP responses are only accepted when they are signed by the issuer of the certificate or by
+ * a responder the issuer delegated, that is a certificate it issued with the id-kp-OCSPSigning
+ * extended key usage, so a response signed by any other certificate it carries is neither
+ * cached nor embedded.
+ */
+public class RevocationCache {
+
+    private static final Log logger = LogFactory.getLog(RevocationCache.class);
+
+    private static final String OCSP_REQUEST = "application/ocsp-request";
+
+    private SimpleCache<String, Entry> cache;
+    private boolean ocspEnabled = true;
+    private boolean crlEnabled = true;
+    private long defaultMaxAgeSeconds = 3600;
+    private int connectTimeoutMillis = 5000;
+    private int socketTimeoutMillis = 10000;
+    private int maxConnections = 8;
+
+    private CloseableHttpClient httpClient;
+
+    /** Responses being fetched, by cache key. */
+    private final ConcurrentHashMap<String, FutureTask<Entry>> inflight = new ConcurrentHashMap<String, FutureTask<Entry>>();
+
+    /**
+     * Creates the HTTP client.
+     */
+    public void init() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMillis)
+                .setSocketTimeout(socketTimeoutMillis)
+                .setConnectionRequestTimeout(socketTimeoutMillis)
+                .build();
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .disableCookieManagement()
+                .build();
+    }
+
+    /**
+     * Closes the HTTP client and its pooled connections.
+     */
+    public void destroy() {
+        if (httpClient != null) {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                logger.warn("Could not close the revocation client: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Collects the certificates of a chain and the revocation information of every certificate
+     * but the root.
+     *
+     * @param chain the certificate chain, from the end entity to the root
+     * @return the validation material of the chain
+     * @throws IOException if the revocation information of a certificate cannot be obtained or
+     *             reports it revoked
+     * @throws GeneralSecurityException if a certificate cannot be encoded
+     */
+    public ValidationMaterial collect(Certificate[] chain) throws IOException, GeneralSecurityException {
+        ValidationMaterial material = new ValidationMaterial();
+        for (int i = 0; i < chain.length; i++) {
+            X509Certificate certificate = (X509Certificate) chain[i];
+            material.addCertificate(certificate.getEncoded());
+            if (isSelfSigned(certificate)) {
+                continue;
+            }
+            if (i + 1 == chain.length) {
+                throw new IOException("The issuer of " + certificate.getSubjectX500Principal() + " is not in the certificate chain");
+            }
+            addRevocation(material, certificate, (X509Certificate) chain[i + 1]);
+        }
+        return material;
+    }
+
+    /**
+     * Adds the OCSP response or, failing that, a CRL proving the certificate is not revoked.
+     */
+    private void addRevocation(ValidationMaterial material, X509Certificate certificate, X509Certificate issuer)
+            throws IOException, GeneralSecurityException {
+        IOException failure = null;
+        if (ocspEnabled) {
+            String url = getOcspUrl(certificate);
+            if (url != null) {
+                try {
+                    material.addOcsp(getOcsp(certificate, issuer, url));
+                    return;
+                } catch (IOException e) {
+                    logger.debug("OCSP check of " + certificate.getSubjectX500Principal() + " failed: " + e.getMessage());
+                    failure = e;
+                }
+            }
+        }
+        if (crlEnabled) {
+            for (String url : getCrlUrls(certificate)) {
+                try {
+                    material.addCrl(getCrl(certificate, issuer, url));
+                    return;
+                } catch (IOException e) {
+                    logger.debug("CRL check of " + certificate.getSubjectX500Principal() + " failed: " + e.getMessage());
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        throw new IOException("No OCSP responder or CRL is available for " + certificate.getSubjectX500Principal());
+    }
+
+    private byte[] getOcsp(X509Certificate certificate, X509Certificate issuer, String url) throws IOException, GeneralSecurityException {
+        CertificateID id = getCertificateID(certificate, issuer);
+        String key = "ocsp|" + SignatureFingerprints.hex(id.getIssuerKeyHash()) + "|" + certificate.getSerialNumber().toString(16);
+        return lookup(key, () -> fetchOcsp(id, certificate, issuer, url)).encoded;
+    }
+
+    private byte[] getCrl(X509Certificate certificate, X509Certificate issuer, String url) throws IOException, GeneralSecurityException {
+        CertificateID id = getCertificateID(certificate, issuer);
+        String key = "crl|" + SignatureFingerprints.hex(id.getIssuerKeyHash()) + "|" + certificate.getSerialNumber().toString(16);
+        // the CRL is shared by every certificate of the issuer, only the verdict is kept per certificate
+        return lookup(key, () -> {
+            Entry crl = lookup("crl|" + url, () -> fetchCrl(issuer, url));
+            X509CRL parsed = parseCrl(crl.encoded);
+            if (parsed.isRevoked(certificate)) {
+                throw new IOException("The certificate " + certificate.getSubjectX500Principal() + " is revoked");
+            }
+            return crl;
+        }).encoded;
+    }
+
+    /**
+     * Returns the cached entry of the given key, fetching it when it is missing or past its next
+     * update, and joining a fetch of the same key already in progress in another thread.
+     */
+    private Entry lookup(String key, Callable<Entry> fetch) throws IOException {
+        Entry entry = cache.get(key);
+        if (entry != null && !entry.isExpired()) {
+            return entry;
+        }
+
+        // the entry is cached before the fetch leaves the in-flight map, so no thread fetches it again in between
+        FutureTask<Entry> task = new FutureTask<Entry>(() -> {
+            Entry fetched = fetch.call();
+            if (!fetched.isExpired()) {
+                cache.put(key, fetched);
+            }
+            return fetched;
+        });
+        FutureTask<Entry> running = inflight.putIfAbsent(key, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                inflight.remove(key, task);
+            }
+        }
+
+        try {
+            entry = running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching " + key, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Could not fetch " + key + ": " + e.getCause().getMessage(), e.getCause());
+        }
+
+        return entry;
+    }
+
+    private Entry fetchOcsp(CertificateID id, X509Certificate certificate, X509Certificate issuer, String url)
+            throws IOException, GeneralSecurityException {
+        try {
+            OCSPReq request = new OCSPReqBuilder().addRequest(id).build();
+            HttpPost post = new HttpPost(url);
+            post.setEntity(new ByteArrayEntity(request.getEncoded(), ContentType.create(OCSP_REQUEST)));
+
+            OCSPResp response = new OCSPResp(execute(post));
+            if (response.getStatus() != OCSPResp.SUCCESSFUL) {
+                throw new IOException("The OCSP responder " + url + " answered status " + response.getStatus());
+            }
+            BasicOCSPResp basic = (BasicOCSPResp) response.getResponseObject();
+
+            verifyResponder(basic, issuer, url);
+
+            for (SingleResp single : basic.getResponses()) {
+                if (!id.equals(single.getCertID())) {
+                    continue;
+                }
+                if (single.getCertStatus() != CertificateStatus.GOOD) {
+                    throw new IOException("The OCSP responder " + url + " does not report " + certificate.getSubjectX500Principal() + " as good");
+                }
+                return new Entry(basic.getEncoded(), expiresAt(single.getNextUpdate()));
+            }
+            throw new IOException("The OCSP responder " + url + " did not answer for " + certificate.getSubjectX500Principal());
+        } catch (OCSPException | OperatorCreationException e) {
+            throw new IOException("Invalid response of the OCSP responder " + url + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Checks that an OCSP response is signed by the issuer of the certificate or by a responder
+     * the issuer delegated, trying the certificates the response carries and then the issuer.
+     */
+    private static void verifyResponder(BasicOCSPResp basic, X509Certificate issuer, String url)
+            throws IOException, GeneralSecurityException, OCSPException, OperatorCreationException {
+        List<X509Certificate> candidates = new ArrayList<X509Certificate>();
+        X509CertificateHolder[] certs = basic.getCerts();
+        if (certs != null) {
+            JcaX509CertificateConverter converter = new JcaX509CertificateConverter();
+            for (X509CertificateHolder cert : certs) {
+                candidates.add(converter.getCertificate(cert));
+            }
+        }
+        candidates.add(issuer);
+
+        for (X509Certificate candidate : candidates) {
+            if (isAuthorizedResponder(candidate, issuer)
+                    && basic.isSignatureValid(new JcaContentVerifierProviderBuilder().build(candidate.getPublicKey()))) {
+                return;
+            }
+        }
+        throw new IOException("The response of the OCSP responder " + url + " is not signed by "
+                + issuer.getSubjectX500Principal() + " or a responder it authorized");
+    }
+
+    /**
+     * Tells whether a certificate may sign OCSP responses on behalf of the issuer: it is the
+     * issuer itself, or a currently valid certificate signed by the issuer for OCSP signing.
+     */
+    private static boolean isAuthorizedResponder(X509Certificate responder, X509Certificate issuer) {
+        if (responder.equals(issuer)) {
+            return true;
+        }
+        if (!responder.getIssuerX500Principal().equals(issuer.getSubjectX500Principal())) {
+            return false;
+        }
+        try {
+            responder.verify(issuer.getPublicKey());
+            responder.checkValidity();
+            List<String> usages = responder.getExtendedKeyUsage();
+            return usages != null && usages.contains(KeyPurposeId.id_kp_OCSPSigning.getId());
+        } catch (GeneralSecurityException e) {
+            logger.debug("OCSP responder " + responder.getSubjectX500Principal() + " is not authorized: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private Entry fetchCrl(X509Certificate issuer, String url) throws IOException, GeneralSecurityException {
+        byte[] encoded = execute(new HttpGet(url));
+        X509CRL crl = parseCrl(encoded);
+        crl.verify(issuer.getPublicKey());
+        return new Entry(crl.getEncoded(), expiresAt(crl.getNextUpdate()));
+    }
+
+    private byte[] execute(HttpUriRequest request) throws IOException {
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            int status = response.getStatusLine().getStatusCode();
+            // the body is always consumed, so the connection goes back to the pool
+            byte[] body = response.getEntity() == null ? new byte[0] : EntityUtils.toByteArray(response.getEntity());
+            if (status != HttpStatus.SC_OK) {
+                throw new IOException(request.getURI() + " answered HTTP " + status);
+            }
+            return body;
+        }
+    }
+
+    private long expiresAt(Date nextUpdate) {
+        return nextUpdate != null ? nextUpdate.getTime() : System.currentTimeMillis() + defaultMaxAgeSeconds * 1000L;
+    }
+
+    private static X509CRL parseCrl(byte[] encoded) throws GeneralSecurityException {
+        return (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(new ByteArrayInputStream(encoded));
+    }
+
+    private static CertificateID getCertificateID(X509Certificate certificate, X509Certificate issuer) throws GeneralSecurityException {
+        try {
+            return new CertificateID(new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1),
+                    new JcaX509CertificateHolder(issuer), certificate.getSerialNumber());
+        } catch (OperatorCreationException | OCSPException e) {
+            throw new GeneralSecurityException(e.getMessage(), e);
+        }
+    }
+
+    private static boolean isSelfSigned(X509Certificate certificate) {
+        if (!certificate.getSubjectX500Principal().equals(certificate.getIssuerX500Principal())) {
+            return false;
+        }
+        try {
+            certificate.verify(certificate.getPublicKey());
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    private static String getOcspUrl(X509Certificate certificate) throws IOException {
+        byte[] extension = certificate.getExtensionValue(Extension.authorityInfoAccess.getId());
+        if (extension == null) {
+            return null;
+        }
+        AuthorityInformationAccess access = AuthorityInformationAccess.getInstance(JcaX509ExtensionUtils.parseExtensionValue(extension));
+        for (AccessDescription description : access.getAccessDescriptions()) {
+            if (AccessDescription.id_ad_ocsp.equals(description.getAccessMethod())) {
+                String url = getHttpUrl(description.getAccessLocation());
+                if (url != null) {
+                    return url;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<String> getCrlUrls(X509Certificate certificate) throws IOException {
+        List<String> urls = new ArrayList<String>();
+        byte[] extension = certificate.getExtensionValue(Extension.cRLDistributionPoints.getId());
+        if (extension == null) {
+            return urls;
+        }
+        for (DistributionPoint point : CRLDistPoint.getInstance(JcaX509ExtensionUtils.parseExtensionValue(extension)).getDistributionPoints()) {
+            DistributionPointName name = point.getDistributionPoint();
+            if (name == null || name.getType() != DistributionPointName.FULL_NAME) {
+                continue;
+            }
+            for (GeneralName generalName : GeneralNames.getInstance(name.getName()).getNames()) {
+                String url = getHttpUrl(generalName);
+                if (url != null) {
+                    urls.add(url);
+                }
+            }
+        }
+        return urls;
+    }
+
+    private static String getHttpUrl(GeneralName name) {
+        if (name.getTagNo() != GeneralName.uniformResourceIdentifier) {
+            return null;
+        }
+        String url = ASN1IA5String.getInstance(name.getName()).getString();
+        return url.startsWith("http://") || url.startsWith("https://") ? url : null;
+    }
+
+    /**
+     * A verified OCSP response or CRL and the time it has to be fetched again.
+     */
+    public static final class Entry implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] encoded;
+        private final long expiresAt;
+
+        private Entry(byte[] encoded, long expiresAt) {
+            this.encoded = encoded;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+
+    /**
+     * @param cache the cache of verified responses
+     */
+    public void setCache(SimpleCache<String, Entry> cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @param ocspEnabled whether OCSP responders are queried
+     */
+    public void setOcspEnabled(boolean ocspEnabled) {
+        this.ocspEnabled = ocspEnabled;
+    }
+
+    /**
+     * @param crlEnabled whether CRLs are fetched when no OCSP response is available
+     */
+    public void setCrlEnabled(boolean crlEnabled) {
+        this.crlEnabled = crlEnabled;
+    }
+
+    /**
+     * @param defaultMaxAgeSeconds how long responses that publish no next update are cached
+     */
+    public void setDefaultMaxAgeSeconds(long defaultMaxAgeSeconds) {
+        this.defaultMaxAgeSeconds = defaultMaxAgeSeconds;
+    }
+
+    /**
+     * @param connectTimeoutMillis the timeout to connect to responders and distribution points
+     */
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * @param socketTimeoutMillis the timeout to read a response, also the longest wait for a pooled connection
+     */
+    public void setSocketTimeoutMillis(int socketTimeoutMillis) {
+        this.socketTimeoutMillis = socketTimeoutMillis;
+    }
+
+    /**
+     * @param maxConnections the number of connections kept open per responder
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = Math.max(1, maxConnections);
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SignBatchJob.java
+ * @description Progress and outcome of an asynchronous bulk signing job submitted
+ *              through the PDFSignService.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+
+/**
+ * Tracks an asynchronous bulk signing job: the documents still waiting to be signed,
+ * the progress made so far, the signed node produced for every document and the
+ * reason each failed document could not be signed.
+ */
+public class SignBatchJob {
+
+    /**
+     * Status of a bulk signing job. A job is REJECTED when the signing pool refused every one
+     * of its workers, so its documents were failed without being signed.
+     */
+    public enum Status {
+        RUNNING, COMPLETED, CANCELLED, REJECTED
+    }
+
+    private final String id;
+    private final int total;
+    private final Queue<NodeRef> pending;
+
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final Map<NodeRef, NodeRef> results = new ConcurrentHashMap<NodeRef, NodeRef>();
+    private final Map<NodeRef, String> failures = new ConcurrentHashMap<NodeRef, String>();
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private volatile boolean cancelled = false;
+    private volatile boolean rejected = false;
+    private volatile long finishedAt = 0;
+
+    /**
+     * Creates a new job for the given documents.
+     *
+     * @param id the job identifier
+     * @param targetNodeRefs the documents to sign
+     */
+    SignBatchJob(String id, Collection<NodeRef> targetNodeRefs) {
+        this.id = id;
+        this.pending = new ConcurrentLinkedQueue<NodeRef>(targetNodeRefs);
+        this.total = pending.size();
+        if (total == 0) {
+            finish();
+        }
+    }
+
+    /**
+     * Requests the cancellation of the job. Documents already being signed are completed,
+     * the remaining ones are not signed.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Waits until every worker of the job has finished.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if the job finished, false if the timeout elapsed first
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    /**
+     * Returns the next document to sign, or null when the job is exhausted or cancelled.
+     */
+    NodeRef next() {
+        return cancelled ? null : pending.poll();
+    }
+
+    void workerStarted() {
+        activeWorkers.incrementAndGet();
+    }
+
+    void workerFinished() {
+        if (activeWorkers.decrementAndGet() == 0) {
+            finish();
+        }
+    }
+
+    /**
+     * Records that the signing pool refused a worker. When no other worker of the job is left
+     * to drain the queue, the documents still waiting are failed with the cause of the rejection.
+     *
+     * @param cause the rejection
+     * @return true if waiting documents were failed
+     */
+    boolean workerRejected(Throwable cause) {
+        boolean drained = false;
+        // workers are only started while the job is submitted, so a count of one is this worker
+        if (activeWorkers.get() == 1 && !cancelled) {
+            NodeRef target;
+            while ((target = pending.poll()) != null) {
+                failed(target, cause);
+                drained = true;
+            }
+            rejected = drained;
+        }
+        workerFinished();
+        return drained;
+    }
+
+    void succeeded(NodeRef target, NodeRef result) {
+        if (result != null) {
+            results.put(target, result);
+        }
+        succeeded.incrementAndGet();
+    }
+
+    void failed(NodeRef target, Throwable cause) {
+        failures.put(target, String.valueOf(cause.getMessage()));
+        failed.incrementAndGet();
+    }
+
+    private void finish() {
+        if (finishedAt == 0) {
+            finishedAt = System.currentTimeMillis();
+        }
+        done.countDown();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        if (!isDone()) {
+            return Status.RUNNING;
+        }
+        if (rejected) {
+            return Status.REJECTED;
+        }
+        return getProcessed() < total ? Status.CANCELLED : Status.COMPLETED;
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isRejected() {
+        return rejected;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getProcessed() {
+        return succeeded.get() + failed.get();
+    }
+
+    public int getSucceeded() {
+        return succeeded.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Returns the signed node produced for every successfully signed document.
+     *
+     * @return a map of source document to signed document
+     */
+    public Map<NodeRef, NodeRef> getResults() {
+        return Collections.unmodifiableMap(results);
+    }
+
+    /**
+     * Returns the reason every failed document could not be signed.
+     *
+     * @return a map of source document to error message
+     */
+    public Map<NodeRef, String> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Returns the time the job finished, or 0 while it is still running.
+     *
+     * @return the finish time in milliseconds
+     */
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SignableDocument.java
+ * @description A PDF document opened by a SignatureEngine, ready to be signed.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+/**
+ * A PDF document opened by a {@link SignatureEngine}.
+ */
+public interface SignableDocument extends Closeable {
+
+    /**
+     * Returns the number of pages of the document.
+     *
+     * @return the number of pages
+     */
+    int getNumberOfPages();
+
+    /**
+     * Signs the document and writes the signed document to the given stream.
+     * A document can only be signed once.
+     *
+     * @param request the signature to apply
+     * @param out the stream receiving the signed document
+     * @throws IOException if the document cannot be read or written
+     * @throws GeneralSecurityException if the signature cannot be computed
+     */
+    void sign(SignatureRequest request, OutputStream out) throws IOException, GeneralSecurityException;
+
+    /**
+     * Prepares the document for a signature computed elsewhere: writes the document with the
+     * signature field and its appearance, reserving zero-filled space for the CMS signature,
+     * and digests the byte range that signature has to cover. The credential of the request
+     * is not used and may be null. A document can only be signed or prepared once.
+     *
+     * @param request the signature to prepare
+     * @param reservedSize the space reserved for the CMS signature, in bytes
+     * @param out the stream receiving the prepared document
+     * @return the digest of the byte range, with the digest algorithm of the request
+     * @throws IOException if the document cannot be read or written
+     * @throws GeneralSecurityException if the digest algorithm is not available
+     */
+    byte[] prepare(SignatureRequest request, int reservedSize, OutputStream out) throws IOException, GeneralSecurityException;
+}
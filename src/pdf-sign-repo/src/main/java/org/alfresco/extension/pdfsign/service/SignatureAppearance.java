@@ -0,0 +1,119 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SignatureAppearance.java
+ * @description Pre-computed layout of a visible signature for a signer and a
+ *              signature size.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+
+/**
+ * The layout of a visible signature computed from an {@link AppearanceTemplate} for a signer
+ * and a signature size: the box of the logo, the box and font size of the text, and the text
+ * lines with the signer name already in place. Coordinates are relative to the lower-left
+ * corner of the signature box.
+ * <p>
+ * The logo and the lines without a date are rendered once, as the static layer. Instances are
+ * immutable and cached by the {@link AppearanceCache}, so the engines import the static layer
+ * and only format and draw the lines holding the signing date.
+ */
+public final class SignatureAppearance {
+
+    /** Line height, as a factor of the font size. */
+    public static final float LEADING = 1.2f;
+
+    private final AppearanceTemplate template;
+    private final String[] lines;
+    private final float fontSize;
+    private final float[] textBox;
+    private final float[] logoBox;
+    private final byte[] staticLayer;
+
+    SignatureAppearance(AppearanceTemplate template, String[] lines, float fontSize, float[] textBox, float[] logoBox, byte[] staticLayer) {
+        this.template = template;
+        this.lines = lines;
+        this.fontSize = fontSize;
+        this.textBox = textBox;
+        this.logoBox = logoBox;
+        this.staticLayer = staticLayer;
+    }
+
+    /**
+     * Returns the text lines drawn over the static layer for the given signing date: the lines
+     * holding the date, formatted, and null in place of the lines of the static layer.
+     *
+     * @param signDate the signing date
+     * @return the dated lines of the appearance text
+     */
+    public String[] getDateLines(Calendar signDate) {
+        String date = null;
+        String[] formatted = new String[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].contains(AppearanceTemplate.DATE)) {
+                if (date == null) {
+                    date = new SimpleDateFormat(template.getDateFormat()).format(signDate.getTime());
+                }
+                formatted[i] = lines[i].replace(AppearanceTemplate.DATE, date);
+            }
+        }
+        return formatted;
+    }
+
+    /**
+     * Returns the static layer: a single page document of the size of the signature box with
+     * the logo and the lines without a date drawn.
+     *
+     * @return the encoded document, shared by every signature using this appearance
+     */
+    public byte[] getStaticLayer() {
+        return staticLayer;
+    }
+
+    public float getFontSize() {
+        return fontSize;
+    }
+
+    /**
+     * Returns the box of the text.
+     *
+     * @return x, y, width and height of the text box
+     */
+    public float[] getTextBox() {
+        return textBox.clone();
+    }
+
+    /**
+     * Returns the box of the logo, which keeps the aspect ratio of the image.
+     *
+     * @return x, y, width and height of the logo box, or null if there is no logo
+     */
+    public float[] getLogoBox() {
+        return logoBox == null ? null : logoBox.clone();
+    }
+
+    public AppearanceTemplate getTemplate() {
+        return template;
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SignatureEngine.java
+ * @description Service provider interface for the libraries able to apply a
+ *              digital signature to a PDF document.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.IOException;
+
+import org.alfresco.service.cmr.repository.ContentReader;
+
+/**
+ * Service provider interface of the PDF libraries the {@link PDFSignService} can sign with.
+ * <p>
+ * An engine opens the document to sign once; the opened {@link SignableDocument} is then
+ * used to validate the requested pages and to write the signed document. Engines are
+ * registered by name with the service and selected globally or per action through the
+ * {@code engine} parameter.
+ */
+public interface SignatureEngine {
+
+    /**
+     * Returns the name the engine is registered and selected with.
+     *
+     * @return the engine name
+     */
+    String getName();
+
+    /**
+     * Opens a PDF document for signing.
+     *
+     * @param contentReader the ContentReader of the document
+     * @return the opened document, which must be closed by the caller
+     * @throws IOException if the content cannot be read or is not a valid PDF
+     */
+    SignableDocument open(ContentReader contentReader) throws IOException;
+}
@@ -0,0 +1,145 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SignatureFingerprints.java
+ * @description Content, certificate and parameter hashes identifying a
+ *              signature, used to skip signing a document twice.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.cert.Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.extension.pdfsign.constants.PDFSignConstants;
+import org.alfresco.service.cmr.repository.ContentReader;
+
+/**
+ * Hashes recorded in the {@code pdft:signed} aspect, which identify a signature by the content
+ * it was computed over, the content it produced, the signing certificate and the parameters
+ * that shape the signature. Hashes are SHA-256, hex encoded.
+ */
+final class SignatureFingerprints {
+
+    /** Digest algorithm of the recorded hashes. */
+    static final String ALGORITHM = "SHA-256";
+
+    /** Parameters that change the signature written in the document, in a fixed order. */
+    private static final List<String> SIGNATURE_PARAMS = Collections.unmodifiableList(Arrays.asList(
+            PDFSignConstants.PARAM_VISIBILITY, PDFSignConstants.PARAM_PAGE, PDFSignConstants.PARAM_POSITION,
+            PDFSignConstants.PARAM_LOCATION_X, PDFSignConstants.PARAM_LOCATION_Y, PDFSignConstants.PARAM_WIDTH,
+            PDFSignConstants.PARAM_HEIGHT, PDFSignConstants.PARAM_ENGINE, PDFSignConstants.PARAM_APPEARANCE,
+            PDFSignConstants.PARAM_DIGEST_ALGORITHM, PDFSignConstants.PARAM_SIGNATURE_SCHEME, PDFSignConstants.PARAM_SIGNER_NAME,
+            PDFSignConstants.PARAM_SIGNATURE_LEVEL, PDFSignConstants.PARAM_NEW_REVISION));
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private SignatureFingerprints() {
+    }
+
+    /**
+     * Hashes a content.
+     *
+     * @param reader the ContentReader of the content
+     * @param cryptoProviders the providers of the digest
+     * @return the hash of the content
+     * @throws IOException if the content cannot be read
+     * @throws GeneralSecurityException if the digest is not available
+     */
+    static String contentHash(ContentReader reader, CryptoProviders cryptoProviders) throws IOException, GeneralSecurityException {
+        MessageDigest digest = cryptoProviders.getMessageDigest(ALGORITHM);
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = reader.getContentInputStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * Computes the fingerprint of a signing certificate.
+     *
+     * @param certificate the signing certificate
+     * @param cryptoProviders the providers of the digest
+     * @return the hash of the encoded certificate
+     * @throws GeneralSecurityException if the certificate cannot be encoded or the digest is not available
+     */
+    static String certificateFingerprint(Certificate certificate, CryptoProviders cryptoProviders) throws GeneralSecurityException {
+        return hex(cryptoProviders.getMessageDigest(ALGORITHM).digest(certificate.getEncoded()));
+    }
+
+    /**
+     * Hashes the parameters that change the signature written in the document. Key stores,
+     * passwords and destinations are left out: the certificate fingerprint identifies the
+     * signer and the destination does not change the signature. The signature level and the
+     * revision mode are hashed as resolved, so a request relying on the defaults matches one
+     * naming them.
+     *
+     * @param params the signing parameters
+     * @param signatureLevel the PAdES level the signature is written at
+     * @param appendToExisting whether the signature is appended to the document as a new revision
+     * @param cryptoProviders the providers of the digest
+     * @return the hash of the parameters
+     * @throws GeneralSecurityException if the digest is not available
+     */
+    static String parametersHash(Map<String, Serializable> params, String signatureLevel, boolean appendToExisting,
+            CryptoProviders cryptoProviders) throws GeneralSecurityException {
+        Map<String, Serializable> resolved = new HashMap<String, Serializable>(params);
+        resolved.put(PDFSignConstants.PARAM_SIGNATURE_LEVEL, signatureLevel);
+        resolved.put(PDFSignConstants.PARAM_NEW_REVISION, String.valueOf(appendToExisting));
+
+        StringBuilder sb = new StringBuilder();
+        for (String name : SIGNATURE_PARAMS) {
+            Serializable value = resolved.get(name);
+            if (value != null) {
+                sb.append(name).append('=').append(value).append('\n');
+            }
+        }
+        return hex(cryptoProviders.getMessageDigest(ALGORITHM).digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Encodes a hash in lower case hexadecimal.
+     *
+     * @param hash the hash
+     * @return the hex encoded hash
+     */
+    static String hex(byte[] hash) {
+        char[] chars = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            chars[2 * i] = HEX[(hash[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SignatureGeometry.java
+ * @description Calculates where a visible signature is placed on a page.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.extension.pdfsign.constants.PDFSignConstants;
+
+/**
+ * Calculates the box of a visible signature on a page, independently of the PDF library
+ * used to sign. Boxes are expressed in PDF user space units as {llx, lly, urx, ury}.
+ */
+public final class SignatureGeometry {
+
+    private SignatureGeometry() {
+    }
+
+    /**
+     * Calculates the box of the visible signature, either from a pre-defined position or
+     * from the manually specified coordinates.
+     *
+     * @param position the pre-defined position of the signature, or manual
+     * @param pageWidth the width of the page
+     * @param pageHeight the height of the page
+     * @param locationX the X-coordinate for a manually positioned signature
+     * @param locationY the Y-coordinate of the top edge for a manually positioned signature
+     * @param width the width of the signature
+     * @param height the height of the signature
+     * @return the normalized box as {llx, lly, urx, ury}
+     */
+    public static float[] signatureBox(String position, float pageWidth, float pageHeight, int locationX, int locationY, int width, int height) {
+        float[] box;
+        if (position != null && !position.trim().isEmpty() && !position.trim().equalsIgnoreCase(PDFSignConstants.POSITION_MANUAL)) {
+            box = positionSignature(position.trim(), pageWidth, pageHeight, width, height);
+        } else {
+            box = new float[] { locationX, locationY, locationX + width, locationY - height };
+        }
+        return normalize(box);
+    }
+
+    /**
+     * Calculates the box for the signature based on the specified pre-defined position.
+     *
+     * @param position the position of the signature
+     * @param pageWidth the width of the page
+     * @param pageHeight the height of the page
+     * @param width the width of the signature
+     * @param height the height of the signature
+     * @return the box as {llx, lly, urx, ury}
+     */
+    public static float[] positionSignature(String position, float pageWidth, float pageHeight, int width, int height) {
+        switch (position) {
+            case PDFSignConstants.POSITION_BOTTOMLEFT:
+                return new float[] { 0, height, width, 0 };
+            case PDFSignConstants.POSITION_BOTTOMRIGHT:
+                return new float[] { pageWidth - width, height, pageWidth, 0 };
+            case PDFSignConstants.POSITION_TOPLEFT:
+                return new float[] { 0, pageHeight, width, pageHeight - height };
+            case PDFSignConstants.POSITION_TOPRIGHT:
+                return new float[] { pageWidth - width, pageHeight, pageWidth, pageHeight - height };
+            case PDFSignConstants.POSITION_CENTER:
+                return new float[] { (pageWidth / 2) - (width / 2), (pageHeight / 2) - (height / 2), (pageWidth / 2) + (width / 2), (pageHeight / 2) + (height / 2) };
+            default:
+                throw new AlfrescoRuntimeException("Invalid signature position specified: " + position);
+        }
+    }
+
+    /**
+     * Orders the coordinates of a box so the lower left corner comes first.
+     *
+     * @param box the box as two opposite corners
+     * @return the same array, normalized
+     */
+    private static float[] normalize(float[] box) {
+        if (box[0] > box[2]) {
+            float t = box[0];
+            box[0] = box[2];
+            box[2] = t;
+        }
+        if (box[1] > box[3]) {
+            float t = box[1];
+            box[1] = box[3];
+            box[3] = t;
+        }
+        return box;
+    }
+}
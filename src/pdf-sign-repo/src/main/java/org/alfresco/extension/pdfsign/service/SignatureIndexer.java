@@ -0,0 +1,430 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SignatureIndexer.java
+ * @description Background job recording the signature status of PDF
+ *              documents as searchable properties.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.extension.pdfsign.constants.PDFSignConstants;
+import org.alfresco.extension.pdfsign.model.PDFSignModel;
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.policy.BehaviourFilter;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.search.ResultSet;
+import org.alfresco.service.cmr.search.SearchParameters;
+import org.alfresco.service.cmr.search.SearchService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Records the signature status of PDF documents in the {@code pdft:signatureinfo} aspect, so
+ * invalid or expiring signatures can be found with a search instead of opening every document.
+ * <p>
+ * Documents are queued when their content changes and indexed in the background, in batches
+ * of at most {@code batchSize} documents every {@code intervalSeconds}, each one verified with
+ * the {@link SignatureVerifier} and updated in its own transaction. A document whose recorded
+ * content URL is still the current one is skipped, so a document queued twice is read once.
+ * A document is queued only once while it waits, and documents arriving while the queue is
+ * full are dropped with a warning: they are indexed again when their content next changes.
+ * <p>
+ * The queue is only held in memory, so the documents stored before the indexer was enabled and
+ * those still queued when the repository stops are not indexed by content changes alone. A
+ * {@link #backfill()}, started on demand or on startup, walks every PDF document of the repository
+ * and queues the ones whose current content is not indexed yet, one page of {@code batchSize}
+ * documents per run and only while the queue cannot fill the next batch, so it never competes
+ * with the documents queued by content changes.
+ */
+public class SignatureIndexer {
+
+    private static final Log logger = LogFactory.getLog(SignatureIndexer.class);
+
+    /** Status of a document whose signatures are all valid. */
+    public static final String STATUS_VALID = "valid";
+
+    /** Status of a document with at least one invalid signature. */
+    public static final String STATUS_INVALID = "invalid";
+
+    /** Status of a PDF document without signatures. */
+    public static final String STATUS_UNSIGNED = "unsigned";
+
+    /** Status of a document whose signatures could not be read. */
+    public static final String STATUS_ERROR = "error";
+
+    /** PDF documents of the repository, walked by the backfill in node order. */
+    private static final String BACKFILL_QUERY = "TYPE:\"cm:content\" AND cm:content.mimetype:\"application/pdf\"";
+
+    private NodeService nodeService;
+    private ContentService contentService;
+    private TransactionService transactionService;
+    private BehaviourFilter behaviourFilter;
+    private SearchService searchService;
+    private SignatureVerifier signatureVerifier;
+
+    private boolean enabled = false;
+    private int batchSize = 50;
+    private long intervalSeconds = 10;
+    private int queueSize = 100000;
+    private boolean backfillOnStartup = false;
+
+    private LinkedBlockingQueue<NodeRef> queue;
+    private final Set<NodeRef> queued = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService scheduler;
+
+    /** Number of search results the running backfill has walked, or -1 when no backfill runs. */
+    private final AtomicInteger backfillPosition = new AtomicInteger(-1);
+
+    /**
+     * Starts the indexer when it is enabled.
+     */
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        queue = new LinkedBlockingQueue<NodeRef>(queueSize);
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setNamePrefix("pdfSignIndexer");
+        threadFactory.setThreadDaemon(true);
+        scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        scheduler.scheduleWithFixedDelay(this::runBatch, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        if (backfillOnStartup) {
+            backfill();
+        }
+    }
+
+    /**
+     * Stops the indexer. Documents still queued are indexed when their content next changes.
+     */
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Queues a document to be indexed.
+     *
+     * @param nodeRef the NodeRef of the document
+     */
+    public void enqueue(NodeRef nodeRef) {
+        if (queue == null || !queued.add(nodeRef)) {
+            return;
+        }
+        if (!queue.offer(nodeRef)) {
+            queued.remove(nodeRef);
+            logger.warn("The signature index queue is full, " + nodeRef + " is not indexed");
+        }
+    }
+
+    /**
+     * Starts walking every PDF document of the repository to queue the ones whose current
+     * content is not indexed. A backfill already running starts over.
+     *
+     * @throws AlfrescoRuntimeException if the indexer is disabled
+     */
+    public void backfill() {
+        if (queue == null) {
+            throw new AlfrescoRuntimeException("The signature indexer is disabled");
+        }
+        backfillPosition.set(0);
+        logger.info("Signature index backfill started");
+    }
+
+    /**
+     * Tells whether a backfill is walking the repository.
+     *
+     * @return true while a backfill runs
+     */
+    public boolean isBackfilling() {
+        return backfillPosition.get() >= 0;
+    }
+
+    /**
+     * Returns the number of documents waiting to be indexed.
+     *
+     * @return the queue length
+     */
+    public int getQueueLength() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * Indexes the next batch of queued documents, after queuing the next page of the backfill
+     * when the queue cannot fill the batch. Called by the scheduler, and by the tests.
+     */
+    void runBatch() {
+        if (isBackfilling() && queue.size() < batchSize) {
+            runBackfill();
+        }
+
+        List<NodeRef> batch = new ArrayList<NodeRef>(batchSize);
+        queue.drainTo(batch, batchSize);
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Indexing the signatures of " + batch.size() + " documents, " + queue.size() + " left");
+        }
+
+        for (final NodeRef nodeRef : batch) {
+            // removed first, so a change made while the document is indexed queues it again
+            queued.remove(nodeRef);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            try {
+                AuthenticationUtil.runAsSystem(() -> transactionService.getRetryingTransactionHelper()
+                        .doInTransaction(() -> index(nodeRef), false, true));
+            } catch (Exception e) {
+                // one bad document does not stop the batch
+                logger.warn("Could not index the signatures of " + nodeRef + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Queues the documents of the next page of the backfill. A failed page is tried again on
+     * the next run.
+     */
+    private void runBackfill() {
+        final int position = backfillPosition.get();
+        int found;
+        try {
+            found = AuthenticationUtil.runAsSystem(() -> transactionService.getRetryingTransactionHelper()
+                    .doInTransaction(() -> queueBackfillPage(position), true, true));
+        } catch (Exception e) {
+            logger.warn("Could not search the documents of the signature index backfill: " + e.getMessage());
+            return;
+        }
+
+        // a backfill started again in the meantime keeps its own position
+        if (found < batchSize) {
+            if (backfillPosition.compareAndSet(position, -1)) {
+                logger.info("Signature index backfill finished after " + (position + found) + " documents");
+            }
+        } else {
+            backfillPosition.compareAndSet(position, position + found);
+        }
+    }
+
+    /**
+     * Queues the documents of a page of the backfill whose current content is not indexed.
+     *
+     * @param skipCount the number of documents already walked
+     * @return the number of documents of the page
+     */
+    private Integer queueBackfillPage(int skipCount) {
+        SearchParameters sp = new SearchParameters();
+        sp.addStore(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE);
+        sp.setLanguage(SearchService.LANGUAGE_FTS_ALFRESCO);
+        sp.setQuery(BACKFILL_QUERY);
+        sp.addSort("@" + ContentModel.PROP_NODE_DBID, true);
+        sp.setSkipCount(skipCount);
+        sp.setMaxItems(batchSize);
+
+        ResultSet results = searchService.query(sp);
+        try {
+            for (NodeRef nodeRef : results.getNodeRefs()) {
+                if (nodeService.exists(nodeRef) && !isIndexed(nodeRef)) {
+                    enqueue(nodeRef);
+                }
+            }
+            return results.length();
+        } finally {
+            results.close();
+        }
+    }
+
+    /**
+     * Tells whether the current content of a document is the one recorded in its index.
+     */
+    private boolean isIndexed(NodeRef nodeRef) {
+        if (!nodeService.hasAspect(nodeRef, PDFSignModel.ASPECT_SIGNATUREINFO)) {
+            return false;
+        }
+        ContentData content = (ContentData) nodeService.getProperty(nodeRef, ContentModel.PROP_CONTENT);
+        return content != null && content.getContentUrl() != null
+                && content.getContentUrl().equals(nodeService.getProperty(nodeRef, PDFSignModel.PROP_VALIDATED_CONTENTURL));
+    }
+
+    /**
+     * Verifies the signatures of a document and records them, unless the current content was
+     * already indexed.
+     */
+    private Void index(NodeRef nodeRef) {
+        if (!nodeService.exists(nodeRef)) {
+            return null;
+        }
+        ContentReader reader = contentService.getReader(nodeRef, ContentModel.PROP_CONTENT);
+        if (reader == null || !reader.exists() || !PDFSignConstants.FILE_MIMETYPE.equals(reader.getMimetype())) {
+            return null;
+        }
+        String contentUrl = reader.getContentUrl();
+        if (nodeService.hasAspect(nodeRef, PDFSignModel.ASPECT_SIGNATUREINFO)
+                && contentUrl.equals(nodeService.getProperty(nodeRef, PDFSignModel.PROP_VALIDATED_CONTENTURL))) {
+            return null;
+        }
+
+        Map<QName, Serializable> props = new HashMap<QName, Serializable>();
+        try {
+            toProperties(signatureVerifier.verify(reader), props);
+        } catch (Exception e) {
+            logger.debug("Could not verify the signatures of " + nodeRef + ": " + e.getMessage());
+            props.put(PDFSignModel.PROP_VALIDITY_STATUS, STATUS_ERROR);
+        }
+        props.put(PDFSignModel.PROP_VALIDATED_AT, new Date());
+        props.put(PDFSignModel.PROP_VALIDATED_CONTENTURL, contentUrl);
+
+        // recording the status is not a change of the document
+        behaviourFilter.disableBehaviour(nodeRef, ContentModel.ASPECT_AUDITABLE);
+        try {
+            nodeService.addAspect(nodeRef, PDFSignModel.ASPECT_SIGNATUREINFO, props);
+        } finally {
+            behaviourFilter.enableBehaviour(nodeRef, ContentModel.ASPECT_AUDITABLE);
+        }
+        return null;
+    }
+
+    /**
+     * Maps a verification to the properties of the aspect: the signing certificate of the
+     * latest signature, and the earliest expiry of the signing certificates of all of them.
+     */
+    private static void toProperties(VerificationResult result, Map<QName, Serializable> props) {
+        List<SignatureVerification> signatures = result.getSignatures();
+        props.put(PDFSignModel.PROP_SIGNATURE_COUNT, signatures.size());
+        props.put(PDFSignModel.PROP_SIGNER_SUBJECT, null);
+        props.put(PDFSignModel.PROP_SIGNER_ISSUER, null);
+        props.put(PDFSignModel.PROP_CERT_SERIAL, null);
+        props.put(PDFSignModel.PROP_CERT_EXPIRY, null);
+        props.put(PDFSignModel.PROP_SIGNATURE_ALGORITHM, null);
+        if (signatures.isEmpty()) {
+            props.put(PDFSignModel.PROP_VALIDITY_STATUS, STATUS_UNSIGNED);
+            return;
+        }
+
+        Date expiry = null;
+        for (SignatureVerification signature : signatures) {
+            Date certificateExpiry = signature.getCertificateExpiry();
+            if (certificateExpiry != null && (expiry == null || certificateExpiry.before(expiry))) {
+                expiry = certificateExpiry;
+            }
+        }
+        SignatureVerification latest = signatures.get(signatures.size() - 1);
+        props.put(PDFSignModel.PROP_SIGNER_SUBJECT, latest.getSignerSubject());
+        props.put(PDFSignModel.PROP_SIGNER_ISSUER, latest.getSignerIssuer());
+        props.put(PDFSignModel.PROP_CERT_SERIAL, latest.getCertificateSerial());
+        props.put(PDFSignModel.PROP_CERT_EXPIRY, expiry);
+        props.put(PDFSignModel.PROP_SIGNATURE_ALGORITHM, latest.getSignatureAlgorithm());
+        props.put(PDFSignModel.PROP_VALIDITY_STATUS, result.isValid() ? STATUS_VALID : STATUS_INVALID);
+    }
+
+    public void setNodeService(NodeService nodeService) {
+        this.nodeService = nodeService;
+    }
+
+    public void setContentService(ContentService contentService) {
+        this.contentService = contentService;
+    }
+
+    public void setTransactionService(TransactionService transactionService) {
+        this.transactionService = transactionService;
+    }
+
+    public void setBehaviourFilter(BehaviourFilter behaviourFilter) {
+        this.behaviourFilter = behaviourFilter;
+    }
+
+    public void setSearchService(SearchService searchService) {
+        this.searchService = searchService;
+    }
+
+    public void setSignatureVerifier(SignatureVerifier signatureVerifier) {
+        this.signatureVerifier = signatureVerifier;
+    }
+
+    /**
+     * @param enabled whether documents are indexed
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return whether documents are indexed
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param batchSize the largest number of documents indexed per run
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * @param intervalSeconds the pause between the end of a run and the start of the next one
+     */
+    public void setIntervalSeconds(long intervalSeconds) {
+        this.intervalSeconds = Math.max(1, intervalSeconds);
+    }
+
+    /**
+     * @param queueSize the largest number of documents waiting to be indexed
+     */
+    public void setQueueSize(int queueSize) {
+        this.queueSize = Math.max(1, queueSize);
+    }
+
+    /**
+     * @param backfillOnStartup whether a backfill is started when the repository starts
+     */
+    public void setBackfillOnStartup(boolean backfillOnStartup) {
+        this.backfillOnStartup = backfillOnStartup;
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SignatureInjector.java
+ * @description Injects externally produced CMS signatures into documents prepared
+ *              for deferred signing.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.List;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.cms.CMSAttributes;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.security.ExternalSignatureContainer;
+import com.itextpdf.text.pdf.security.MakeSignature;
+
+/**
+ * Completes signatures prepared with {@link SignableDocument#prepare}: injects a CMS signature
+ * produced outside the repository into the space reserved for it. The rest of the document is
+ * copied unchanged, so the injection works on documents prepared by any engine.
+ */
+public final class SignatureInjector {
+
+    private SignatureInjector() {
+    }
+
+    /**
+     * Writes the prepared document with the given CMS signature injected into its last
+     * signature field.
+     *
+     * @param contentReader the ContentReader of the prepared document
+     * @param cms the encoded CMS signature
+     * @param out the stream receiving the signed document
+     * @throws IOException if the document cannot be read or written, or the signature does not fit
+     * @throws GeneralSecurityException if the signature cannot be injected
+     */
+    public static void inject(ContentReader contentReader, final byte[] cms, OutputStream out) throws IOException, GeneralSecurityException {
+        try (PDFDocumentHandle document = PDFDocumentHandle.open(contentReader)) {
+            PdfReader reader = document.getReader();
+            AcroFields fields = reader.getAcroFields();
+            List<String> names = fields.getSignatureNames();
+
+            // the prepared signature is the last revision, so it is the only one covering the whole document
+            String fieldName = names.isEmpty() ? null : names.get(names.size() - 1);
+            if (fieldName == null || !fields.signatureCoversWholeDocument(fieldName)) {
+                throw new AlfrescoRuntimeException("The document has no prepared signature");
+            }
+
+            MakeSignature.signDeferred(reader, fieldName, out, new ExternalSignatureContainer() {
+                @Override
+                public byte[] sign(InputStream data) {
+                    return cms;
+                }
+
+                @Override
+                public void modifySigningDictionary(PdfDictionary signDic) {
+                }
+            });
+        } catch (DocumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the message digest signed by a CMS signature, as found in the signed
+     * attributes of its first signer.
+     *
+     * @param cms the encoded CMS signature
+     * @return the signed message digest, or null if the signature has no signed attributes
+     * @throws AlfrescoRuntimeException if the CMS signature cannot be parsed
+     */
+    public static byte[] getMessageDigest(byte[] cms) {
+        try {
+            CMSSignedData signedData = new CMSSignedData(cms);
+            for (SignerInformation signer : signedData.getSignerInfos().getSigners()) {
+                AttributeTable attributes = signer.getSignedAttributes();
+                Attribute digest = attributes == null ? null : attributes.get(CMSAttributes.messageDigest);
+                if (digest != null) {
+                    return ASN1OctetString.getInstance(digest.getAttrValues().getObjectAt(0)).getOctets();
+                }
+            }
+            return null;
+        } catch (CMSException | IllegalArgumentException e) {
+            throw new AlfrescoRuntimeException("Invalid CMS signature: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SignatureRequest.java
+ * @description Describes a signature to apply to a PDF document through a
+ *              SignatureEngine.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.File;
+
+import org.alfresco.extension.pdfsign.metrics.SigningTimer;
+
+/**
+ * Describes the signature a {@link SignableDocument} has to apply: the credential to sign
+ * with, the pages that get a visible appearance and its geometry, and how the signed
+ * document is written.
+ */
+public class SignatureRequest {
+
+    private SigningCredential credential;
+    private String signerName;
+    private String digestAlgorithm = CryptoProviders.DEFAULT_DIGEST_ALGORITHM;
+    private boolean pss;
+    private int[] pages;
+    private boolean visible;
+    private String position;
+    private int locationX;
+    private int locationY;
+    private int width;
+    private int height;
+    private boolean appendToExisting = true;
+    private File spillDir;
+    private SignatureAppearance appearance;
+    private SigningTimer timer = new SigningTimer();
+    private TimestampClient timestampClient;
+
+    public SigningCredential getCredential() {
+        return credential;
+    }
+
+    public void setCredential(SigningCredential credential) {
+        this.credential = credential;
+    }
+
+    /**
+     * Returns the name shown in the signature appearance: the name set on the request or,
+     * when none is set, the CN of the signing certificate.
+     *
+     * @return the signer name
+     */
+    public String getSignerName() {
+        return signerName != null || credential == null ? signerName : credential.getFriendlyName();
+    }
+
+    public void setSignerName(String signerName) {
+        this.signerName = signerName;
+    }
+
+    /**
+     * Returns the algorithm the signed content is digested with.
+     *
+     * @return the JCA digest algorithm, such as SHA-256
+     */
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    public void setDigestAlgorithm(String digestAlgorithm) {
+        this.digestAlgorithm = digestAlgorithm;
+    }
+
+    /**
+     * Tells whether an RSA key signs with RSASSA-PSS instead of PKCS#1 v1.5. Keys generated
+     * for RSASSA-PSS always sign with it.
+     *
+     * @return true for RSASSA-PSS
+     */
+    public boolean isPss() {
+        return pss;
+    }
+
+    public void setPss(boolean pss) {
+        this.pss = pss;
+    }
+
+    /**
+     * Returns the pages the signature appearance is placed on, in ascending order.
+     * The signature widget goes on the first one.
+     *
+     * @return the 1-based page numbers
+     */
+    public int[] getPages() {
+        return pages;
+    }
+
+    public void setPages(int[] pages) {
+        this.pages = pages;
+    }
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+    }
+
+    public String getPosition() {
+        return position;
+    }
+
+    public void setPosition(String position) {
+        this.position = position;
+    }
+
+    public int getLocationX() {
+        return locationX;
+    }
+
+    public void setLocationX(int locationX) {
+        this.locationX = locationX;
+    }
+
+    public int getLocationY() {
+        return locationY;
+    }
+
+    public void setLocationY(int locationY) {
+        this.locationY = locationY;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setHeight(int height) {
+        this.height = height;
+    }
+
+    /**
+     * Returns the pre-computed layout of the visible signature.
+     *
+     * @return the appearance, or null to let the engine lay out the default text
+     */
+    public SignatureAppearance getAppearance() {
+        return appearance;
+    }
+
+    public void setAppearance(SignatureAppearance appearance) {
+        this.appearance = appearance;
+    }
+
+    public boolean isAppendToExisting() {
+        return appendToExisting;
+    }
+
+    public void setAppendToExisting(boolean appendToExisting) {
+        this.appendToExisting = appendToExisting;
+    }
+
+    /**
+     * Returns the directory large signed documents are spilled to while they are written,
+     * or null to write them from memory.
+     *
+     * @return the spill directory, or null
+     */
+    public File getSpillDir() {
+        return spillDir;
+    }
+
+    public void setSpillDir(File spillDir) {
+        this.spillDir = spillDir;
+    }
+
+    /**
+     * Returns the timer the engine charges the appearance and signature phases to.
+     *
+     * @return the SigningTimer of the operation
+     */
+    public SigningTimer getTimer() {
+        return timer;
+    }
+
+    public void setTimer(SigningTimer timer) {
+        this.timer = timer;
+    }
+
+    /**
+     * Returns the client of the time-stamping authority the signature is timestamped by.
+     *
+     * @return the timestamp client, or null if the signature is not timestamped
+     */
+    public TimestampClient getTimestampClient() {
+        return timestampClient;
+    }
+
+    public void setTimestampClient(TimestampClient timestampClient) {
+        this.timestampClient = timestampClient;
+    }
+
+    /**
+     * Calculates the box of the visible signature on a page of the given size.
+     *
+     * @param pageWidth the width of the page
+     * @param pageHeight the height of the page
+     * @return the normalized box as {llx, lly, urx, ury}
+     */
+    public float[] getSignatureBox(float pageWidth, float pageHeight) {
+        return SignatureGeometry.signatureBox(position, pageWidth, pageHeight, locationX, locationY, width, height);
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SignatureVerification.java
+ * @description Outcome of the verification of one signature field of a PDF
+ *              document.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * The outcome of the verification of one signature field of a PDF document. A signature is
+ * valid when its byte range digest and CMS signature match, its certificate chain leads to a
+ * trusted root and, if it carries a timestamp, the timestamp is valid as well.
+ */
+public final class SignatureVerification implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final int revision;
+    private final boolean coversWholeDocument;
+    private final boolean documentTimestamp;
+
+    private boolean integrityValid;
+    private String signerSubject;
+    private String signerIssuer;
+    private String certificateSerial;
+    private Date certificateExpiry;
+    private String signatureAlgorithm;
+    private Date signingTime;
+    private boolean certificateTrusted;
+    private boolean timestamped;
+    private boolean timestampValid;
+    private Date timestampTime;
+    private String error;
+
+    SignatureVerification(String name, int revision, boolean coversWholeDocument, boolean documentTimestamp) {
+        this.name = name;
+        this.revision = revision;
+        this.coversWholeDocument = coversWholeDocument;
+        this.documentTimestamp = documentTimestamp;
+    }
+
+    /**
+     * Tells whether the signature is valid.
+     *
+     * @return true if the integrity, certificate chain and timestamp checks passed
+     */
+    public boolean isValid() {
+        return error == null && integrityValid && certificateTrusted && (!timestamped || timestampValid);
+    }
+
+    /**
+     * @return the name of the signature field
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the revision of the document the signature belongs to, starting at 1
+     */
+    public int getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return whether the signature covers the whole document, no revision was added after it
+     */
+    public boolean isCoversWholeDocument() {
+        return coversWholeDocument;
+    }
+
+    /**
+     * @return whether the field holds a document timestamp rather than a signature
+     */
+    public boolean isDocumentTimestamp() {
+        return documentTimestamp;
+    }
+
+    /**
+     * @return whether the digest of the byte range and the CMS signature match
+     */
+    public boolean isIntegrityValid() {
+        return integrityValid;
+    }
+
+    void setIntegrityValid(boolean integrityValid) {
+        this.integrityValid = integrityValid;
+    }
+
+    /**
+     * @return the subject of the signing certificate, or null if the signature cannot be read
+     */
+    public String getSignerSubject() {
+        return signerSubject;
+    }
+
+    void setSignerSubject(String signerSubject) {
+        this.signerSubject = signerSubject;
+    }
+
+    /**
+     * @return the issuer of the signing certificate, or null if the signature cannot be read
+     */
+    public String getSignerIssuer() {
+        return signerIssuer;
+    }
+
+    void setSignerIssuer(String signerIssuer) {
+        this.signerIssuer = signerIssuer;
+    }
+
+    /**
+     * @return the hexadecimal serial number of the signing certificate
+     */
+    public String getCertificateSerial() {
+        return certificateSerial;
+    }
+
+    void setCertificateSerial(String certificateSerial) {
+        this.certificateSerial = certificateSerial;
+    }
+
+    /**
+     * @return the end of the validity period of the signing certificate
+     */
+    public Date getCertificateExpiry() {
+        return certificateExpiry;
+    }
+
+    void setCertificateExpiry(Date certificateExpiry) {
+        this.certificateExpiry = certificateExpiry;
+    }
+
+    /**
+     * @return the signature algorithm, such as SHA256withRSA
+     */
+    public String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    void setSignatureAlgorithm(String signatureAlgorithm) {
+        this.signatureAlgorithm = signatureAlgorithm;
+    }
+
+    /**
+     * @return the signing time claimed by the signer, or the time of a document timestamp
+     */
+    public Date getSigningTime() {
+        return signingTime;
+    }
+
+    void setSigningTime(Date signingTime) {
+        this.signingTime = signingTime;
+    }
+
+    /**
+     * @return whether the certificate chain leads to a trusted root
+     */
+    public boolean isCertificateTrusted() {
+        return certificateTrusted;
+    }
+
+    void setCertificateTrusted(boolean certificateTrusted) {
+        this.certificateTrusted = certificateTrusted;
+    }
+
+    /**
+     * @return whether the signature carries a signature timestamp
+     */
+    public boolean isTimestamped() {
+        return timestamped;
+    }
+
+    void setTimestamped(boolean timestamped) {
+        this.timestamped = timestamped;
+    }
+
+    /**
+     * @return whether the timestamp matches the signature and is signed by a trusted authority
+     */
+    public boolean isTimestampValid() {
+        return timestampValid;
+    }
+
+    void setTimestampValid(boolean timestampValid) {
+        this.timestampValid = timestampValid;
+    }
+
+    /**
+     * @return the time of the signature timestamp, or null if there is none
+     */
+    public Date getTimestampTime() {
+        return timestampTime;
+    }
+
+    void setTimestampTime(Date timestampTime) {
+        this.timestampTime = timestampTime;
+    }
+
+    /**
+     * @return the first check that failed, or null if every check passed
+     */
+    public String getError() {
+        return error;
+    }
+
+    void setError(String error) {
+        if (this.error == null) {
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,506 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SignatureVerifier.java
+ * @description Verifies the integrity, certificate chains and timestamps of
+ *              the signatures of PDF documents.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.Security;
+import java.security.cert.CertPath;
+import java.security.cert.CertPathValidator;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.PKIXParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.tsp.TimeStampToken;
+
+import com.itextpdf.text.io.RandomAccessSource;
+import com.itextpdf.text.io.RandomAccessSourceFactory;
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.PdfArray;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfString;
+import com.itextpdf.text.pdf.security.EncryptionAlgorithms;
+import com.itextpdf.text.pdf.security.PdfPKCS7;
+
+/**
+ * Verifies the signatures of PDF documents.
+ * <p>
+ * The document is opened in partial mode: only the cross-reference sections and the signature
+ * dictionaries are parsed, the page trees and content streams of its revisions are never
+ * read. Each signature is then checked on its own: the bytes of its byte range are digested
+ * straight from the file and matched against the CMS signature, its certificate chain is
+ * validated against the trust anchors at the time of its timestamp, or at its claimed signing
+ * time when it has none, and its timestamp is matched against the signature and validated the
+ * same way. Signatures are independent, so they are checked in parallel on a bounded pool;
+ * when the pool is saturated the caller checks them itself.
+ * <p>
+ * Revocation is not checked, the OCSP responses and CRLs embedded in long-term signatures are
+ * left to dedicated validators. Results are cached by content URL, which is immutable, and
+ * concurrent requests for the same content share a single verification.
+ */
+public class SignatureVerifier {
+
+    private static final Log logger = LogFactory.getLog(SignatureVerifier.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Signature algorithms iText does not name: ECDSA, whether identified by the key or by the
+     * signature algorithm, and RSASSA-PSS, named as Bouncy Castle does. RSASSA-PSS signatures
+     * use a salt as long as the digest, the default of these names.
+     */
+    private static final String[][] ENCRYPTION_ALGORITHMS = {
+            { "1.2.840.10045.2.1", "ECDSA" },
+            { "1.2.840.10045.4.3.2", "ECDSA" },
+            { "1.2.840.10045.4.3.3", "ECDSA" },
+            { "1.2.840.10045.4.3.4", "ECDSA" },
+            { "1.2.840.113549.1.1.10", "RSAandMGF1" } };
+
+    static {
+        for (String[] algorithm : ENCRYPTION_ALGORITHMS) {
+            try {
+                EncryptionAlgorithms.addAlgorithm(algorithm[0], algorithm[1]);
+            } catch (GeneralSecurityException e) {
+                logger.warn("Signatures with algorithm " + algorithm[0] + " cannot be verified: " + e.getMessage());
+            }
+        }
+    }
+
+    private SimpleCache<String, VerificationResult> cache;
+    private ThreadPoolExecutor executor;
+    private String trustStore;
+    private String trustStoreType = KeyStore.getDefaultType();
+    private String trustStorePassword;
+
+    private Set<TrustAnchor> trustAnchors = Collections.emptySet();
+    private Set<X509Certificate> trustedCertificates = Collections.emptySet();
+    private String trustFingerprint = "";
+
+    /** Verifications in progress, by content URL. */
+    private final ConcurrentHashMap<String, FutureTask<VerificationResult>> inflight = new ConcurrentHashMap<String, FutureTask<VerificationResult>>();
+
+    /**
+     * Loads the trust anchors, from the configured trust store or the default one of the JVM,
+     * and registers the Bouncy Castle provider if it is not registered yet.
+     *
+     * @throws IOException if the trust store cannot be read
+     * @throws GeneralSecurityException if the trust store cannot be loaded
+     */
+    public void init() throws IOException, GeneralSecurityException {
+        // the JCA providers of the JVM do not know the RSASSA-PSS names iText builds
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+
+        Set<X509Certificate> certificates = new HashSet<X509Certificate>();
+        if (trustStore == null || trustStore.trim().isEmpty()) {
+            TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            factory.init((KeyStore) null);
+            for (TrustManager trustManager : factory.getTrustManagers()) {
+                if (trustManager instanceof X509TrustManager) {
+                    Collections.addAll(certificates, ((X509TrustManager) trustManager).getAcceptedIssuers());
+                }
+            }
+        } else {
+            KeyStore keyStore = KeyStore.getInstance(trustStoreType);
+            try (InputStream in = new FileInputStream(trustStore.trim())) {
+                keyStore.load(in, trustStorePassword == null ? null : trustStorePassword.toCharArray());
+            }
+            for (Enumeration<String> aliases = keyStore.aliases(); aliases.hasMoreElements(); ) {
+                Certificate certificate = keyStore.getCertificate(aliases.nextElement());
+                if (certificate instanceof X509Certificate) {
+                    certificates.add((X509Certificate) certificate);
+                }
+            }
+        }
+
+        Set<TrustAnchor> anchors = new HashSet<TrustAnchor>();
+        for (X509Certificate certificate : certificates) {
+            anchors.add(new TrustAnchor(certificate, null));
+        }
+        if (anchors.isEmpty()) {
+            logger.warn("No trust anchors were found, no certificate chain will be trusted");
+        }
+        trustedCertificates = certificates;
+        trustAnchors = anchors;
+        trustFingerprint = fingerprint(certificates);
+    }
+
+    /**
+     * Digests the trust anchors, in an order that does not depend on the trust store.
+     */
+    private static String fingerprint(Set<X509Certificate> certificates) throws GeneralSecurityException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        List<String> fingerprints = new ArrayList<String>();
+        for (X509Certificate certificate : certificates) {
+            fingerprints.add(SignatureFingerprints.hex(digest.digest(certificate.getEncoded())));
+        }
+        Collections.sort(fingerprints);
+        for (String fingerprint : fingerprints) {
+            digest.update(fingerprint.getBytes(StandardCharsets.US_ASCII));
+        }
+        return SignatureFingerprints.hex(digest.digest());
+    }
+
+    /**
+     * Returns a digest of the trust anchors. A verification only depends on the content and
+     * on the trust anchors, its chains being validated at the signing or timestamp time, so
+     * the digest tells clients holding a verification whether it may still be current.
+     *
+     * @return the hex encoded SHA-256 of the trust anchors
+     */
+    public String getTrustFingerprint() {
+        return trustFingerprint;
+    }
+
+    /**
+     * Verifies every signature of the given PDF document.
+     *
+     * @param contentReader the ContentReader of the document content
+     * @return the verification of the document
+     * @throws IOException if the content cannot be read or is not a valid PDF
+     */
+    public VerificationResult verify(final ContentReader contentReader) throws IOException {
+        String contentUrl = contentReader.getContentUrl();
+
+        VerificationResult result = cache.get(contentUrl);
+        if (result != null) {
+            return result;
+        }
+
+        FutureTask<VerificationResult> task = new FutureTask<VerificationResult>(() -> read(contentReader));
+        FutureTask<VerificationResult> running = inflight.putIfAbsent(contentUrl, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                inflight.remove(contentUrl, task);
+            }
+        }
+
+        try {
+            result = running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while verifying " + contentUrl, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Could not verify " + contentUrl, e.getCause());
+        }
+
+        if (running == task) {
+            cache.put(contentUrl, result);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the signature dictionaries of the document and checks every signature.
+     */
+    private VerificationResult read(ContentReader contentReader) throws IOException {
+        try (PDFDocumentHandle document = PDFDocumentHandle.open(contentReader)) {
+            AcroFields fields = document.getReader().getAcroFields();
+            final File file = document.getFile();
+
+            List<SignatureVerification> signatures = new ArrayList<SignatureVerification>();
+            List<FutureTask<Void>> checks = new ArrayList<FutureTask<Void>>();
+            for (String name : fields.getSignatureNames()) {
+                PdfDictionary dictionary = fields.getSignatureDictionary(name);
+                final PdfName subFilter = dictionary.getAsName(PdfName.SUBFILTER);
+                PdfString contents = dictionary.getAsString(PdfName.CONTENTS);
+                PdfArray byteRange = dictionary.getAsArray(PdfName.BYTERANGE);
+
+                final SignatureVerification signature = new SignatureVerification(name, fields.getRevision(name),
+                        fields.signatureCoversWholeDocument(name), PdfName.ETSI_RFC3161.equals(subFilter));
+                signatures.add(signature);
+                if (contents == null || byteRange == null) {
+                    signature.setError("The signature field holds no signature");
+                    continue;
+                }
+
+                final byte[] cms = contents.getOriginalBytes();
+                final long[] range = byteRange.asLongArray();
+                checks.add(new FutureTask<Void>(() -> {
+                    check(signature, cms, subFilter, range, file);
+                    return null;
+                }));
+            }
+
+            runAll(checks);
+            return new VerificationResult(contentReader.getContentUrl(), new Date(), signatures);
+        }
+    }
+
+    /**
+     * Runs the checks on the pool and waits for all of them. The document stays open until the
+     * last check has read its byte range.
+     */
+    private void runAll(List<FutureTask<Void>> checks) throws IOException {
+        for (int i = 1; i < checks.size(); i++) {
+            if (executor == null) {
+                break;
+            }
+            try {
+                executor.execute(checks.get(i));
+            } catch (RejectedExecutionException e) {
+                // saturated, the remaining checks run in the caller
+                break;
+            }
+        }
+
+        try {
+            for (FutureTask<Void> check : checks) {
+                // a check already running or done is a no-op here
+                check.run();
+            }
+            for (FutureTask<Void> check : checks) {
+                check.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (FutureTask<Void> check : checks) {
+                check.cancel(true);
+            }
+            throw new IOException("Interrupted while verifying signatures", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not verify a signature: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Checks the integrity, certificate chain and timestamp of one signature.
+     */
+    private void check(SignatureVerification signature, byte[] cms, PdfName subFilter, long[] byteRange, File file) {
+        try {
+            PdfPKCS7 pkcs7 = new PdfPKCS7(cms, subFilter, null);
+            digest(pkcs7, byteRange, file);
+
+            X509Certificate signer = pkcs7.getSigningCertificate();
+            signature.setSignerSubject(signer.getSubjectX500Principal().getName());
+            signature.setSignerIssuer(signer.getIssuerX500Principal().getName());
+            signature.setCertificateSerial(signer.getSerialNumber().toString(16));
+            signature.setCertificateExpiry(signer.getNotAfter());
+            signature.setSignatureAlgorithm(pkcs7.getDigestAlgorithm());
+            signature.setSigningTime(toDate(pkcs7.getSignDate()));
+            signature.setIntegrityValid(pkcs7.verify());
+            if (!signature.isIntegrityValid()) {
+                signature.setError("The signed bytes were modified or the signature does not match them");
+            }
+
+            Date validationTime = signature.getSigningTime();
+            TimeStampToken token = pkcs7.getTimeStampToken();
+            if (!pkcs7.isTsp() && token != null) {
+                signature.setTimestamped(true);
+                signature.setTimestampTime(token.getTimeStampInfo().getGenTime());
+                boolean timestampValid = pkcs7.verifyTimestampImprint();
+                if (!timestampValid) {
+                    signature.setError("The timestamp does not match the signature");
+                } else {
+                    timestampValid = checkTimestampToken(signature, token);
+                }
+                signature.setTimestampValid(timestampValid);
+                if (timestampValid) {
+                    validationTime = signature.getTimestampTime();
+                }
+            }
+
+            signature.setCertificateTrusted(checkChain(signature, pkcs7.getSignCertificateChain(), validationTime, "signing"));
+        } catch (Exception e) {
+            logger.debug("Could not verify the signature " + signature.getName() + ": " + e.getMessage());
+            signature.setError("The signature cannot be verified: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Digests the byte range of a signature, reading the document file through a source of its own.
+     */
+    private static void digest(PdfPKCS7 pkcs7, long[] byteRange, File file) throws IOException, GeneralSecurityException {
+        RandomAccessSource source = new RandomAccessSourceFactory().createBestSource(file.getPath());
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int i = 0; i + 1 < byteRange.length; i += 2) {
+                long position = byteRange[i];
+                long remaining = byteRange[i + 1];
+                while (remaining > 0) {
+                    int read = source.get(position, buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read <= 0) {
+                        throw new IOException("The byte range ends past the end of the document");
+                    }
+                    pkcs7.update(buffer, 0, read);
+                    position += read;
+                    remaining -= read;
+                }
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Checks the signature of a timestamp token and the certificate chain of its authority.
+     */
+    private boolean checkTimestampToken(SignatureVerification signature, TimeStampToken token) throws GeneralSecurityException {
+        @SuppressWarnings("unchecked")
+        Collection<X509CertificateHolder> holders = token.getCertificates().getMatches(null);
+        JcaX509CertificateConverter converter = new JcaX509CertificateConverter();
+        List<X509Certificate> certificates = new ArrayList<X509Certificate>();
+        X509Certificate authority = null;
+        try {
+            for (X509CertificateHolder holder : holders) {
+                X509Certificate certificate = converter.getCertificate(holder);
+                certificates.add(certificate);
+                if (token.getSID().match(holder)) {
+                    authority = certificate;
+                    token.validate(new JcaSimpleSignerInfoVerifierBuilder().build(holder));
+                }
+            }
+        } catch (Exception e) {
+            signature.setError("The timestamp is not valid: " + e.getMessage());
+            return false;
+        }
+        if (authority == null) {
+            signature.setError("The timestamp does not carry the certificate of its authority");
+            return false;
+        }
+        return checkChain(signature, LtvAppender.order(authority, certificates), signature.getTimestampTime(), "timestamp");
+    }
+
+    /**
+     * Validates a certificate chain against the trust anchors at the given time.
+     */
+    private boolean checkChain(SignatureVerification signature, Certificate[] chain, Date time, String role) throws GeneralSecurityException {
+        List<X509Certificate> path = new ArrayList<X509Certificate>();
+        for (Certificate certificate : chain) {
+            if (trustedCertificates.contains(certificate)) {
+                break;
+            }
+            path.add((X509Certificate) certificate);
+        }
+        if (path.isEmpty()) {
+            return true;
+        }
+        if (trustAnchors.isEmpty()) {
+            signature.setError("The " + role + " certificate is not trusted: no trust anchors are configured");
+            return false;
+        }
+
+        CertPath certPath = CertificateFactory.getInstance("X.509").generateCertPath(path);
+        PKIXParameters parameters = new PKIXParameters(trustAnchors);
+        parameters.setRevocationEnabled(false);
+        parameters.setDate(time != null ? time : new Date());
+        try {
+            CertPathValidator.getInstance("PKIX").validate(certPath, parameters);
+            return true;
+        } catch (CertPathValidatorException e) {
+            signature.setError("The " + role + " certificate is not trusted: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static Date toDate(Calendar calendar) {
+        return calendar == null ? null : calendar.getTime();
+    }
+
+    /**
+     * @param cache the cache of verifications by content URL
+     */
+    public void setCache(SimpleCache<String, VerificationResult> cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @param executor the pool checking the signatures of a document in parallel
+     */
+    public void setExecutor(ThreadPoolExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param trustStore the path of the trust store, or empty for the default trust store of the JVM
+     */
+    public void setTrustStore(String trustStore) {
+        this.trustStore = trustStore;
+    }
+
+    /**
+     * @param trustStoreType the type of the trust store, such as JKS or PKCS12
+     */
+    public void setTrustStoreType(String trustStoreType) {
+        if (trustStoreType != null && !trustStoreType.trim().isEmpty()) {
+            this.trustStoreType = trustStoreType.trim();
+        }
+    }
+
+    /**
+     * @param trustStorePassword the password of the trust store, or empty if it has none
+     */
+    public void setTrustStorePassword(String trustStorePassword) {
+        this.trustStorePassword = trustStorePassword == null || trustStorePassword.isEmpty() ? null : trustStorePassword;
+    }
+}
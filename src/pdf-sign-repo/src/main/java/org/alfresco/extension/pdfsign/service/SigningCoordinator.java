@@ -0,0 +1,250 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SigningCoordinator.java
+ * @description Per-document signing lock and optimistic content check for
+ *              signatures that rewrite the signed document.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.extension.pdfsign.model.PDFSignModel;
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.namespace.QName;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.dao.ConcurrencyFailureException;
+
+/**
+ * Serializes the signatures that rewrite the content of a document, so concurrent signers of
+ * the same document never append their incremental update to a version another signer is
+ * replacing.
+ * <p>
+ * Every document gets its own cluster-wide lock from the {@link JobLockService}, so signatures
+ * of different documents never wait for each other. The lock is held until the transaction
+ * that wrote the signed content completes, which guarantees that the next signer reads the
+ * committed signed version. A transaction that already holds the lock of a document takes it
+ * again without waiting.
+ * <p>
+ * The lock is refreshed in the background for as long as its transaction is running, so
+ * signing a document that takes longer than the time to live of the lock does not let another
+ * signer in. Before the transaction commits, the lock is confirmed once more: if it was lost,
+ * the commit fails with a {@link ConcurrencyFailureException} and the signature is retried.
+ * <p>
+ * Content written by anything other than a signature is not covered by the lock, so the
+ * signer also checks that the content it signed is still the current content before writing.
+ * A mismatch raises a {@link ConcurrencyFailureException}, which the retrying transaction
+ * helper retries: the document is read and signed again on top of the new content.
+ */
+public class SigningCoordinator {
+
+    private static final Log logger = LogFactory.getLog(SigningCoordinator.class);
+
+    /** Transaction resource holding the documents locked by the current transaction. */
+    private static final String LOCKED_NODES = SigningCoordinator.class.getName() + ".lockedNodes";
+
+    private JobLockService jobLockService;
+    private NodeService nodeService;
+
+    private long lockTimeToLive = 300000;
+    private long lockRetryWait = 100;
+    private int lockRetryCount = 600;
+
+    /**
+     * Takes the signing lock of a document for the rest of the current transaction, waiting
+     * while another signer holds it.
+     *
+     * @param nodeRef the document
+     * @throws org.alfresco.repo.lock.LockAcquisitionException if the lock is not released in time
+     */
+    public void lock(final NodeRef nodeRef) {
+        Set<NodeRef> lockedNodes = AlfrescoTransactionSupport.getResource(LOCKED_NODES);
+        if (lockedNodes == null) {
+            lockedNodes = new HashSet<NodeRef>();
+            AlfrescoTransactionSupport.bindResource(LOCKED_NODES, lockedNodes);
+        }
+        if (lockedNodes.contains(nodeRef)) {
+            return;
+        }
+
+        final QName lockQName = lockQName(nodeRef);
+        final String token = jobLockService.getLock(lockQName, lockTimeToLive, lockRetryWait, lockRetryCount);
+        lockedNodes.add(nodeRef);
+
+        final LockRefresher refresher = new LockRefresher(nodeRef);
+        jobLockService.refreshLock(token, lockQName, lockTimeToLive, refresher);
+
+        AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                confirm(nodeRef, token, lockQName, refresher);
+            }
+
+            @Override
+            public void afterCommit() {
+                refresher.active = false;
+                release(token, lockQName);
+            }
+
+            @Override
+            public void afterRollback() {
+                refresher.active = false;
+                release(token, lockQName);
+            }
+        });
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Acquired the signing lock of " + nodeRef);
+        }
+    }
+
+    /**
+     * Checks that the content of a document is still the content that was signed.
+     *
+     * @param nodeRef the document
+     * @param contentUrl the URL of the content that was read and signed
+     * @throws ConcurrencyFailureException if the content changed in the meantime
+     */
+    public void checkContent(NodeRef nodeRef, String contentUrl) {
+        ContentData current = (ContentData) nodeService.getProperty(nodeRef, ContentModel.PROP_CONTENT);
+        String currentUrl = current == null ? null : current.getContentUrl();
+        if (contentUrl == null ? currentUrl != null : !contentUrl.equals(currentUrl)) {
+            throw new ConcurrencyFailureException("The content of " + nodeRef + " changed while it was being signed");
+        }
+    }
+
+    /**
+     * Confirms that the transaction about to commit still holds the signing lock of a document,
+     * extending the lock so it cannot expire while the transaction commits.
+     *
+     * @throws ConcurrencyFailureException if the lock was lost
+     */
+    private void confirm(NodeRef nodeRef, String token, QName lockQName, LockRefresher refresher) {
+        if (!refresher.lost) {
+            try {
+                jobLockService.refreshLock(token, lockQName, lockTimeToLive);
+                return;
+            } catch (LockAcquisitionException e) {
+                refresher.lost = true;
+            }
+        }
+        throw new ConcurrencyFailureException("The signing lock of " + nodeRef + " was lost before the signature was committed");
+    }
+
+    private void release(String token, QName lockQName) {
+        try {
+            jobLockService.releaseLock(token, lockQName);
+        } catch (RuntimeException e) {
+            // the lock expires by itself after its time to live
+            logger.warn("Could not release the signing lock " + lockQName + ": " + e.getMessage());
+        }
+    }
+
+    private static QName lockQName(NodeRef nodeRef) {
+        return QName.createQName(PDFSignModel.PDFSIGN_MODEL_1_0_URI, "sign-" + nodeRef.getId());
+    }
+
+    /**
+     * Keeps the signing lock of a document alive while its transaction is running, and records
+     * when the lock is lost before the transaction completes.
+     */
+    private static final class LockRefresher implements JobLockRefreshCallback {
+
+        private final NodeRef nodeRef;
+        private volatile boolean active = true;
+        private volatile boolean lost;
+
+        private LockRefresher(NodeRef nodeRef) {
+            this.nodeRef = nodeRef;
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+
+        @Override
+        public void lockReleased() {
+            if (active) {
+                lost = true;
+                logger.warn("The signing lock of " + nodeRef + " was lost while it was being signed");
+            }
+        }
+    }
+
+    public void setJobLockService(JobLockService jobLockService) {
+        this.jobLockService = jobLockService;
+    }
+
+    public void setNodeService(NodeService nodeService) {
+        this.nodeService = nodeService;
+    }
+
+    /**
+     * Sets how long a signing lock is kept when its holder never releases it, for instance
+     * because the server stopped. The lock is refreshed while its transaction is running, so
+     * the time to live only needs to cover the interval between two refreshes.
+     *
+     * @param lockTimeToLiveSeconds the time to live in seconds
+     */
+    public void setLockTimeToLiveSeconds(long lockTimeToLiveSeconds) {
+        this.lockTimeToLive = lockTimeToLiveSeconds * 1000L;
+    }
+
+    /**
+     * Sets how long a signer waits between attempts to take a lock held by another signer.
+     *
+     * @param lockRetryWait the wait in milliseconds
+     */
+    public void setLockRetryWait(long lockRetryWait) {
+        this.lockRetryWait = lockRetryWait;
+    }
+
+    /**
+     * Sets how many times a signer tries to take a lock held by another signer before failing.
+     *
+     * @param lockRetryCount the number of attempts
+     */
+    public void setLockRetryCount(int lockRetryCount) {
+        this.lockRetryCount = lockRetryCount;
+    }
+
+    /**
+     * Checks that the coordinator is configured.
+     */
+    public void init() {
+        if (jobLockService == null || nodeService == null) {
+            throw new AlfrescoRuntimeException("The signing coordinator requires the JobLockService and the NodeService");
+        }
+    }
+}
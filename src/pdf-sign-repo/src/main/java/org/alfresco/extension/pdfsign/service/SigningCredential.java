@@ -0,0 +1,228 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SigningCredential.java
+ * @description Holds the key material extracted from a key store node so that it
+ *              can be reused by consecutive signing operations.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.DestroyFailedException;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Key material extracted from a key store node: the alias, the private key, its
+ * certificate chain and the CN of the signing certificate.
+ * <p>
+ * Instances are shared between concurrent signing operations, so they are leased:
+ * every user calls {@link #acquire()} before using the key and {@link #release()}
+ * afterwards. Once the credential has been retired (for instance evicted from the
+ * {@link SigningCredentialCache}) it drops its key material as soon as the last
+ * lease is released. The standard JCA private keys do not support
+ * {@link javax.security.auth.Destroyable#destroy()}, so the key bytes are not overwritten:
+ * they stay on the heap until garbage collected, the credential only stops handing them out.
+ * <p>
+ * The credential also pools the {@link Signature} objects initialized with its key, so
+ * the provider specific form of the key is only built once per algorithm and provider.
+ */
+public class SigningCredential {
+
+    private static final Log logger = LogFactory.getLog(SigningCredential.class);
+
+    private final String alias;
+    private final String friendlyName;
+    private PrivateKey privateKey;
+    private Certificate[] chain;
+
+    /** Number of active leases, plus one while the credential is not retired. */
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /** Signature objects initialized with the private key, by algorithm and provider. */
+    private final ConcurrentHashMap<String, Queue<Signature>> signatures = new ConcurrentHashMap<String, Queue<Signature>>();
+
+    /**
+     * Creates a new credential.
+     *
+     * @param alias the key store alias the key was read from
+     * @param friendlyName the CN of the signing certificate
+     * @param privateKey the private key
+     * @param chain the certificate chain
+     */
+    public SigningCredential(String alias, String friendlyName, PrivateKey privateKey, Certificate[] chain) {
+        this.alias = alias;
+        this.friendlyName = friendlyName;
+        this.privateKey = privateKey;
+        this.chain = chain;
+    }
+
+    /**
+     * Takes a lease on this credential.
+     *
+     * @return this credential
+     * @throws AlfrescoRuntimeException if the credential has already been destroyed
+     */
+    public SigningCredential acquire() {
+        while (true) {
+            int current = references.get();
+            if (current <= 0) {
+                throw new AlfrescoRuntimeException("Signing credential for alias " + alias + " has been destroyed");
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * Tries to take a lease on this credential.
+     *
+     * @return true if the lease was taken, false if the credential has already been destroyed
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = references.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a lease previously taken with {@link #acquire()}.
+     */
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            destroy();
+        }
+    }
+
+    /**
+     * Retires the credential. The key material is dropped once every outstanding
+     * lease has been released.
+     */
+    public void retire() {
+        release();
+    }
+
+    /**
+     * Takes a Signature initialized with the private key from the pool, creating one if the
+     * pool is empty. The caller must hand it back with {@link #returnSignature} once it has
+     * produced a signature, or drop it if signing failed.
+     *
+     * @param algorithm the JCA signature algorithm, such as SHA256withRSA
+     * @param provider the JCA provider, or null for the preferred provider of the key
+     * @return a Signature ready to be updated
+     * @throws GeneralSecurityException if the algorithm or provider is not available
+     */
+    public Signature borrowSignature(String algorithm, String provider) throws GeneralSecurityException {
+        Queue<Signature> pool = signatures.get(poolKey(algorithm, provider));
+        Signature signature = pool == null ? null : pool.poll();
+        if (signature == null) {
+            PrivateKey key = getPrivateKey();
+            if (key == null) {
+                throw new AlfrescoRuntimeException("Signing credential for alias " + alias + " has been destroyed");
+            }
+            signature = CryptoProviders.newSignature(algorithm, provider);
+            signature.initSign(key);
+        }
+        return signature;
+    }
+
+    /**
+     * Returns a Signature to the pool. {@link Signature#sign()} leaves the object in the state
+     * set by {@code initSign}, so it is reused as is.
+     *
+     * @param algorithm the algorithm the Signature was borrowed with
+     * @param provider the provider the Signature was borrowed with
+     * @param signature the Signature
+     */
+    public void returnSignature(String algorithm, String provider, Signature signature) {
+        if (getPrivateKey() == null) {
+            return;
+        }
+        String key = poolKey(algorithm, provider);
+        Queue<Signature> pool = signatures.get(key);
+        if (pool == null) {
+            Queue<Signature> created = new ConcurrentLinkedQueue<Signature>();
+            pool = signatures.putIfAbsent(key, created);
+            if (pool == null) {
+                pool = created;
+            }
+        }
+        pool.offer(signature);
+    }
+
+    private static String poolKey(String algorithm, String provider) {
+        return provider == null ? algorithm : algorithm + "/" + provider;
+    }
+
+    /**
+     * Drops the key material held by this credential. The private key is destroyed when
+     * its provider supports it, otherwise only the reference to it is released.
+     */
+    private synchronized void destroy() {
+        if (privateKey != null) {
+            try {
+                privateKey.destroy();
+            } catch (DestroyFailedException e) {
+                // the JCA RSA and EC keys throw here, dropping the reference is all we can do
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Private key of alias " + alias + " cannot be destroyed, dropping the reference only");
+                }
+            }
+        }
+        privateKey = null;
+        chain = null;
+        signatures.clear();
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public String getFriendlyName() {
+        return friendlyName;
+    }
+
+    public synchronized PrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    public synchronized Certificate[] getChain() {
+        return chain;
+    }
+}
@@ -0,0 +1,377 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SigningCredentialCache.java
+ * @description In-memory cache of signing credentials keyed by key store node and
+ *              content version, with TTL and max-size eviction.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.extension.pdfsign.model.PDFSignModel;
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.ContentServicePolicies;
+import org.alfresco.repo.node.NodeServicePolicies;
+import org.alfresco.repo.policy.Behaviour.NotificationFrequency;
+import org.alfresco.repo.policy.BehaviourFilter;
+import org.alfresco.repo.policy.JavaBehaviour;
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Caches the {@link SigningCredential} extracted from a key store node so that repeated
+ * signings with the same certificate skip the key store I/O and the PKCS#12 decoding.
+ * <p>
+ * Entries are keyed by the key store NodeRef, its content URL and modification date, and
+ * an HMAC of the passwords used to open it, so a new version of the key store or a wrong
+ * password never hits a stale entry. Entries expire after a configurable time to live and
+ * the least recently used entry is evicted when the cache is full.
+ * <p>
+ * Key store nodes are marked with the {@code pdft:keystore} aspect when a credential is
+ * first read from them, and the behaviours bound to that aspect drop all entries of the
+ * node as soon as its content is updated or the node is deleted, without listening to
+ * the updates of every other document. Evicted credentials release their key material
+ * once no signing operation is using them any more (see {@link SigningCredential}).
+ */
+public class SigningCredentialCache implements ContentServicePolicies.OnContentUpdatePolicy,
+        NodeServicePolicies.BeforeDeleteNodePolicy {
+
+    private static final Log logger = LogFactory.getLog(SigningCredentialCache.class);
+
+    private PolicyComponent policyComponent;
+    private NodeService nodeService;
+    private BehaviourFilter behaviourFilter;
+
+    private boolean enabled = true;
+    private int maxSize = 32;
+    private long timeToLiveSeconds = 1800;
+
+    /** Entries in access order, so the eldest entry is the least recently used one. */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+    /**
+     * Registers the behaviours that invalidate the cache when a key store node changes.
+     */
+    public void init() {
+        policyComponent.bindClassBehaviour(ContentServicePolicies.OnContentUpdatePolicy.QNAME, PDFSignModel.ASPECT_KEYSTORE,
+                new JavaBehaviour(this, "onContentUpdate", NotificationFrequency.EVERY_EVENT));
+        policyComponent.bindClassBehaviour(NodeServicePolicies.BeforeDeleteNodePolicy.QNAME, PDFSignModel.ASPECT_KEYSTORE,
+                new JavaBehaviour(this, "beforeDeleteNode", NotificationFrequency.EVERY_EVENT));
+    }
+
+    /**
+     * Returns the credential cached under the given key, loading and caching it if needed.
+     * The returned credential has already been acquired and must be released by the caller.
+     *
+     * @param key the cache key
+     * @param loader loads the credential from the key store when it is not cached
+     * @return the acquired credential
+     */
+    public SigningCredential acquire(Key key, Supplier<SigningCredential> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        List<SigningCredential> evicted = new ArrayList<SigningCredential>();
+        try {
+            synchronized (entries) {
+                Entry entry = entries.get(key);
+                if (entry != null) {
+                    if (!entry.isExpired() && entry.credential.tryAcquire()) {
+                        return entry.credential;
+                    }
+                    entries.remove(key);
+                    evicted.add(entry.credential);
+                }
+            }
+        } finally {
+            retire(evicted);
+        }
+
+        // load outside the lock, concurrent misses for the same key just race to populate it
+        SigningCredential credential = loader.get();
+        credential.acquire();
+        markKeyStore(key.nodeRef);
+
+        try {
+            synchronized (entries) {
+                Entry previous = entries.put(key, new Entry(credential, System.currentTimeMillis() + timeToLiveSeconds * 1000L));
+                if (previous != null) {
+                    evicted.add(previous.credential);
+                }
+                purge(evicted);
+            }
+        } finally {
+            retire(evicted);
+        }
+
+        return credential;
+    }
+
+    /**
+     * Drops every cached credential loaded from the given key store node.
+     *
+     * @param nodeRef the key store node
+     */
+    public void invalidate(NodeRef nodeRef) {
+        List<SigningCredential> evicted = new ArrayList<SigningCredential>();
+        synchronized (entries) {
+            Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, Entry> entry = it.next();
+                if (entry.getKey().nodeRef.equals(nodeRef)) {
+                    evicted.add(entry.getValue().credential);
+                    it.remove();
+                }
+            }
+        }
+        if (!evicted.isEmpty() && logger.isDebugEnabled()) {
+            logger.debug("Invalidated " + evicted.size() + " cached signing credential(s) for " + nodeRef);
+        }
+        retire(evicted);
+    }
+
+    /**
+     * Drops every cached credential.
+     */
+    public void clear() {
+        List<SigningCredential> evicted = new ArrayList<SigningCredential>();
+        synchronized (entries) {
+            for (Entry entry : entries.values()) {
+                evicted.add(entry.credential);
+            }
+            entries.clear();
+        }
+        retire(evicted);
+    }
+
+    /**
+     * Invalidates the cached credentials of a key store node whose content changed.
+     *
+     * @param nodeRef the updated node
+     * @param newContent whether the content is new
+     */
+    @Override
+    public void onContentUpdate(NodeRef nodeRef, boolean newContent) {
+        invalidate(nodeRef);
+    }
+
+    /**
+     * Invalidates the cached credentials of a key store node that is being deleted.
+     *
+     * @param nodeRef the node being deleted
+     */
+    @Override
+    public void beforeDeleteNode(NodeRef nodeRef) {
+        invalidate(nodeRef);
+    }
+
+    /**
+     * Adds the key store aspect to the node a credential has been read from, so the
+     * behaviours of this cache are notified when it changes. Marking the key store is
+     * not a change of it, so it runs as system and leaves the auditable properties alone.
+     *
+     * @param nodeRef the key store node
+     */
+    private void markKeyStore(final NodeRef nodeRef) {
+        if (nodeService == null) {
+            return;
+        }
+        AuthenticationUtil.runAsSystem(() -> {
+            if (!nodeService.hasAspect(nodeRef, PDFSignModel.ASPECT_KEYSTORE)) {
+                behaviourFilter.disableBehaviour(nodeRef, ContentModel.ASPECT_AUDITABLE);
+                try {
+                    nodeService.addAspect(nodeRef, PDFSignModel.ASPECT_KEYSTORE, null);
+                } finally {
+                    behaviourFilter.enableBehaviour(nodeRef, ContentModel.ASPECT_AUDITABLE);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Removes expired entries and the least recently used ones above the maximum size.
+     * Must be called while holding the lock on {@link #entries}.
+     *
+     * @param evicted collects the credentials removed from the cache
+     */
+    private void purge(List<SigningCredential> evicted) {
+        Iterator<Entry> it = entries.values().iterator();
+        int size = entries.size();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (size > maxSize || entry.isExpired()) {
+                evicted.add(entry.credential);
+                it.remove();
+                size--;
+            }
+        }
+    }
+
+    /**
+     * Retires the given credentials so their key material is dropped once released.
+     *
+     * @param credentials the evicted credentials
+     */
+    private void retire(List<SigningCredential> credentials) {
+        for (SigningCredential credential : credentials) {
+            credential.retire();
+        }
+        credentials.clear();
+    }
+
+    public void setPolicyComponent(PolicyComponent policyComponent) {
+        this.policyComponent = policyComponent;
+    }
+
+    public void setNodeService(NodeService nodeService) {
+        this.nodeService = nodeService;
+    }
+
+    public void setBehaviourFilter(BehaviourFilter behaviourFilter) {
+        this.behaviourFilter = behaviourFilter;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public void setTimeToLiveSeconds(long timeToLiveSeconds) {
+        this.timeToLiveSeconds = timeToLiveSeconds;
+    }
+
+    /**
+     * A cached credential together with its expiry time.
+     */
+    private static final class Entry {
+        private final SigningCredential credential;
+        private final long expiresAt;
+
+        private Entry(SigningCredential credential, long expiresAt) {
+            this.credential = credential;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() > expiresAt;
+        }
+    }
+
+    /**
+     * Identifies a version of a key store node opened with a given pair of passwords.
+     * The passwords are only kept as an HMAC-SHA256 under a key drawn at random when the
+     * class is loaded, so the cached value cannot be matched against precomputed password
+     * digests and means nothing outside the running JVM.
+     */
+    public static final class Key {
+        private static final SecretKeySpec PASSWORD_KEY = newPasswordKey();
+
+        private final NodeRef nodeRef;
+        private final String contentUrl;
+        private final Date modified;
+        private final byte[] passwordDigest;
+
+        /**
+         * Creates a new cache key.
+         *
+         * @param nodeRef the key store node
+         * @param contentUrl the content URL of the key store
+         * @param modified the modification date of the key store node
+         * @param storePassword the key store password
+         * @param keyPassword the private key password
+         */
+        public Key(NodeRef nodeRef, String contentUrl, Date modified, String storePassword, String keyPassword) {
+            this.nodeRef = nodeRef;
+            this.contentUrl = contentUrl;
+            this.modified = modified;
+            this.passwordDigest = digest(storePassword, keyPassword);
+        }
+
+        private static SecretKeySpec newPasswordKey() {
+            byte[] key = new byte[32];
+            new SecureRandom().nextBytes(key);
+            return new SecretKeySpec(key, "HmacSHA256");
+        }
+
+        private static byte[] digest(String storePassword, String keyPassword) {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(PASSWORD_KEY);
+                mac.update(String.valueOf(storePassword).getBytes(StandardCharsets.UTF_8));
+                mac.update((byte) 0);
+                mac.update(String.valueOf(keyPassword).getBytes(StandardCharsets.UTF_8));
+                return mac.doFinal();
+            } catch (GeneralSecurityException e) {
+                throw new AlfrescoRuntimeException("HmacSHA256 is not available", e);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return nodeRef.equals(other.nodeRef)
+                    && (contentUrl == null ? other.contentUrl == null : contentUrl.equals(other.contentUrl))
+                    && (modified == null ? other.modified == null : modified.equals(other.modified))
+                    && MessageDigest.isEqual(passwordDigest, other.passwordDigest);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = nodeRef.hashCode();
+            result = 31 * result + (contentUrl != null ? contentUrl.hashCode() : 0);
+            result = 31 * result + (modified != null ? modified.hashCode() : 0);
+            result = 31 * result + Arrays.hashCode(passwordDigest);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SigningWorkspace.java
+ * @description Isolated temporary directory owned by a single signing
+ *              operation.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A temporary directory owned by a single signing operation. Every workspace gets a directory
+ * with a unique name, so concurrent signatures of the same document never share or delete each
+ * other's files, and the directory is deleted with everything left in it when the workspace is
+ * closed. The directory is only created when it is first needed.
+ */
+public final class SigningWorkspace implements Closeable {
+
+    private static final Log logger = LogFactory.getLog(SigningWorkspace.class);
+
+    private final String prefix;
+    private Path directory;
+
+    /**
+     * Creates the workspace of a signing operation.
+     *
+     * @param targetNodeRef the document being signed, used to name the directory
+     */
+    public SigningWorkspace(NodeRef targetNodeRef) {
+        this.prefix = "pdfsign-" + (targetNodeRef == null ? "" : targetNodeRef.getId() + "-");
+    }
+
+    /**
+     * Returns the directory of the workspace, creating it on first use.
+     *
+     * @return the workspace directory
+     */
+    public File getDirectory() {
+        if (directory == null) {
+            try {
+                directory = Files.createTempDirectory(TempFileProvider.getTempDir().toPath(), prefix);
+            } catch (IOException e) {
+                throw new AlfrescoRuntimeException("Could not create the signing workspace: " + e.getMessage(), e);
+            }
+        }
+        return directory.toFile();
+    }
+
+    /**
+     * Deletes the workspace directory and everything left in it.
+     */
+    @Override
+    public void close() {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            // children before their parents
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            logger.warn("Could not delete the signing workspace " + directory + ": " + e.getMessage());
+        }
+        directory = null;
+    }
+}
@@ -0,0 +1,340 @@
+/**
+ * *****************************************************************************
+ *
+ * @file TimestampClient.java
+ * @description Pooled HTTP client of an RFC 3161 time-stamping authority
+ *              timestamping signature values.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.extension.pdfsign.metrics.PDFSignMetrics;
+import org.alfresco.extension.pdfsign.metrics.SigningTimer;
+import org.alfresco.extension.pdfsign.metrics.SigningTimer.Phase;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.operator.DefaultDigestAlgorithmIdentifierFinder;
+import org.bouncycastle.tsp.TSPException;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampRequestGenerator;
+import org.bouncycastle.tsp.TimeStampResponse;
+import org.bouncycastle.tsp.TimeStampToken;
+
+/**
+ * Client of an RFC 3161 time-stamping authority (TSA), used to timestamp the signature value
+ * of every signature so it carries a trusted signing time.
+ * <p>
+ * Requests are sent over a pool of kept-alive HTTP connections with connect, read and pool
+ * timeouts, so concurrent signers do not pay a connection set-up per signature and a slow
+ * authority fails the signature instead of blocking it. Responses are validated against their
+ * request, nonce included. The size of the tokens returned is remembered, so the space reserved
+ * for signatures grows to fit the tokens of the configured authority.
+ */
+public class TimestampClient {
+
+    private static final Log logger = LogFactory.getLog(TimestampClient.class);
+
+    private static final String TIMESTAMP_QUERY = "application/timestamp-query";
+    private static final String TIMESTAMP_REPLY = "application/timestamp-reply";
+
+    private String url;
+    private String username;
+    private String password;
+    private String digestAlgorithm = CryptoProviders.DEFAULT_DIGEST_ALGORITHM;
+    private String policy;
+    private boolean requestCertificate = true;
+    private int connectTimeoutMillis = 5000;
+    private int socketTimeoutMillis = 10000;
+    private int maxConnections = 8;
+    private int tokenSizeEstimate = 8192;
+
+    private CryptoProviders cryptoProviders = new CryptoProviders();
+    private PDFSignMetrics metrics;
+
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicInteger maxTokenSize = new AtomicInteger();
+    private ASN1ObjectIdentifier digestOid;
+    private CloseableHttpClient httpClient;
+
+    /**
+     * Creates the HTTP client, when an authority is configured.
+     */
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        digestAlgorithm = CryptoProviders.digestAlgorithm(digestAlgorithm);
+        digestOid = new DefaultDigestAlgorithmIdentifierFinder().find(digestAlgorithm).getAlgorithm();
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMillis)
+                .setSocketTimeout(socketTimeoutMillis)
+                .setConnectionRequestTimeout(socketTimeoutMillis)
+                .build();
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .disableCookieManagement()
+                .build();
+
+        logger.info("Signatures are timestamped by " + url);
+    }
+
+    /**
+     * Closes the HTTP client and its pooled connections.
+     */
+    public void destroy() {
+        if (httpClient != null) {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                logger.warn("Could not close the TSA client: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tells whether an authority is configured.
+     *
+     * @return true if signatures are timestamped
+     */
+    public boolean isEnabled() {
+        return url != null && !url.trim().isEmpty();
+    }
+
+    /**
+     * Creates a MessageDigest computing the imprints sent to the authority.
+     *
+     * @return the MessageDigest
+     * @throws GeneralSecurityException if the digest is not available
+     */
+    public MessageDigest getMessageDigest() throws GeneralSecurityException {
+        return cryptoProviders.getMessageDigest(digestAlgorithm);
+    }
+
+    /**
+     * Returns an upper estimate of the size of the tokens of the authority, to reserve their
+     * space in the signature.
+     *
+     * @return the estimated size in bytes
+     */
+    public int getTokenSizeEstimate() {
+        return Math.max(tokenSizeEstimate, maxTokenSize.get() + 1024);
+    }
+
+    /**
+     * Timestamps a signature value.
+     *
+     * @param signature the signature value
+     * @param timer the timer of the signing operation, charged with the request, or null
+     * @return the encoded timestamp token
+     * @throws IOException if the authority cannot be reached or does not grant the timestamp
+     * @throws GeneralSecurityException if the digest is not available
+     */
+    public byte[] timestamp(byte[] signature, SigningTimer timer) throws IOException, GeneralSecurityException {
+        return getTimeStampToken(getMessageDigest().digest(signature), timer);
+    }
+
+    /**
+     * Requests a timestamp token for an imprint.
+     *
+     * @param imprint the digest of the timestamped data, computed with {@link #getMessageDigest()}
+     * @param timer the timer of the signing operation, charged with the request, or null
+     * @return the encoded timestamp token
+     * @throws IOException if the authority cannot be reached or does not grant the timestamp
+     */
+    public byte[] getTimeStampToken(byte[] imprint, SigningTimer timer) throws IOException {
+        if (timer != null) {
+            timer.enter(Phase.TIMESTAMP);
+        }
+        long start = System.nanoTime();
+        String outcome = PDFSignMetrics.OUTCOME_FAILURE;
+        try {
+            byte[] token = request(imprint);
+            outcome = PDFSignMetrics.OUTCOME_SUCCESS;
+            return token;
+        } finally {
+            if (timer != null) {
+                timer.exit();
+            }
+            if (metrics != null) {
+                metrics.recordTimestamp(System.nanoTime() - start, outcome);
+            }
+        }
+    }
+
+    private byte[] request(byte[] imprint) throws IOException {
+        if (httpClient == null) {
+            throw new AlfrescoRuntimeException("No time-stamping authority is configured");
+        }
+
+        TimeStampRequestGenerator generator = new TimeStampRequestGenerator();
+        generator.setCertReq(requestCertificate);
+        if (policy != null && !policy.trim().isEmpty()) {
+            generator.setReqPolicy(new ASN1ObjectIdentifier(policy.trim()));
+        }
+        TimeStampRequest request = generator.generate(digestOid, imprint, new BigInteger(64, random));
+
+        HttpPost post = new HttpPost(url);
+        post.setHeader(HttpHeaders.ACCEPT, TIMESTAMP_REPLY);
+        if (username != null && !username.isEmpty()) {
+            String credentials = username + ":" + (password == null ? "" : password);
+            post.setHeader(HttpHeaders.AUTHORIZATION,
+                    "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+        }
+        post.setEntity(new ByteArrayEntity(request.getEncoded(), ContentType.create(TIMESTAMP_QUERY)));
+
+        byte[] body;
+        try (CloseableHttpResponse response = httpClient.execute(post)) {
+            int status = response.getStatusLine().getStatusCode();
+            // the body is always consumed, so the connection goes back to the pool
+            body = response.getEntity() == null ? new byte[0] : EntityUtils.toByteArray(response.getEntity());
+            if (status != HttpStatus.SC_OK) {
+                throw new IOException("The time-stamping authority " + url + " answered HTTP " + status);
+            }
+        }
+
+        try {
+            TimeStampResponse response = new TimeStampResponse(body);
+            response.validate(request);
+            TimeStampToken token = response.getTimeStampToken();
+            if (token == null) {
+                throw new IOException("The time-stamping authority " + url + " refused the request: " + response.getStatusString());
+            }
+            byte[] encoded = token.getEncoded();
+            maxTokenSize.accumulateAndGet(encoded.length, Math::max);
+            return encoded;
+        } catch (TSPException e) {
+            throw new IOException("Invalid response of the time-stamping authority " + url + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param url the URL of the time-stamping authority, or empty to disable timestamps
+     */
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    /**
+     * @param username the user of the authority, or empty if it requires no authentication
+     */
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    /**
+     * @param password the password of the user of the authority
+     */
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    /**
+     * @param digestAlgorithm the digest algorithm of the imprints, such as SHA-256
+     */
+    public void setDigestAlgorithm(String digestAlgorithm) {
+        this.digestAlgorithm = digestAlgorithm;
+    }
+
+    /**
+     * @param policy the OID of the timestamp policy requested, or empty for the default policy of the authority
+     */
+    public void setPolicy(String policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * @param requestCertificate whether the authority includes its certificate in the tokens
+     */
+    public void setRequestCertificate(boolean requestCertificate) {
+        this.requestCertificate = requestCertificate;
+    }
+
+    /**
+     * @param connectTimeoutMillis the timeout to connect to the authority
+     */
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * @param socketTimeoutMillis the timeout to read the response, also the longest wait for a pooled connection
+     */
+    public void setSocketTimeoutMillis(int socketTimeoutMillis) {
+        this.socketTimeoutMillis = socketTimeoutMillis;
+    }
+
+    /**
+     * @param maxConnections the number of connections kept open to the authority
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = Math.max(1, maxConnections);
+    }
+
+    /**
+     * @param tokenSizeEstimate the space reserved for a token until the authority has returned one
+     */
+    public void setTokenSizeEstimate(int tokenSizeEstimate) {
+        this.tokenSizeEstimate = tokenSizeEstimate;
+    }
+
+    /**
+     * @param cryptoProviders the providers of the imprint digest
+     */
+    public void setCryptoProviders(CryptoProviders cryptoProviders) {
+        this.cryptoProviders = cryptoProviders;
+    }
+
+    /**
+     * @param metrics the metrics the requests are recorded in
+     */
+    public void setMetrics(PDFSignMetrics metrics) {
+        this.metrics = metrics;
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * *****************************************************************************
+ *
+ * @file ValidationMaterial.java
+ * @description Certificates, OCSP responses and CRLs embedded in signed
+ *              documents for long-term validation.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Validation material embedded in the document security store (DSS) of a signed document for
+ * long-term validation: the certificates of a chain and the OCSP responses or CRLs proving
+ * they were not revoked when the document was signed.
+ */
+public final class ValidationMaterial {
+
+    private final List<byte[]> certificates = new ArrayList<byte[]>();
+    private final List<byte[]> ocsps = new ArrayList<byte[]>();
+    private final List<byte[]> crls = new ArrayList<byte[]>();
+
+    void addCertificate(byte[] certificate) {
+        certificates.add(certificate);
+    }
+
+    void addOcsp(byte[] ocsp) {
+        ocsps.add(ocsp);
+    }
+
+    void addCrl(byte[] crl) {
+        crls.add(crl);
+    }
+
+    /**
+     * Adds the material of another chain, such as the one of a timestamp authority.
+     *
+     * @param other the material to add
+     */
+    void addAll(ValidationMaterial other) {
+        certificates.addAll(other.certificates);
+        ocsps.addAll(other.ocsps);
+        crls.addAll(other.crls);
+    }
+
+    /**
+     * Returns the encoded certificates.
+     *
+     * @return the DER encoded certificates
+     */
+    public List<byte[]> getCertificates() {
+        return Collections.unmodifiableList(certificates);
+    }
+
+    /**
+     * Returns the encoded OCSP responses.
+     *
+     * @return the DER encoded basic OCSP responses
+     */
+    public List<byte[]> getOcsps() {
+        return Collections.unmodifiableList(ocsps);
+    }
+
+    /**
+     * Returns the encoded CRLs.
+     *
+     * @return the DER encoded CRLs
+     */
+    public List<byte[]> getCrls() {
+        return Collections.unmodifiableList(crls);
+    }
+}
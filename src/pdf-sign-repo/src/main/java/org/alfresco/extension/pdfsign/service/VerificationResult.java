@@ -0,0 +1,89 @@
+/**
+ * *****************************************************************************
+ *
+ * @file VerificationResult.java
+ * @description Outcome of the verification of every signature of a PDF
+ *              document.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The outcome of the verification of every signature field of a PDF document, as of the
+ * content it was computed for.
+ */
+public final class VerificationResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String contentUrl;
+    private final Date verifiedAt;
+    private final List<SignatureVerification> signatures;
+
+    VerificationResult(String contentUrl, Date verifiedAt, List<SignatureVerification> signatures) {
+        this.contentUrl = contentUrl;
+        this.verifiedAt = verifiedAt;
+        this.signatures = Collections.unmodifiableList(signatures);
+    }
+
+    /**
+     * Tells whether the document is signed and every signature is valid.
+     *
+     * @return true if there is at least one signature and all of them are valid
+     */
+    public boolean isValid() {
+        if (signatures.isEmpty()) {
+            return false;
+        }
+        for (SignatureVerification signature : signatures) {
+            if (!signature.isValid()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the content URL of the content verified
+     */
+    public String getContentUrl() {
+        return contentUrl;
+    }
+
+    /**
+     * @return when the verification was computed
+     */
+    public Date getVerifiedAt() {
+        return verifiedAt;
+    }
+
+    /**
+     * @return the verification of every signature field, in revision order
+     */
+    public List<SignatureVerification> getSignatures() {
+        return signatures;
+    }
+}
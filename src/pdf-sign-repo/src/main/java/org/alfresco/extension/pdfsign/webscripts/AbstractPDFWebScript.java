@@ -0,0 +1,129 @@
+/**
+ * *****************************************************************************
+ *
+ * @file AbstractPDFWebScript.java
+ * @description Base of the web scripts answering about the content of a PDF.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.webscripts;
+
+import java.nio.charset.StandardCharsets;
+
+import org.alfresco.extension.pdfsign.constants.PDFSignConstants;
+import org.alfresco.model.ContentModel;
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.springframework.extensions.webscripts.Cache;
+import org.springframework.extensions.webscripts.DeclarativeWebScript;
+import org.springframework.extensions.webscripts.Status;
+import org.springframework.extensions.webscripts.WebScriptException;
+import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.util.DigestUtils;
+
+/**
+ * Base of the Web Scripts answering about the content of a PDF document given by the
+ * {@code nodeRef} parameter. Their answers only depend on the content, which is immutable
+ * for a given content URL, and on the state of the repository they are computed with, so
+ * responses carry an ETag derived from both and conditional requests are answered with
+ * 304 Not Modified without reading the content.
+ */
+public abstract class AbstractPDFWebScript extends DeclarativeWebScript {
+
+    protected ServiceRegistry serviceRegistry;
+
+    /**
+     * Resolves the {@code nodeRef} parameter to an existing node.
+     *
+     * @param req the web script request
+     * @return the NodeRef of the document
+     * @throws WebScriptException if the parameter is missing or the node does not exist
+     */
+    protected NodeRef getNodeRef(WebScriptRequest req) {
+        String nodeRefParam = req.getParameter("nodeRef");
+        if (nodeRefParam == null || !NodeRef.isNodeRef(nodeRefParam)) {
+            throw new WebScriptException(Status.STATUS_BAD_REQUEST, "A valid nodeRef parameter is required");
+        }
+
+        NodeRef nodeRef = new NodeRef(nodeRefParam);
+        if (!serviceRegistry.getNodeService().exists(nodeRef)) {
+            throw new WebScriptException(Status.STATUS_NOT_FOUND, "Node " + nodeRef + " does not exist");
+        }
+        return nodeRef;
+    }
+
+    /**
+     * Returns the reader of the PDF content of a document.
+     *
+     * @param nodeRef the NodeRef of the document
+     * @return the ContentReader of the content
+     * @throws WebScriptException if the document has no content or its content is not a PDF
+     */
+    protected ContentReader getPdfReader(NodeRef nodeRef) {
+        ContentReader reader = serviceRegistry.getContentService().getReader(nodeRef, ContentModel.PROP_CONTENT);
+        if (reader == null || !reader.exists()) {
+            throw new WebScriptException(Status.STATUS_NOT_FOUND, "Node " + nodeRef + " has no content");
+        }
+        if (!PDFSignConstants.FILE_MIMETYPE.equals(reader.getMimetype())) {
+            throw new WebScriptException(Status.STATUS_UNSUPPORTED_MEDIA_TYPE, "Node " + nodeRef + " is not a PDF document");
+        }
+        return reader;
+    }
+
+    /**
+     * Sets the ETag of the response, derived from the content URL and the state the answer is
+     * computed with, and tells whether the client already holds that answer. When it does the
+     * status is set to 304 Not Modified and the web script must return an empty model.
+     *
+     * @param req the web script request
+     * @param status the status of the web script
+     * @param cache the cache for the web script
+     * @param reader the reader of the content the answer is about
+     * @param state the other inputs of the answer, such as a digest of the trust anchors
+     * @return true if the answer of the client is current
+     */
+    protected boolean isNotModified(WebScriptRequest req, Status status, Cache cache, ContentReader reader, String... state) {
+        StringBuilder tag = new StringBuilder(reader.getContentUrl());
+        for (String part : state) {
+            tag.append('|').append(part);
+        }
+        String etag = "\"" + DigestUtils.md5DigestAsHex(tag.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+        cache.setNeverCache(false);
+        cache.setMustRevalidate(true);
+        cache.setETag(etag);
+
+        if (etag.equals(req.getHeader("If-None-Match"))) {
+            status.setCode(Status.STATUS_NOT_MODIFIED);
+            status.setRedirect(true);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sets the ServiceRegistry used by this web script.
+     *
+     * @param serviceRegistry the ServiceRegistry to set
+     */
+    public void setServiceRegistry(ServiceRegistry serviceRegistry) {
+        this.serviceRegistry = serviceRegistry;
+    }
+}
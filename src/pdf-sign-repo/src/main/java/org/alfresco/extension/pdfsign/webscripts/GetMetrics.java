@@ -0,0 +1,74 @@
+/**
+ * *****************************************************************************
+ *
+ * @file GetMetrics.java
+ * @description Web Script exposing the PDF signing metrics in the Prometheus text
+ *              exposition format.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.webscripts;
+
+import java.io.IOException;
+
+import org.alfresco.extension.pdfsign.metrics.PDFSignMetrics;
+import org.springframework.extensions.webscripts.AbstractWebScript;
+import org.springframework.extensions.webscripts.Cache;
+import org.springframework.extensions.webscripts.Status;
+import org.springframework.extensions.webscripts.WebScriptException;
+import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
+
+/**
+ * Web Script exposing the PDF signing metrics in the Prometheus text exposition format,
+ * to be scraped by a Prometheus server with the credentials of an administrator.
+ */
+public class GetMetrics extends AbstractWebScript {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+
+    private PDFSignMetrics metrics;
+
+    /**
+     * Writes every metric to the response.
+     *
+     * @param req the web script request
+     * @param res the web script response
+     * @throws IOException if the response cannot be written
+     */
+    @Override
+    public void execute(WebScriptRequest req, WebScriptResponse res) throws IOException {
+        if (!metrics.isEnabled()) {
+            throw new WebScriptException(Status.STATUS_NOT_FOUND, "PDF signing metrics are disabled");
+        }
+
+        Cache cache = new Cache(getDescription().getRequiredCache());
+        cache.setNeverCache(true);
+        res.setCache(cache);
+
+        res.setContentType(CONTENT_TYPE);
+        res.setContentEncoding("UTF-8");
+        res.getWriter().write(metrics.scrape());
+    }
+
+    public void setMetrics(PDFSignMetrics metrics) {
+        this.metrics = metrics;
+    }
+}
@@ -3,8 +3,8 @@
  *
  * @file GetPageCount.java
  * @description Web Script for retrieving the page count of a PDF document stored
- *              in Alfresco. This script uses the iText library to read the PDF and
- *              count the number of pages.
+ *              in Alfresco. This script uses the iText library to read the PDF page
+ *              tree and caches the count by content URL.
  *
  * @author Rober de Avila Abraira
  * @version 1.0
@@ -28,30 +28,33 @@
 package org.alfresco.extension.pdfsign.webscripts;
 
 import java.io.IOException;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.alfresco.extension.pdfsign.service.PDFPageCounter;
 import org.alfresco.model.ContentModel;
-import org.alfresco.service.ServiceRegistry;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.extensions.webscripts.Cache;
-import org.springframework.extensions.webscripts.DeclarativeWebScript;
 import org.springframework.extensions.webscripts.Status;
+import org.springframework.extensions.webscripts.WebScriptException;
 import org.springframework.extensions.webscripts.WebScriptRequest;
 
-import com.itextpdf.text.pdf.PdfReader;
-
 /**
  * Web Script for retrieving the page count of a PDF document stored in Alfresco.
- * This script uses the iText library to read the PDF and count the number of pages.
+ * The count is read from the page tree with iText partial reading and cached by content URL.
+ * Responses carry an ETag derived from the content URL and a Last-Modified header, and
+ * conditional requests for unchanged content are answered with 304 Not Modified.
+ * <p>
+ * The web script is a singleton shared by all requests and keeps no per-request state:
+ * every value lives in local variables and failures are reported with an explicit status code.
  */
-public class GetPageCount extends DeclarativeWebScript {
+public class GetPageCount extends AbstractPDFWebScript {
     private static final Log logger = LogFactory.getLog(GetPageCount.class);
-    private ServiceRegistry serviceRegistry;
-    private int count = -1;
+    private PDFPageCounter pageCounter;
 
     /**
      * Executes the web script to retrieve the page count of a PDF document.
@@ -62,16 +65,21 @@ public class GetPageCount extends DeclarativeWebScript {
      * @return a map containing the page count of the PDF
      */
     public Map<String, Object> executeImpl(WebScriptRequest req, Status status, Cache cache) {
-        String nodeRef = req.getParameter("nodeRef");
+        NodeRef nodeRef = getNodeRef(req);
+        ContentReader reader = getPdfReader(nodeRef);
+        cache.setLastModified((Date) serviceRegistry.getNodeService().getProperty(nodeRef, ContentModel.PROP_MODIFIED));
+
         Map<String, Object> model = new HashMap<String, Object>();
+        if (isNotModified(req, status, cache, reader)) {
+            return model;
+        }
 
+        int count;
         try {
-            ContentReader reader = serviceRegistry.getContentService().getReader(new NodeRef(nodeRef), ContentModel.PROP_CONTENT);
-            PdfReader pdfReader = new PdfReader(reader.getContentInputStream());
-            count = pdfReader.getNumberOfPages();
-            pdfReader.close();
+            count = pageCounter.getPageCount(nodeRef, reader);
         } catch (IOException ioex) {
-            logger.error("Error fetching page count for document: " + ioex);
+            logger.error("Error fetching page count for document " + nodeRef + ": " + ioex);
+            throw new WebScriptException(Status.STATUS_INTERNAL_SERVER_ERROR, "Could not read the page count of " + nodeRef, ioex);
         }
 
         model.put("pageCount", count);
@@ -79,11 +87,11 @@ public class GetPageCount extends DeclarativeWebScript {
     }
 
     /**
-     * Sets the ServiceRegistry used by this web script.
+     * Sets the page counter used by this web script.
      *
-     * @param serviceRegistry the ServiceRegistry to set
+     * @param pageCounter the PDFPageCounter to set
      */
-    public void setServiceRegistry(ServiceRegistry serviceRegistry) {
-        this.serviceRegistry = serviceRegistry;
+    public void setPageCounter(PDFPageCounter pageCounter) {
+        this.pageCounter = pageCounter;
     }
 }
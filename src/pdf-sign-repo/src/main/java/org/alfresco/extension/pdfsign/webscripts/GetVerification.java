@@ -0,0 +1,104 @@
+/**
+ * *****************************************************************************
+ *
+ * @file GetVerification.java
+ * @description Web script verifying the signatures of a PDF document.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.webscripts;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.extension.pdfsign.service.PDFSignService;
+import org.alfresco.extension.pdfsign.service.SignatureVerifier;
+import org.alfresco.extension.pdfsign.service.VerificationResult;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.extensions.webscripts.Cache;
+import org.springframework.extensions.webscripts.Status;
+import org.springframework.extensions.webscripts.WebScriptException;
+import org.springframework.extensions.webscripts.WebScriptRequest;
+
+/**
+ * Web Script verifying the signatures of a PDF document stored in Alfresco. Every signature
+ * field is reported with the outcome of its integrity, certificate chain and timestamp checks.
+ * A verification only depends on the content and on the trust anchors, certificate chains
+ * being validated at the signing or timestamp time, so responses carry an ETag derived from
+ * the content URL and a digest of the trust anchors: conditional requests for unchanged
+ * content are answered with 304 Not Modified until the trust store changes.
+ */
+public class GetVerification extends AbstractPDFWebScript {
+    private static final Log logger = LogFactory.getLog(GetVerification.class);
+    private PDFSignService pdfSignService;
+    private SignatureVerifier signatureVerifier;
+
+    /**
+     * Executes the web script to verify the signatures of a PDF document.
+     *
+     * @param req the web script request
+     * @param status the status of the web script
+     * @param cache the cache for the web script
+     * @return a map containing the verification of the document
+     */
+    public Map<String, Object> executeImpl(WebScriptRequest req, Status status, Cache cache) {
+        NodeRef nodeRef = getNodeRef(req);
+        ContentReader reader = getPdfReader(nodeRef);
+
+        Map<String, Object> model = new HashMap<String, Object>();
+        if (isNotModified(req, status, cache, reader, signatureVerifier.getTrustFingerprint())) {
+            return model;
+        }
+
+        VerificationResult result;
+        try {
+            result = pdfSignService.verifyPDF(nodeRef);
+        } catch (AlfrescoRuntimeException e) {
+            logger.error("Error verifying the signatures of document " + nodeRef + ": " + e);
+            throw new WebScriptException(Status.STATUS_INTERNAL_SERVER_ERROR, "Could not verify the signatures of " + nodeRef, e);
+        }
+
+        model.put("nodeRef", nodeRef.toString());
+        model.put("result", result);
+        return model;
+    }
+
+    /**
+     * Sets the PDF sign service verifying the documents.
+     *
+     * @param pdfSignService the PDFSignService to set
+     */
+    public void setPdfSignService(PDFSignService pdfSignService) {
+        this.pdfSignService = pdfSignService;
+    }
+
+    /**
+     * Sets the verifier whose trust anchors the verifications depend on.
+     *
+     * @param signatureVerifier the SignatureVerifier to set
+     */
+    public void setSignatureVerifier(SignatureVerifier signatureVerifier) {
+        this.signatureVerifier = signatureVerifier;
+    }
+}
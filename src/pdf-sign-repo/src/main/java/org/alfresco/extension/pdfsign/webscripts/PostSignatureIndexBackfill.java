@@ -0,0 +1,70 @@
+/**
+ * *****************************************************************************
+ *
+ * @file PostSignatureIndexBackfill.java
+ * @description Web Script starting a backfill of the signature index.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.webscripts;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.alfresco.extension.pdfsign.service.SignatureIndexer;
+import org.springframework.extensions.webscripts.Cache;
+import org.springframework.extensions.webscripts.DeclarativeWebScript;
+import org.springframework.extensions.webscripts.Status;
+import org.springframework.extensions.webscripts.WebScriptException;
+import org.springframework.extensions.webscripts.WebScriptRequest;
+
+/**
+ * Web Script starting a backfill of the signature index, so the PDF documents stored before
+ * the index was enabled, or still queued when the repository stopped, are indexed. The
+ * documents are queued in the background, the response only reports that the backfill runs.
+ */
+public class PostSignatureIndexBackfill extends DeclarativeWebScript {
+
+    private SignatureIndexer signatureIndexer;
+
+    /**
+     * Starts the backfill.
+     *
+     * @param req the web script request
+     * @param status the status of the web script
+     * @param cache the cache for the web script
+     * @return a map with the backfill state and the number of queued documents
+     */
+    public Map<String, Object> executeImpl(WebScriptRequest req, Status status, Cache cache) {
+        if (!signatureIndexer.isEnabled()) {
+            throw new WebScriptException(Status.STATUS_NOT_FOUND, "The signature index is disabled");
+        }
+        signatureIndexer.backfill();
+
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put("backfilling", signatureIndexer.isBackfilling());
+        model.put("queueLength", signatureIndexer.getQueueLength());
+        return model;
+    }
+
+    public void setSignatureIndexer(SignatureIndexer signatureIndexer) {
+        this.signatureIndexer = signatureIndexer;
+    }
+}
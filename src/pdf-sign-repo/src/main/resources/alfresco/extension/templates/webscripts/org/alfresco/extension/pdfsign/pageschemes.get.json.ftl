@@ -2,6 +2,8 @@
 	"schemes": [
 	{"name": "${msg("pdfsign.form.pagescheme.odd")}", "value":"odd"},
 	{"name": "${msg("pdfsign.form.pagescheme.even")}", "value":"even"},
+	{"name": "${msg("pdfsign.form.pagescheme.first")}", "value":"first"},
+	{"name": "${msg("pdfsign.form.pagescheme.last")}", "value":"last"},
 	{"name":"${msg("pdfsign.form.pagescheme.all")}", "value":"all"}
 	]
 }
@@ -0,0 +1,4 @@
+{
+	"backfilling":${backfilling?c},
+	"queueLength":${queueLength?c}
+}
\ No newline at end of file
@@ -0,0 +1,25 @@
+{
+	"nodeRef":"${nodeRef}",
+	"valid":${result.valid?string},
+	"verifiedAt":"${xmldate(result.verifiedAt)}",
+	"signatures":
+	[
+	<#list result.signatures as signature>
+		{
+			"name":"${signature.name?json_string}",
+			"revision":${signature.revision?c},
+			"valid":${signature.valid?string},
+			"coversWholeDocument":${signature.coversWholeDocument?string},
+			"documentTimestamp":${signature.documentTimestamp?string},
+			"integrityValid":${signature.integrityValid?string},
+			"signer":<#if signature.signerSubject??>"${signature.signerSubject?json_string}"<#else>null</#if>,
+			"signingTime":<#if signature.signingTime??>"${xmldate(signature.signingTime)}"<#else>null</#if>,
+			"certificateTrusted":${signature.certificateTrusted?string},
+			"timestamped":${signature.timestamped?string},
+			"timestampValid":${signature.timestampValid?string},
+			"timestampTime":<#if signature.timestampTime??>"${xmldate(signature.timestampTime)}"<#else>null</#if>,
+			"error":<#if signature.error??>"${signature.error?json_string}"<#else>null</#if>
+		}<#if signature_has_next>,</#if>
+	</#list>
+	]
+}
@@ -0,0 +1,182 @@
+/**
+ * *****************************************************************************
+ *
+ * @file AppearanceCacheTest.java
+ * @description Tests of the appearance cache and of the engines drawing its
+ *              rendered static layers.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import javax.imageio.ImageIO;
+
+import org.alfresco.extension.pdfsign.constants.PDFSignConstants;
+import org.alfresco.extension.pdfsign.test.TestCredentials;
+import org.alfresco.extension.pdfsign.test.TestDocuments;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ByteArrayResource;
+
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.parser.PdfTextExtractor;
+
+/**
+ * Tests of the appearance cache and of the engines drawing its rendered static layers.
+ */
+public class AppearanceCacheTest {
+
+    private static final String SIGNER = "Appearance Signer";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AppearanceCache appearanceCache;
+
+    @Before
+    public void setUp() throws Exception {
+        BufferedImage image = new BufferedImage(40, 20, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(0, 0, 40, 20);
+        graphics.dispose();
+        ByteArrayOutputStream logo = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", logo);
+
+        AppearanceTemplate text = new AppearanceTemplate();
+        text.init();
+        AppearanceTemplate withLogo = new AppearanceTemplate();
+        withLogo.setName("logo");
+        withLogo.setLayout("logo-left");
+        withLogo.setLogo(new ByteArrayResource(logo.toByteArray()));
+        withLogo.init();
+
+        appearanceCache = new AppearanceCache();
+        appearanceCache.setTemplates(Arrays.asList(text, withLogo));
+        appearanceCache.setCache(new DefaultSimpleCache<String, SignatureAppearance>(100, "appearanceCache"));
+    }
+
+    /**
+     * The static layer is rendered once per template, certificate, signer and size. It holds
+     * the signer line; the date line is left to the signature.
+     */
+    @Test
+    public void testStaticLayerIsCached() throws Exception {
+        SignatureAppearance appearance = appearanceCache.getAppearance(null, "fingerprint", SIGNER, 200, 100);
+        assertSame(appearance, appearanceCache.getAppearance(null, "fingerprint", SIGNER, 200, 100));
+        assertNotSame(appearance, appearanceCache.getAppearance(null, "other", SIGNER, 200, 100));
+        assertNotSame(appearance, appearanceCache.getAppearance(null, "fingerprint", "Other Signer", 200, 100));
+        assertNotSame(appearance, appearanceCache.getAppearance(null, "fingerprint", SIGNER, 100, 50));
+        assertNotSame(appearance, appearanceCache.getAppearance("logo", "fingerprint", SIGNER, 200, 100));
+
+        PdfReader reader = new PdfReader(appearance.getStaticLayer());
+        try {
+            assertEquals(1, reader.getNumberOfPages());
+            Rectangle size = reader.getPageSize(1);
+            assertEquals(200, size.getWidth(), 0.01);
+            assertEquals(100, size.getHeight(), 0.01);
+            String text = PdfTextExtractor.getTextFromPage(reader, 1);
+            assertTrue(text, text.contains("Digitally signed by " + SIGNER));
+            assertFalse(text, text.contains("Date"));
+        } finally {
+            reader.close();
+        }
+
+        Calendar signDate = new GregorianCalendar(2024, Calendar.AUGUST, 4, 10, 30, 0);
+        String[] lines = appearance.getDateLines(signDate);
+        assertEquals(2, lines.length);
+        assertNull(lines[0]);
+        assertTrue(lines[1], lines[1].startsWith("Date: 2024.08.04 10:30:00"));
+    }
+
+    /**
+     * Both engines draw the static layer, logo included, and the signing date on the page
+     * holding the signature widget and on the other selected pages.
+     */
+    @Test
+    public void testEnginesDrawStaticLayer() throws Exception {
+        KeyPair keyPair = TestCredentials.keyPair("RSA");
+        byte[] keyStore = TestCredentials.keyStore("PKCS12", keyPair.getPrivate(), TestCredentials.selfSigned(SIGNER, keyPair));
+        File document = TestDocuments.createPdf(folder.newFile("document.pdf"), 2);
+        SignatureAppearance appearance = appearanceCache.getAppearance("logo", "fingerprint", SIGNER, 200, 100);
+        byte[] staticLayer = appearance.getStaticLayer().clone();
+
+        for (SignatureEngine engine : new SignatureEngine[] { new ITextSignatureEngine(), new PDFBoxSignatureEngine() }) {
+            SignatureRequest request = new SignatureRequest();
+            request.setCredential(KeyStoreLoader.loadCredential(new ByteArrayInputStream(keyStore), TestCredentials.PASSWORD,
+                    TestCredentials.PASSWORD));
+            request.setDigestAlgorithm(CryptoProviders.DEFAULT_DIGEST_ALGORITHM);
+            request.setSignerName(SIGNER);
+            request.setVisible(true);
+            request.setPosition(PDFSignConstants.POSITION_BOTTOMRIGHT);
+            request.setWidth(200);
+            request.setHeight(100);
+            request.setAppearance(appearance);
+            request.setPages(new int[] { 1, 2 });
+
+            File signed = folder.newFile();
+            try (SignableDocument opened = engine.open(TestDocuments.reader(document, "store://test/document.bin"));
+                    OutputStream out = new FileOutputStream(signed)) {
+                opened.sign(request, out);
+            }
+
+            String name = engine.getName();
+            PdfReader reader = new PdfReader(signed.getPath());
+            try {
+                AcroFields fields = reader.getAcroFields();
+                assertTrue(name, fields.verifySignature(fields.getSignatureNames().get(0)).verify());
+
+                // the copy stamped on the second page is part of its content
+                String text = PdfTextExtractor.getTextFromPage(reader, 2);
+                assertTrue(name + ": " + text, text.contains("Digitally signed by " + SIGNER));
+                assertTrue(name + ": " + text, text.contains("Date: "));
+            } finally {
+                reader.close();
+            }
+        }
+        assertArrayEquals("the cached layer is not modified", staticLayer, appearance.getStaticLayer());
+    }
+}
@@ -0,0 +1,931 @@
+/**
+ * *****************************************************************************
+ *
+ * @file PDFSignServiceImplTest.java
+ * @description Tests of the signing service against mocked repository
+ *              services.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.extension.pdfsign.constants.PDFSignConstants;
+import org.alfresco.extension.pdfsign.model.PDFSignModel;
+import org.alfresco.extension.pdfsign.test.TestAuthority;
+import org.alfresco.extension.pdfsign.test.TestCredentials;
+import org.alfresco.extension.pdfsign.test.TestDocuments;
+import org.alfresco.model.ContentModel;
+import org.alfresco.query.PagingRequest;
+import org.alfresco.query.PagingResults;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.cmr.dictionary.ClassDefinition;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.dictionary.PropertyDefinition;
+import org.alfresco.service.cmr.model.FileFolderService;
+import org.alfresco.service.cmr.model.FileInfo;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.TempFileProvider;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.AdditionalAnswers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.Invocation;
+
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.PdfArray;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.security.PdfPKCS7;
+
+/**
+ * Tests of the signing service against mocked repository services.
+ */
+public class PDFSignServiceImplTest {
+
+    /** Methods of a ContentReader that read the content from the content store. */
+    private static final Set<String> READ_METHODS = new HashSet<String>(Arrays.asList(
+            "getContentInputStream", "getContent", "getContentString", "getReadableChannel", "getFileChannel"));
+
+    private static final int PAGES = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private NodeService nodeService;
+    private ContentService contentService;
+    private FileFolderService fileFolderService;
+    private PermissionService permissionService;
+    private DictionaryService dictionaryService;
+    private PDFSignServiceImpl service;
+    private ITextSignatureEngine itext;
+    private PDFBoxSignatureEngine pdfbox;
+
+    private NodeRef keyStore;
+    private NodeRef target;
+    private File targetFile;
+    private ByteArrayOutputStream signed;
+
+    @Before
+    public void setUp() throws Exception {
+        nodeService = mock(NodeService.class);
+        contentService = mock(ContentService.class);
+        fileFolderService = mock(FileFolderService.class);
+        permissionService = mock(PermissionService.class);
+        dictionaryService = mock(DictionaryService.class);
+        TransactionService transactionService = mock(TransactionService.class);
+        ServiceRegistry serviceRegistry = mock(ServiceRegistry.class);
+        when(serviceRegistry.getNodeService()).thenReturn(nodeService);
+        when(serviceRegistry.getContentService()).thenReturn(contentService);
+        when(serviceRegistry.getFileFolderService()).thenReturn(fileFolderService);
+        when(serviceRegistry.getPermissionService()).thenReturn(permissionService);
+        when(serviceRegistry.getDictionaryService()).thenReturn(dictionaryService);
+        when(serviceRegistry.getTransactionService()).thenReturn(transactionService);
+        when(transactionService.getRetryingTransactionHelper()).thenReturn(new RetryingTransactionHelper());
+        when(nodeService.exists(any(NodeRef.class))).thenReturn(true);
+        when(nodeService.getType(any(NodeRef.class))).thenReturn(ContentModel.TYPE_CONTENT);
+        when(dictionaryService.isSubClass(any(QName.class), eq(ContentModel.TYPE_CONTENT))).thenReturn(true);
+
+        KeyPair keyPair = TestCredentials.keyPair("RSA");
+        File keyStoreFile = folder.newFile("signer.p12");
+        Files.write(keyStoreFile.toPath(), TestCredentials.keyStore("PKCS12", keyPair.getPrivate(),
+                TestCredentials.selfSigned("Signer", keyPair)));
+        keyStore = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "keystore");
+        when(contentService.getReader(keyStore, ContentModel.PROP_CONTENT))
+                .thenAnswer(invocation -> TestDocuments.reader(keyStoreFile, "store://test/keystore.bin"));
+        when(nodeService.getProperty(keyStore, ContentModel.PROP_MODIFIED)).thenReturn(new Date());
+
+        targetFile = TestDocuments.createPdf(folder.newFile("target.pdf"), PAGES);
+        target = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, UUID.randomUUID().toString());
+        when(nodeService.getProperty(target, ContentModel.PROP_NAME)).thenReturn("target.pdf");
+
+        signed = new ByteArrayOutputStream();
+        ContentWriter writer = mock(ContentWriter.class);
+        when(writer.getContentOutputStream()).thenReturn(signed);
+        when(contentService.getWriter(target, ContentModel.PROP_CONTENT, true)).thenReturn(writer);
+
+        itext = new ITextSignatureEngine();
+        pdfbox = new PDFBoxSignatureEngine();
+
+        service = new PDFSignServiceImpl();
+        service.setServiceRegistry(serviceRegistry);
+        service.setCredentialCache(new SigningCredentialCache());
+        service.setEngines(Arrays.<SignatureEngine>asList(itext, pdfbox));
+    }
+
+    private Map<String, Serializable> params(String engine) {
+        Map<String, Serializable> params = new HashMap<String, Serializable>();
+        params.put(PDFSignConstants.PARAM_PRIVATE_KEY, keyStore);
+        params.put(PDFSignConstants.PARAM_STORE_PASSWORD, TestCredentials.PASSWORD);
+        params.put(PDFSignConstants.PARAM_KEY_PASSWORD, TestCredentials.PASSWORD);
+        params.put(PDFSignConstants.PARAM_PAGE, "all");
+        params.put(PDFSignConstants.PARAM_INPLACE, "true");
+        params.put(PDFSignConstants.PARAM_ENGINE, engine);
+        return params;
+    }
+
+    /**
+     * Signs the target with the given engine through a reader counting the reads of the
+     * content store, and checks the content was read exactly once.
+     */
+    private void assertSignedWithSingleRead(String engine) throws Exception {
+        ContentReader counting = mock(ContentReader.class,
+                AdditionalAnswers.delegatesTo(TestDocuments.reader(targetFile, "store://test/target.bin")));
+        when(contentService.getReader(target, ContentModel.PROP_CONTENT)).thenReturn(counting);
+
+        service.signPDF(target, params(engine));
+
+        verify(contentService, times(1)).getReader(target, ContentModel.PROP_CONTENT);
+        int reads = 0;
+        for (Invocation invocation : Mockito.mockingDetails(counting).getInvocations()) {
+            if (READ_METHODS.contains(invocation.getMethod().getName())) {
+                reads++;
+            }
+        }
+        assertEquals("content store reads", 1, reads);
+
+        PdfReader reader = new PdfReader(signed.toByteArray());
+        try {
+            assertEquals(PAGES, reader.getNumberOfPages());
+            AcroFields fields = reader.getAcroFields();
+            List<String> names = fields.getSignatureNames();
+            assertEquals(1, names.size());
+            assertTrue(fields.verifySignature(names.get(0)).verify());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testITextInMemoryReadsContentOnce() throws Exception {
+        assertSignedWithSingleRead(ITextSignatureEngine.NAME);
+    }
+
+    @Test
+    public void testITextPartialReadsContentOnce() throws Exception {
+        itext.setPartialReadThreshold(0);
+        assertSignedWithSingleRead(ITextSignatureEngine.NAME);
+    }
+
+    @Test
+    public void testPDFBoxInMemoryReadsContentOnce() throws Exception {
+        assertSignedWithSingleRead(PDFBoxSignatureEngine.NAME);
+    }
+
+    @Test
+    public void testPDFBoxFileReadsContentOnce() throws Exception {
+        pdfbox.setFileThreshold(0);
+        assertSignedWithSingleRead(PDFBoxSignatureEngine.NAME);
+    }
+
+    /**
+     * Signs the same document many times at once, with large-document spilling forced so every
+     * signature writes to its workspace. Every output must verify and no workspace of the
+     * document may be left behind.
+     */
+    @Test
+    public void testConcurrentSignaturesOfSameNode() throws Exception {
+        final int threads = 8;
+        final int signaturesPerThread = 3;
+        when(contentService.getReader(target, ContentModel.PROP_CONTENT))
+                .thenAnswer(invocation -> TestDocuments.reader(targetFile, "store://test/target.bin"));
+        final List<ByteArrayOutputStream> outputs = Collections.synchronizedList(new ArrayList<ByteArrayOutputStream>());
+        when(contentService.getWriter(target, ContentModel.PROP_CONTENT, true)).thenAnswer(invocation -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            outputs.add(out);
+            ContentWriter writer = mock(ContentWriter.class);
+            when(writer.getContentOutputStream()).thenReturn(out);
+            return writer;
+        });
+        service.setInMemoryThreshold(0);
+        itext.setPartialReadThreshold(0);
+        pdfbox.setFileThreshold(0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < threads; t++) {
+                final String engine = t % 2 == 0 ? ITextSignatureEngine.NAME : PDFBoxSignatureEngine.NAME;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < signaturesPerThread; i++) {
+                        service.signPDF(target, params(engine));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(threads * signaturesPerThread, outputs.size());
+        for (ByteArrayOutputStream out : outputs) {
+            PdfReader reader = new PdfReader(out.toByteArray());
+            try {
+                AcroFields fields = reader.getAcroFields();
+                assertTrue(fields.verifySignature(fields.getSignatureNames().get(0)).verify());
+            } finally {
+                reader.close();
+            }
+        }
+
+        final String prefix = "pdfsign-" + target.getId() + "-";
+        String[] leftovers = TempFileProvider.getTempDir().list((dir, name) -> name.startsWith(prefix));
+        assertEquals("workspaces left behind", 0, leftovers == null ? 0 : leftovers.length);
+    }
+
+    /**
+     * A saturated signing pool refuses every worker of a job. The job must not look cancelled:
+     * it is reported as rejected and every document is failed with the cause.
+     */
+    @Test
+    public void testSaturatedPoolRejectsBatch() throws Exception {
+        ThreadPoolExecutor saturated = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+        saturated.shutdown();
+        service.setBatchExecutor(saturated);
+        service.setBatchParallelism(2);
+
+        List<NodeRef> targets = new ArrayList<NodeRef>();
+        for (int i = 0; i < 5; i++) {
+            targets.add(new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, UUID.randomUUID().toString()));
+        }
+        SignBatchJob job = service.signBatch(targets, params(ITextSignatureEngine.NAME));
+
+        assertTrue(job.await(0, TimeUnit.SECONDS));
+        assertEquals(SignBatchJob.Status.REJECTED, job.getStatus());
+        assertTrue(job.isRejected());
+        assertFalse(job.isCancelled());
+        assertEquals(targets.size(), job.getFailed());
+        assertEquals(0, job.getSucceeded());
+        for (NodeRef target : targets) {
+            assertTrue(job.getFailures().get(target), job.getFailures().get(target).contains("saturated"));
+        }
+    }
+
+    @Test
+    public void testCancelledBatchIsNotRejected() throws Exception {
+        SignBatchJob job = new SignBatchJob("cancelled", Arrays.asList(target, keyStore));
+        job.workerStarted();
+        job.cancel();
+        assertFalse(job.workerRejected(new IllegalStateException("saturated")));
+        assertEquals(SignBatchJob.Status.CANCELLED, job.getStatus());
+        assertEquals(0, job.getFailed());
+    }
+
+    /**
+     * Lays out a folder of PDF documents signed in place by real pools, with a checkpoint
+     * recorded on the folder.
+     *
+     * @param checkpointParent the primary parent of the checkpoint document
+     * @param checkpointMimetype the mimetype of the checkpoint document
+     * @return the folder signing job, finished
+     */
+    @SuppressWarnings("unchecked")
+    private FolderSignJob signFolderWithCheckpoint(NodeRef checkpointParent, String checkpointMimetype) throws Exception {
+        final NodeRef folderRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "folder");
+        List<FileInfo> children = new ArrayList<FileInfo>();
+        List<NodeRef> documents = new ArrayList<NodeRef>();
+        for (int i = 0; i < 3; i++) {
+            NodeRef document = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, UUID.randomUUID().toString());
+            documents.add(document);
+            FileInfo child = mock(FileInfo.class);
+            when(child.getNodeRef()).thenReturn(document);
+            when(child.getContentData()).thenReturn(new ContentData("store://test/" + i + ".bin", PDFSignConstants.FILE_MIMETYPE, 1, "UTF-8"));
+            children.add(child);
+            when(nodeService.getProperty(document, ContentModel.PROP_NAME)).thenReturn("document-" + i + ".pdf");
+            when(nodeService.getPrimaryParent(document)).thenReturn(
+                    new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, folderRef, ContentModel.PROP_NAME, document));
+        }
+        PagingResults<FileInfo> page = mock(PagingResults.class);
+        when(page.getPage()).thenReturn(children);
+        when(fileFolderService.list(eq(folderRef), anyBoolean(), anyBoolean(), isNull(), anyList(), any(PagingRequest.class)))
+                .thenReturn(page);
+
+        // the checkpoint is the second document, possibly moved away or converted since
+        NodeRef checkpoint = documents.get(1);
+        when(nodeService.hasAspect(folderRef, PDFSignModel.ASPECT_SIGNINGCHECKPOINT)).thenReturn(true);
+        when(nodeService.getProperty(folderRef, PDFSignModel.PROP_CHECKPOINT_NODE)).thenReturn(checkpoint);
+        when(nodeService.getProperty(checkpoint, ContentModel.PROP_CONTENT))
+                .thenReturn(new ContentData("store://test/1.bin", checkpointMimetype, 1, "UTF-8"));
+        when(nodeService.getPrimaryParent(checkpoint)).thenReturn(
+                new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, checkpointParent, ContentModel.PROP_NAME, checkpoint));
+
+        when(contentService.getReader(any(NodeRef.class), eq(ContentModel.PROP_CONTENT)))
+                .thenAnswer(invocation -> TestDocuments.reader(targetFile, "store://test/target.bin"));
+        when(contentService.getReader(keyStore, ContentModel.PROP_CONTENT))
+                .thenAnswer(invocation -> TestDocuments.reader(new File(folder.getRoot(), "signer.p12"), "store://test/keystore.bin"));
+        when(contentService.getWriter(any(NodeRef.class), eq(ContentModel.PROP_CONTENT), eq(true))).thenAnswer(invocation -> {
+            ContentWriter writer = mock(ContentWriter.class);
+            when(writer.getContentOutputStream()).thenReturn(new ByteArrayOutputStream());
+            return writer;
+        });
+
+        ThreadPoolExecutor batchExecutor = new ThreadPoolExecutor(2, 2, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        ThreadPoolExecutor folderExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        try {
+            service.setBatchExecutor(batchExecutor);
+            service.setFolderExecutor(folderExecutor);
+            FolderSignJob job = service.signFolder(folderRef, params(ITextSignatureEngine.NAME));
+            assertTrue(job.await(2, TimeUnit.MINUTES));
+            assertEquals(job.getError(), FolderSignJob.Status.COMPLETED, job.getStatus());
+            return job;
+        } finally {
+            batchExecutor.shutdownNow();
+            folderExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCheckpointResumesWalk() throws Exception {
+        FolderSignJob job = signFolderWithCheckpoint(new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "folder"),
+                PDFSignConstants.FILE_MIMETYPE);
+        assertEquals(2, job.getSkipped());
+        assertEquals(1, job.getSucceeded());
+    }
+
+    /**
+     * A checkpoint moved out of the folder would never be met by the walk, which would then
+     * skip every document and still report the folder as completed.
+     */
+    @Test
+    public void testCheckpointMovedOutOfFolderIsIgnored() throws Exception {
+        FolderSignJob job = signFolderWithCheckpoint(new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "elsewhere"),
+                PDFSignConstants.FILE_MIMETYPE);
+        assertEquals(0, job.getSkipped());
+        assertEquals(3, job.getSucceeded());
+    }
+
+    @Test
+    public void testCheckpointNoLongerPdfIsIgnored() throws Exception {
+        FolderSignJob job = signFolderWithCheckpoint(new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "folder"), "text/plain");
+        assertEquals(0, job.getSkipped());
+        assertEquals(3, job.getSucceeded());
+    }
+
+    /**
+     * Signs at B-LT with iText and then at B-LTA with PDFBox against a stand-in authority. Both
+     * documents carry the timestamp token and the OCSP responses of the signer and of the
+     * time-stamping authority in their DSS; the second signature reads the responses from the
+     * revocation cache.
+     */
+    @Test
+    public void testLongTermSignaturesEmbedValidationMaterial() throws Exception {
+        try (TestAuthority authority = new TestAuthority()) {
+            KeyPair keyPair = TestCredentials.keyPair("RSA");
+            File keyStoreFile = folder.newFile("ltv.p12");
+            Files.write(keyStoreFile.toPath(), TestCredentials.keyStore("PKCS12", keyPair.getPrivate(),
+                    authority.issue("LTV Signer", keyPair), authority.getRoot()));
+            when(contentService.getReader(keyStore, ContentModel.PROP_CONTENT))
+                    .thenAnswer(invocation -> TestDocuments.reader(keyStoreFile, "store://test/ltv.bin"));
+            when(contentService.getReader(target, ContentModel.PROP_CONTENT))
+                    .thenAnswer(invocation -> TestDocuments.reader(targetFile, "store://test/target.bin"));
+
+            TimestampClient timestampClient = new TimestampClient();
+            timestampClient.setUrl(authority.getUrl(TestAuthority.TSA));
+            timestampClient.init();
+            RevocationCache revocationCache = new RevocationCache();
+            revocationCache.setCache(new DefaultSimpleCache<String, RevocationCache.Entry>(100, "revocationCache"));
+            revocationCache.init();
+            service.setTimestampClient(timestampClient);
+            service.setRevocationCache(revocationCache);
+            try {
+                signed.reset();
+                Map<String, Serializable> params = params(ITextSignatureEngine.NAME);
+                params.put(PDFSignConstants.PARAM_SIGNATURE_LEVEL, PDFSignConstants.SIGNATURE_LEVEL_B_LT);
+                service.signPDF(target, params);
+                assertLongTermValidation(signed.toByteArray(), false);
+
+                signed.reset();
+                params = params(PDFBoxSignatureEngine.NAME);
+                params.put(PDFSignConstants.PARAM_SIGNATURE_LEVEL, PDFSignConstants.SIGNATURE_LEVEL_B_LTA);
+                service.signPDF(target, params);
+                assertLongTermValidation(signed.toByteArray(), true);
+            } finally {
+                timestampClient.destroy();
+                revocationCache.destroy();
+            }
+
+            assertEquals("OCSP requests", 2, authority.getRequests(TestAuthority.OCSP));
+            assertEquals("CRL downloads", 0, authority.getRequests(TestAuthority.CRL));
+            assertEquals("timestamps", 3, authority.getRequests(TestAuthority.TSA));
+        }
+    }
+
+    private void assertLongTermValidation(byte[] document, boolean archive) throws Exception {
+        PdfReader reader = new PdfReader(document);
+        try {
+            AcroFields fields = reader.getAcroFields();
+            List<String> names = fields.getSignatureNames();
+            assertEquals(archive ? 2 : 1, names.size());
+
+            PdfPKCS7 signature = fields.verifySignature(names.get(0));
+            assertTrue(signature.verify());
+            assertNotNull("signature timestamp", signature.getTimeStampToken());
+            assertTrue(signature.verifyTimestampImprint());
+            if (archive) {
+                PdfPKCS7 documentTimestamp = fields.verifySignature(names.get(1));
+                assertTrue("document timestamp", documentTimestamp.isTsp());
+                assertTrue(documentTimestamp.verify());
+                assertTrue(fields.signatureCoversWholeDocument(names.get(1)));
+            }
+
+            PdfDictionary dss = reader.getCatalog().getAsDict(PdfName.DSS);
+            assertNotNull("DSS", dss);
+            assertEquals("OCSP responses of the signer and of the TSA", 2, dss.getAsArray(PdfName.OCSPS).size());
+            assertTrue(dss.getAsArray(PdfName.CERTS).size() >= 3);
+            PdfDictionary vri = dss.getAsDict(PdfName.VRI);
+            assertNotNull("VRI", vri);
+            assertEquals(1, vri.size());
+            PdfDictionary entry = vri.getAsDict(vri.getKeys().iterator().next());
+            assertEquals(2, entry.getAsArray(PdfName.OCSP).size());
+        } finally {
+            reader.close();
+        }
+    }
+
+    /** Properties of the nodes of the share-content tests, kept by the mocked NodeService. */
+    private final Map<NodeRef, Map<QName, Serializable>> properties = new ConcurrentHashMap<NodeRef, Map<QName, Serializable>>();
+    /** Aspects of the nodes of the share-content tests. */
+    private final Map<NodeRef, Set<QName>> aspects = new ConcurrentHashMap<NodeRef, Set<QName>>();
+    /** The content URL every node held when it was made versionable. */
+    private final Map<NodeRef, String> contentWhenVersionable = new ConcurrentHashMap<NodeRef, String>();
+    /** The user every node was last checked for existence as. */
+    private final Map<NodeRef, String> existenceCheckedAs = new ConcurrentHashMap<NodeRef, String>();
+
+    private Map<QName, Serializable> properties(NodeRef nodeRef) {
+        return properties.computeIfAbsent(nodeRef, n -> new ConcurrentHashMap<QName, Serializable>());
+    }
+
+    private Set<QName> aspects(NodeRef nodeRef) {
+        return aspects.computeIfAbsent(nodeRef, n -> Collections.newSetFromMap(new ConcurrentHashMap<QName, Boolean>()));
+    }
+
+    /**
+     * Keeps the properties and aspects of nodes in memory, creates nodes in the destination
+     * folder and writes signed content to new content URLs, set on the node when the writer is
+     * closed as the content store does.
+     *
+     * @return the destination folder
+     */
+    private NodeRef mockRepository() {
+        final NodeRef destinationFolder = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "destination");
+        properties(keyStore).put(ContentModel.PROP_MODIFIED, new Date());
+
+        when(nodeService.exists(any(NodeRef.class))).thenAnswer(invocation -> {
+            existenceCheckedAs.put(invocation.getArgument(0), String.valueOf(AuthenticationUtil.getRunAsUser()));
+            return true;
+        });
+        when(nodeService.createNode(eq(destinationFolder), eq(ContentModel.ASSOC_CONTAINS), any(QName.class), any(QName.class), anyMap()))
+                .thenAnswer(invocation -> {
+                    NodeRef created = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, UUID.randomUUID().toString());
+                    properties(created).putAll(invocation.<Map<QName, Serializable>>getArgument(4));
+                    return new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, destinationFolder, invocation.getArgument(2), created);
+                });
+        when(nodeService.getProperties(any(NodeRef.class)))
+                .thenAnswer(invocation -> new HashMap<QName, Serializable>(properties(invocation.getArgument(0))));
+        when(nodeService.getProperty(any(NodeRef.class), any(QName.class)))
+                .thenAnswer(invocation -> properties(invocation.getArgument(0)).get(invocation.getArgument(1)));
+        doAnswer(invocation -> {
+            Map<QName, Serializable> props = invocation.getArgument(1);
+            for (Map.Entry<QName, Serializable> entry : props.entrySet()) {
+                setProperty(invocation.getArgument(0), entry.getKey(), entry.getValue());
+            }
+            return null;
+        }).when(nodeService).addProperties(any(NodeRef.class), anyMap());
+        doAnswer(invocation -> {
+            setProperty(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2));
+            return null;
+        }).when(nodeService).setProperty(any(NodeRef.class), any(QName.class), any());
+        doAnswer(invocation -> {
+            if (ContentModel.ASPECT_VERSIONABLE.equals(invocation.getArgument(1))) {
+                ContentData content = (ContentData) properties(invocation.getArgument(0)).get(ContentModel.PROP_CONTENT);
+                contentWhenVersionable.put(invocation.getArgument(0), content == null ? "none" : content.getContentUrl());
+            }
+            aspects(invocation.getArgument(0)).add(invocation.getArgument(1));
+            Map<QName, Serializable> props = invocation.getArgument(2);
+            if (props != null) {
+                properties(invocation.getArgument(0)).putAll(props);
+            }
+            return null;
+        }).when(nodeService).addAspect(any(NodeRef.class), any(QName.class), any());
+        when(nodeService.hasAspect(any(NodeRef.class), any(QName.class)))
+                .thenAnswer(invocation -> aspects(invocation.getArgument(0)).contains(invocation.getArgument(1)));
+        when(nodeService.getAspects(any(NodeRef.class)))
+                .thenAnswer(invocation -> new HashSet<QName>(aspects(invocation.getArgument(0))));
+
+        when(contentService.getReader(any(NodeRef.class), eq(ContentModel.PROP_CONTENT)))
+                .thenAnswer(invocation -> TestDocuments.reader(targetFile, "store://test/target.bin"));
+        when(contentService.getReader(keyStore, ContentModel.PROP_CONTENT))
+                .thenAnswer(invocation -> TestDocuments.reader(new File(folder.getRoot(), "signer.p12"), "store://test/keystore.bin"));
+        when(contentService.getWriter(any(NodeRef.class), eq(ContentModel.PROP_CONTENT), eq(true))).thenAnswer(invocation -> {
+            final NodeRef written = invocation.getArgument(0);
+            final String contentUrl = "store://signed/" + UUID.randomUUID() + ".bin";
+            ContentWriter writer = mock(ContentWriter.class);
+            when(writer.getContentUrl()).thenReturn(contentUrl);
+            when(writer.getContentOutputStream()).thenReturn(new ByteArrayOutputStream() {
+                @Override
+                public void close() {
+                    if (properties(written).get(ContentModel.PROP_CONTENT) == null) {
+                        setProperty(written, ContentModel.PROP_CONTENT,
+                                new ContentData(contentUrl, PDFSignConstants.FILE_MIMETYPE, size(), "UTF-8"));
+                    }
+                }
+            });
+            return writer;
+        });
+
+        service.setSignedOutputCache(new DefaultSimpleCache<String, PDFSignServiceImpl.SignedOutput>(100, "signedOutputCache"));
+        when(permissionService.hasPermission(any(NodeRef.class), eq(PermissionService.READ))).thenReturn(AccessStatus.ALLOWED);
+        return destinationFolder;
+    }
+
+    private void setProperty(NodeRef nodeRef, QName name, Serializable value) {
+        if (value == null) {
+            properties(nodeRef).remove(name);
+        } else {
+            properties(nodeRef).put(name, value);
+        }
+    }
+
+    private NodeRef sourceDocument(String name) {
+        NodeRef source = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, UUID.randomUUID().toString());
+        properties(source).put(ContentModel.PROP_NAME, name);
+        return source;
+    }
+
+    private Map<String, Serializable> shareParams(NodeRef destinationFolder) {
+        Map<String, Serializable> params = params(ITextSignatureEngine.NAME);
+        params.put(PDFSignConstants.PARAM_INPLACE, "false");
+        params.put(PDFSignConstants.PARAM_DESTINATION_FOLDER, destinationFolder);
+        params.put(PDFSignConstants.PARAM_IDEMPOTENCY, PDFSignConstants.IDEMPOTENCY_SHARE_CONTENT);
+        return params;
+    }
+
+    /**
+     * A second copy of the same content shares the signed content of the first, which is
+     * recognised by its content URL and recorded hash without being read, and resolved as the
+     * system user.
+     */
+    @Test
+    public void testSharedOutputIsNotRead() throws Exception {
+        NodeRef destinationFolder = mockRepository();
+        final NodeRef first = AuthenticationUtil.runAs(() -> service.signPDF(sourceDocument("a.pdf"), shareParams(destinationFolder)), "alice");
+        existenceCheckedAs.clear();
+        NodeRef second = AuthenticationUtil.runAs(() -> service.signPDF(sourceDocument("b.pdf"), shareParams(destinationFolder)), "alice");
+
+        assertNotEquals(first, second);
+        assertEquals(properties(first).get(ContentModel.PROP_CONTENT), properties(second).get(ContentModel.PROP_CONTENT));
+        assertEquals(properties(first).get(PDFSignModel.PROP_CONTENTHASH), properties(second).get(PDFSignModel.PROP_CONTENTHASH));
+        verify(contentService, times(1)).getWriter(any(NodeRef.class), eq(ContentModel.PROP_CONTENT), eq(true));
+        verify(contentService, never()).getReader(first, ContentModel.PROP_CONTENT);
+        assertEquals(AuthenticationUtil.getSystemUserName(), existenceCheckedAs.get(first));
+        verify(permissionService).hasPermission(first, PermissionService.READ);
+    }
+
+    @Test
+    public void testEditedOutputIsNotShared() throws Exception {
+        NodeRef destinationFolder = mockRepository();
+        NodeRef first = service.signPDF(sourceDocument("a.pdf"), shareParams(destinationFolder));
+        // an edit writes a new content URL and leaves the recorded hash as it was
+        properties(first).put(ContentModel.PROP_CONTENT,
+                new ContentData("store://edited/a.bin", PDFSignConstants.FILE_MIMETYPE, 1, "UTF-8"));
+
+        NodeRef second = service.signPDF(sourceDocument("b.pdf"), shareParams(destinationFolder));
+
+        assertNotEquals(properties(first).get(ContentModel.PROP_CONTENT), properties(second).get(ContentModel.PROP_CONTENT));
+        verify(contentService, times(2)).getWriter(any(NodeRef.class), eq(ContentModel.PROP_CONTENT), eq(true));
+        verify(contentService, never()).getReader(first, ContentModel.PROP_CONTENT);
+    }
+
+    @Test
+    public void testUnreadableOutputIsNotShared() throws Exception {
+        NodeRef destinationFolder = mockRepository();
+        NodeRef first = service.signPDF(sourceDocument("a.pdf"), shareParams(destinationFolder));
+        when(permissionService.hasPermission(first, PermissionService.READ)).thenReturn(AccessStatus.DENIED);
+
+        NodeRef second = service.signPDF(sourceDocument("b.pdf"), shareParams(destinationFolder));
+
+        assertNotEquals(properties(first).get(ContentModel.PROP_CONTENT), properties(second).get(ContentModel.PROP_CONTENT));
+        verify(contentService, times(2)).getWriter(any(NodeRef.class), eq(ContentModel.PROP_CONTENT), eq(true));
+    }
+
+    @Test
+    public void testDeletedOutputIsNotShared() throws Exception {
+        NodeRef destinationFolder = mockRepository();
+        final NodeRef first = service.signPDF(sourceDocument("a.pdf"), shareParams(destinationFolder));
+        when(nodeService.exists(first)).thenReturn(false);
+
+        service.signPDF(sourceDocument("b.pdf"), shareParams(destinationFolder));
+
+        verify(contentService, times(2)).getWriter(any(NodeRef.class), eq(ContentModel.PROP_CONTENT), eq(true));
+        verify(permissionService, never()).hasPermission(first, PermissionService.READ);
+    }
+
+    /**
+     * Signed and shared copies of a versionable document are made versionable only once they
+     * hold their content, keeping the versioning settings of the document, and record the
+     * document as their original.
+     */
+    @Test
+    public void testCopiesOfVersionableDocument() throws Exception {
+        NodeRef destinationFolder = mockRepository();
+        ClassDefinition versionable = mock(ClassDefinition.class);
+        when(versionable.getName()).thenReturn(ContentModel.ASPECT_VERSIONABLE);
+        when(versionable.isAspect()).thenReturn(true);
+        PropertyDefinition autoVersion = mock(PropertyDefinition.class);
+        when(autoVersion.getContainerClass()).thenReturn(versionable);
+        when(dictionaryService.getProperty(ContentModel.PROP_AUTO_VERSION)).thenReturn(autoVersion);
+
+        List<NodeRef> sources = new ArrayList<NodeRef>();
+        List<NodeRef> copies = new ArrayList<NodeRef>();
+        for (String name : new String[] { "a.pdf", "b.pdf" }) {
+            NodeRef source = sourceDocument(name);
+            aspects(source).add(ContentModel.ASPECT_VERSIONABLE);
+            properties(source).put(ContentModel.PROP_AUTO_VERSION, Boolean.FALSE);
+            sources.add(source);
+            copies.add(service.signPDF(source, shareParams(destinationFolder)));
+        }
+        // the second copy shares the content of the first
+        verify(contentService, times(1)).getWriter(any(NodeRef.class), eq(ContentModel.PROP_CONTENT), eq(true));
+
+        for (int i = 0; i < copies.size(); i++) {
+            NodeRef copy = copies.get(i);
+            ContentData content = (ContentData) properties(copy).get(ContentModel.PROP_CONTENT);
+            assertTrue(aspects(copy).contains(ContentModel.ASPECT_VERSIONABLE));
+            assertEquals("content when made versionable", content.getContentUrl(), contentWhenVersionable.get(copy));
+            assertEquals(Boolean.FALSE, properties(copy).get(ContentModel.PROP_AUTO_VERSION));
+
+            assertTrue(aspects(copy).contains(ContentModel.ASPECT_COPIEDFROM));
+            verify(nodeService).createAssociation(copy, sources.get(i), ContentModel.ASSOC_ORIGINAL);
+        }
+    }
+
+    /**
+     * The signature level is part of the parameters of a signature: a document signed at B-B
+     * and then at B-LT gets two outputs, the second not shared from the first.
+     */
+    @Test
+    public void testSignatureLevelsAreNotShared() throws Exception {
+        NodeRef destinationFolder = mockRepository();
+        try (TestAuthority authority = new TestAuthority()) {
+            KeyPair keyPair = TestCredentials.keyPair("RSA");
+            File keyStoreFile = folder.newFile("levels.p12");
+            Files.write(keyStoreFile.toPath(), TestCredentials.keyStore("PKCS12", keyPair.getPrivate(),
+                    authority.issue("Level Signer", keyPair), authority.getRoot()));
+            when(contentService.getReader(keyStore, ContentModel.PROP_CONTENT))
+                    .thenAnswer(invocation -> TestDocuments.reader(keyStoreFile, "store://test/levels.bin"));
+
+            TimestampClient timestampClient = new TimestampClient();
+            timestampClient.setUrl(authority.getUrl(TestAuthority.TSA));
+            timestampClient.init();
+            RevocationCache revocationCache = new RevocationCache();
+            revocationCache.setCache(new DefaultSimpleCache<String, RevocationCache.Entry>(100, "revocationCache"));
+            revocationCache.init();
+            service.setTimestampClient(timestampClient);
+            service.setRevocationCache(revocationCache);
+            try {
+                NodeRef source = sourceDocument("a.pdf");
+                Map<String, Serializable> params = shareParams(destinationFolder);
+                params.put(PDFSignConstants.PARAM_SIGNATURE_LEVEL, PDFSignConstants.SIGNATURE_LEVEL_B_B);
+                NodeRef basic = service.signPDF(source, params);
+
+                params = shareParams(destinationFolder);
+                params.put(PDFSignConstants.PARAM_SIGNATURE_LEVEL, PDFSignConstants.SIGNATURE_LEVEL_B_LT);
+                NodeRef longTerm = service.signPDF(source, params);
+
+                assertNotEquals(basic, longTerm);
+                assertNotEquals(properties(basic).get(ContentModel.PROP_CONTENT), properties(longTerm).get(ContentModel.PROP_CONTENT));
+                assertNotEquals(properties(basic).get(PDFSignModel.PROP_PARAMETERSHASH),
+                        properties(longTerm).get(PDFSignModel.PROP_PARAMETERSHASH));
+                verify(contentService, times(2)).getWriter(any(NodeRef.class), eq(ContentModel.PROP_CONTENT), eq(true));
+                assertEquals("timestamp of the B-LT signature only", 1, authority.getRequests(TestAuthority.TSA));
+            } finally {
+                timestampClient.destroy();
+                revocationCache.destroy();
+            }
+        }
+    }
+
+    /**
+     * A request naming the default signature level is the same signature as one relying on it.
+     */
+    @Test
+    public void testDefaultSignatureLevelIsShared() throws Exception {
+        NodeRef destinationFolder = mockRepository();
+        NodeRef first = service.signPDF(sourceDocument("a.pdf"), shareParams(destinationFolder));
+
+        Map<String, Serializable> params = shareParams(destinationFolder);
+        params.put(PDFSignConstants.PARAM_SIGNATURE_LEVEL, PDFSignConstants.SIGNATURE_LEVEL_B_B);
+        params.put(PDFSignConstants.PARAM_NEW_REVISION, "true");
+        NodeRef second = service.signPDF(sourceDocument("b.pdf"), params);
+
+        assertEquals(properties(first).get(ContentModel.PROP_CONTENT), properties(second).get(ContentModel.PROP_CONTENT));
+        verify(contentService, times(1)).getWriter(any(NodeRef.class), eq(ContentModel.PROP_CONTENT), eq(true));
+    }
+
+    /**
+     * Prepares the target in place for an external signature, and serves the prepared document
+     * as the content of the target with its pending signature recorded, as the repository would.
+     *
+     * @return the prepared document
+     */
+    @SuppressWarnings("unchecked")
+    private File prepareTarget(String engine) throws Exception {
+        when(contentService.getReader(target, ContentModel.PROP_CONTENT))
+                .thenAnswer(invocation -> TestDocuments.reader(targetFile, "store://test/target.bin"));
+        signed.reset();
+        PreparedSignature preparedSignature = service.prepareSignature(target, params(engine));
+        assertEquals(target, preparedSignature.getNodeRef());
+
+        ArgumentCaptor<Map<QName, Serializable>> pending = ArgumentCaptor.forClass(Map.class);
+        verify(nodeService).addAspect(eq(target), eq(PDFSignModel.ASPECT_PENDINGSIGNATURE), pending.capture());
+        when(nodeService.hasAspect(target, PDFSignModel.ASPECT_PENDINGSIGNATURE)).thenReturn(true);
+        when(nodeService.getProperty(target, PDFSignModel.PROP_PENDING_DIGEST))
+                .thenReturn(pending.getValue().get(PDFSignModel.PROP_PENDING_DIGEST));
+
+        File prepared = folder.newFile();
+        Files.write(prepared.toPath(), signed.toByteArray());
+        when(contentService.getReader(target, ContentModel.PROP_CONTENT))
+                .thenAnswer(invocation -> TestDocuments.reader(prepared, "store://test/prepared.bin"));
+
+        // the prepared digest is the digest of the byte range of the reserved signature
+        assertTrue(MessageDigest.isEqual(MessageDigest.getInstance("SHA-256").digest(byteRange(prepared)), preparedSignature.getDigest()));
+        signed.reset();
+        return prepared;
+    }
+
+    /**
+     * Returns the bytes of a prepared document covered by its last signature.
+     */
+    private static byte[] byteRange(File prepared) throws Exception {
+        byte[] document = Files.readAllBytes(prepared.toPath());
+        PdfReader reader = new PdfReader(document);
+        try {
+            AcroFields fields = reader.getAcroFields();
+            List<String> names = fields.getSignatureNames();
+            PdfArray byteRange = fields.getSignatureDictionary(names.get(names.size() - 1)).getAsArray(PdfName.BYTERANGE);
+            ByteArrayOutputStream covered = new ByteArrayOutputStream();
+            for (int i = 0; i < byteRange.size(); i += 2) {
+                covered.write(document, byteRange.getAsNumber(i).intValue(), byteRange.getAsNumber(i + 1).intValue());
+            }
+            return covered.toByteArray();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Computes a detached CMS signature of the given content, as an external signer would.
+     */
+    private static byte[] externalSignature(byte[] content, KeyPair keyPair, X509Certificate certificate) throws Exception {
+        CMSSignedDataGenerator generator = new CMSSignedDataGenerator();
+        generator.addSignerInfoGenerator(new JcaSignerInfoGeneratorBuilder(new JcaDigestCalculatorProviderBuilder().build())
+                .build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate()), certificate));
+        generator.addCertificate(new JcaX509CertificateHolder(certificate));
+        return generator.generate(new CMSProcessableByteArray(content), false).getEncoded();
+    }
+
+    /**
+     * A document prepared by either engine is completed with a CMS signature computed outside
+     * the repository over the prepared byte range.
+     */
+    @Test
+    public void testPreparedSignatureIsCompleted() throws Exception {
+        KeyPair keyPair = TestCredentials.keyPair("RSA");
+        X509Certificate certificate = TestCredentials.selfSigned("External Signer", keyPair);
+
+        for (String engine : new String[] { ITextSignatureEngine.NAME, PDFBoxSignatureEngine.NAME }) {
+            Mockito.clearInvocations(nodeService, contentService);
+            File prepared = prepareTarget(engine);
+
+            assertEquals(target, service.completeSignature(target, externalSignature(byteRange(prepared), keyPair, certificate)));
+
+            verify(nodeService).removeAspect(target, PDFSignModel.ASPECT_PENDINGSIGNATURE);
+            PdfReader reader = new PdfReader(signed.toByteArray());
+            try {
+                assertEquals(engine, Files.size(prepared.toPath()), signed.size());
+                AcroFields fields = reader.getAcroFields();
+                List<String> names = fields.getSignatureNames();
+                assertEquals(engine, 1, names.size());
+                assertTrue(engine, fields.signatureCoversWholeDocument(names.get(0)));
+                PdfPKCS7 signature = fields.verifySignature(names.get(0));
+                assertTrue(engine, signature.verify());
+                assertEquals(certificate, signature.getSigningCertificate());
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * A CMS signature whose messageDigest is not the digest of the prepared document is
+     * rejected before the content of the document is rewritten.
+     */
+    @Test
+    public void testSignatureOfOtherContentIsRejected() throws Exception {
+        KeyPair keyPair = TestCredentials.keyPair("RSA");
+        X509Certificate certificate = TestCredentials.selfSigned("External Signer", keyPair);
+        File prepared = prepareTarget(ITextSignatureEngine.NAME);
+
+        byte[] other = byteRange(prepared);
+        other[other.length - 1] ^= 1;
+        try {
+            service.completeSignature(target, externalSignature(other, keyPair, certificate));
+            fail("The signature of other content was injected");
+        } catch (AlfrescoRuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("does not sign the prepared document"));
+        }
+
+        verify(contentService, times(1)).getWriter(target, ContentModel.PROP_CONTENT, true);
+        verify(nodeService, never()).removeAspect(target, PDFSignModel.ASPECT_PENDINGSIGNATURE);
+        assertEquals(0, signed.size());
+    }
+}
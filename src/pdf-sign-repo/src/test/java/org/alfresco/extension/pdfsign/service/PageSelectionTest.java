@@ -0,0 +1,113 @@
+/**
+ * *****************************************************************************
+ *
+ * @file PageSelectionTest.java
+ * @description Tests of the page selection grammar and of its resolution.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.junit.Test;
+
+/**
+ * Tests of the page selection grammar and of its resolution against documents of
+ * different lengths.
+ */
+public class PageSelectionTest {
+
+    @Test
+    public void testKeywords() {
+        assertArrayEquals(new int[] { 1, 2, 3, 4, 5 }, PageSelection.parse("all").toPages(5));
+        assertArrayEquals(new int[] { 1 }, PageSelection.parse("first").toPages(5));
+        assertArrayEquals(new int[] { 5 }, PageSelection.parse("last").toPages(5));
+        assertArrayEquals(new int[] { 1, 3, 5 }, PageSelection.parse("odd").toPages(5));
+        assertArrayEquals(new int[] { 2, 4 }, PageSelection.parse("even").toPages(5));
+        assertArrayEquals(new int[] { 1 }, PageSelection.parse(" First ").toPages(5));
+    }
+
+    @Test
+    public void testNumbersAndRanges() {
+        assertArrayEquals(new int[] { 3 }, PageSelection.parse("3").toPages(5));
+        assertArrayEquals(new int[] { 2, 3, 4 }, PageSelection.parse("2-4").toPages(5));
+        assertArrayEquals(new int[] { 4, 5 }, PageSelection.parse("4-").toPages(5));
+        assertArrayEquals(new int[] { 1, 2, 3, 5, 7, 8 }, PageSelection.parse("1-3, 5, 7-").toPages(8));
+        assertArrayEquals(new int[] { 1, 2, 4 }, PageSelection.parse("first,even,2").toPages(5));
+    }
+
+    @Test
+    public void testSchemes() {
+        assertEquals("odd", PageSelection.parse("odd").getScheme());
+        assertEquals(PageSelection.SCHEME_SINGLE, PageSelection.parse("9").getScheme());
+        assertEquals(PageSelection.SCHEME_RANGE, PageSelection.parse("1-5").getScheme());
+        assertEquals(PageSelection.SCHEME_RANGE, PageSelection.parse("12-").getScheme());
+        assertEquals(PageSelection.SCHEME_RANGE, PageSelection.parse("first,last").getScheme());
+    }
+
+    @Test
+    public void testOpenTermsOnShortDocuments() {
+        assertArrayEquals(new int[] { 1 }, PageSelection.parse("first,even").toPages(1));
+        assertArrayEquals(new int[] { 1 }, PageSelection.parse("1,12-").toPages(3));
+        assertArrayEquals(new int[] { 1 }, PageSelection.parse("odd,2-").toPages(1));
+        assertTrue(PageSelection.parse("even").select(2).get(2));
+    }
+
+    @Test
+    public void testEmptySelectionFailsClearly() {
+        assertFails("even", 1, "selects no page");
+        assertFails("12-", 5, "selects no page");
+    }
+
+    @Test
+    public void testPagesPastTheEnd() {
+        assertFails("9", 5, "the document has 5 pages");
+        assertFails("2-9", 5, "the document has 5 pages");
+        assertFails("first,9", 5, "the document has 5 pages");
+    }
+
+    @Test
+    public void testMalformedSelections() {
+        for (String selection : new String[] { null, "", " ", "0", "5-2", "a", "1-b", "-3", "1,,2" }) {
+            try {
+                PageSelection.parse(selection);
+                fail("Selection '" + selection + "' should be rejected");
+            } catch (AlfrescoRuntimeException e) {
+                assertTrue(e.getMessage().contains("Invalid page number specified"));
+            }
+        }
+    }
+
+    private static void assertFails(String selection, int numPages, String message) {
+        PageSelection pages = PageSelection.parse(selection);
+        try {
+            pages.select(numPages);
+            fail("Selection " + selection + " should fail on a document of " + numPages + " pages");
+        } catch (AlfrescoRuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+            assertTrue(e.getMessage(), e.getMessage().contains(selection));
+        }
+    }
+}
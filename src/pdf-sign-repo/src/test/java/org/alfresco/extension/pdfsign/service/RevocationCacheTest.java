@@ -0,0 +1,188 @@
+/**
+ * *****************************************************************************
+ *
+ * @file RevocationCacheTest.java
+ * @description Tests of the revocation cache against a stand-in OCSP
+ *              responder and CRL distribution point.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.security.KeyPair;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.extension.pdfsign.test.TestAuthority;
+import org.alfresco.extension.pdfsign.test.TestCredentials;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.bouncycastle.asn1.ocsp.BasicOCSPResponse;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the revocation cache against a stand-in OCSP responder and CRL distribution point.
+ */
+public class RevocationCacheTest {
+
+    private TestAuthority authority;
+    private RevocationCache cache;
+    private X509Certificate signer;
+
+    @Before
+    public void setUp() throws Exception {
+        authority = new TestAuthority();
+        KeyPair keyPair = TestCredentials.keyPair("RSA");
+        signer = authority.issue("Signer", keyPair);
+
+        cache = new RevocationCache();
+        cache.setCache(new DefaultSimpleCache<String, RevocationCache.Entry>(100, "revocationCache"));
+        cache.init();
+    }
+
+    @After
+    public void tearDown() {
+        cache.destroy();
+        authority.close();
+    }
+
+    private Certificate[] chain() {
+        return new Certificate[] { signer, authority.getRoot() };
+    }
+
+    @Test
+    public void testOcspResponseIsCached() throws Exception {
+        ValidationMaterial material = cache.collect(chain());
+        assertEquals(2, material.getCertificates().size());
+        assertEquals(1, material.getOcsps().size());
+        assertEquals(0, material.getCrls().size());
+        BasicOCSPResp response = new BasicOCSPResp(BasicOCSPResponse.getInstance(material.getOcsps().get(0)));
+        assertEquals(signer.getSerialNumber(), response.getResponses()[0].getCertID().getSerialNumber());
+        assertEquals(CertificateStatus.GOOD, response.getResponses()[0].getCertStatus());
+
+        ValidationMaterial again = cache.collect(chain());
+        assertEquals(1, again.getOcsps().size());
+        assertEquals("OCSP requests", 1, authority.getRequests(TestAuthority.OCSP));
+    }
+
+    @Test
+    public void testCrlFallbackIsCached() throws Exception {
+        authority.setOcspAvailable(false);
+
+        ValidationMaterial material = cache.collect(chain());
+        assertEquals(0, material.getOcsps().size());
+        assertEquals(1, material.getCrls().size());
+
+        cache.collect(chain());
+        assertEquals("CRL downloads", 1, authority.getRequests(TestAuthority.CRL));
+    }
+
+    @Test
+    public void testRevokedCertificateFails() throws Exception {
+        authority.revoke(signer);
+        assertCollectFails();
+
+        authority.setOcspAvailable(false);
+        assertCollectFails();
+    }
+
+    @Test
+    public void testDelegatedResponderIsAccepted() throws Exception {
+        KeyPair keyPair = TestCredentials.keyPair("RSA");
+        authority.setOcspResponder(keyPair, authority.issue("Test OCSP Responder", keyPair, new Extension(Extension.extendedKeyUsage,
+                true, new ExtendedKeyUsage(KeyPurposeId.id_kp_OCSPSigning).getEncoded())));
+
+        ValidationMaterial material = cache.collect(chain());
+        assertEquals(1, material.getOcsps().size());
+        assertEquals(0, material.getCrls().size());
+    }
+
+    @Test
+    public void testUnauthorizedResponderIsRejected() throws Exception {
+        // a certificate of the issuer that is not meant to sign OCSP responses
+        KeyPair keyPair = TestCredentials.keyPair("RSA");
+        authority.setOcspResponder(keyPair, authority.issue("Test Impostor", keyPair));
+        assertResponderRejected(2);
+
+        // a certificate the issuer never signed
+        keyPair = TestCredentials.keyPair("RSA");
+        authority.setOcspResponder(keyPair, TestCredentials.selfSigned("Test Rogue Responder", keyPair));
+        assertResponderRejected(4);
+    }
+
+    /**
+     * The rejected response is neither embedded nor cached, the CRL is used instead.
+     */
+    private void assertResponderRejected(int ocspRequests) throws Exception {
+        ValidationMaterial material = cache.collect(chain());
+        assertEquals(0, material.getOcsps().size());
+        assertEquals(1, material.getCrls().size());
+
+        cache.collect(chain());
+        assertEquals("OCSP requests", ocspRequests, authority.getRequests(TestAuthority.OCSP));
+    }
+
+    private void assertCollectFails() throws Exception {
+        try {
+            cache.collect(chain());
+            fail("The revoked certificate was accepted");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Signer"));
+        }
+    }
+
+    /**
+     * Concurrent signers of the same chain share a single fetch of its OCSP response.
+     */
+    @Test
+    public void testConcurrentCollectsShareFetch() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ValidationMaterial>> futures = new ArrayList<Future<ValidationMaterial>>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit((Callable<ValidationMaterial>) () -> cache.collect(chain())));
+            }
+            for (Future<ValidationMaterial> future : futures) {
+                assertEquals(1, future.get(1, TimeUnit.MINUTES).getOcsps().size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("OCSP requests", 1, authority.getRequests(TestAuthority.OCSP));
+    }
+}
@@ -0,0 +1,246 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SignatureIndexerTest.java
+ * @description Tests of the throttled batches and the backfill of the
+ *              signature indexer.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.extension.pdfsign.constants.PDFSignConstants;
+import org.alfresco.extension.pdfsign.model.PDFSignModel;
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.policy.BehaviourFilter;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.search.ResultSet;
+import org.alfresco.service.cmr.search.SearchParameters;
+import org.alfresco.service.cmr.search.SearchService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Tests of the throttled batches of the signature indexer and of its backfill. The node
+ * service records the index of each document in memory, and the scheduler is kept idle so
+ * the tests run the batches themselves.
+ */
+public class SignatureIndexerTest {
+
+    private static final int BATCH_SIZE = 2;
+
+    private NodeService nodeService;
+    private SearchService searchService;
+    private SignatureVerifier signatureVerifier;
+    private BehaviourFilter behaviourFilter;
+    private SignatureIndexer indexer;
+
+    /** Indexed content URL of each document. */
+    private final Map<NodeRef, Serializable> index = new ConcurrentHashMap<NodeRef, Serializable>();
+
+    @Before
+    public void setUp() throws Exception {
+        nodeService = mock(NodeService.class);
+        searchService = mock(SearchService.class);
+        signatureVerifier = mock(SignatureVerifier.class);
+        behaviourFilter = mock(BehaviourFilter.class);
+
+        when(nodeService.exists(any(NodeRef.class))).thenReturn(true);
+        when(nodeService.getProperty(any(NodeRef.class), eq(ContentModel.PROP_CONTENT))).thenAnswer(invocation ->
+                new ContentData(contentUrl(invocation.getArgument(0)), PDFSignConstants.FILE_MIMETYPE, 1000L, "UTF-8"));
+        when(nodeService.hasAspect(any(NodeRef.class), eq(PDFSignModel.ASPECT_SIGNATUREINFO)))
+                .thenAnswer(invocation -> index.containsKey(invocation.getArgument(0)));
+        when(nodeService.getProperty(any(NodeRef.class), eq(PDFSignModel.PROP_VALIDATED_CONTENTURL)))
+                .thenAnswer(invocation -> index.get(invocation.getArgument(0)));
+        doAnswer(invocation -> {
+            Map<QName, Serializable> props = invocation.getArgument(2);
+            index.put(invocation.getArgument(0), props.get(PDFSignModel.PROP_VALIDATED_CONTENTURL));
+            return null;
+        }).when(nodeService).addAspect(any(NodeRef.class), eq(PDFSignModel.ASPECT_SIGNATUREINFO), anyMap());
+
+        ContentService contentService = mock(ContentService.class);
+        when(contentService.getReader(any(NodeRef.class), eq(ContentModel.PROP_CONTENT))).thenAnswer(invocation -> {
+            ContentReader reader = mock(ContentReader.class);
+            when(reader.exists()).thenReturn(true);
+            when(reader.getMimetype()).thenReturn(PDFSignConstants.FILE_MIMETYPE);
+            when(reader.getContentUrl()).thenReturn(contentUrl(invocation.getArgument(0)));
+            return reader;
+        });
+        when(signatureVerifier.verify(any(ContentReader.class)))
+                .thenReturn(new VerificationResult("store://verified", new Date(), Collections.<SignatureVerification>emptyList()));
+
+        TransactionService transactionService = mock(TransactionService.class);
+        when(transactionService.getRetryingTransactionHelper()).thenReturn(new RetryingTransactionHelper());
+
+        indexer = new SignatureIndexer();
+        indexer.setNodeService(nodeService);
+        indexer.setContentService(contentService);
+        indexer.setTransactionService(transactionService);
+        indexer.setBehaviourFilter(behaviourFilter);
+        indexer.setSearchService(searchService);
+        indexer.setSignatureVerifier(signatureVerifier);
+        indexer.setEnabled(true);
+        indexer.setBatchSize(BATCH_SIZE);
+        indexer.setIntervalSeconds(3600);
+        indexer.init();
+    }
+
+    @After
+    public void tearDown() {
+        indexer.destroy();
+    }
+
+    @Test
+    public void testQueuedDocumentsAreIndexedInBatches() throws Exception {
+        List<NodeRef> documents = newNodeRefs(5);
+        for (NodeRef nodeRef : documents) {
+            indexer.enqueue(nodeRef);
+        }
+        // a document is queued once while it waits
+        indexer.enqueue(documents.get(0));
+        assertEquals(5, indexer.getQueueLength());
+
+        indexer.runBatch();
+        assertEquals(3, indexer.getQueueLength());
+        assertEquals(2, index.size());
+
+        indexer.runBatch();
+        indexer.runBatch();
+        assertEquals(0, indexer.getQueueLength());
+        assertEquals(5, index.size());
+        for (NodeRef nodeRef : documents) {
+            assertEquals(contentUrl(nodeRef), index.get(nodeRef));
+            verify(behaviourFilter).disableBehaviour(nodeRef, ContentModel.ASPECT_AUDITABLE);
+            verify(behaviourFilter).enableBehaviour(nodeRef, ContentModel.ASPECT_AUDITABLE);
+        }
+        verify(signatureVerifier, times(5)).verify(any(ContentReader.class));
+    }
+
+    @Test
+    public void testIndexedContentIsSkipped() throws Exception {
+        NodeRef nodeRef = newNodeRefs(1).get(0);
+        indexer.enqueue(nodeRef);
+        indexer.runBatch();
+        indexer.enqueue(nodeRef);
+        indexer.runBatch();
+
+        verify(signatureVerifier, times(1)).verify(any(ContentReader.class));
+    }
+
+    @Test
+    public void testBackfillQueuesUnindexedDocuments() throws Exception {
+        final List<NodeRef> documents = newNodeRefs(5);
+        index.put(documents.get(1), contentUrl(documents.get(1)));
+        index.put(documents.get(3), contentUrl(documents.get(3)));
+        when(searchService.query(any(SearchParameters.class))).thenAnswer(invocation -> {
+            SearchParameters sp = invocation.getArgument(0);
+            int from = Math.min(sp.getSkipCount(), documents.size());
+            return resultSet(documents.subList(from, Math.min(from + sp.getMaxItems(), documents.size())));
+        });
+
+        indexer.backfill();
+        assertTrue(indexer.isBackfilling());
+        for (int run = 0; run < 10 && indexer.isBackfilling(); run++) {
+            indexer.runBatch();
+            // the backfill never queues more than the next batch
+            assertTrue(indexer.getQueueLength() <= BATCH_SIZE);
+        }
+        indexer.runBatch();
+
+        assertFalse(indexer.isBackfilling());
+        assertEquals(5, index.size());
+        verify(signatureVerifier, times(3)).verify(any(ContentReader.class));
+
+        ArgumentCaptor<SearchParameters> searches = ArgumentCaptor.forClass(SearchParameters.class);
+        verify(searchService, times(3)).query(searches.capture());
+        int skipCount = 0;
+        for (SearchParameters sp : searches.getAllValues()) {
+            assertEquals(SearchService.LANGUAGE_FTS_ALFRESCO, sp.getLanguage());
+            assertTrue(sp.getQuery(), sp.getQuery().contains("application/pdf"));
+            assertEquals(BATCH_SIZE, sp.getMaxItems());
+            assertEquals(skipCount, sp.getSkipCount());
+            skipCount += BATCH_SIZE;
+        }
+    }
+
+    @Test
+    public void testBackfillRequiresEnabledIndexer() {
+        SignatureIndexer disabled = new SignatureIndexer();
+        disabled.init();
+        try {
+            disabled.backfill();
+            fail("A disabled indexer started a backfill");
+        } catch (AlfrescoRuntimeException e) {
+            assertFalse(disabled.isBackfilling());
+        }
+    }
+
+    private static ResultSet resultSet(List<NodeRef> nodeRefs) {
+        ResultSet results = mock(ResultSet.class);
+        when(results.getNodeRefs()).thenReturn(new ArrayList<NodeRef>(nodeRefs));
+        when(results.length()).thenReturn(nodeRefs.size());
+        return results;
+    }
+
+    private static String contentUrl(NodeRef nodeRef) {
+        return "store://" + nodeRef.getId() + ".bin";
+    }
+
+    private static List<NodeRef> newNodeRefs(int count) {
+        List<NodeRef> nodeRefs = new ArrayList<NodeRef>();
+        for (int i = 0; i < count; i++) {
+            nodeRefs.add(new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, UUID.randomUUID().toString()));
+        }
+        return nodeRefs;
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SignatureRoundTripTest.java
+ * @description Round-trip signing and verification with RSA, RSASSA-PSS and
+ *              EC keys from PKCS#12 and JKS key stores.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.extension.pdfsign.constants.PDFSignConstants;
+import org.alfresco.extension.pdfsign.test.TestCredentials;
+import org.alfresco.extension.pdfsign.test.TestDocuments;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Signs and verifies documents with every supported kind of key: RSA with PKCS#1 v1.5 and
+ * with RSASSA-PSS, RSASSA-PSS keys and EC keys, loaded from PKCS#12 and JKS key stores, with
+ * both engines and every digest algorithm. Keys and certificates are generated for the test;
+ * the verifier trusts their root.
+ */
+@RunWith(Parameterized.class)
+public class SignatureRoundTripTest {
+
+    private static final String[] KEYS = { "RSA", "RSA+PSS", "RSASSA-PSS", "EC" };
+    private static final String[] KEY_STORES = { "PKCS12", "JKS" };
+    private static final String[] ENGINES = { ITextSignatureEngine.NAME, PDFBoxSignatureEngine.NAME };
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    /** Key store content by key and key store type. */
+    private static final Map<String, byte[]> keyStores = new HashMap<String, byte[]>();
+    private static File document;
+    private static SignatureVerifier verifier;
+
+    private final String key;
+    private final String keyStoreType;
+    private final String engineName;
+    private final String digestAlgorithm;
+
+    public SignatureRoundTripTest(String key, String keyStoreType, String engineName, String digestAlgorithm) {
+        this.key = key;
+        this.keyStoreType = keyStoreType;
+        this.engineName = engineName;
+        this.digestAlgorithm = digestAlgorithm;
+    }
+
+    @Parameters(name = "{0} {1} {2} {3}")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameters = new ArrayList<Object[]>();
+        for (String key : KEYS) {
+            for (String keyStoreType : KEY_STORES) {
+                for (String engine : ENGINES) {
+                    for (String digest : CryptoProviders.DIGEST_ALGORITHMS) {
+                        parameters.add(new Object[] { key, keyStoreType, engine, digest });
+                    }
+                }
+            }
+        }
+        return parameters;
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        KeyPair rootKeys = TestCredentials.keyPair("RSA");
+        X509Certificate root = TestCredentials.certificate("Root", rootKeys.getPublic(), null, rootKeys.getPrivate(), true);
+
+        for (String key : KEYS) {
+            KeyPair keyPair = TestCredentials.keyPair(key.startsWith("RSA+") ? "RSA" : key);
+            X509Certificate certificate = TestCredentials.certificate("Signer " + key.replace('+', ' '), keyPair.getPublic(), root,
+                    rootKeys.getPrivate(), false);
+            for (String keyStoreType : KEY_STORES) {
+                keyStores.put(key + "|" + keyStoreType, TestCredentials.keyStore(keyStoreType, keyPair.getPrivate(), certificate, root));
+            }
+        }
+
+        File trustStore = folder.newFile("truststore.p12");
+        try (OutputStream out = new FileOutputStream(trustStore)) {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(null, null);
+            keyStore.setCertificateEntry("root", root);
+            keyStore.store(out, TestCredentials.PASSWORD.toCharArray());
+        }
+        verifier = new SignatureVerifier();
+        verifier.setTrustStore(trustStore.getPath());
+        verifier.setTrustStoreType("PKCS12");
+        verifier.setTrustStorePassword(TestCredentials.PASSWORD);
+        verifier.setCache(new DefaultSimpleCache<String, VerificationResult>(0, "verificationCache"));
+        verifier.init();
+
+        document = TestDocuments.createPdf(folder.newFile("document.pdf"), 2);
+    }
+
+    private SignatureEngine engine() {
+        if (ITextSignatureEngine.NAME.equals(engineName)) {
+            return new ITextSignatureEngine();
+        }
+        return new PDFBoxSignatureEngine();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        SigningCredential credential = KeyStoreLoader.loadCredential(
+                new ByteArrayInputStream(keyStores.get(key + "|" + keyStoreType)), TestCredentials.PASSWORD, TestCredentials.PASSWORD);
+        assertEquals("Signer " + key.replace('+', ' '), credential.getFriendlyName());
+        assertEquals(2, credential.getChain().length);
+
+        boolean pss = key.contains("PSS");
+        String signatureAlgorithm = CryptoProviders.signatureAlgorithm(digestAlgorithm, credential.getPrivateKey(), pss);
+        assertEquals(pss, CryptoProviders.isPss(signatureAlgorithm));
+
+        SignatureRequest request = new SignatureRequest();
+        request.setCredential(credential);
+        request.setDigestAlgorithm(CryptoProviders.digestAlgorithm(digestAlgorithm));
+        request.setPss(pss);
+        // the visible appearance exercises the signer name and certificate of the credential
+        request.setVisible(true);
+        request.setPosition(PDFSignConstants.POSITION_BOTTOMRIGHT);
+        request.setWidth(200);
+        request.setHeight(100);
+
+        File signed = folder.newFile();
+        try (SignableDocument opened = engine().open(TestDocuments.reader(document, "store://test/document.bin"));
+                OutputStream out = new FileOutputStream(signed)) {
+            request.setPages(new int[] { opened.getNumberOfPages() });
+            opened.sign(request, out);
+        }
+
+        VerificationResult result = verifier.verify(TestDocuments.reader(signed, "store://test/" + signed.getName()));
+        assertEquals(1, result.getSignatures().size());
+        SignatureVerification signature = result.getSignatures().get(0);
+        assertNull(signature.getError(), signature.getError());
+        assertTrue("integrity", signature.isIntegrityValid());
+        assertTrue("trust", signature.isCertificateTrusted());
+        assertTrue("whole document", signature.isCoversWholeDocument());
+        assertTrue(signature.getSignatureAlgorithm(), signature.getSignatureAlgorithm().startsWith(digestAlgorithm.replace("-", "")));
+        assertTrue(result.isValid());
+    }
+}
@@ -0,0 +1,362 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SigningCoordinatorTest.java
+ * @description Tests of the signing locks, their refresh and the content
+ *              check of the signing coordinator.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.QName;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Tests of the signing locks and of the content check of the signing coordinator. The
+ * transactions are run by a transaction manager without resources, so the listeners the
+ * coordinator binds are called as they are in the repository.
+ */
+public class SigningCoordinatorTest {
+
+    private static final String TOKEN = "token";
+
+    private JobLockService jobLockService;
+    private NodeService nodeService;
+    private SigningCoordinator coordinator;
+    private TransactionTemplate transactions;
+    private NodeRef nodeRef;
+
+    @Before
+    public void setUp() {
+        jobLockService = mock(JobLockService.class);
+        nodeService = mock(NodeService.class);
+        when(jobLockService.getLock(any(QName.class), anyLong(), anyLong(), anyInt())).thenReturn(TOKEN);
+
+        coordinator = new SigningCoordinator();
+        coordinator.setJobLockService(jobLockService);
+        coordinator.setNodeService(nodeService);
+        coordinator.setLockTimeToLiveSeconds(30);
+        coordinator.setLockRetryWait(10);
+        coordinator.setLockRetryCount(5);
+        coordinator.init();
+
+        transactions = new TransactionTemplate(new TestTransactionManager());
+        nodeRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, UUID.randomUUID().toString());
+    }
+
+    private JobLockRefreshCallback refreshCallback() {
+        ArgumentCaptor<JobLockRefreshCallback> callback = ArgumentCaptor.forClass(JobLockRefreshCallback.class);
+        verify(jobLockService).refreshLock(eq(TOKEN), any(QName.class), eq(30000L), callback.capture());
+        return callback.getValue();
+    }
+
+    @Test
+    public void testLockHeldUntilCommit() {
+        transactions.execute(status -> {
+            coordinator.lock(nodeRef);
+            // a transaction holding the lock takes it again without waiting
+            coordinator.lock(nodeRef);
+            verify(jobLockService, times(1)).getLock(any(QName.class), eq(30000L), eq(10L), eq(5));
+            assertTrue(refreshCallback().isActive());
+            verify(jobLockService, never()).releaseLock(anyString(), any(QName.class));
+            return null;
+        });
+
+        // confirmed before the commit, released after it
+        verify(jobLockService).refreshLock(eq(TOKEN), any(QName.class), eq(30000L));
+        verify(jobLockService).releaseLock(eq(TOKEN), any(QName.class));
+        assertFalse(refreshCallback().isActive());
+    }
+
+    @Test
+    public void testLockReleasedOnRollback() {
+        try {
+            transactions.execute(status -> {
+                coordinator.lock(nodeRef);
+                throw new IllegalStateException("signing failed");
+            });
+            fail("The transaction should have failed");
+        } catch (IllegalStateException e) {
+            assertEquals("signing failed", e.getMessage());
+        }
+
+        verify(jobLockService, never()).refreshLock(anyString(), any(QName.class), anyLong());
+        verify(jobLockService).releaseLock(eq(TOKEN), any(QName.class));
+        assertFalse(refreshCallback().isActive());
+    }
+
+    @Test
+    public void testLockReleasedByRefresherFailsCommit() {
+        try {
+            transactions.execute(status -> {
+                coordinator.lock(nodeRef);
+                // the refresher could not keep the lock alive
+                refreshCallback().lockReleased();
+                return null;
+            });
+            fail("A transaction that lost its lock should not commit");
+        } catch (ConcurrencyFailureException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(nodeRef.toString()));
+        }
+        verify(jobLockService).releaseLock(eq(TOKEN), any(QName.class));
+    }
+
+    @Test
+    public void testExpiredLockFailsCommit() {
+        doThrow(new LockAcquisitionException(LockAcquisitionException.ERR_EXCLUSIVE_LOCK_EXISTS, "sign", TOKEN))
+                .when(jobLockService).refreshLock(eq(TOKEN), any(QName.class), anyLong());
+        try {
+            transactions.execute(status -> {
+                coordinator.lock(nodeRef);
+                return null;
+            });
+            fail("A transaction whose lock expired should not commit");
+        } catch (ConcurrencyFailureException e) {
+            // retried by the retrying transaction helper
+        }
+        verify(jobLockService).releaseLock(eq(TOKEN), any(QName.class));
+    }
+
+    @Test
+    public void testLockTimeoutFailsWithoutHoldingTheNode() {
+        when(jobLockService.getLock(any(QName.class), anyLong(), anyLong(), anyInt()))
+                .thenThrow(new LockAcquisitionException(LockAcquisitionException.ERR_EXCLUSIVE_LOCK_EXISTS, "sign", "other"))
+                .thenReturn(TOKEN);
+        transactions.execute(status -> {
+            try {
+                coordinator.lock(nodeRef);
+                fail("The lock is held by another signer");
+            } catch (LockAcquisitionException e) {
+                // waited retryCount times
+            }
+            // the failed attempt is not mistaken for a held lock
+            coordinator.lock(nodeRef);
+            return null;
+        });
+        verify(jobLockService, times(2)).getLock(any(QName.class), eq(30000L), eq(10L), eq(5));
+        verify(jobLockService, times(1)).releaseLock(eq(TOKEN), any(QName.class));
+    }
+
+    @Test
+    public void testCheckContent() {
+        when(nodeService.getProperty(nodeRef, ContentModel.PROP_CONTENT))
+                .thenReturn(new ContentData("store://signed.bin", "application/pdf", 10L, "UTF-8"));
+        coordinator.checkContent(nodeRef, "store://signed.bin");
+        try {
+            coordinator.checkContent(nodeRef, "store://other.bin");
+            fail("Content written by another transaction should be detected");
+        } catch (ConcurrencyFailureException e) {
+            // retried on top of the new content
+        }
+    }
+
+    /**
+     * Many transactions sign the same document at once against a lock service that grants each
+     * lock to one holder at a time. No two transactions may hold the lock together and every
+     * lock must be released.
+     */
+    @Test
+    public void testSameNodeSignaturesAreSerialized() throws Exception {
+        final InMemoryJobLockService locks = new InMemoryJobLockService();
+        coordinator.setJobLockService(locks);
+        coordinator.setLockRetryCount(10000);
+        coordinator.setLockRetryWait(1);
+        final AtomicInteger holders = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final int threads = 8;
+        final int signaturesPerThread = 10;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < signaturesPerThread; i++) {
+                        transactions.execute(status -> {
+                            coordinator.lock(nodeRef);
+                            if (holders.incrementAndGet() > 1) {
+                                overlaps.incrementAndGet();
+                            }
+                            Thread.yield();
+                            holders.decrementAndGet();
+                            return null;
+                        });
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals("transactions holding the lock together", 0, overlaps.get());
+        assertEquals(threads * signaturesPerThread, locks.granted.get());
+        assertTrue("locks left behind", locks.held.isEmpty());
+    }
+
+    /**
+     * A transaction manager without resources, which only drives the synchronizations.
+     */
+    private static final class TestTransactionManager extends AbstractPlatformTransactionManager {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+
+    /**
+     * A lock service granting each lock to a single holder, waiting as the repository does.
+     */
+    private static final class InMemoryJobLockService implements JobLockService {
+
+        private final Map<QName, String> held = new HashMap<QName, String>();
+        private final AtomicInteger granted = new AtomicInteger();
+
+        @Override
+        public String getLock(QName lockQName, long timeToLive, long retryWait, int retryCount) {
+            for (int i = 0; i <= retryCount; i++) {
+                synchronized (held) {
+                    if (!held.containsKey(lockQName)) {
+                        String token = UUID.randomUUID().toString();
+                        held.put(lockQName, token);
+                        granted.incrementAndGet();
+                        return token;
+                    }
+                }
+                try {
+                    Thread.sleep(retryWait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            throw new LockAcquisitionException(LockAcquisitionException.ERR_EXCLUSIVE_LOCK_EXISTS, lockQName, "");
+        }
+
+        @Override
+        public String getLock(QName lockQName, long timeToLive) {
+            return getLock(lockQName, timeToLive, 0, 0);
+        }
+
+        @Override
+        public void getLock(QName lockQName, long timeToLive, JobLockRefreshCallback callback) {
+            getLock(lockQName, timeToLive);
+        }
+
+        @Override
+        public void getTransactionalLock(QName lockQName, long timeToLive) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void getTransactionalLock(QName lockQName, long timeToLive, long retryWait, int retryCount) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void refreshLock(String lockToken, QName lockQName, long timeToLive) {
+            synchronized (held) {
+                if (!lockToken.equals(held.get(lockQName))) {
+                    throw new LockAcquisitionException(LockAcquisitionException.ERR_EXCLUSIVE_LOCK_EXISTS, lockQName, lockToken);
+                }
+            }
+        }
+
+        @Override
+        public void refreshLock(String lockToken, QName lockQName, long timeToLive, JobLockRefreshCallback callback) {
+            // the locks of the test never outlive their time to live
+        }
+
+        @Override
+        public boolean releaseLock(String lockToken, QName lockQName) {
+            synchronized (held) {
+                return held.remove(lockQName, lockToken);
+            }
+        }
+
+        @Override
+        public void releaseLockVerify(String lockToken, QName lockQName) {
+            if (!releaseLock(lockToken, lockQName)) {
+                throw new LockAcquisitionException(LockAcquisitionException.ERR_EXCLUSIVE_LOCK_EXISTS, lockQName, lockToken);
+            }
+        }
+    }
+}
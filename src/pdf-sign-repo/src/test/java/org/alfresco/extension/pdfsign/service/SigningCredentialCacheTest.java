@@ -0,0 +1,234 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SigningCredentialCacheTest.java
+ * @description Tests of the expiry, eviction, invalidation and leases of the
+ *              signing credential cache.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.security.KeyPair;
+import java.security.cert.Certificate;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.alfresco.extension.pdfsign.model.PDFSignModel;
+import org.alfresco.extension.pdfsign.test.TestCredentials;
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.ContentServicePolicies;
+import org.alfresco.repo.node.NodeServicePolicies;
+import org.alfresco.repo.policy.Behaviour;
+import org.alfresco.repo.policy.BehaviourFilter;
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests of the expiry, eviction and invalidation of the signing credential cache, and of
+ * the leases that keep an evicted credential usable until its last user releases it.
+ */
+public class SigningCredentialCacheTest {
+
+    private static KeyPair keyPair;
+    private static Certificate[] chain;
+
+    private SigningCredentialCache cache;
+    private AtomicInteger loads;
+
+    @BeforeClass
+    public static void createCredential() throws Exception {
+        keyPair = TestCredentials.keyPair("EC");
+        chain = new Certificate[] { TestCredentials.selfSigned("Cache Test", keyPair) };
+    }
+
+    @Before
+    public void setUp() {
+        cache = new SigningCredentialCache();
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    public void testCachedCredentialIsShared() {
+        NodeRef nodeRef = newNodeRef();
+
+        SigningCredential first = cache.acquire(key(nodeRef, "changeit"), loader());
+        SigningCredential second = cache.acquire(key(nodeRef, "changeit"), loader());
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testPasswordsArePartOfTheKey() {
+        NodeRef nodeRef = newNodeRef();
+        Date modified = new Date();
+
+        assertEquals(new SigningCredentialCache.Key(nodeRef, "store://1", modified, "a", "b"),
+                new SigningCredentialCache.Key(nodeRef, "store://1", modified, "a", "b"));
+        assertNotEquals(new SigningCredentialCache.Key(nodeRef, "store://1", modified, "a", "b"),
+                new SigningCredentialCache.Key(nodeRef, "store://1", modified, "a", "c"));
+        assertNotEquals(new SigningCredentialCache.Key(nodeRef, "store://1", modified, "ab", ""),
+                new SigningCredentialCache.Key(nodeRef, "store://1", modified, "a", "b"));
+    }
+
+    @Test
+    public void testExpiredCredentialIsReloaded() throws Exception {
+        cache.setTimeToLiveSeconds(0);
+        SigningCredentialCache.Key key = key(newNodeRef(), "changeit");
+
+        SigningCredential first = cache.acquire(key, loader());
+        first.release();
+        Thread.sleep(10);
+        SigningCredential second = cache.acquire(key, loader());
+
+        assertNotSame(first, second);
+        assertEquals(2, loads.get());
+        assertNull(first.getPrivateKey());
+        assertNotNull(second.getPrivateKey());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        cache.setMaxSize(2);
+        SigningCredentialCache.Key a = key(newNodeRef(), "changeit");
+        SigningCredentialCache.Key b = key(newNodeRef(), "changeit");
+        SigningCredentialCache.Key c = key(newNodeRef(), "changeit");
+
+        SigningCredential credentialA = cache.acquire(a, loader());
+        SigningCredential credentialB = cache.acquire(b, loader());
+        credentialA.release();
+        credentialB.release();
+
+        // using a makes b the least recently used entry
+        cache.acquire(a, loader()).release();
+        cache.acquire(c, loader()).release();
+        assertEquals(3, loads.get());
+        assertNull(credentialB.getPrivateKey());
+
+        assertSame(credentialA, cache.acquire(a, loader()));
+        assertEquals(3, loads.get());
+        assertNotSame(credentialB, cache.acquire(b, loader()));
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void testKeyStoreUpdateInvalidates() {
+        PolicyComponent policyComponent = mock(PolicyComponent.class);
+        cache.setPolicyComponent(policyComponent);
+        cache.init();
+        verify(policyComponent).bindClassBehaviour(eq(ContentServicePolicies.OnContentUpdatePolicy.QNAME),
+                eq(PDFSignModel.ASPECT_KEYSTORE), any(Behaviour.class));
+        verify(policyComponent).bindClassBehaviour(eq(NodeServicePolicies.BeforeDeleteNodePolicy.QNAME),
+                eq(PDFSignModel.ASPECT_KEYSTORE), any(Behaviour.class));
+        verify(policyComponent, never()).bindClassBehaviour(any(), eq(ContentModel.TYPE_CONTENT), any(Behaviour.class));
+
+        NodeRef nodeRef = newNodeRef();
+        NodeRef otherNodeRef = newNodeRef();
+        SigningCredential credential = cache.acquire(key(nodeRef, "changeit"), loader());
+        SigningCredential other = cache.acquire(key(otherNodeRef, "changeit"), loader());
+        credential.release();
+        other.release();
+
+        cache.onContentUpdate(nodeRef, false);
+
+        assertNull(credential.getPrivateKey());
+        assertNotNull(other.getPrivateKey());
+        assertNotSame(credential, cache.acquire(key(nodeRef, "changeit"), loader()));
+        assertSame(other, cache.acquire(key(otherNodeRef, "changeit"), loader()));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testRetiredCredentialIsReleasedAfterLastLease() throws Exception {
+        NodeRef nodeRef = newNodeRef();
+        SigningCredential credential = cache.acquire(key(nodeRef, "changeit"), loader());
+        SigningCredential shared = cache.acquire(key(nodeRef, "changeit"), loader());
+        assertSame(credential, shared);
+
+        cache.beforeDeleteNode(nodeRef);
+
+        // both leases are still held, signing with the evicted credential goes on
+        assertNotNull(credential.getPrivateKey());
+        credential.returnSignature("SHA256withECDSA", null, credential.borrowSignature("SHA256withECDSA", null));
+        credential.release();
+        assertNotNull(credential.getPrivateKey());
+
+        shared.release();
+        assertNull(credential.getPrivateKey());
+        assertNull(credential.getChain());
+    }
+
+    @Test
+    public void testKeyStoreIsMarked() {
+        NodeService nodeService = mock(NodeService.class);
+        BehaviourFilter behaviourFilter = mock(BehaviourFilter.class);
+        cache.setNodeService(nodeService);
+        cache.setBehaviourFilter(behaviourFilter);
+        NodeRef nodeRef = newNodeRef();
+        NodeRef markedNodeRef = newNodeRef();
+        when(nodeService.hasAspect(markedNodeRef, PDFSignModel.ASPECT_KEYSTORE)).thenReturn(true);
+
+        cache.acquire(key(nodeRef, "changeit"), loader()).release();
+        cache.acquire(key(nodeRef, "changeit"), loader()).release();
+        cache.acquire(key(markedNodeRef, "changeit"), loader()).release();
+
+        verify(nodeService, times(1)).addAspect(nodeRef, PDFSignModel.ASPECT_KEYSTORE, null);
+        verify(nodeService, never()).addAspect(eq(markedNodeRef), any(), any());
+        verify(behaviourFilter).disableBehaviour(nodeRef, ContentModel.ASPECT_AUDITABLE);
+        verify(behaviourFilter).enableBehaviour(nodeRef, ContentModel.ASPECT_AUDITABLE);
+    }
+
+    private Supplier<SigningCredential> loader() {
+        return () -> {
+            loads.incrementAndGet();
+            return new SigningCredential("alias", "Cache Test", keyPair.getPrivate(), chain.clone());
+        };
+    }
+
+    private static SigningCredentialCache.Key key(NodeRef nodeRef, String password) {
+        return new SigningCredentialCache.Key(nodeRef, "store://" + nodeRef.getId(), new Date(0), password, password);
+    }
+
+    private static NodeRef newNodeRef() {
+        return new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, UUID.randomUUID().toString());
+    }
+}
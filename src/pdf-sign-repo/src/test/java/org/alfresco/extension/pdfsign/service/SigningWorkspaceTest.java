@@ -0,0 +1,176 @@
+/**
+ * *****************************************************************************
+ *
+ * @file SigningWorkspaceTest.java
+ * @description Tests of the isolation and clean-up of signing workspaces.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.util.TempFileProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the isolation and clean-up of signing workspaces.
+ */
+public class SigningWorkspaceTest {
+
+    private static final int THREADS = 32;
+
+    private NodeRef nodeRef;
+
+    @Before
+    public void setUp() {
+        // a node of its own, so leftovers of other tests are not counted
+        nodeRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Returns the workspace directories of the test node still on disk.
+     */
+    private List<File> leftovers() {
+        final String prefix = "pdfsign-" + nodeRef.getId() + "-";
+        File[] files = TempFileProvider.getTempDir().listFiles((dir, name) -> name.startsWith(prefix));
+        List<File> leftovers = new ArrayList<File>();
+        if (files != null) {
+            Collections.addAll(leftovers, files);
+        }
+        return leftovers;
+    }
+
+    @Test
+    public void testDirectoryCreatedOnFirstUse() {
+        SigningWorkspace workspace = new SigningWorkspace(nodeRef);
+        assertTrue(leftovers().isEmpty());
+
+        File directory = workspace.getDirectory();
+        assertTrue(directory.isDirectory());
+        assertEquals(directory, workspace.getDirectory());
+
+        workspace.close();
+        assertFalse(directory.exists());
+        // closing twice is harmless
+        workspace.close();
+        assertTrue(leftovers().isEmpty());
+    }
+
+    @Test
+    public void testCloseDeletesNestedContentOnFailure() throws Exception {
+        File directory = null;
+        try (SigningWorkspace workspace = new SigningWorkspace(nodeRef)) {
+            directory = workspace.getDirectory();
+            File nested = new File(directory, "nested");
+            assertTrue(nested.mkdir());
+            Files.write(new File(nested, "part.bin").toPath(), new byte[1024]);
+            File.createTempFile("signed-", ".pdf", directory);
+            throw new IllegalStateException("signing failed");
+        } catch (IllegalStateException e) {
+            assertEquals("signing failed", e.getMessage());
+        }
+        assertFalse(directory.exists());
+        assertTrue(leftovers().isEmpty());
+    }
+
+    /**
+     * Many operations on the same document hold their workspaces at the same time and write
+     * files of the same name. Each must get a directory of its own, read back its own files
+     * and leave nothing behind, whether it completes or fails.
+     */
+    @Test
+    public void testConcurrentWorkspacesOfSameNode() throws Exception {
+        final CyclicBarrier allOpen = new CyclicBarrier(THREADS);
+        final Set<File> directories = Collections.synchronizedSet(new HashSet<File>());
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < THREADS; t++) {
+                final String owner = "operation " + t;
+                final boolean fails = t % 4 == 0;
+                futures.add(executor.submit(() -> {
+                    try (SigningWorkspace workspace = new SigningWorkspace(nodeRef)) {
+                        File directory = workspace.getDirectory();
+                        directories.add(directory);
+                        File file = new File(directory, "signed.pdf");
+                        Files.write(file.toPath(), owner.getBytes(StandardCharsets.UTF_8));
+
+                        // every workspace is open and written before any is read or closed
+                        allOpen.await(1, TimeUnit.MINUTES);
+                        assertEquals(owner, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+                        if (fails) {
+                            throw new IllegalStateException(owner + " failed");
+                        }
+                    } catch (IllegalStateException e) {
+                        assertTrue(fails);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals("distinct workspace directories", THREADS, directories.size());
+        for (File directory : directories) {
+            assertFalse(directory + " was not deleted", directory.exists());
+        }
+        List<File> leftovers = leftovers();
+        if (!leftovers.isEmpty()) {
+            fail("Workspaces left behind: " + leftovers);
+        }
+    }
+
+    @Test
+    public void testWorkspaceWithoutNode() {
+        File directory;
+        try (SigningWorkspace workspace = new SigningWorkspace(null)) {
+            directory = workspace.getDirectory();
+            assertTrue(directory.getName().startsWith("pdfsign-"));
+        }
+        assertFalse(directory.exists());
+    }
+}
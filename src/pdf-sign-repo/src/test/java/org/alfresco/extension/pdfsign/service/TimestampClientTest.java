@@ -0,0 +1,188 @@
+/**
+ * *****************************************************************************
+ *
+ * @file TimestampClientTest.java
+ * @description Tests of the time-stamping authority client against a stand-in
+ *              authority.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.extension.pdfsign.test.TestAuthority;
+import org.alfresco.extension.pdfsign.test.TestCredentials;
+import org.alfresco.extension.pdfsign.test.TestDocuments;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.security.PdfPKCS7;
+
+/**
+ * Tests of the time-stamping authority client against a stand-in authority.
+ */
+public class TimestampClientTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TestAuthority authority;
+    private TimestampClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        authority = new TestAuthority();
+        client = new TimestampClient();
+        client.setUrl(authority.getUrl(TestAuthority.TSA));
+        client.init();
+    }
+
+    @After
+    public void tearDown() {
+        client.destroy();
+        authority.close();
+    }
+
+    /**
+     * Parses a token and checks it was signed by the authority over the given imprint.
+     */
+    private TimeStampToken assertToken(byte[] encoded, byte[] imprint) throws Exception {
+        TimeStampToken token = new TimeStampToken(new CMSSignedData(encoded));
+        token.validate(new JcaSimpleSignerInfoVerifierBuilder().setProvider(BouncyCastleProvider.PROVIDER_NAME)
+                .build(authority.getTsaCertificate()));
+        assertArrayEquals(imprint, token.getTimeStampInfo().getMessageImprintDigest());
+        return token;
+    }
+
+    @Test
+    public void testTimestamp() throws Exception {
+        byte[] signature = "signature value".getBytes(StandardCharsets.UTF_8);
+        byte[] encoded = client.timestamp(signature, null);
+
+        TimeStampToken token = assertToken(encoded, MessageDigest.getInstance("SHA-256").digest(signature));
+        assertNotNull(token.getTimeStampInfo().getNonce());
+        assertTrue("space reserved for the tokens", client.getTokenSizeEstimate() > encoded.length);
+        assertEquals(1, authority.getRequests(TestAuthority.TSA));
+    }
+
+    /**
+     * Concurrent signers share the pooled connections, each getting the token of its own
+     * signature value.
+     */
+    @Test
+    public void testConcurrentTimestamps() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<byte[]> signatures = new ArrayList<byte[]>();
+            List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+            for (int i = 0; i < 16; i++) {
+                final byte[] signature = ("signature " + i).getBytes(StandardCharsets.UTF_8);
+                signatures.add(signature);
+                futures.add(executor.submit(() -> client.timestamp(signature, null)));
+            }
+            for (int i = 0; i < signatures.size(); i++) {
+                assertToken(futures.get(i).get(1, TimeUnit.MINUTES), client.getMessageDigest().digest(signatures.get(i)));
+            }
+            assertEquals(signatures.size(), authority.getRequests(TestAuthority.TSA));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRefusedRequest() throws Exception {
+        authority.setRefusing(true);
+        try {
+            client.timestamp(new byte[] { 1, 2, 3 }, null);
+            fail("The refused timestamp was returned");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("refused"));
+        }
+    }
+
+    /**
+     * Both engines embed the token of the signature value in the unsigned attributes of the
+     * signature, where validators find it.
+     */
+    @Test
+    public void testSignaturesAreTimestamped() throws Exception {
+        KeyPair keyPair = TestCredentials.keyPair("RSA");
+        byte[] keyStore = TestCredentials.keyStore("PKCS12", keyPair.getPrivate(), authority.issue("Signer", keyPair), authority.getRoot());
+        File document = TestDocuments.createPdf(folder.newFile("document.pdf"), 1);
+
+        for (SignatureEngine engine : new SignatureEngine[] { new ITextSignatureEngine(), new PDFBoxSignatureEngine() }) {
+            SignatureRequest request = new SignatureRequest();
+            request.setCredential(KeyStoreLoader.loadCredential(new ByteArrayInputStream(keyStore), TestCredentials.PASSWORD,
+                    TestCredentials.PASSWORD));
+            request.setDigestAlgorithm(CryptoProviders.DEFAULT_DIGEST_ALGORITHM);
+            request.setPages(new int[] { 1 });
+            request.setTimestampClient(client);
+
+            File signed = folder.newFile();
+            try (SignableDocument opened = engine.open(TestDocuments.reader(document, "store://test/document.bin"));
+                    OutputStream out = new FileOutputStream(signed)) {
+                opened.sign(request, out);
+            }
+
+            PdfReader reader = new PdfReader(signed.getPath());
+            try {
+                AcroFields fields = reader.getAcroFields();
+                PdfPKCS7 signature = fields.verifySignature(fields.getSignatureNames().get(0));
+                assertTrue(engine.getClass().getSimpleName(), signature.verify());
+                assertNotNull(engine.getClass().getSimpleName() + " token", signature.getTimeStampToken());
+                assertTrue(engine.getClass().getSimpleName() + " imprint", signature.verifyTimestampImprint());
+                assertEquals(authority.getTsaCertificate().getSerialNumber(),
+                        signature.getTimeStampToken().getSID().getSerialNumber());
+            } finally {
+                reader.close();
+            }
+        }
+        assertEquals(2, authority.getRequests(TestAuthority.TSA));
+    }
+}
@@ -0,0 +1,351 @@
+/**
+ * *****************************************************************************
+ *
+ * @file TestAuthority.java
+ * @description A stand-in certification and time-stamping authority for the
+ *              unit tests.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.Req;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.jcajce.JcaBasicOCSPRespBuilder;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoGeneratorBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DigestCalculator;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampResponse;
+import org.bouncycastle.tsp.TimeStampResponseGenerator;
+import org.bouncycastle.tsp.TimeStampTokenGenerator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A stand-in certification authority for the unit tests: a root certificate issuing the
+ * certificates of the tests, and a local HTTP server answering as its time-stamping authority
+ * on {@link #TSA}, its OCSP responder on {@link #OCSP} and its CRL distribution point on
+ * {@link #CRL}. The certificates it issues publish both revocation endpoints. Every request is
+ * counted by path, so tests can tell which answers were fetched and which were served from a
+ * cache.
+ */
+public final class TestAuthority implements Closeable {
+
+    /** Path of the time-stamping authority. */
+    public static final String TSA = "/tsa";
+    /** Path of the OCSP responder. */
+    public static final String OCSP = "/ocsp";
+    /** Path of the CRL distribution point. */
+    public static final String CRL = "/crl";
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private static final ASN1ObjectIdentifier TSA_POLICY = new ASN1ObjectIdentifier("1.3.6.1.4.1.99999.1");
+
+    private final KeyPair rootKeys;
+    private final X509Certificate root;
+    private final KeyPair tsaKeys;
+    private final X509Certificate tsaCertificate;
+
+    private final HttpServer server;
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<String, AtomicInteger>();
+    private final AtomicLong serial = new AtomicLong();
+    private final Set<BigInteger> revoked = Collections.newSetFromMap(new ConcurrentHashMap<BigInteger, Boolean>());
+    private volatile boolean refusing = false;
+    private volatile boolean ocspAvailable = true;
+    private volatile KeyPair responderKeys;
+    private volatile X509Certificate responderCertificate;
+
+    /**
+     * Creates the authority and starts its server on a free local port.
+     *
+     * @throws GeneralSecurityException if the certificates cannot be issued
+     * @throws IOException if the server cannot be started
+     */
+    public TestAuthority() throws GeneralSecurityException, IOException {
+        rootKeys = TestCredentials.keyPair("RSA");
+        root = TestCredentials.certificate("Test Root", rootKeys.getPublic(), null, rootKeys.getPrivate(), true);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(TSA, this::timestamp);
+        server.createContext(OCSP, this::ocsp);
+        server.createContext(CRL, this::crl);
+        server.start();
+
+        tsaKeys = TestCredentials.keyPair("RSA");
+        tsaCertificate = issue("Test TSA", tsaKeys, new Extension(Extension.extendedKeyUsage, true,
+                new ExtendedKeyUsage(KeyPurposeId.id_kp_timeStamping).getEncoded()));
+    }
+
+    /**
+     * Issues an end-entity certificate signed by the root, publishing the OCSP responder and the
+     * CRL distribution point of the authority.
+     *
+     * @param subject the common name of the subject
+     * @param keyPair the key pair of the subject
+     * @param extensions extensions added to the certificate
+     * @return the certificate
+     * @throws GeneralSecurityException if the certificate cannot be signed
+     */
+    public X509Certificate issue(String subject, KeyPair keyPair, Extension... extensions) throws GeneralSecurityException {
+        Extension[] all = Arrays.copyOf(extensions, extensions.length + 2);
+        try {
+            all[extensions.length] = new Extension(Extension.authorityInfoAccess, false, new AuthorityInformationAccess(
+                    new AccessDescription(AccessDescription.id_ad_ocsp, uri(OCSP))).getEncoded());
+            all[extensions.length + 1] = new Extension(Extension.cRLDistributionPoints, false, new CRLDistPoint(new DistributionPoint[] {
+                    new DistributionPoint(new DistributionPointName(new GeneralNames(uri(CRL))), null, null) }).getEncoded());
+        } catch (IOException e) {
+            throw new GeneralSecurityException("Could not encode the revocation endpoints", e);
+        }
+        return TestCredentials.certificate(subject, keyPair.getPublic(), root, rootKeys.getPrivate(), false, all);
+    }
+
+    /**
+     * Revokes a certificate issued by the authority, in its OCSP responses and its CRL.
+     *
+     * @param certificate the certificate
+     */
+    public void revoke(X509Certificate certificate) {
+        revoked.add(certificate.getSerialNumber());
+    }
+
+    /**
+     * Returns the URL of an endpoint of the server.
+     *
+     * @param path the path of the endpoint
+     * @return the URL
+     */
+    public String getUrl(String path) {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+    }
+
+    /**
+     * Returns the number of requests the server received on a path.
+     *
+     * @param path the path of the endpoint
+     * @return the number of requests
+     */
+    public int getRequests(String path) {
+        AtomicInteger count = requests.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Makes the time-stamping authority reject the requests it receives.
+     *
+     * @param refusing whether requests are rejected
+     */
+    public void setRefusing(boolean refusing) {
+        this.refusing = refusing;
+    }
+
+    /**
+     * Makes the OCSP responder answer HTTP 503, so clients fall back to the CRL.
+     *
+     * @param ocspAvailable whether the responder answers
+     */
+    public void setOcspAvailable(boolean ocspAvailable) {
+        this.ocspAvailable = ocspAvailable;
+    }
+
+    /**
+     * Makes the OCSP responder sign its responses with another key and carry its certificate,
+     * as a delegated responder does.
+     *
+     * @param keyPair the key pair of the responder, or null to sign with the root key again
+     * @param certificate the certificate of the responder
+     */
+    public void setOcspResponder(KeyPair keyPair, X509Certificate certificate) {
+        this.responderKeys = keyPair;
+        this.responderCertificate = certificate;
+    }
+
+    public X509Certificate getRoot() {
+        return root;
+    }
+
+    public PrivateKey getRootKey() {
+        return rootKeys.getPrivate();
+    }
+
+    public X509Certificate getTsaCertificate() {
+        return tsaCertificate;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void timestamp(HttpExchange exchange) throws IOException {
+        count(exchange);
+        try {
+            TimeStampRequest request = new TimeStampRequest(read(exchange));
+            DigestCalculator sha1 = new JcaDigestCalculatorProviderBuilder().build().get(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1));
+            TimeStampTokenGenerator tokens = new TimeStampTokenGenerator(new JcaSimpleSignerInfoGeneratorBuilder()
+                    .setProvider(BouncyCastleProvider.PROVIDER_NAME)
+                    .build(TestCredentials.signatureAlgorithm(tsaKeys.getPrivate()), tsaKeys.getPrivate(), tsaCertificate),
+                    sha1, TSA_POLICY);
+            tokens.addCertificates(new JcaCertStore(Arrays.asList(tsaCertificate, root)));
+            TimeStampResponseGenerator responses = new TimeStampResponseGenerator(tokens, TSPAlgorithms.ALLOWED);
+
+            TimeStampResponse response = refusing
+                    ? responses.generateRejectedResponse(new Exception("refused by the test"))
+                    : responses.generate(request, BigInteger.valueOf(serial.incrementAndGet()), new Date());
+            respond(exchange, "application/timestamp-reply", response.getEncoded());
+        } catch (Exception e) {
+            respond(exchange, 500, "text/plain", String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void ocsp(HttpExchange exchange) throws IOException {
+        count(exchange);
+        if (!ocspAvailable) {
+            read(exchange);
+            respond(exchange, 503, "text/plain", new byte[0]);
+            return;
+        }
+        try {
+            OCSPReq request = new OCSPReq(read(exchange));
+            long now = System.currentTimeMillis();
+            KeyPair keys = responderKeys != null ? responderKeys : rootKeys;
+            X509CertificateHolder[] chain = responderKeys != null
+                    ? new X509CertificateHolder[] { new JcaX509CertificateHolder(responderCertificate) } : null;
+            BasicOCSPRespBuilder builder = new JcaBasicOCSPRespBuilder(keys.getPublic(),
+                    new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1));
+            for (Req single : request.getRequestList()) {
+                CertificateID id = single.getCertID();
+                CertificateStatus status = revoked.contains(id.getSerialNumber())
+                        ? new RevokedStatus(new Date(now - DAY), CRLReason.keyCompromise)
+                        : CertificateStatus.GOOD;
+                builder.addResponse(id, status, new Date(now), new Date(now + DAY), null);
+            }
+            BasicOCSPResp basic = builder.build(signer(keys.getPrivate()), chain, new Date(now));
+            respond(exchange, "application/ocsp-response", new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, basic).getEncoded());
+        } catch (Exception e) {
+            respond(exchange, 500, "text/plain", String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void crl(HttpExchange exchange) throws IOException {
+        count(exchange);
+        try {
+            long now = System.currentTimeMillis();
+            X509v2CRLBuilder builder = new X509v2CRLBuilder(X500Name.getInstance(root.getSubjectX500Principal().getEncoded()), new Date(now));
+            builder.setNextUpdate(new Date(now + DAY));
+            for (BigInteger serialNumber : revoked) {
+                builder.addCRLEntry(serialNumber, new Date(now - DAY), CRLReason.keyCompromise);
+            }
+            respond(exchange, "application/pkix-crl", builder.build(signer(rootKeys.getPrivate())).getEncoded());
+        } catch (Exception e) {
+            respond(exchange, 500, "text/plain", String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private ContentSigner signer(PrivateKey key) throws Exception {
+        return new JcaContentSignerBuilder(TestCredentials.signatureAlgorithm(key))
+                .setProvider(BouncyCastleProvider.PROVIDER_NAME).build(key);
+    }
+
+    private GeneralName uri(String path) {
+        return new GeneralName(GeneralName.uniformResourceIdentifier, getUrl(path));
+    }
+
+    private void count(HttpExchange exchange) {
+        requests.computeIfAbsent(exchange.getHttpContext().getPath(), path -> new AtomicInteger()).incrementAndGet();
+    }
+
+    private static byte[] read(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                body.write(buffer, 0, n);
+            }
+        }
+        return body.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        respond(exchange, 200, contentType, body);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * *****************************************************************************
+ *
+ * @file TestCredentials.java
+ * @description Keys, certificates and key stores generated for the unit
+ *              tests.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+/**
+ * Keys, certificates and key stores for the unit tests, generated on the fly so no key
+ * material is kept in the repository.
+ */
+public final class TestCredentials {
+
+    /** Password of the generated key stores and of their keys. */
+    public static final String PASSWORD = "changeit";
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final AtomicLong SERIAL = new AtomicLong(System.currentTimeMillis());
+
+    static {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
+    private TestCredentials() {
+    }
+
+    /**
+     * Generates a key pair.
+     *
+     * @param algorithm RSA, RSASSA-PSS or EC, EC keys being on the P-256 curve
+     * @return the key pair
+     * @throws GeneralSecurityException if the algorithm is not available
+     */
+    public static KeyPair keyPair(String algorithm) throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+        if ("EC".equals(algorithm)) {
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+        } else {
+            generator.initialize(2048);
+        }
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * Issues a certificate valid from yesterday for a year.
+     *
+     * @param subject the common name of the subject
+     * @param publicKey the public key of the subject
+     * @param issuer the certificate of the issuer, or null for a self-signed certificate
+     * @param issuerKey the private key of the issuer
+     * @param ca whether the subject is a certification authority
+     * @param extensions extensions added by the caller, such as the revocation endpoints
+     * @return the certificate
+     * @throws GeneralSecurityException if the certificate cannot be signed
+     */
+    public static X509Certificate certificate(String subject, PublicKey publicKey, X509Certificate issuer, PrivateKey issuerKey,
+            boolean ca, Extension... extensions) throws GeneralSecurityException {
+        X500Name subjectName = new X500Name("CN=" + subject + ",O=PDF Sign Tests");
+        X500Name issuerName = issuer == null ? subjectName : X500Name.getInstance(issuer.getSubjectX500Principal().getEncoded());
+        long now = System.currentTimeMillis();
+
+        try {
+            X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(issuerName, BigInteger.valueOf(SERIAL.incrementAndGet()),
+                    new Date(now - DAY), new Date(now + 365 * DAY), subjectName, publicKey);
+            builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(ca));
+            builder.addExtension(Extension.keyUsage, true, ca
+                    ? new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign | KeyUsage.digitalSignature)
+                    : new KeyUsage(KeyUsage.digitalSignature | KeyUsage.nonRepudiation));
+            for (Extension extension : extensions) {
+                builder.addExtension(extension);
+            }
+            return new JcaX509CertificateConverter().setProvider(BouncyCastleProvider.PROVIDER_NAME)
+                    .getCertificate(builder.build(new JcaContentSignerBuilder(signatureAlgorithm(issuerKey))
+                            .setProvider(BouncyCastleProvider.PROVIDER_NAME).build(issuerKey)));
+        } catch (OperatorCreationException | IOException e) {
+            throw new GeneralSecurityException("Could not issue the certificate of " + subject, e);
+        }
+    }
+
+    /**
+     * Issues a self-signed certificate.
+     *
+     * @param subject the common name of the subject
+     * @param keyPair the key pair of the subject
+     * @return the certificate
+     * @throws GeneralSecurityException if the certificate cannot be signed
+     */
+    public static X509Certificate selfSigned(String subject, KeyPair keyPair) throws GeneralSecurityException {
+        return certificate(subject, keyPair.getPublic(), null, keyPair.getPrivate(), false);
+    }
+
+    /**
+     * Returns the SHA-256 signature algorithm of a private key, in its Bouncy Castle name.
+     *
+     * @param key the private key
+     * @return the signature algorithm
+     */
+    public static String signatureAlgorithm(PrivateKey key) {
+        switch (key.getAlgorithm()) {
+            case "EC":
+                return "SHA256withECDSA";
+            case "RSASSA-PSS":
+                return "SHA256withRSAandMGF1";
+            default:
+                return "SHA256withRSA";
+        }
+    }
+
+    /**
+     * Writes a key store holding a single private key entry, protected by {@link #PASSWORD}.
+     *
+     * @param type the key store type, PKCS12 or JKS
+     * @param key the private key
+     * @param chain the certificate chain of the key, starting with its own certificate
+     * @return the key store content
+     * @throws GeneralSecurityException if the key store cannot be written
+     */
+    public static byte[] keyStore(String type, PrivateKey key, Certificate... chain) throws GeneralSecurityException {
+        try {
+            KeyStore keyStore = KeyStore.getInstance(type);
+            keyStore.load(null, null);
+            keyStore.setKeyEntry("signer", key, PASSWORD.toCharArray(), chain);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            keyStore.store(out, PASSWORD.toCharArray());
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new GeneralSecurityException("Could not write the " + type + " key store", e);
+        }
+    }
+}
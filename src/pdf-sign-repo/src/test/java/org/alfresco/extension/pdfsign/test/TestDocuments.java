@@ -0,0 +1,104 @@
+/**
+ * *****************************************************************************
+ *
+ * @file TestDocuments.java
+ * @description PDF documents and content readers generated for the unit
+ *              tests.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.alfresco.extension.pdfsign.constants.PDFSignConstants;
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.service.cmr.repository.ContentReader;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.PdfWriter;
+
+/**
+ * Documents and content readers for the unit tests, generated on the fly so the tests need
+ * neither fixtures nor a content store.
+ */
+public final class TestDocuments {
+
+    private TestDocuments() {
+    }
+
+    /**
+     * Writes a PDF document with the given number of pages, each carrying its page number.
+     *
+     * @param file the file to write
+     * @param pages the number of pages
+     * @return the file
+     * @throws IOException if the file cannot be written
+     */
+    public static File createPdf(File file, int pages) throws IOException {
+        Document document = new Document();
+        try (OutputStream out = new FileOutputStream(file)) {
+            PdfWriter.getInstance(document, out);
+            document.open();
+            for (int i = 1; i <= pages; i++) {
+                if (i > 1) {
+                    document.newPage();
+                }
+                document.add(new Paragraph("Page " + i));
+            }
+            document.close();
+        } catch (DocumentException e) {
+            throw new IOException("Could not write " + file, e);
+        }
+        return file;
+    }
+
+    /**
+     * Writes a file that claims to be a PDF document but holds no page tree.
+     *
+     * @param file the file to write
+     * @return the file
+     * @throws IOException if the file cannot be written
+     */
+    public static File createCorruptPdf(File file) throws IOException {
+        Files.write(file.toPath(), "%PDF-1.4\nnot a document\n%%EOF\n".getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    /**
+     * Returns a reader over a local file, as the content service would return it for a PDF node.
+     *
+     * @param file the content file
+     * @param contentUrl the content URL reported by the reader
+     * @return the content reader
+     */
+    public static ContentReader reader(File file, String contentUrl) {
+        FileContentReader reader = new FileContentReader(file, contentUrl);
+        reader.setMimetype(PDFSignConstants.FILE_MIMETYPE);
+        return reader;
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * *****************************************************************************
+ *
+ * @file GetPageCountTest.java
+ * @description Tests of the page count web script, alone and under concurrent
+ *              load.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.webscripts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.extension.pdfsign.service.PDFPageCounter;
+import org.alfresco.extension.pdfsign.test.TestDocuments;
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.extensions.webscripts.Cache;
+import org.springframework.extensions.webscripts.Status;
+import org.springframework.extensions.webscripts.WebScriptException;
+import org.springframework.extensions.webscripts.WebScriptRequest;
+
+/**
+ * Tests of the page count web script, alone and under concurrent load. The web script is a
+ * singleton, so concurrent requests for different documents must each get their own count
+ * and status, whether the count comes from the cache or from the document.
+ */
+public class GetPageCountTest {
+
+    private static final int DOCUMENTS = 12;
+    private static final int THREADS = 16;
+    private static final int REQUESTS_PER_THREAD = 150;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private NodeService nodeService;
+    private ContentService contentService;
+    private GetPageCount webScript;
+
+    /** Expected page count by node, for the valid documents. */
+    private final Map<NodeRef, Integer> pageCounts = new HashMap<NodeRef, Integer>();
+    private NodeRef corrupt;
+
+    @Before
+    public void setUp() throws Exception {
+        nodeService = mock(NodeService.class);
+        contentService = mock(ContentService.class);
+        ServiceRegistry serviceRegistry = mock(ServiceRegistry.class);
+        when(serviceRegistry.getNodeService()).thenReturn(nodeService);
+        when(serviceRegistry.getContentService()).thenReturn(contentService);
+
+        for (int i = 1; i <= DOCUMENTS; i++) {
+            NodeRef nodeRef = addNode(TestDocuments.createPdf(folder.newFile("doc" + i + ".pdf"), i));
+            pageCounts.put(nodeRef, i);
+        }
+        corrupt = addNode(TestDocuments.createCorruptPdf(folder.newFile("corrupt.pdf")));
+
+        PDFPageCounter pageCounter = new PDFPageCounter();
+        pageCounter.setNodeService(nodeService);
+        // smaller than the number of documents, so counts are evicted and read again under load
+        pageCounter.setPageCountCache(new DefaultSimpleCache<String, Integer>(DOCUMENTS / 3, "pageCountCache"));
+
+        webScript = new GetPageCount();
+        webScript.setServiceRegistry(serviceRegistry);
+        webScript.setPageCounter(pageCounter);
+    }
+
+    /**
+     * Registers a node whose content is the given file. Every call to the content service
+     * returns a new reader, as the real service does.
+     */
+    private NodeRef addNode(final File file) {
+        NodeRef nodeRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, file.getName());
+        final String contentUrl = "store://test/" + file.getName() + ".bin";
+        when(nodeService.exists(nodeRef)).thenReturn(true);
+        when(contentService.getReader(eq(nodeRef), eq(ContentModel.PROP_CONTENT)))
+                .thenAnswer(invocation -> TestDocuments.reader(file, contentUrl));
+        return nodeRef;
+    }
+
+    private static WebScriptRequest request(NodeRef nodeRef, String ifNoneMatch) {
+        WebScriptRequest req = mock(WebScriptRequest.class);
+        when(req.getParameter("nodeRef")).thenReturn(nodeRef == null ? null : nodeRef.toString());
+        when(req.getHeader("If-None-Match")).thenReturn(ifNoneMatch);
+        return req;
+    }
+
+    private static int statusOf(Callable<?> call) throws Exception {
+        try {
+            call.call();
+            return Status.STATUS_OK;
+        } catch (WebScriptException e) {
+            return e.getStatus();
+        }
+    }
+
+    @Test
+    public void testPageCount() {
+        for (Map.Entry<NodeRef, Integer> entry : pageCounts.entrySet()) {
+            Map<String, Object> model = webScript.executeImpl(request(entry.getKey(), null), new Status(), new Cache());
+            assertEquals(entry.getValue(), model.get("pageCount"));
+        }
+    }
+
+    @Test
+    public void testErrorStatus() throws Exception {
+        assertEquals(Status.STATUS_BAD_REQUEST, statusOf(() -> webScript.executeImpl(request(null, null), new Status(), new Cache())));
+
+        NodeRef missing = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "missing");
+        assertEquals(Status.STATUS_NOT_FOUND, statusOf(() -> webScript.executeImpl(request(missing, null), new Status(), new Cache())));
+
+        NodeRef text = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "text");
+        ContentReader textReader = TestDocuments.reader(folder.newFile("text.txt"), "store://test/text.bin");
+        textReader.setMimetype("text/plain");
+        when(nodeService.exists(text)).thenReturn(true);
+        when(contentService.getReader(any(NodeRef.class), eq(ContentModel.PROP_CONTENT))).thenAnswer(
+                invocation -> text.equals(invocation.getArgument(0)) ? textReader : null);
+        assertEquals(Status.STATUS_UNSUPPORTED_MEDIA_TYPE, statusOf(() -> webScript.executeImpl(request(text, null), new Status(), new Cache())));
+    }
+
+    @Test
+    public void testCorruptDocument() throws Exception {
+        assertEquals(Status.STATUS_INTERNAL_SERVER_ERROR,
+                statusOf(() -> webScript.executeImpl(request(corrupt, null), new Status(), new Cache())));
+    }
+
+    @Test
+    public void testNotModified() {
+        NodeRef nodeRef = pageCounts.keySet().iterator().next();
+        final String[] etag = new String[1];
+        Cache cache = new Cache() {
+            @Override
+            public void setETag(String value) {
+                etag[0] = value;
+            }
+        };
+        webScript.executeImpl(request(nodeRef, null), new Status(), cache);
+
+        Status status = new Status();
+        Map<String, Object> model = webScript.executeImpl(request(nodeRef, etag[0]), status, new Cache());
+        assertEquals(Status.STATUS_NOT_MODIFIED, status.getCode());
+        assertTrue(model.isEmpty());
+    }
+
+    /**
+     * Many threads request random documents, the corrupt one included, through the same web
+     * script instance. Every request must get the count of its own document, and the failure of
+     * the corrupt document must not leak into any other request.
+     */
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        final List<NodeRef> nodes = new ArrayList<NodeRef>(pageCounts.keySet());
+        nodes.add(corrupt);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < THREADS; t++) {
+                final Random random = new Random(t);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        NodeRef nodeRef = nodes.get(random.nextInt(nodes.size()));
+                        Status status = new Status();
+                        try {
+                            Map<String, Object> model = webScript.executeImpl(request(nodeRef, null), status, new Cache());
+                            if (nodeRef.equals(corrupt)) {
+                                failures.add("corrupt document answered " + model);
+                            } else if (!pageCounts.get(nodeRef).equals(model.get("pageCount"))) {
+                                failures.add(nodeRef + " answered " + model.get("pageCount") + " instead of " + pageCounts.get(nodeRef));
+                            }
+                        } catch (WebScriptException e) {
+                            if (!nodeRef.equals(corrupt) || e.getStatus() != Status.STATUS_INTERNAL_SERVER_ERROR) {
+                                failures.add(nodeRef + " failed with " + e.getStatus() + ": " + e.getMessage());
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (!failures.isEmpty()) {
+            fail(failures.size() + " requests got a wrong answer, first: " + failures.get(0));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * *****************************************************************************
+ *
+ * @file GetVerificationTest.java
+ * @description Tests of the conditional requests of the verification web
+ *              script.
+ *
+ * @author Rober de Avila Abraira
+ * @version 1.0
+ * @date 2024/08/04
+ *
+ * @copyright © 2024 Rober de Avila Abraira
+ *
+ * @license Licensed under the Apache License, Version 2.0 (the "License");
+ *          you may not use this file except in compliance with the License.
+ *          You may obtain a copy of the License at
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *          Unless required by applicable law or agreed to in writing, software
+ *          distributed under the License is distributed on an "AS IS" BASIS,
+ *          WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *          See the License for the specific language governing permissions and
+ *          limitations under the License.
+ *
+ * *****************************************************************************
+ */
+
+package org.alfresco.extension.pdfsign.webscripts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.util.Map;
+
+import org.alfresco.extension.pdfsign.service.PDFSignService;
+import org.alfresco.extension.pdfsign.service.SignatureVerifier;
+import org.alfresco.extension.pdfsign.test.TestCredentials;
+import org.alfresco.extension.pdfsign.test.TestDocuments;
+import org.alfresco.model.ContentModel;
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.extensions.webscripts.Cache;
+import org.springframework.extensions.webscripts.Status;
+import org.springframework.extensions.webscripts.WebScriptRequest;
+
+/**
+ * Tests of the conditional requests of the verification web script: a client holding the
+ * verification of unchanged content gets 304 Not Modified until the trust anchors change.
+ */
+public class GetVerificationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PDFSignService pdfSignService;
+    private SignatureVerifier signatureVerifier;
+    private GetVerification webScript;
+    private NodeRef nodeRef;
+
+    @Before
+    public void setUp() throws Exception {
+        NodeService nodeService = mock(NodeService.class);
+        ContentService contentService = mock(ContentService.class);
+        ServiceRegistry serviceRegistry = mock(ServiceRegistry.class);
+        when(serviceRegistry.getNodeService()).thenReturn(nodeService);
+        when(serviceRegistry.getContentService()).thenReturn(contentService);
+
+        final File file = TestDocuments.createPdf(folder.newFile("doc.pdf"), 1);
+        nodeRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "doc");
+        when(nodeService.exists(nodeRef)).thenReturn(true);
+        when(contentService.getReader(eq(nodeRef), eq(ContentModel.PROP_CONTENT)))
+                .thenAnswer(invocation -> TestDocuments.reader(file, "store://test/doc.bin"));
+
+        pdfSignService = mock(PDFSignService.class);
+        signatureVerifier = new SignatureVerifier();
+        useTrustStore("Test Anchor");
+
+        webScript = new GetVerification();
+        webScript.setServiceRegistry(serviceRegistry);
+        webScript.setPdfSignService(pdfSignService);
+        webScript.setSignatureVerifier(signatureVerifier);
+    }
+
+    /**
+     * Loads the trust anchors of the verifier from a new trust store holding one certificate.
+     */
+    private void useTrustStore(String subject) throws Exception {
+        KeyPair keyPair = TestCredentials.keyPair("EC");
+        File trustStore = folder.newFile(subject.replace(' ', '-') + ".p12");
+        Files.write(trustStore.toPath(), TestCredentials.keyStore("PKCS12", keyPair.getPrivate(),
+                TestCredentials.selfSigned(subject, keyPair)));
+        signatureVerifier.setTrustStore(trustStore.getPath());
+        signatureVerifier.setTrustStoreType("PKCS12");
+        signatureVerifier.setTrustStorePassword(TestCredentials.PASSWORD);
+        signatureVerifier.init();
+    }
+
+    private WebScriptRequest request(String ifNoneMatch) {
+        WebScriptRequest req = mock(WebScriptRequest.class);
+        when(req.getParameter("nodeRef")).thenReturn(nodeRef.toString());
+        when(req.getHeader("If-None-Match")).thenReturn(ifNoneMatch);
+        return req;
+    }
+
+    private String etagOf(Status status, String ifNoneMatch) {
+        final String[] etag = new String[1];
+        Cache cache = new Cache() {
+            @Override
+            public void setETag(String value) {
+                etag[0] = value;
+            }
+        };
+        webScript.executeImpl(request(ifNoneMatch), status, cache);
+        return etag[0];
+    }
+
+    @Test
+    public void testNotModified() {
+        String etag = etagOf(new Status(), null);
+        verify(pdfSignService, times(1)).verifyPDF(nodeRef);
+
+        Status status = new Status();
+        Map<String, Object> model = webScript.executeImpl(request(etag), status, new Cache());
+        assertEquals(Status.STATUS_NOT_MODIFIED, status.getCode());
+        assertTrue(model.isEmpty());
+        verify(pdfSignService, times(1)).verifyPDF(nodeRef);
+    }
+
+    @Test
+    public void testTrustStoreChangeInvalidatesETag() throws Exception {
+        String etag = etagOf(new Status(), null);
+
+        useTrustStore("Other Test Anchor");
+        Status status = new Status();
+        String changed = etagOf(status, etag);
+
+        assertNotEquals(etag, changed);
+        assertNotEquals(Status.STATUS_NOT_MODIFIED, status.getCode());
+        verify(pdfSignService, times(2)).verifyPDF(nodeRef);
+    }
+
+    @Test
+    public void testETagIsStableForTheSameAnchors() throws Exception {
+        String etag = etagOf(new Status(), null);
+        // loading the same anchors again keeps the ETag
+        signatureVerifier.init();
+        Status status = new Status();
+        assertEquals(etag, etagOf(status, etag));
+        assertEquals(Status.STATUS_NOT_MODIFIED, status.getCode());
+        verify(pdfSignService, times(1)).verifyPDF(nodeRef);
+    }
+}